@@ -0,0 +1,198 @@
+package org.sagebionetworks.client;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.sagebionetworks.client.exceptions.SynapseException;
+import org.sagebionetworks.repo.model.migration.BatchChecksumRequest;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * Business logic to find the ID ranges of a migration type that differ between
+ * a source and destination stack.
+ * <p>
+ * The batch checksums of both stacks are compared for a range of IDs. Each
+ * batch with a different checksum is split in half and compared again until
+ * the batch size reaches the leaf size. The result is a manifest of the ID
+ * ranges that must be backed up from the source and restored to the
+ * destination. Since a restore deletes all rows of its range before restoring
+ * the backup, rows deleted from the source are also removed from the
+ * destination. Ranges that match are never backed up.
+ * 
+ */
+public class MigrationRangeDiff {
+
+	/**
+	 * Abstraction for calculating the batch checksums of a single stack.
+	 *
+	 */
+	public interface ChecksumProvider {
+
+		/**
+		 * Calculate the checksum of each batch in the requested range.
+		 * 
+		 * @param request
+		 * @return
+		 * @throws SynapseException
+		 */
+		List<RangeChecksum> calculateBatchChecksums(BatchChecksumRequest request) throws SynapseException;
+	}
+
+	final ChecksumProvider source;
+	final ChecksumProvider destination;
+	final String salt;
+	final long leafSize;
+
+	/**
+	 * 
+	 * @param source
+	 * @param destination
+	 * @param salt
+	 *            Salt added to each checksum.
+	 * @param leafSize
+	 *            Batches of this size or smaller are not split any further.
+	 */
+	public MigrationRangeDiff(ChecksumProvider source, ChecksumProvider destination, String salt, long leafSize) {
+		ValidateArgument.required(source, "source");
+		ValidateArgument.required(destination, "destination");
+		ValidateArgument.required(salt, "salt");
+		ValidateArgument.requirement(leafSize > 0, "leafSize must be greater than zero");
+		this.source = source;
+		this.destination = destination;
+		this.salt = salt;
+		this.leafSize = leafSize;
+	}
+
+	/**
+	 * Find all of the ID ranges that differ between the source and destination
+	 * for the given type.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 *            The minimum ID of the full range (inclusive).
+	 * @param maximumId
+	 *            The maximum ID of the full range (inclusive).
+	 * @param batchSize
+	 *            The size of the batches compared at the top level.
+	 * @return The manifest of differing ranges, in ID order. Each range has an
+	 *         inclusive minimum and an exclusive maximum, matching
+	 *         BackupTypeRangeRequest and RestoreTypeRequest. Adjacent ranges are
+	 *         merged.
+	 * @throws SynapseException
+	 */
+	public List<IdRange> findDifferences(MigrationType type, long minimumId, long maximumId, long batchSize)
+			throws SynapseException {
+		ValidateArgument.required(type, "type");
+		ValidateArgument.requirement(batchSize > 0, "batchSize must be greater than zero");
+		List<IdRange> differences = new LinkedList<>();
+		compareRange(type, minimumId, maximumId, batchSize, differences);
+		return mergeAdjacentRanges(differences);
+	}
+
+	/**
+	 * Compare the batches of a single range, splitting each batch that differs.
+	 * 
+	 * @param type
+	 * @param minimumId
+	 *            inclusive
+	 * @param maximumId
+	 *            inclusive
+	 * @param batchSize
+	 * @param differences
+	 * @throws SynapseException
+	 */
+	void compareRange(MigrationType type, long minimumId, long maximumId, long batchSize, List<IdRange> differences)
+			throws SynapseException {
+		BatchChecksumRequest request = new BatchChecksumRequest();
+		request.setMigrationType(type);
+		request.setSalt(salt);
+		request.setMinimumId(minimumId);
+		request.setMaximumId(maximumId);
+		request.setBatchSize(batchSize);
+		Map<Long, RangeChecksum> sourceBins = mapByBin(source.calculateBatchChecksums(request));
+		Map<Long, RangeChecksum> destinationBins = mapByBin(destination.calculateBatchChecksums(request));
+		TreeSet<Long> allBins = new TreeSet<>(sourceBins.keySet());
+		allBins.addAll(destinationBins.keySet());
+		for (Long bin : allBins) {
+			RangeChecksum sourceBin = sourceBins.get(bin);
+			RangeChecksum destinationBin = destinationBins.get(bin);
+			if (sourceBin != null && sourceBin.equals(destinationBin)) {
+				// this batch matches.
+				continue;
+			}
+			// Only IDs between the smallest and largest row of either side can differ.
+			long binMinimum = Math.max(minimumId, minimum(sourceBin, destinationBin));
+			long binMaximum = Math.min(maximumId, maximum(sourceBin, destinationBin));
+			if (batchSize <= leafSize || binMinimum == binMaximum) {
+				IdRange range = new IdRange();
+				range.setMinimumId(binMinimum);
+				range.setMaximumId(binMaximum + 1);
+				differences.add(range);
+			} else {
+				compareRange(type, binMinimum, binMaximum, Math.max(leafSize, batchSize / 2), differences);
+			}
+		}
+	}
+
+	/**
+	 * Map each checksum by its bin number.
+	 * 
+	 * @param checksums
+	 * @return
+	 */
+	static Map<Long, RangeChecksum> mapByBin(List<RangeChecksum> checksums) {
+		Map<Long, RangeChecksum> map = new HashMap<>();
+		if (checksums != null) {
+			for (RangeChecksum checksum : checksums) {
+				map.put(checksum.getBinNumber(), checksum);
+			}
+		}
+		return map;
+	}
+
+	static long minimum(RangeChecksum one, RangeChecksum two) {
+		if (one == null) {
+			return two.getMinimumId();
+		}
+		if (two == null) {
+			return one.getMinimumId();
+		}
+		return Math.min(one.getMinimumId(), two.getMinimumId());
+	}
+
+	static long maximum(RangeChecksum one, RangeChecksum two) {
+		if (one == null) {
+			return two.getMaximumId();
+		}
+		if (two == null) {
+			return one.getMaximumId();
+		}
+		return Math.max(one.getMaximumId(), two.getMaximumId());
+	}
+
+	/**
+	 * Merge ranges that are next to each other. The passed ranges must be in ID
+	 * order.
+	 * 
+	 * @param ranges
+	 * @return
+	 */
+	static List<IdRange> mergeAdjacentRanges(List<IdRange> ranges) {
+		LinkedList<IdRange> merged = new LinkedList<>();
+		for (IdRange range : ranges) {
+			IdRange last = merged.peekLast();
+			if (last != null && last.getMaximumId().equals(range.getMinimumId())) {
+				last.setMaximumId(range.getMaximumId());
+			} else {
+				merged.add(range);
+			}
+		}
+		return merged;
+	}
+}
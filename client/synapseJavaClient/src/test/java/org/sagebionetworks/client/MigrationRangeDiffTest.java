@@ -0,0 +1,143 @@
+package org.sagebionetworks.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.migration.BatchChecksumRequest;
+import org.sagebionetworks.repo.model.migration.IdRange;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.sagebionetworks.repo.model.migration.RangeChecksum;
+
+public class MigrationRangeDiffTest {
+
+	TreeMap<Long, String> sourceRows;
+	TreeMap<Long, String> destinationRows;
+	List<BatchChecksumRequest> sourceRequests;
+	MigrationRangeDiff diff;
+
+	@Before
+	public void before() {
+		sourceRows = new TreeMap<>();
+		destinationRows = new TreeMap<>();
+		for (long id = 0; id < 10000; id++) {
+			sourceRows.put(id, "etag" + id);
+			destinationRows.put(id, "etag" + id);
+		}
+		sourceRequests = new LinkedList<>();
+		MigrationRangeDiff.ChecksumProvider source = (BatchChecksumRequest request) -> {
+			sourceRequests.add(request);
+			return calculateBatchChecksums(sourceRows, request);
+		};
+		MigrationRangeDiff.ChecksumProvider destination = (BatchChecksumRequest request) -> {
+			return calculateBatchChecksums(destinationRows, request);
+		};
+		diff = new MigrationRangeDiff(source, destination, "salt", 10L);
+	}
+
+	/**
+	 * Same binning as MigratableTableDAOImpl.calculateBatchChecksums().
+	 */
+	static List<RangeChecksum> calculateBatchChecksums(TreeMap<Long, String> rows, BatchChecksumRequest request) {
+		Map<Long, RangeChecksum> bins = new TreeMap<>();
+		for (Map.Entry<Long, String> row : rows.subMap(request.getMinimumId(), true, request.getMaximumId(), true)
+				.entrySet()) {
+			long bin = row.getKey() / request.getBatchSize();
+			RangeChecksum checksum = bins.get(bin);
+			if (checksum == null) {
+				checksum = new RangeChecksum();
+				checksum.setBinNumber(bin);
+				checksum.setCount(0L);
+				checksum.setMinimumId(row.getKey());
+				checksum.setChecksum(request.getSalt());
+				bins.put(bin, checksum);
+			}
+			checksum.setCount(checksum.getCount() + 1);
+			checksum.setMaximumId(row.getKey());
+			checksum.setChecksum(Integer.toHexString((checksum.getChecksum() + row.getValue()).hashCode()));
+		}
+		return new LinkedList<>(bins.values());
+	}
+
+	static IdRange range(long minimumId, long maximumId) {
+		IdRange range = new IdRange();
+		range.setMinimumId(minimumId);
+		range.setMaximumId(maximumId);
+		return range;
+	}
+
+	@Test
+	public void testFindDifferencesNone() throws Exception {
+		// call under test
+		List<IdRange> results = diff.findDifferences(MigrationType.NODE, 0L, 9999L, 1000L);
+		assertTrue(results.isEmpty());
+		// matching ranges are not split.
+		assertEquals(1, sourceRequests.size());
+	}
+
+	@Test
+	public void testFindDifferencesChangedRow() throws Exception {
+		sourceRows.put(4321L, "changed");
+		// call under test
+		List<IdRange> results = diff.findDifferences(MigrationType.NODE, 0L, 9999L, 1000L);
+		// the row is in the leaf batch 4320-4329
+		assertEquals(1, results.size());
+		assertEquals(range(4320L, 4330L), results.get(0));
+		// only the mismatched batches are split.
+		assertEquals(8, sourceRequests.size());
+	}
+
+	@Test
+	public void testFindDifferencesDeletedRow() throws Exception {
+		sourceRows.remove(15L);
+		// call under test
+		List<IdRange> results = diff.findDifferences(MigrationType.NODE, 0L, 9999L, 1000L);
+		assertEquals(1, results.size());
+		IdRange result = results.get(0);
+		assertTrue(result.getMinimumId() <= 15L && result.getMaximumId() > 15L);
+	}
+
+	@Test
+	public void testFindDifferencesRowsOnlyInDestination() throws Exception {
+		destinationRows.put(20000L, "extra");
+		destinationRows.put(20001L, "extra");
+		// call under test
+		List<IdRange> results = diff.findDifferences(MigrationType.NODE, 0L, 30000L, 1000L);
+		// rows that are not in the source are still found so they can be deleted.
+		assertEquals(1, results.size());
+		assertEquals(range(20000L, 20002L), results.get(0));
+	}
+
+	@Test
+	public void testFindDifferencesMergeAdjacent() throws Exception {
+		for (long id = 100; id < 130; id++) {
+			sourceRows.put(id, "changed");
+		}
+		// call under test
+		List<IdRange> results = diff.findDifferences(MigrationType.NODE, 0L, 9999L, 1000L);
+		assertEquals(1, results.size());
+		assertEquals(range(100L, 130L), results.get(0));
+	}
+
+	@Test
+	public void testFindDifferencesMultiple() throws Exception {
+		sourceRows.put(5L, "changed");
+		sourceRows.put(9995L, "changed");
+		// call under test
+		List<IdRange> results = diff.findDifferences(MigrationType.NODE, 0L, 9999L, 1000L);
+		assertEquals(2, results.size());
+		assertEquals(range(0L, 10L), results.get(0));
+		assertEquals(range(9990L, 10000L), results.get(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLeafSizeZero() {
+		new MigrationRangeDiff(diff.source, diff.destination, "salt", 0L);
+	}
+}
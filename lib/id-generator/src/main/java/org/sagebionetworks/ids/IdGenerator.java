@@ -73,5 +73,13 @@ public interface IdGenerator {
 	 * @return
 	 */
 	long getRowCount(IdType type);
+
+	/**
+	 * Get the lease counters for the given type.
+	 * 
+	 * @param type
+	 * @return null if IDs of the type are not issued from leased blocks.
+	 */
+	IdLeaseStatistics getLeaseStatistics(IdType type);
 	
 }
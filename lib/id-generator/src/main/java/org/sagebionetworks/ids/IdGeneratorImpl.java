@@ -209,5 +209,11 @@ public class IdGeneratorImpl implements IdGenerator, InitializingBean{
 	public long getRowCount(IdType type) {
 		return idGeneratorJdbcTemplate.queryForObject(String.format(SELECT_COUNT_FROM_TYPE, type.name()), Long.class);
 	}
+
+	@Override
+	public IdLeaseStatistics getLeaseStatistics(IdType type) {
+		// IDs are never leased by this generator.
+		return null;
+	}
 	
 }
@@ -0,0 +1,184 @@
+package org.sagebionetworks.ids;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Issues IDs of a single {@link IdType} from a block reserved from the
+ * database. IDs are taken from the current block without any locking. When the
+ * current block runs low, the next block is reserved asynchronously so callers
+ * rarely wait on the database.
+ * 
+ * Any IDs remaining in a block when the JVM stops are never issued, so the IDs
+ * issued by a lease are unique but not gap-free, and are only increasing within
+ * a single JVM.
+ *
+ */
+public class IdLease {
+
+	private final IdType type;
+	private final IdGenerator delegate;
+	private final ExecutorService prefetchExecutorService;
+	private final int leaseSize;
+	private final long prefetchThreshold;
+
+	private final AtomicReference<IdRange> current = new AtomicReference<>(IdRange.EMPTY);
+	private volatile Future<IdRange> prefetch;
+
+	private final AtomicLong idsIssued = new AtomicLong(0L);
+	private final AtomicLong blocksLeased = new AtomicLong(0L);
+	private final AtomicLong blockingFetches = new AtomicLong(0L);
+
+	/**
+	 * 
+	 * @param type                    The type of IDs issued by this lease.
+	 * @param delegate                Used to reserve each block of IDs from the
+	 *                                database.
+	 * @param prefetchExecutorService Used to reserve the next block in the
+	 *                                background.
+	 * @param leaseSize               The number of IDs in each block.
+	 */
+	public IdLease(IdType type, IdGenerator delegate, ExecutorService prefetchExecutorService, int leaseSize) {
+		if (type == null) {
+			throw new IllegalArgumentException("Type cannot be null");
+		}
+		if (delegate == null) {
+			throw new IllegalArgumentException("Delegate cannot be null");
+		}
+		if (prefetchExecutorService == null) {
+			throw new IllegalArgumentException("ExecutorService cannot be null");
+		}
+		if (leaseSize < 1) {
+			throw new IllegalArgumentException("Lease size must be greater than or equal to 1.");
+		}
+		this.type = type;
+		this.delegate = delegate;
+		this.prefetchExecutorService = prefetchExecutorService;
+		this.leaseSize = leaseSize;
+		// start fetching the next block when a quarter of the current block remains.
+		this.prefetchThreshold = Math.max(1L, leaseSize / 4);
+	}
+
+	/**
+	 * Take the given number of contiguous IDs from the lease.
+	 * 
+	 * @param count Must be less than or equal to the lease size.
+	 * @return The first ID of the range taken.
+	 */
+	public long take(int count) {
+		if (count < 1 || count > leaseSize) {
+			throw new IllegalArgumentException("Count must be between 1 and " + leaseSize);
+		}
+		while (true) {
+			IdRange range = current.get();
+			Long first = range.take(count);
+			if (first != null) {
+				idsIssued.addAndGet(count);
+				if (range.getRemaining() < prefetchThreshold) {
+					startPrefetch();
+				}
+				return first;
+			}
+			refill(range);
+		}
+	}
+
+	/**
+	 * Ensure the lease will never issue the given ID or any ID below it.
+	 * 
+	 * @param id
+	 */
+	public synchronized void skipTo(long id) {
+		current.get().skipTo(id);
+		if (prefetch != null) {
+			IdRange next = waitForPrefetch();
+			next.skipTo(id);
+			prefetch = CompletableFuture.completedFuture(next);
+		}
+	}
+
+	/**
+	 * Get a snapshot of the counters for this lease.
+	 * 
+	 * @return
+	 */
+	public IdLeaseStatistics getStatistics() {
+		return new IdLeaseStatistics(idsIssued.get(), blocksLeased.get(), blockingFetches.get(),
+				current.get().getRemaining());
+	}
+
+	/**
+	 * Replace the exhausted range with the next block. Only the first caller to
+	 * observe an exhausted range will replace it.
+	 * 
+	 * @param exhausted
+	 */
+	synchronized void refill(IdRange exhausted) {
+		if (current.get() != exhausted) {
+			// another thread already replaced the range.
+			return;
+		}
+		IdRange next;
+		if (prefetch != null) {
+			next = waitForPrefetch();
+		} else {
+			blockingFetches.incrementAndGet();
+			next = leaseBlock();
+		}
+		current.set(next);
+	}
+
+	/**
+	 * Start reserving the next block in the background if that is not already
+	 * in progress.
+	 */
+	void startPrefetch() {
+		if (prefetch == null) {
+			synchronized (this) {
+				if (prefetch == null) {
+					prefetch = prefetchExecutorService.submit(this::leaseBlock);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for the prefetched block. If the prefetch failed, the block is
+	 * reserved on the calling thread instead. Must be called while holding the
+	 * lock on this lease.
+	 * 
+	 * @return
+	 */
+	private IdRange waitForPrefetch() {
+		Future<IdRange> future = prefetch;
+		prefetch = null;
+		if (!future.isDone()) {
+			blockingFetches.incrementAndGet();
+		}
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			// try again on this thread so any error is thrown to the caller.
+			return leaseBlock();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Reserve a new block of IDs from the database.
+	 * 
+	 * @return
+	 */
+	private IdRange leaseBlock() {
+		BatchOfIds batch = delegate.generateBatchNewIds(type, leaseSize);
+		blocksLeased.incrementAndGet();
+		return new IdRange(batch.getFirstId(), batch.getLastId());
+	}
+
+}
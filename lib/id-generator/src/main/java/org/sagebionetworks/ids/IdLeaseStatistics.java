@@ -0,0 +1,65 @@
+package org.sagebionetworks.ids;
+
+/**
+ * Snapshot of the counters for the ID lease of a single {@link IdType}.
+ *
+ */
+public class IdLeaseStatistics {
+
+	long idsIssued;
+	long blocksLeased;
+	long blockingFetches;
+	long remaining;
+
+	public IdLeaseStatistics(long idsIssued, long blocksLeased, long blockingFetches, long remaining) {
+		super();
+		this.idsIssued = idsIssued;
+		this.blocksLeased = blocksLeased;
+		this.blockingFetches = blockingFetches;
+		this.remaining = remaining;
+	}
+
+	/**
+	 * The total number of IDs issued from leased blocks.
+	 * 
+	 * @return
+	 */
+	public long getIdsIssued() {
+		return idsIssued;
+	}
+
+	/**
+	 * The total number of blocks reserved from the database.
+	 * 
+	 * @return
+	 */
+	public long getBlocksLeased() {
+		return blocksLeased;
+	}
+
+	/**
+	 * The number of times a caller had to wait for a block to be reserved from
+	 * the database because the prefetched block was not ready.
+	 * 
+	 * @return
+	 */
+	public long getBlockingFetches() {
+		return blockingFetches;
+	}
+
+	/**
+	 * The number of IDs remaining in the current block.
+	 * 
+	 * @return
+	 */
+	public long getRemaining() {
+		return remaining;
+	}
+
+	@Override
+	public String toString() {
+		return "IdLeaseStatistics [idsIssued=" + idsIssued + ", blocksLeased=" + blocksLeased + ", blockingFetches="
+				+ blockingFetches + ", remaining=" + remaining + "]";
+	}
+
+}
@@ -0,0 +1,73 @@
+package org.sagebionetworks.ids;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A contiguous range of IDs that have been reserved from the database and can
+ * be issued from memory without any locking.
+ *
+ */
+public class IdRange {
+
+	/**
+	 * A range with no IDs.
+	 */
+	public static final IdRange EMPTY = new IdRange(1L, 0L);
+
+	private final AtomicLong nextId;
+	private final long lastId;
+
+	/**
+	 * 
+	 * @param firstId The first ID in the range (inclusive).
+	 * @param lastId  The last ID in the range (inclusive).
+	 */
+	public IdRange(long firstId, long lastId) {
+		this.nextId = new AtomicLong(firstId);
+		this.lastId = lastId;
+	}
+
+	/**
+	 * Take the given number of contiguous IDs from this range.
+	 * 
+	 * @param count
+	 * @return The first ID taken, or null if this range does not have enough IDs
+	 *         remaining. Once a call returns null the range should be treated as
+	 *         exhausted.
+	 */
+	public Long take(int count) {
+		long first = nextId.getAndAdd(count);
+		if (first + count - 1 > lastId) {
+			return null;
+		}
+		return first;
+	}
+
+	/**
+	 * Ensure this range will never issue the given ID or any ID below it.
+	 * 
+	 * @param id
+	 */
+	public void skipTo(long id) {
+		nextId.accumulateAndGet(id + 1, Math::max);
+	}
+
+	/**
+	 * The number of IDs that can still be issued from this range.
+	 * 
+	 * @return
+	 */
+	public long getRemaining() {
+		return Math.max(0L, lastId - nextId.get() + 1);
+	}
+
+	/**
+	 * The last ID in the range (inclusive).
+	 * 
+	 * @return
+	 */
+	public long getLastId() {
+		return lastId;
+	}
+
+}
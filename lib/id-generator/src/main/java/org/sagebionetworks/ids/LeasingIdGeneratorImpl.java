@@ -0,0 +1,125 @@
+package org.sagebionetworks.ids;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An {@link IdGenerator} that issues the IDs of selected types from blocks
+ * leased from the database rather than locking the type's semaphore for each
+ * ID. All other types and all other operations are passed to the wrapped
+ * generator.
+ * 
+ * Only types that do not require a strict cluster-wide ordering should be
+ * leased, since each JVM issues IDs from its own block. For example,
+ * {@link IdType#CHANGE_ID} must never be leased.
+ *
+ */
+public class LeasingIdGeneratorImpl implements IdGenerator {
+
+	private final IdGenerator delegate;
+	private final int leaseSize;
+	private final Map<IdType, IdLease> leases;
+
+	/**
+	 * 
+	 * @param delegate                The generator used to reserve each block.
+	 * @param prefetchExecutorService Used to reserve the next block of each type
+	 *                                in the background.
+	 * @param leaseSize               The number of IDs reserved in each block.
+	 * @param leasedTypes             The types that should be leased.
+	 */
+	public LeasingIdGeneratorImpl(IdGenerator delegate, ExecutorService prefetchExecutorService, int leaseSize,
+			Set<IdType> leasedTypes) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("Delegate cannot be null");
+		}
+		if (leasedTypes == null) {
+			throw new IllegalArgumentException("Leased types cannot be null");
+		}
+		this.delegate = delegate;
+		this.leaseSize = leaseSize;
+		this.leases = new EnumMap<>(IdType.class);
+		for (IdType type : leasedTypes) {
+			leases.put(type, new IdLease(type, delegate, prefetchExecutorService, leaseSize));
+		}
+	}
+
+	@Override
+	public Long generateNewId(IdType type) {
+		if (type == null) {
+			throw new IllegalArgumentException("Type cannot be null");
+		}
+		IdLease lease = leases.get(type);
+		if (lease == null) {
+			return delegate.generateNewId(type);
+		}
+		return lease.take(1);
+	}
+
+	@Override
+	public void reserveId(Long idToLock, IdType type) {
+		if (idToLock == null) {
+			throw new IllegalArgumentException("ID to reserve cannot be null");
+		}
+		delegate.reserveId(idToLock, type);
+		IdLease lease = leases.get(type);
+		if (lease != null) {
+			// IDs already leased might be at or below the reserved ID.
+			lease.skipTo(idToLock);
+		}
+	}
+
+	@Override
+	public BatchOfIds generateBatchNewIds(IdType type, int count) {
+		if (type == null) {
+			throw new IllegalArgumentException("Type cannot be null");
+		}
+		if (count < 1) {
+			throw new IllegalArgumentException("Count must be greater than or equal to 1.");
+		}
+		IdLease lease = leases.get(type);
+		if (lease == null || count > leaseSize) {
+			// batches larger than a block are reserved directly.
+			return delegate.generateBatchNewIds(type, count);
+		}
+		long firstId = lease.take(count);
+		return new BatchOfIds(firstId, firstId + (count - 1));
+	}
+
+	@Override
+	public String createRestoreScript() {
+		return delegate.createRestoreScript();
+	}
+
+	@Override
+	public void createRestoreScript(StringBuilder builder, IdType type) {
+		delegate.createRestoreScript(builder, type);
+	}
+
+	@Override
+	public long getMaxValueForType(IdType type) {
+		return delegate.getMaxValueForType(type);
+	}
+
+	@Override
+	public void cleanupType(IdType type, long rowLimit) {
+		delegate.cleanupType(type, rowLimit);
+	}
+
+	@Override
+	public long getRowCount(IdType type) {
+		return delegate.getRowCount(type);
+	}
+
+	@Override
+	public IdLeaseStatistics getLeaseStatistics(IdType type) {
+		IdLease lease = leases.get(type);
+		if (lease == null) {
+			return null;
+		}
+		return lease.getStatistics();
+	}
+
+}
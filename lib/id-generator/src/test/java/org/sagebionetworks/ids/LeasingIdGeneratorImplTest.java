@@ -0,0 +1,194 @@
+package org.sagebionetworks.ids;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LeasingIdGeneratorImplTest {
+
+	@Mock
+	IdGenerator mockDelegate;
+
+	ExecutorService executorService;
+	int leaseSize;
+	AtomicLong databaseMax;
+	LeasingIdGeneratorImpl generator;
+
+	@Before
+	public void before() {
+		executorService = Executors.newSingleThreadExecutor();
+		leaseSize = 10;
+		databaseMax = new AtomicLong(100L);
+		generator = new LeasingIdGeneratorImpl(mockDelegate, executorService, leaseSize,
+				EnumSet.of(IdType.ENTITY_ID));
+	}
+
+	@After
+	public void after() {
+		executorService.shutdownNow();
+	}
+
+	/**
+	 * Simulate the database reserving a block of IDs.
+	 */
+	void setupDatabaseBatches() {
+		when(mockDelegate.generateBatchNewIds(any(IdType.class), anyInt())).thenAnswer(invocation -> {
+			int count = invocation.getArgument(1);
+			synchronized (databaseMax) {
+				long first = databaseMax.get() + 1;
+				long last = databaseMax.addAndGet(count);
+				return new BatchOfIds(first, last);
+			}
+		});
+	}
+
+	@Test
+	public void testGenerateNewIdLeased() {
+		setupDatabaseBatches();
+		// call under test
+		for (long i = 101; i <= 110; i++) {
+			assertEquals(new Long(i), generator.generateNewId(IdType.ENTITY_ID));
+		}
+		verify(mockDelegate, never()).generateNewId(any(IdType.class));
+	}
+
+	@Test
+	public void testGenerateNewIdAcrossBlocks() {
+		setupDatabaseBatches();
+		Set<Long> unique = new HashSet<>();
+		long last = 0;
+		for (int i = 0; i < 55; i++) {
+			Long id = generator.generateNewId(IdType.ENTITY_ID);
+			assertTrue(unique.add(id));
+			assertTrue("IDs must increase within a single JVM", id > last);
+			last = id;
+		}
+		IdLeaseStatistics stats = generator.getLeaseStatistics(IdType.ENTITY_ID);
+		assertEquals(55L, stats.getIdsIssued());
+		assertTrue(stats.getBlocksLeased() >= 6L);
+	}
+
+	@Test
+	public void testGenerateNewIdNotLeased() {
+		when(mockDelegate.generateNewId(IdType.CHANGE_ID)).thenReturn(5L);
+		// call under test
+		assertEquals(new Long(5), generator.generateNewId(IdType.CHANGE_ID));
+		verify(mockDelegate, never()).generateBatchNewIds(any(IdType.class), anyInt());
+		assertNull(generator.getLeaseStatistics(IdType.CHANGE_ID));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGenerateNewIdNullType() {
+		generator.generateNewId(null);
+	}
+
+	@Test
+	public void testGenerateBatchNewIdsFromLease() {
+		setupDatabaseBatches();
+		Long first = generator.generateNewId(IdType.ENTITY_ID);
+		// call under test
+		BatchOfIds batch = generator.generateBatchNewIds(IdType.ENTITY_ID, 3);
+		assertEquals(new Long(first + 1), batch.getFirstId());
+		assertEquals(new Long(first + 3), batch.getLastId());
+		assertEquals(new Long(first + 4), generator.generateNewId(IdType.ENTITY_ID));
+	}
+
+	@Test
+	public void testGenerateBatchNewIdsLargerThanLease() {
+		BatchOfIds expected = new BatchOfIds(1L, 11L);
+		when(mockDelegate.generateBatchNewIds(IdType.ENTITY_ID, 11)).thenReturn(expected);
+		// call under test
+		assertEquals(expected, generator.generateBatchNewIds(IdType.ENTITY_ID, 11));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGenerateBatchNewIdsCountTooSmall() {
+		generator.generateBatchNewIds(IdType.ENTITY_ID, 0);
+	}
+
+	@Test
+	public void testReserveIdWithinLease() {
+		setupDatabaseBatches();
+		Long id = generator.generateNewId(IdType.ENTITY_ID);
+		// call under test
+		generator.reserveId(id + 5, IdType.ENTITY_ID);
+		verify(mockDelegate).reserveId(id + 5, IdType.ENTITY_ID);
+		assertEquals(new Long(id + 6), generator.generateNewId(IdType.ENTITY_ID));
+	}
+
+	@Test
+	public void testReserveIdNotLeased() {
+		// call under test
+		generator.reserveId(123L, IdType.CHANGE_ID);
+		verify(mockDelegate).reserveId(123L, IdType.CHANGE_ID);
+	}
+
+	@Test
+	public void testConcurrentGenerateNewId() throws Exception {
+		setupDatabaseBatches();
+		ExecutorService callers = Executors.newFixedThreadPool(4);
+		try {
+			List<Callable<List<Long>>> tasks = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				tasks.add(() -> {
+					List<Long> ids = new ArrayList<>();
+					for (int j = 0; j < 100; j++) {
+						ids.add(generator.generateNewId(IdType.ENTITY_ID));
+					}
+					return ids;
+				});
+			}
+			Set<Long> unique = Collections.synchronizedSet(new HashSet<>());
+			for (Future<List<Long>> future : callers.invokeAll(tasks, 10, TimeUnit.SECONDS)) {
+				for (Long id : future.get()) {
+					assertTrue("Duplicate ID found!", unique.add(id));
+				}
+			}
+			assertEquals(400, unique.size());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testDelegatedOperations() {
+		StringBuilder builder = new StringBuilder();
+		generator.createRestoreScript();
+		generator.createRestoreScript(builder, IdType.ENTITY_ID);
+		generator.getMaxValueForType(IdType.ENTITY_ID);
+		generator.cleanupType(IdType.ENTITY_ID, 2L);
+		generator.getRowCount(IdType.ENTITY_ID);
+		verify(mockDelegate).createRestoreScript();
+		verify(mockDelegate).createRestoreScript(builder, IdType.ENTITY_ID);
+		verify(mockDelegate).getMaxValueForType(IdType.ENTITY_ID);
+		verify(mockDelegate).cleanupType(IdType.ENTITY_ID, 2L);
+		verify(mockDelegate, times(1)).getRowCount(IdType.ENTITY_ID);
+	}
+}
@@ -160,6 +160,7 @@ public class DBOGroupMembersDAOImpl implements GroupMembersDAO {
 		
 		// Update the etag on the parent group
 		userGroupDAO.touch(Long.parseLong(groupId));
+		touchMembers(sortedMemberIds);
 	}
 
 	@WriteTransaction
@@ -171,7 +172,8 @@ public class DBOGroupMembersDAOImpl implements GroupMembersDAO {
 		}
 		
 		// Use the affected UserGroup row as a lock 
-		userGroupDAO.getEtagForUpdate(groupId);
+		String etag = userGroupDAO.getEtagForUpdate(groupId);
+		transactionalMessenger.sendMessageAfterCommit(groupId, ObjectType.PRINCIPAL, etag, ChangeType.UPDATE);
 
 		// Delete some members
 		List<Long> sortedMemberIds = sortIds(memberIds);
@@ -185,6 +187,19 @@ public class DBOGroupMembersDAOImpl implements GroupMembersDAO {
 		
 		// Update the etag on the parent group
 		userGroupDAO.touch(Long.parseLong(groupId));
+		touchMembers(sortedMemberIds);
+	}
+	
+	/**
+	 * Update the etag of each member so anything derived from a member's groups,
+	 * such as a cached UserInfo, can detect the change from any machine.
+	 * 
+	 * @param sortedMemberIds
+	 */
+	private void touchMembers(List<Long> sortedMemberIds) {
+		for (Long memberId : sortedMemberIds) {
+			userGroupDAO.touch(memberId);
+		}
 	}
 
 	@Override
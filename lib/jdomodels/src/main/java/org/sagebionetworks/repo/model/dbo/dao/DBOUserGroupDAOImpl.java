@@ -79,11 +79,22 @@ public class DBOUserGroupDAOImpl implements UserGroupDAO {
 			" WHERE "+SqlConstants.COL_USER_GROUP_ID+"=:"+ID_PARAM_NAME+
 			" FOR UPDATE";
 	
+	private static final String SELECT_ETAG_BY_ID = 
+			"SELECT "+SqlConstants.COL_USER_GROUP_E_TAG+" FROM "+SqlConstants.TABLE_USER_GROUP+
+			" WHERE "+SqlConstants.COL_USER_GROUP_ID+"=:"+ID_PARAM_NAME;
+	
 	private static final String UPDATE_ETAG_LIST = 
 			"UPDATE "+SqlConstants.TABLE_USER_GROUP+
 			" SET "+SqlConstants.COL_USER_GROUP_E_TAG+"=:"+ETAG_PARAM_NAME+
 			" WHERE "+SqlConstants.COL_USER_GROUP_ID+"=:"+ID_PARAM_NAME;
 	
+	private static final String UPDATE_ETAG_OF_MEMBERS = 
+			"UPDATE "+SqlConstants.TABLE_USER_GROUP+
+			" SET "+SqlConstants.COL_USER_GROUP_E_TAG+"=UUID()"+
+			" WHERE "+SqlConstants.COL_USER_GROUP_ID+" IN (SELECT "+SqlConstants.COL_GROUP_MEMBERS_MEMBER_ID+
+			" FROM "+SqlConstants.TABLE_GROUP_MEMBERS+
+			" WHERE "+SqlConstants.COL_GROUP_MEMBERS_GROUP_ID+"=:"+ID_PARAM_NAME+")";
+	
 	private static final String SELECT_IS_INDIVIDUAL = 
 			"SELECT "+COL_USER_GROUP_IS_INDIVIDUAL+
 			" FROM "+TABLE_USER_GROUP+
@@ -246,6 +257,11 @@ public class DBOUserGroupDAOImpl implements UserGroupDAO {
 	public void delete(String id) throws DatastoreException, NotFoundException, DataIntegrityViolationException {
 		MapSqlParameterSource param = new MapSqlParameterSource();
 		param.addValue(ID_PARAM_NAME, id);
+		/*
+		 * The memberships of a group are removed by a cascading delete, so the etag of
+		 * each member is updated first, as when members are removed from a group.
+		 */
+		namedJdbcTemplate.update(UPDATE_ETAG_OF_MEMBERS, param);
 		basicDao.deleteObjectByPrimaryKey(DBOUserGroup.class, param);
 	}
 	
@@ -310,6 +326,17 @@ public class DBOUserGroupDAOImpl implements UserGroupDAO {
 		namedJdbcTemplate.update(UPDATE_ETAG_LIST, param);
 	}
 
+	@Override
+	public String getEtag(Long principalId) {
+		MapSqlParameterSource param = new MapSqlParameterSource();
+		param.addValue(ID_PARAM_NAME, principalId);
+		try {
+			return namedJdbcTemplate.queryForObject(SELECT_ETAG_BY_ID, param, String.class);
+		} catch (EmptyResultDataAccessException e) {
+			return null;
+		}
+	}
+
 	@Override
 	public boolean isIndividual(Long principalId) {
 		MapSqlParameterSource param = new MapSqlParameterSource();
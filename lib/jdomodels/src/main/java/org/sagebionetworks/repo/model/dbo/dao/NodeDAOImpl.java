@@ -1,11 +1,17 @@
 package org.sagebionetworks.repo.model.dbo.dao;
 
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_ETAG;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_OWNER_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_ACL_OWNER_TYPE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_CURRENT_REV;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_FILES_BUCKET_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_FILES_CONTENT_MD5;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_FILES_CONTENT_SIZE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_FILES_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ALIAS;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_ANCESTOR_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_DESCENDANT_ID;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CLOSURE_DISTANCE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CREATED_BY;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_CREATED_ON;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.COL_NODE_ETAG;
@@ -34,8 +40,10 @@ import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.FUNCTION_GET
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.FUNCTION_GET_ENTITY_PROJECT_ID;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.LIMIT_PARAM_NAME;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.OFFSET_PARAM_NAME;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_ACCESS_CONTROL_LIST;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_FILES;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE;
+import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_NODE_CONTAINER_CLOSURE;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_PROJECT_STAT;
 import static org.sagebionetworks.repo.model.query.jdo.SqlConstants.TABLE_REVISION;
 
@@ -44,6 +52,7 @@ import java.sql.Blob;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -53,6 +62,7 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 
@@ -66,6 +76,7 @@ import org.sagebionetworks.repo.model.EntityHeader;
 import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.EntityTypeUtils;
 import org.sagebionetworks.repo.model.IdAndEtag;
+import org.sagebionetworks.repo.model.IdRangeChecksum;
 import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.LimitExceededException;
 import org.sagebionetworks.repo.model.NameConflictException;
@@ -116,6 +127,7 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -143,6 +155,11 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	private static final String SQL_TOUCH_ETAG = "UPDATE "+TABLE_NODE+" SET "+COL_NODE_ETAG+" = ? WHERE "+COL_NODE_ID+" = ?";
 	private static final String MAXIMUM_NUMBER_OF_IDS_EXCEEDED = "Maximum number of IDs exceeded";
 	private static final String SQL_SELECT_GET_ENTITY_BENEFACTOR_ID = "SELECT "+FUNCTION_GET_ENTITY_BENEFACTOR_ID+"(?)";
+	private static final String BENEFACTOR_ID_ALIAS = "BENEFACTOR_ID";
+	private static final String SQL_SELECT_BENEFACTOR_AND_ACL_ETAG = "SELECT B." + BENEFACTOR_ID_ALIAS + ", A." + COL_ACL_ETAG
+			+ " FROM (SELECT " + FUNCTION_GET_ENTITY_BENEFACTOR_ID + "(?) AS " + BENEFACTOR_ID_ALIAS + ") B"
+			+ " LEFT JOIN " + TABLE_ACCESS_CONTROL_LIST + " A ON (A." + COL_ACL_OWNER_ID + " = B." + BENEFACTOR_ID_ALIAS
+			+ " AND A." + COL_ACL_OWNER_TYPE + " = '" + ObjectType.ENTITY.name() + "')";
 	private static final String BIND_NODE_IDS =  "bNodeIds";
 	private static final String BIND_PROJECT_STAT_USER_ID = "bUserIds";
 	private static final String BIND_PARENT_ID = "bParentId";
@@ -164,6 +181,18 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 			+", "+COL_NODE_ETAG
 			+", "+FUNCTION_GET_ENTITY_BENEFACTOR_ID+"("+COL_NODE_ID+")"
 			+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_PARENT_ID+" = ?";
+	
+	private static final String SQL_SELECT_CHILDREN_ID_AND_ETAG_FOR_ID_RANGE = SQL_SELECT_CHILDREN_ID_AND_ETAG
+			+ " AND "+COL_NODE_ID+" BETWEEN ? AND ?";
+	
+	private static final String SQL_SELECT_CHILD_CRC32_FOR_ID_RANGE = 
+			"SELECT COUNT(*),"
+					+ " SUM(CRC32(CONCAT("+COL_NODE_ID
+					+",'-',"+COL_NODE_ETAG
+					+",'-',"+FUNCTION_GET_ENTITY_BENEFACTOR_ID+"("+COL_NODE_ID+")"
+					+ "))), MIN("+COL_NODE_ID+"), MAX("+COL_NODE_ID+")"
+					+ " FROM "+TABLE_NODE+" WHERE "+COL_NODE_PARENT_ID+" = ?"
+					+ " AND "+COL_NODE_ID+" BETWEEN ? AND ?";
 
 	private static final String SQL_SELECT_CHILD = "SELECT "+COL_NODE_ID
 			+ " FROM "+TABLE_NODE
@@ -291,13 +320,115 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	
 	private static final String IDS_PARAM_NAME = "ids_param";
 
-	private static final String SQL_SELECT_CONTAINERS_WITH_PARENT_IDS_IN_CLAUSE = 
-			"SELECT "+COL_NODE_ID
-			+" FROM "+TABLE_NODE
-			+" WHERE "
-				+ COL_NODE_PARENT_ID+" IN (:"+IDS_PARAM_NAME+")"
-				+ " AND "+COL_NODE_TYPE+" IN ('"+EntityType.folder.name()+"', '"+EntityType.project.name()+"')"
-						+ " ORDER BY "+COL_NODE_ID+" ASC LIMIT :"+BIND_LIMIT;
+	/**
+	 * The same hierarchy depth limit enforced by the getEntityBenefactorId() function.
+	 */
+	public static final int MAX_PATH_DEPTH = 1000;
+	private static final String PATH_START_ID = "START_ID";
+	private static final String PATH_DISTANCE = "DISTANCE";
+	private static final Set<EntityType> CONTAINER_TYPES = Collections.unmodifiableSet(new HashSet<EntityType>(Arrays.asList(EntityType.folder, EntityType.project)));
+	private static final String CONTAINER_TYPES_IN_CLAUSE = " IN ('"+EntityType.folder.name()+"', '"+EntityType.project.name()+"')";
+
+	/**
+	 * All containers beneath the given containers ordered by their depth beneath the closest given container.
+	 */
+	private static final String SQL_SELECT_CONTAINER_DESCENDANTS =
+			"SELECT "+COL_NODE_CLOSURE_DESCENDANT_ID
+			+" FROM "+TABLE_NODE_CONTAINER_CLOSURE
+			+" WHERE "+COL_NODE_CLOSURE_ANCESTOR_ID+" IN (:"+IDS_PARAM_NAME+")"
+			+" AND "+COL_NODE_CLOSURE_DISTANCE+" > 0"
+			+" GROUP BY "+COL_NODE_CLOSURE_DESCENDANT_ID
+			+" ORDER BY MIN("+COL_NODE_CLOSURE_DISTANCE+") ASC, "+COL_NODE_CLOSURE_DESCENDANT_ID+" ASC LIMIT :"+BIND_LIMIT;
+
+	/**
+	 * Link a new container to itself and to each ancestor of its parent.
+	 */
+	private static final String SQL_INSERT_CONTAINER_CLOSURE =
+			"INSERT INTO "+TABLE_NODE_CONTAINER_CLOSURE+" ("+COL_NODE_CLOSURE_ANCESTOR_ID+", "+COL_NODE_CLOSURE_DESCENDANT_ID+", "+COL_NODE_CLOSURE_DISTANCE+")"
+			+" SELECT ?, ?, 0"
+			+" UNION ALL"
+			+" SELECT "+COL_NODE_CLOSURE_ANCESTOR_ID+", ?, "+COL_NODE_CLOSURE_DISTANCE+" + 1"
+			+" FROM "+TABLE_NODE_CONTAINER_CLOSURE+" WHERE "+COL_NODE_CLOSURE_DESCENDANT_ID+" = ?";
+
+	/**
+	 * Remove the links between the sub-tree of a container and all ancestors outside of that sub-tree.
+	 */
+	private static final String SQL_DETACH_CONTAINER_SUBTREE =
+			"DELETE C FROM "+TABLE_NODE_CONTAINER_CLOSURE+" C"
+			+" JOIN "+TABLE_NODE_CONTAINER_CLOSURE+" S ON (C."+COL_NODE_CLOSURE_DESCENDANT_ID+" = S."+COL_NODE_CLOSURE_DESCENDANT_ID+")"
+			+" LEFT JOIN "+TABLE_NODE_CONTAINER_CLOSURE+" I ON (I."+COL_NODE_CLOSURE_ANCESTOR_ID+" = S."+COL_NODE_CLOSURE_ANCESTOR_ID
+			+" AND I."+COL_NODE_CLOSURE_DESCENDANT_ID+" = C."+COL_NODE_CLOSURE_ANCESTOR_ID+")"
+			+" WHERE S."+COL_NODE_CLOSURE_ANCESTOR_ID+" = ? AND I."+COL_NODE_CLOSURE_ANCESTOR_ID+" IS NULL";
+
+	/**
+	 * Link each member of the sub-tree of a container to each ancestor of its new parent.
+	 */
+	private static final String SQL_ATTACH_CONTAINER_SUBTREE =
+			"INSERT INTO "+TABLE_NODE_CONTAINER_CLOSURE+" ("+COL_NODE_CLOSURE_ANCESTOR_ID+", "+COL_NODE_CLOSURE_DESCENDANT_ID+", "+COL_NODE_CLOSURE_DISTANCE+")"
+			+" SELECT P."+COL_NODE_CLOSURE_ANCESTOR_ID+", S."+COL_NODE_CLOSURE_DESCENDANT_ID+", P."+COL_NODE_CLOSURE_DISTANCE+" + S."+COL_NODE_CLOSURE_DISTANCE+" + 1"
+			+" FROM "+TABLE_NODE_CONTAINER_CLOSURE+" P JOIN "+TABLE_NODE_CONTAINER_CLOSURE+" S"
+			+" WHERE P."+COL_NODE_CLOSURE_DESCENDANT_ID+" = ? AND S."+COL_NODE_CLOSURE_ANCESTOR_ID+" = ?";
+
+	/**
+	 * The given containers and all containers beneath them, found by walking down the node table.
+	 */
+	private static final String SQL_SELECT_CONTAINER_SUBTREE_IDS =
+			"WITH RECURSIVE SUBTREE ("+COL_NODE_ID+", "+PATH_DISTANCE+") AS ("
+			+" SELECT "+COL_NODE_ID+", 0 FROM "+TABLE_NODE
+			+" WHERE "+COL_NODE_ID+" IN (:"+IDS_PARAM_NAME+") AND "+COL_NODE_TYPE+CONTAINER_TYPES_IN_CLAUSE
+			+" UNION ALL"
+			+" SELECT N."+COL_NODE_ID+", S."+PATH_DISTANCE+" + 1 FROM SUBTREE S JOIN "+TABLE_NODE+" N ON (N."+COL_NODE_PARENT_ID+" = S."+COL_NODE_ID+")"
+			+" WHERE N."+COL_NODE_TYPE+CONTAINER_TYPES_IN_CLAUSE+" AND S."+PATH_DISTANCE+" < "+MAX_PATH_DEPTH
+			+")"
+			+" SELECT DISTINCT "+COL_NODE_ID+" FROM SUBTREE";
+
+	private static final String SQL_DELETE_CONTAINER_ANCESTORS =
+			"DELETE FROM "+TABLE_NODE_CONTAINER_CLOSURE+" WHERE "+COL_NODE_CLOSURE_DESCENDANT_ID+" IN (:"+IDS_PARAM_NAME+")";
+
+	/**
+	 * Link each of the given containers to itself and to every ancestor found by walking up the node table.
+	 * Rows written by a concurrent rebuild of the same containers are ignored.
+	 */
+	private static final String SQL_INSERT_CONTAINER_ANCESTORS =
+			"INSERT IGNORE INTO "+TABLE_NODE_CONTAINER_CLOSURE+" ("+COL_NODE_CLOSURE_ANCESTOR_ID+", "+COL_NODE_CLOSURE_DESCENDANT_ID+", "+COL_NODE_CLOSURE_DISTANCE+")"
+			+" WITH RECURSIVE UP ("+COL_NODE_CLOSURE_ANCESTOR_ID+", "+COL_NODE_CLOSURE_DESCENDANT_ID+", "+COL_NODE_PARENT_ID+", "+COL_NODE_CLOSURE_DISTANCE+") AS ("
+			+" SELECT "+COL_NODE_ID+", "+COL_NODE_ID+", "+COL_NODE_PARENT_ID+", 0 FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" IN (:"+IDS_PARAM_NAME+")"
+			+" UNION ALL"
+			+" SELECT N."+COL_NODE_ID+", U."+COL_NODE_CLOSURE_DESCENDANT_ID+", N."+COL_NODE_PARENT_ID+", U."+COL_NODE_CLOSURE_DISTANCE+" + 1"
+			+" FROM UP U JOIN "+TABLE_NODE+" N ON (N."+COL_NODE_ID+" = U."+COL_NODE_PARENT_ID+")"
+			+" WHERE U."+COL_NODE_CLOSURE_DISTANCE+" < "+MAX_PATH_DEPTH
+			+")"
+			+" SELECT "+COL_NODE_CLOSURE_ANCESTOR_ID+", "+COL_NODE_CLOSURE_DESCENDANT_ID+", "+COL_NODE_CLOSURE_DISTANCE+" FROM UP";
+
+	private static final String SQL_DELETE_CONTAINER_CLOSURE_ANCESTOR_RANGE =
+			"DELETE FROM "+TABLE_NODE_CONTAINER_CLOSURE+" WHERE "+COL_NODE_CLOSURE_ANCESTOR_ID+" BETWEEN ? AND ?";
+
+	private static final String SQL_DELETE_CONTAINER_CLOSURE_DESCENDANT_RANGE =
+			"DELETE FROM "+TABLE_NODE_CONTAINER_CLOSURE+" WHERE "+COL_NODE_CLOSURE_DESCENDANT_ID+" BETWEEN ? AND ?";
+
+	/**
+	 * Closure rows that reference a node that no longer exists.
+	 */
+	private static final String SQL_DELETE_ORPHANED_CONTAINER_CLOSURE =
+			"DELETE C FROM "+TABLE_NODE_CONTAINER_CLOSURE+" C"
+			+" LEFT JOIN "+TABLE_NODE+" A ON (A."+COL_NODE_ID+" = C."+COL_NODE_CLOSURE_ANCESTOR_ID+")"
+			+" LEFT JOIN "+TABLE_NODE+" D ON (D."+COL_NODE_ID+" = C."+COL_NODE_CLOSURE_DESCENDANT_ID+")"
+			+" WHERE A."+COL_NODE_ID+" IS NULL OR D."+COL_NODE_ID+" IS NULL";
+
+	/**
+	 * Containers without a link to themselves have never been added to the closure.
+	 */
+	private static final String SQL_SELECT_CONTAINERS_MISSING_FROM_CLOSURE =
+			"SELECT N."+COL_NODE_ID+" FROM "+TABLE_NODE+" N"
+			+" LEFT JOIN "+TABLE_NODE_CONTAINER_CLOSURE+" C ON (C."+COL_NODE_CLOSURE_ANCESTOR_ID+" = N."+COL_NODE_ID
+			+" AND C."+COL_NODE_CLOSURE_DESCENDANT_ID+" = N."+COL_NODE_ID+")"
+			+" WHERE N."+COL_NODE_TYPE+CONTAINER_TYPES_IN_CLAUSE+" AND C."+COL_NODE_CLOSURE_ANCESTOR_ID+" IS NULL"
+			+" LIMIT ?";
+
+	/**
+	 * The maximum number of containers linked by a single statement.
+	 */
+	private static final int CONTAINER_CLOSURE_BATCH_SIZE = 1000;
 
 	private static final String SQL_SELECT_REV_FILE_HANDLE_ID = "SELECT "+COL_REVISION_FILE_HANDLE_ID+" FROM "+TABLE_REVISION+" WHERE "+COL_REVISION_OWNER_NODE+" = ? AND "+COL_REVISION_NUMBER+" = ?";
 	private static final String SELECT_ANNOTATIONS_ONLY_PREFIX = "SELECT N."+COL_NODE_ID+", N."+COL_NODE_ETAG+", N."+COL_NODE_CREATED_ON+", N."+COL_NODE_CREATED_BY+", R."+COL_REVISION_ANNOS_BLOB+" FROM  "+TABLE_NODE+" N, "+TABLE_REVISION+" R WHERE N."+COL_NODE_ID+" = ? AND R."+COL_REVISION_OWNER_NODE+" = N."+COL_NODE_ID+" AND R."+COL_REVISION_NUMBER;
@@ -308,6 +439,22 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	private static final String GET_REV_ACTIVITY_ID_SQL = "SELECT "+COL_REVISION_ACTIVITY_ID+" FROM "+TABLE_REVISION+" WHERE "+COL_REVISION_OWNER_NODE+" = ? AND "+ COL_REVISION_NUMBER +" = ?";
 	private static final String GET_NODE_CREATED_BY_SQL = "SELECT "+COL_NODE_CREATED_BY+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" = ?";
 	private static final String SQL_SELECT_PARENT_TYPE_NAME = "SELECT "+COL_NODE_ID+", "+COL_NODE_PARENT_ID+", "+COL_NODE_TYPE+", "+COL_NODE_NAME+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_ID+" = ?";
+	/**
+	 * Walks up the hierarchy from each of the given nodes in a single recursive
+	 * query. Each row is tagged with the node the walk started from and its
+	 * distance from that node, so the rows of each path come back root first.
+	 */
+	private static final String SQL_SELECT_ENTITY_PATHS = "WITH RECURSIVE PATH ("
+			+ PATH_START_ID + ", " + COL_NODE_ID + ", " + COL_NODE_NAME + ", " + COL_NODE_PARENT_ID + ", " + COL_NODE_TYPE + ", " + PATH_DISTANCE + ") AS ("
+			+ " SELECT N." + COL_NODE_ID + ", N." + COL_NODE_ID + ", N." + COL_NODE_NAME + ", N." + COL_NODE_PARENT_ID + ", N." + COL_NODE_TYPE + ", 0"
+			+ " FROM " + TABLE_NODE + " N WHERE N." + COL_NODE_ID + " IN (:" + BIND_NODE_IDS + ")"
+			+ " UNION ALL"
+			+ " SELECT P." + PATH_START_ID + ", N." + COL_NODE_ID + ", N." + COL_NODE_NAME + ", N." + COL_NODE_PARENT_ID + ", N." + COL_NODE_TYPE + ", P." + PATH_DISTANCE + " + 1"
+			+ " FROM PATH P JOIN " + TABLE_NODE + " N ON (N." + COL_NODE_ID + " = P." + COL_NODE_PARENT_ID + ")"
+			+ " WHERE P." + PATH_DISTANCE + " < " + MAX_PATH_DEPTH
+			+ ")"
+			+ " SELECT " + PATH_START_ID + ", " + COL_NODE_ID + ", " + COL_NODE_NAME + ", " + COL_NODE_TYPE
+			+ " FROM PATH ORDER BY " + PATH_START_ID + ", " + PATH_DISTANCE + " DESC";
 	private static final String SQL_GET_ALL_CHILDREN_IDS = "SELECT "+COL_NODE_ID+" FROM "+TABLE_NODE+" WHERE "+COL_NODE_PARENT_ID+" = ? ORDER BY "+COL_NODE_ID;
 	private static final String NODE_IDS_LIST_PARAM_NAME = "NODE_IDS";
 	
@@ -499,7 +646,10 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		}catch(IllegalArgumentException e){
 			checkExceptionDetails(dboNode.getName(), dboNode.getAlias(), KeyFactory.keyToString(dboNode.getParentId()), e);
 		}
-		dboBasicDao.createNew(dboRevision);		
+		dboBasicDao.createNew(dboRevision);
+		if(CONTAINER_TYPES.contains(dto.getNodeType())){
+			jdbcTemplate.update(SQL_INSERT_CONTAINER_CLOSURE, dboNode.getId(), dboNode.getId(), dboNode.getId(), dboNode.getParentId());
+		}
 		return getNode(""+dboNode.getId());
 	}
 
@@ -775,6 +925,7 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		String newName = updatedNode.getName();
 		Long newParentId = NodeUtils.translateNodeId(updatedNode.getParentId());
 		String newAlias = NodeUtils.translateAlias(updatedNode.getAlias());
+		ParentTypeName current = getParentTypeName(nodeId);
 
 		// Update the node.
 		try {
@@ -784,6 +935,11 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 			checkExceptionDetails(updatedNode.getName(), updatedNode.getAlias(), updatedNode.getParentId(),
 					new IllegalArgumentException(e));
 		}
+		if(CONTAINER_TYPES.contains(current.getType()) && !Objects.equals(current.getParentId(), newParentId)){
+			// Move the container's sub-tree to the new parent.
+			this.jdbcTemplate.update(SQL_DETACH_CONTAINER_SUBTREE, nodeId);
+			this.jdbcTemplate.update(SQL_ATTACH_CONTAINER_SUBTREE, newParentId, nodeId);
+		}
 		// update the revision
 		long currentRevision = getCurrentRevisionNumber(updatedNode.getId());
 		Long newActivity = NodeUtils.translateActivityId(updatedNode.getActivityId());
@@ -1037,89 +1193,44 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		}
 	}
 	
-	/**
-	 * returns up to n ancestors of nodeId, ordered from leaf to root and including the given node Id
-	 * 
-	 * @param nodeId
-	 * @param n
-	 * @return
-	 * @throws NotFoundException
-	 */
-	private List<ParentTypeName> getAncestorsPTN(Long nodeId, int depth) throws NotFoundException {
-		if(nodeId == null) throw new IllegalArgumentException("NodeId cannot be null");
-		Map<String, Object> row = null;
-		try {
-			row = jdbcTemplate.queryForMap(nodeAncestorSQL(depth), nodeId);
-		} catch (EmptyResultDataAccessException e) {
-			throw new NotFoundException("Entity " + nodeId + " is not found.");
-		}
-		List<ParentTypeName> result = new ArrayList<ParentTypeName>();
-		for (int i=0; i<depth; i++) {
-			Long id = (Long)row.get(COL_NODE_ID+"_"+i);
-			if (id==null) break;
-			ParentTypeName ptn = new ParentTypeName();
-			ptn.setId(id);
-			ptn.setName((String)row.get(COL_NODE_NAME+"_"+i));
-			ptn.setParentId((Long)row.get(COL_NODE_PARENT_ID+"_"+i));
-			ptn.setType(EntityType.valueOf((String)row.get(COL_NODE_TYPE+"_"+i)));
-			result.add(ptn);
-		}
-		return result;
-	}
-	
-	public static String nodeAncestorSQL(int depth) {
-		if (depth<2) throw new IllegalArgumentException("Depth must be at least 1");
-		StringBuilder sb = new StringBuilder("SELECT ");
-		for (int i=0; i<depth; i++) {
-			if (i>0) sb.append(", ");
-			sb.append("n"+i+"."+COL_NODE_ID+" as "+COL_NODE_ID+"_"+i+", ");
-			sb.append("n"+i+"."+COL_NODE_NAME+" as "+COL_NODE_NAME+"_"+i+", ");
-			sb.append("n"+i+"."+COL_NODE_PARENT_ID+" as "+COL_NODE_PARENT_ID+"_"+i+", ");
-			sb.append("n"+i+"."+COL_NODE_TYPE+" as "+COL_NODE_TYPE+"_"+i);
-		}
-		sb.append(" \nFROM ");
-		sb.append(outerJoinElement(depth-1));
-		sb.append(" \nWHERE \nn0."+COL_NODE_ID+"=?");
-		return sb.toString();
-	}
-	
-	private static String outerJoinElement(int i) {
-		if (i<0) throw new IllegalArgumentException(""+i);
-		if (i==0) return "JDONODE n0";
-		return "("+outerJoinElement(i-1)+") \nLEFT OUTER JOIN JDONODE n"+(i)+" ON n"+(i-1)+".parent_id=n"+(i)+".id";
-	}
-	
 	@Override
 	public List<EntityHeader> getEntityPath(String nodeId) throws DatastoreException, NotFoundException {
-		// Call the recursive method
-		LinkedList<EntityHeader> results = new LinkedList<EntityHeader>();
-		appendPathBatch(results, KeyFactory.stringToKey(nodeId));
-		return results;
+		ValidateArgument.required(nodeId, "nodeId");
+		Long id = KeyFactory.stringToKey(nodeId);
+		List<EntityHeader> path = getEntityPaths(Collections.singletonList(id)).get(id);
+		if(path == null){
+			throw new NotFoundException("Entity " + id + " is not found.");
+		}
+		return path;
 	}
-	
-	public static final int BATCH_PATH_DEPTH = 5;
 
-	/**
-	 * A recursive method to build up the full path of of an entity, recursing in batch rather than one 
-	 * node at a time.
-	 * The first EntityHeader in the results will be the Root Node, and the last EntityHeader will be the requested Node.
-	 * @param results
-	 * @param nodeId
-	 * @throws NotFoundException 
-	 * @throws DatastoreException 
-	 */
-	private void appendPathBatch(LinkedList<EntityHeader> results, Long nodeId) throws NotFoundException, DatastoreException{
-		List<ParentTypeName> ptns = getAncestorsPTN(nodeId, BATCH_PATH_DEPTH); // ordered from leaf to root, length always >=1
-		for (ParentTypeName ptn : ptns) {
-			EntityHeader header = createHeaderFromParentTypeName(ptn, null, null);
-			// Add at the front
-			results.add(0, header);
-		}
-		Long lastParentId = ptns.get(ptns.size()-1).getParentId();
-		if(lastParentId!= null){
-			// Recurse
-			appendPathBatch(results, lastParentId);
+	@Override
+	public Map<Long, List<EntityHeader>> getEntityPaths(Collection<Long> nodeIds) {
+		ValidateArgument.required(nodeIds, "nodeIds");
+		final Map<Long, List<EntityHeader>> results = new HashMap<Long, List<EntityHeader>>(nodeIds.size());
+		if(nodeIds.isEmpty()){
+			return results;
 		}
+		Map<String, Object> parameters = new HashMap<String, Object>(1);
+		parameters.put(BIND_NODE_IDS, nodeIds);
+		namedParameterJdbcTemplate.query(SQL_SELECT_ENTITY_PATHS, parameters, new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				Long startId = rs.getLong(PATH_START_ID);
+				ParentTypeName ptn = new ParentTypeName();
+				ptn.setId(rs.getLong(COL_NODE_ID));
+				ptn.setName(rs.getString(COL_NODE_NAME));
+				ptn.setType(EntityType.valueOf(rs.getString(COL_NODE_TYPE)));
+				List<EntityHeader> path = results.get(startId);
+				if(path == null){
+					path = new ArrayList<EntityHeader>();
+					results.put(startId, path);
+				}
+				// rows of each path are ordered from the root to the start node.
+				path.add(createHeaderFromParentTypeName(ptn, null, null));
+			}
+		});
+		return results;
 	}
 	
 	@Override
@@ -1471,26 +1582,13 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		Map<String, Object> parameters = new HashMap<String, Object>(2);
 		parameters.put(IDS_PARAM_NAME, parentIds);
 		parameters.put(BIND_LIMIT, maxNumberIds+1);
-		while(true){
-			// Get all children at this level.
-			List<Long> children = namedParameterJdbcTemplate.queryForList(SQL_SELECT_CONTAINERS_WITH_PARENT_IDS_IN_CLAUSE, parameters, Long.class);
-			if(children.isEmpty()){
-				// done
-				return results;
-			}
-			/*
-			 * If the children size is over the max then a single page exceeded
-			 * the max. If the children size + result size is over the max then
-			 * the total number exceed the max.
-			 */
-			if(children.size() > maxNumberIds
-					|| children.size()+results.size() > maxNumberIds){
-				throw new LimitExceededException(MAXIMUM_NUMBER_OF_IDS_EXCEEDED);
-			}
-			results.addAll(children);
-			// Children become the parents
-			parameters.put(IDS_PARAM_NAME, children);
+		// All levels are read from the closure with a single query.
+		List<Long> descendants = namedParameterJdbcTemplate.queryForList(SQL_SELECT_CONTAINER_DESCENDANTS, parameters, Long.class);
+		results.addAll(descendants);
+		if(results.size() > maxNumberIds){
+			throw new LimitExceededException(MAXIMUM_NUMBER_OF_IDS_EXCEEDED);
 		}
+		return results;
 	}
 	
 	/*
@@ -1506,6 +1604,61 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		return getAllContainerIds(ids, maxNumberIds);
 	}
 
+	@WriteTransaction
+	@Override
+	public void rebuildContainerClosure(Collection<Long> nodeIds) {
+		ValidateArgument.required(nodeIds, "nodeIds");
+		if(nodeIds.isEmpty()){
+			return;
+		}
+		// Nodes beneath the given nodes might have been written first so they must be rebuilt too.
+		List<Long> containerIds = namedParameterJdbcTemplate.queryForList(SQL_SELECT_CONTAINER_SUBTREE_IDS,
+				new MapSqlParameterSource(IDS_PARAM_NAME, nodeIds), Long.class);
+		// A large sub-tree is linked in batches to bound the size of each statement.
+		for(List<Long> batch: Lists.partition(containerIds, CONTAINER_CLOSURE_BATCH_SIZE)){
+			linkContainersToAncestors(batch);
+		}
+	}
+
+	/**
+	 * Replace the closure rows of each of the given containers with a link to
+	 * itself and to each of its ancestors.
+	 * 
+	 * @param containerIds
+	 */
+	private void linkContainersToAncestors(List<Long> containerIds) {
+		MapSqlParameterSource parameters = new MapSqlParameterSource(IDS_PARAM_NAME, containerIds);
+		namedParameterJdbcTemplate.update(SQL_DELETE_CONTAINER_ANCESTORS, parameters);
+		namedParameterJdbcTemplate.update(SQL_INSERT_CONTAINER_ANCESTORS, parameters);
+	}
+
+	@WriteTransaction
+	@Override
+	public void deleteContainerClosureForRange(long minimumId, long maximumId) {
+		// Two statements so each side can use its own index.
+		jdbcTemplate.update(SQL_DELETE_CONTAINER_CLOSURE_ANCESTOR_RANGE, minimumId, maximumId);
+		jdbcTemplate.update(SQL_DELETE_CONTAINER_CLOSURE_DESCENDANT_RANGE, minimumId, maximumId);
+	}
+
+	@WriteTransaction
+	@Override
+	public int repairContainerClosure(int maxContainers) {
+		ValidateArgument.requirement(maxContainers > 0, "maxContainers must be greater than zero");
+		List<Long> missingIds = jdbcTemplate.queryForList(SQL_SELECT_CONTAINERS_MISSING_FROM_CLOSURE, Long.class,
+				maxContainers);
+		// Each container's rows only depend on its own ancestors, so the sub-trees do not need to be expanded.
+		for(List<Long> batch: Lists.partition(missingIds, CONTAINER_CLOSURE_BATCH_SIZE)){
+			linkContainersToAncestors(batch);
+		}
+		return missingIds.size();
+	}
+
+	@WriteTransaction
+	@Override
+	public void deleteOrphanedContainerClosure() {
+		jdbcTemplate.update(SQL_DELETE_ORPHANED_CONTAINER_CLOSURE);
+	}
+
 
 	@Override
 	public String getNodeIdByAlias(String alias) {
@@ -1551,6 +1704,28 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 		}
 		return KeyFactory.keyToString(benefactorId);
 	}
+	
+	@Override
+	public IdAndEtag getBenefactorAndAclEtag(String nodeId) {
+		ValidateArgument.required(nodeId, "nodeId");
+		Long id = KeyFactory.stringToKey(nodeId);
+		IdAndEtag result = jdbcTemplate.queryForObject(SQL_SELECT_BENEFACTOR_AND_ACL_ETAG, (ResultSet rs, int rowNum) -> {
+			Long benefactorId = rs.getLong(BENEFACTOR_ID_ALIAS);
+			if (rs.wasNull()) {
+				benefactorId = null;
+			}
+			return new IdAndEtag(id, rs.getString(COL_ACL_ETAG), benefactorId);
+		}, id);
+		if (result.getBenefactorId() == null) {
+			/*
+			 * Benefactor will be null if the node does not exist.
+			 */
+			throw new NotFoundException("Benefactor not found for: " + nodeId);
+		} else if (result.getBenefactorId() < 0) {
+			throw new IllegalStateException("Infinite loop detected for: " + nodeId);
+		}
+		return result;
+	}
 
 	@Override
 	public Set<Long> getFileHandleIdsAssociatedWithFileEntity(List<Long> fileHandleIds, long entityId) {
@@ -1796,20 +1971,48 @@ public class NodeDAOImpl implements NodeDAO, InitializingBean {
 	@Override
 	public List<IdAndEtag> getChildren(long parentId) {
 		ValidateArgument.required(parentId, "parentId");
-		return jdbcTemplate.query(SQL_SELECT_CHILDREN_ID_AND_ETAG, new RowMapper<IdAndEtag>(){
+		return jdbcTemplate.query(SQL_SELECT_CHILDREN_ID_AND_ETAG, ID_AND_ETAG_ROW_MAPPER, parentId);
+	}
+
+	@Override
+	public List<IdAndEtag> getChildrenInIdRange(long parentId, long minIdInclusive, long maxIdInclusive) {
+		return jdbcTemplate.query(SQL_SELECT_CHILDREN_ID_AND_ETAG_FOR_ID_RANGE, ID_AND_ETAG_ROW_MAPPER, parentId,
+				minIdInclusive, maxIdInclusive);
+	}
+
+	@Override
+	public IdRangeChecksum getChildChecksumForIdRange(long parentId, long minIdInclusive, long maxIdInclusive) {
+		return jdbcTemplate.queryForObject(SQL_SELECT_CHILD_CRC32_FOR_ID_RANGE, new RowMapper<IdRangeChecksum>() {
 			@Override
-			public IdAndEtag mapRow(ResultSet rs, int rowNum)
-					throws SQLException {
-				Long id = rs.getLong(COL_NODE_ID);
-				String etag = rs.getString(COL_NODE_ETAG);
-				Long benefactorId = rs.getLong(3);
-				if(rs.wasNull()) {
-					benefactorId = null;
+			public IdRangeChecksum mapRow(ResultSet rs, int rowNum) throws SQLException {
+				long count = rs.getLong(1);
+				long checksum = rs.getLong(2);
+				Long minId = rs.getLong(3);
+				if (rs.wasNull()) {
+					minId = null;
+				}
+				Long maxId = rs.getLong(4);
+				if (rs.wasNull()) {
+					maxId = null;
 				}
-				return new IdAndEtag(id, etag, benefactorId);
-			}}, parentId);
+				return new IdRangeChecksum(count, checksum, minId, maxId);
+			}
+		}, parentId, minIdInclusive, maxIdInclusive);
 	}
 
+	private static final RowMapper<IdAndEtag> ID_AND_ETAG_ROW_MAPPER = new RowMapper<IdAndEtag>(){
+		@Override
+		public IdAndEtag mapRow(ResultSet rs, int rowNum)
+				throws SQLException {
+			Long id = rs.getLong(COL_NODE_ID);
+			String etag = rs.getString(COL_NODE_ETAG);
+			Long benefactorId = rs.getLong(3);
+			if(rs.wasNull()) {
+				benefactorId = null;
+			}
+			return new IdAndEtag(id, etag, benefactorId);
+		}};
+
 	@Override
 	public Set<Long> getAvailableNodes(List<Long> nodeIds) {
 		ValidateArgument.required(nodeIds, "nodeIds");
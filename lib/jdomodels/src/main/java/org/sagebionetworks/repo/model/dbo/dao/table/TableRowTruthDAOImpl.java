@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -23,11 +24,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.aws.SynapseS3Client;
 import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.dao.table.ReaderCallback;
 import org.sagebionetworks.repo.model.dao.table.TableRowTruthDAO;
+import org.sagebionetworks.repo.model.dao.table.WriterCallback;
 import org.sagebionetworks.repo.model.dbo.DBOBasicDao;
 import org.sagebionetworks.repo.model.dbo.persistence.table.ColumnModelUtils;
 import org.sagebionetworks.repo.model.dbo.persistence.table.DBOTableIdSequence;
 import org.sagebionetworks.repo.model.dbo.persistence.table.DBOTableRowChange;
+import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.table.ColumnChange;
 import org.sagebionetworks.repo.model.table.ColumnModel;
@@ -47,7 +51,10 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 /**
  * Basic S3 & RDS implementation of the TableRowTruthDAO.
@@ -118,6 +125,19 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 			+ COL_ID_SEQUENCE_TABLE_ID
 			+ " = ?";
 	private static final String KEY_TEMPLATE = "%1$s.csv.gz";
+	/*
+	 * Index snapshots are keyed by stack instance, table ID, table version and
+	 * change number. The bucket is shared by every stack instance, while each
+	 * instance has its own index and table versions. The index of a table
+	 * version differs from the index of the current table, so each has its own
+	 * snapshots. The change number is zero padded so the keys of a table
+	 * version sort in change number order.
+	 */
+	static final String SNAPSHOT_CURRENT_VERSION = "current";
+	private static final String SNAPSHOT_PREFIX_TEMPLATE = "snapshot/%1$s/";
+	private static final String SNAPSHOT_TABLE_PREFIX_TEMPLATE = SNAPSHOT_PREFIX_TEMPLATE + "%2$d/";
+	private static final String SNAPSHOT_VERSION_PREFIX_TEMPLATE = SNAPSHOT_TABLE_PREFIX_TEMPLATE + "%3$s/";
+	private static final String SNAPSHOT_KEY_TEMPLATE = SNAPSHOT_VERSION_PREFIX_TEMPLATE + "%4$019d.gz";
 	private static final String SQL_TRUNCATE_SEQUENCE_TABLE = "DELETE FROM "
 			+ TABLE_TABLE_ID_SEQUENCE + " WHERE " + COL_ID_SEQUENCE_TABLE_ID
 			+ " > 0";
@@ -136,6 +156,7 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 	private FileProvider fileProvider;
 
 	private String s3Bucket;
+	private String stackInstancePrefix;
 
 	RowMapper<DBOTableIdSequence> sequenceRowMapper = new DBOTableIdSequence()
 			.getTableMapping();
@@ -259,6 +280,18 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 	 * @throws IOException
 	 */
 	String saveToS3(WriterCallback callback) {
+		String key = String.format(KEY_TEMPLATE, UUID.randomUUID().toString());
+		saveToS3(key, callback);
+		return key;
+	}
+	
+	/**
+	 * Write the data from the given callback to S3 with the given key.
+	 * 
+	 * @param key
+	 * @param callback
+	 */
+	void saveToS3(String key, WriterCallback callback) {
 		// First write to a temp file.
 		try {
 			File temp = fileProvider.createTempFile("tempToS3", ".gz");
@@ -268,10 +301,7 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 				out.flush();
 				out.close();
 				// upload it to S3.
-				String key = String.format(KEY_TEMPLATE, UUID.randomUUID()
-						.toString());
 				s3Client.putObject(s3Bucket, key, temp);
-				return key;
 			} finally {
 				if (temp != null) {
 					temp.delete();
@@ -406,20 +436,162 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 	
 	@Override
 	public SparseChangeSetDto getRowSet(TableRowChange dto) throws IOException {
+		return readRowSet(dto, TableModelUtils::readSparseChangeSetDtoFromGzStream);
+	}
+	
+	@Override
+	public <T> T readRowSet(TableRowChange dto, ReaderCallback<T> reader) throws IOException {
 		// Download the file from S3
 		S3Object object = s3Client.getObject(dto.getBucket(), dto.getKeyNew());
 		try {
-			return TableModelUtils.readSparseChangeSetDtoFromGzStream(object.getObjectContent());
+			return reader.read(object.getObjectContent());
 		} finally {
 			// Need to close the stream unconditionally.
 			object.getObjectContent().close();
 		}
 	}
 
+	@Override
+	public void saveIndexSnapshot(IdAndVersion tableId, long changeNumber, WriterCallback writer) {
+		ValidateArgument.required(tableId, "tableId");
+		ValidateArgument.required(writer, "writer");
+		String prefix = getSnapshotPrefix(tableId);
+		saveToS3(getSnapshotKey(tableId, changeNumber), writer);
+		// only the newest snapshot is needed.
+		for (String key : listKeys(prefix)) {
+			Long snapshotChangeNumber = parseSnapshotChangeNumber(prefix, key);
+			if (snapshotChangeNumber != null && snapshotChangeNumber < changeNumber) {
+				s3Client.deleteObject(s3Bucket, key);
+			}
+		}
+	}
+
+	@Override
+	public Optional<Long> getIndexSnapshotChangeNumber(IdAndVersion tableId, long maxChangeNumber) {
+		ValidateArgument.required(tableId, "tableId");
+		String prefix = getSnapshotPrefix(tableId);
+		Long newest = null;
+		for (String key : listKeys(prefix)) {
+			Long changeNumber = parseSnapshotChangeNumber(prefix, key);
+			if (changeNumber != null && changeNumber <= maxChangeNumber
+					&& (newest == null || changeNumber > newest)) {
+				newest = changeNumber;
+			}
+		}
+		return Optional.ofNullable(newest);
+	}
+
+	@Override
+	public <T> T readIndexSnapshot(IdAndVersion tableId, long changeNumber, ReaderCallback<T> reader) throws IOException {
+		ValidateArgument.required(tableId, "tableId");
+		ValidateArgument.required(reader, "reader");
+		S3Object object = s3Client.getObject(s3Bucket, getSnapshotKey(tableId, changeNumber));
+		try {
+			return reader.read(object.getObjectContent());
+		} finally {
+			// Need to close the stream unconditionally.
+			object.getObjectContent().close();
+		}
+	}
+
+	/**
+	 * The prefix of all snapshot keys of this stack instance.
+	 * 
+	 * @return
+	 */
+	String getSnapshotInstancePrefix() {
+		return String.format(SNAPSHOT_PREFIX_TEMPLATE, stackInstancePrefix);
+	}
+
+	/**
+	 * The prefix of all snapshot keys of the given table, including the
+	 * snapshots of each of its versions.
+	 * 
+	 * @param tableId
+	 * @return
+	 */
+	String getSnapshotTablePrefix(String tableId) {
+		return String.format(SNAPSHOT_TABLE_PREFIX_TEMPLATE, stackInstancePrefix, KeyFactory.stringToKey(tableId));
+	}
+
+	/**
+	 * The prefix of all snapshot keys of the given table version.
+	 * 
+	 * @param tableId
+	 * @return
+	 */
+	String getSnapshotPrefix(IdAndVersion tableId) {
+		return String.format(SNAPSHOT_VERSION_PREFIX_TEMPLATE, stackInstancePrefix, tableId.getId(),
+				getSnapshotVersion(tableId));
+	}
+
+	/**
+	 * The key of the snapshot of the given table version and change number.
+	 * 
+	 * @param tableId
+	 * @param changeNumber
+	 * @return
+	 */
+	String getSnapshotKey(IdAndVersion tableId, long changeNumber) {
+		return String.format(SNAPSHOT_KEY_TEMPLATE, stackInstancePrefix, tableId.getId(), getSnapshotVersion(tableId),
+				changeNumber);
+	}
+
+	/**
+	 * The version part of a snapshot key.
+	 * 
+	 * @param tableId
+	 * @return
+	 */
+	private static String getSnapshotVersion(IdAndVersion tableId) {
+		return tableId.getVersion().map((Long version) -> version.toString()).orElse(SNAPSHOT_CURRENT_VERSION);
+	}
+
+	/**
+	 * Parse the change number from a snapshot key.
+	 * 
+	 * @param prefix
+	 * @param key
+	 * @return Null if the key is not a snapshot key.
+	 */
+	static Long parseSnapshotChangeNumber(String prefix, String key) {
+		if (!key.startsWith(prefix) || !key.endsWith(".gz")) {
+			return null;
+		}
+		try {
+			return Long.parseLong(key.substring(prefix.length(), key.length() - ".gz".length()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * List all of the S3 keys with the given prefix. Each following page starts
+	 * after the last key of the previous page.
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	private List<String> listKeys(String prefix) {
+		List<String> keys = new LinkedList<>();
+		String marker = null;
+		ObjectListing listing;
+		do {
+			listing = s3Client.listObjects(
+					new ListObjectsRequest().withBucketName(s3Bucket).withPrefix(prefix).withMarker(marker));
+			for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+				keys.add(summary.getKey());
+				marker = summary.getKey();
+			}
+		} while (listing.isTruncated());
+		return keys;
+	}
+
 	@Override
 	public void deleteAllRowDataForTable(String tableId) {
 		// List key so we can delete them
-		List<String> keysToDelete = listAllKeysForTable(tableId);
+		List<String> keysToDelete = new LinkedList<>(listAllKeysForTable(tableId));
+		keysToDelete.addAll(listKeys(getSnapshotTablePrefix(tableId)));
 		// Delete each object from S3
 		for (String key : keysToDelete) {
 			s3Client.deleteObject(s3Bucket, key);
@@ -431,7 +603,9 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 	@Override
 	public void truncateAllRowData() {
 		// List key so we can delete them
-		List<String> keysToDelete = listAllKeys();
+		List<String> keysToDelete = new LinkedList<>(listAllKeys());
+		// only the snapshots of this stack instance.
+		keysToDelete.addAll(listKeys(getSnapshotInstancePrefix()));
 		// Delete each object from S3
 		for (String key : keysToDelete) {
 			s3Client.deleteObject(s3Bucket, key);
@@ -483,6 +657,15 @@ public class TableRowTruthDAOImpl implements TableRowTruthDAO {
 		this.s3Bucket = s3Bucket;
 	}
 
+	/**
+	 * IoC. The stack and instance of the index snapshot keys.
+	 * 
+	 * @param stackInstancePrefix
+	 */
+	public void setStackInstancePrefix(String stackInstancePrefix) {
+		this.stackInstancePrefix = stackInstancePrefix;
+	}
+
 	@Override
 	public List<TableRowChange> getTableChangePage(String tableIdString, long limit, long offset) {
 		ValidateArgument.required(tableIdString, "tableId");
@@ -517,7 +517,13 @@ public class V2DBOWikiPageDaoImpl implements V2WikiPageDao {
 	@Override
 	public String getMarkdown(WikiPageKey key, Long version) throws IOException, NotFoundException {
 		V2WikiPage wiki = get(key, version);
-		S3FileHandle markdownHandle = (S3FileHandle) fileMetadataDao.get(wiki.getMarkdownFileHandleId());
+		return getMarkdown(wiki.getMarkdownFileHandleId());
+	}
+	
+	@Override
+	public String getMarkdown(String markdownFileHandleId) throws IOException, NotFoundException {
+		if(markdownFileHandleId == null) throw new IllegalArgumentException("Markdown file handle id cannot be null");
+		S3FileHandle markdownHandle = (S3FileHandle) fileMetadataDao.get(markdownFileHandleId);
 		S3Object s3Object = s3Client.getObject(markdownHandle.getBucketName(), markdownHandle.getKey());
 		InputStream in = s3Object.getObjectContent();
 		Charset charset = ContentTypeUtil.getCharsetFromS3Object(s3Object);
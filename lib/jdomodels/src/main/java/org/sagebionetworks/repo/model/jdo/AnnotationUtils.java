@@ -36,22 +36,41 @@ public class AnnotationUtils {
 
 
 	/**
-	 * Convert the passed annotations to a compressed (zip) byte array
+	 * Convert the passed annotations to a binary byte array. See
+	 * {@link AnnotationsBinaryCodec}.
 	 * @param dto
-	 * @return compressed annotations
+	 * @return encoded annotations or null if there are no annotations.
 	 * @throws IOException
 	 */
 	public static byte[] compressAnnotations(NamedAnnotations dto) throws IOException{
+		if(dto == null || dto.isEmpty()){
+			return null;
+		}
+		return AnnotationsBinaryCodec.encode(dto);
+	}
+
+	/**
+	 * Convert the passed annotations to the compressed (zip) XML byte array
+	 * used before the binary format.
+	 * @param dto
+	 * @return compressed annotations
+	 * @throws IOException
+	 */
+	static byte[] compressAnnotationsXml(NamedAnnotations dto) throws IOException{
 		return JDOSecondaryPropertyUtils.compressObject(X_STREAM, dto == null || dto.isEmpty() ? null : dto);
 	}
 
 	/**
-	 * Read the compressed (zip) byte array into the Annotations.
+	 * Read the encoded byte array into the Annotations. Both the binary format
+	 * and the compressed (zip) XML format are supported.
 	 * @param zippedBytes
 	 * @return the resurrected Annotations
 	 * @throws IOException
 	 */
 	public static NamedAnnotations decompressedAnnotations(byte[] zippedBytes) throws IOException{
+		if(AnnotationsBinaryCodec.isBinary(zippedBytes)){
+			return AnnotationsBinaryCodec.decode(zippedBytes);
+		}
 		Object o = JDOSecondaryPropertyUtils.decompressObject(X_STREAM, zippedBytes);
 		if (o==null) return new NamedAnnotations();
 		return (NamedAnnotations) o;
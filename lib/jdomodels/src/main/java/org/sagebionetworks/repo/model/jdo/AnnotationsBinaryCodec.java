@@ -0,0 +1,432 @@
+package org.sagebionetworks.repo.model.jdo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sagebionetworks.repo.model.AnnotationNameSpace;
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Versioned binary encoding of the annotations of a single node revision:
+ * <ol>
+ * <li>A header with the magic bytes and the format version.</li>
+ * <li>A dictionary of every distinct key and string value.</li>
+ * <li>One entry per annotation key with the name-space, the value type, a
+ * reference to the key in the dictionary and the length of the encoded values
+ * followed by the values.</li>
+ * </ol>
+ * Annotations written before this format existed are GZIP compressed XML and
+ * start with the GZIP magic bytes instead.
+ *
+ */
+public class AnnotationsBinaryCodec {
+
+	/**
+	 * The first bytes of every binary annotation blob. GZIP always starts with
+	 * 0x1f 0x8b.
+	 */
+	public static final byte[] MAGIC = new byte[] { 'N', 'A', 'B' };
+	public static final int FORMAT_VERSION = 1;
+
+	/*
+	 * Dictionary references. Anything greater than or equal to
+	 * FIRST_DICTIONARY_REF is an index into the dictionary.
+	 */
+	static final int REF_NULL = 0;
+	static final int FIRST_DICTIONARY_REF = 1;
+
+	/**
+	 * Annotation keys are repeated across most of the entities of a project so a
+	 * single copy of each is shared by all decoded annotations.
+	 */
+	private static final Interner<String> KEY_INTERNER = Interners.newWeakInterner();
+
+	/**
+	 * The type of the values of an entry. The ordinal is written to the blob so
+	 * new types must be added to the end.
+	 */
+	enum ValueType {
+		STRING, DOUBLE, LONG, DATE, BLOB
+	}
+
+	/**
+	 * Is the given annotation blob in the binary format?
+	 * 
+	 * @param bytes
+	 * @return
+	 */
+	public static boolean isBinary(byte[] bytes) {
+		if (bytes == null || bytes.length < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (bytes[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encode the given annotations.
+	 * 
+	 * @param named
+	 * @return
+	 */
+	public static byte[] encode(NamedAnnotations named) {
+		ValidateArgument.required(named, "named");
+		// gather the dictionary
+		Map<String, Integer> dictionary = new LinkedHashMap<>();
+		int entryCount = 0;
+		for (AnnotationNameSpace nameSpace : AnnotationNameSpace.values()) {
+			Annotations annos = named.getMap().get(nameSpace.name());
+			if (annos == null) {
+				continue;
+			}
+			entryCount += addToDictionary(dictionary, annos.getStringAnnotations(), true);
+			entryCount += addToDictionary(dictionary, annos.getDoubleAnnotations(), false);
+			entryCount += addToDictionary(dictionary, annos.getLongAnnotations(), false);
+			entryCount += addToDictionary(dictionary, annos.getDateAnnotations(), false);
+			entryCount += addToDictionary(dictionary, annos.getBlobAnnotations(), false);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(MAGIC, 0, MAGIC.length);
+		writeVarint(out, FORMAT_VERSION);
+		writeVarint(out, dictionary.size());
+		for (String value : dictionary.keySet()) {
+			writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+		}
+		writeVarint(out, entryCount);
+		ByteArrayOutputStream values = new ByteArrayOutputStream();
+		for (AnnotationNameSpace nameSpace : AnnotationNameSpace.values()) {
+			Annotations annos = named.getMap().get(nameSpace.name());
+			if (annos == null) {
+				continue;
+			}
+			writeEntries(out, values, dictionary, nameSpace, ValueType.STRING, annos.getStringAnnotations());
+			writeEntries(out, values, dictionary, nameSpace, ValueType.DOUBLE, annos.getDoubleAnnotations());
+			writeEntries(out, values, dictionary, nameSpace, ValueType.LONG, annos.getLongAnnotations());
+			writeEntries(out, values, dictionary, nameSpace, ValueType.DATE, annos.getDateAnnotations());
+			writeEntries(out, values, dictionary, nameSpace, ValueType.BLOB, annos.getBlobAnnotations());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decode all of the annotations of the given blob.
+	 * 
+	 * @param bytes
+	 * @return
+	 * @throws IOException
+	 */
+	public static NamedAnnotations decode(byte[] bytes) throws IOException {
+		Reader reader = new Reader(bytes);
+		int dictionarySize = reader.readHeader();
+		String[] dictionary = new String[dictionarySize];
+		for (int i = 0; i < dictionarySize; i++) {
+			dictionary[i] = reader.readString();
+		}
+		NamedAnnotations named = new NamedAnnotations();
+		int entryCount = reader.readInt();
+		for (int i = 0; i < entryCount; i++) {
+			AnnotationNameSpace nameSpace = AnnotationNameSpace.values()[reader.readInt()];
+			ValueType type = ValueType.values()[reader.readInt()];
+			String key = lookup(dictionary, reader.readInt());
+			if (key != null) {
+				key = KEY_INTERNER.intern(key);
+			}
+			// length of the values.
+			reader.readInt();
+			List<Object> values = reader.readValues(type, dictionary);
+			putValues(named.getAnnotationsForName(nameSpace), type, key, values);
+		}
+		return named;
+	}
+
+	/**
+	 * Add the keys and string values of the given map to the dictionary.
+	 * 
+	 * @return The number of entries in the map.
+	 */
+	private static <T> int addToDictionary(Map<String, Integer> dictionary, Map<String, List<T>> map,
+			boolean includeValues) {
+		if (map == null) {
+			return 0;
+		}
+		for (Map.Entry<String, List<T>> entry : map.entrySet()) {
+			addToDictionary(dictionary, entry.getKey());
+			if (includeValues && entry.getValue() != null) {
+				for (T value : entry.getValue()) {
+					addToDictionary(dictionary, (String) value);
+				}
+			}
+		}
+		return map.size();
+	}
+
+	private static void addToDictionary(Map<String, Integer> dictionary, String value) {
+		if (value != null && !dictionary.containsKey(value)) {
+			dictionary.put(value, dictionary.size());
+		}
+	}
+
+	private static int reference(Map<String, Integer> dictionary, String value) {
+		if (value == null) {
+			return REF_NULL;
+		}
+		return dictionary.get(value) + FIRST_DICTIONARY_REF;
+	}
+
+	private static String lookup(String[] dictionary, int ref) {
+		if (ref == REF_NULL) {
+			return null;
+		}
+		return dictionary[ref - FIRST_DICTIONARY_REF];
+	}
+
+	/**
+	 * Write one entry for each key of the given map.
+	 */
+	private static <T> void writeEntries(ByteArrayOutputStream out, ByteArrayOutputStream values,
+			Map<String, Integer> dictionary, AnnotationNameSpace nameSpace, ValueType type,
+			Map<String, List<T>> map) {
+		if (map == null) {
+			return;
+		}
+		for (Map.Entry<String, List<T>> entry : map.entrySet()) {
+			values.reset();
+			writeValues(values, dictionary, type, entry.getValue());
+			writeVarint(out, nameSpace.ordinal());
+			writeVarint(out, type.ordinal());
+			writeVarint(out, reference(dictionary, entry.getKey()));
+			writeVarint(out, values.size());
+			values.writeTo(out);
+		}
+	}
+
+	/**
+	 * Write a list of values. The size is written plus one so a null list can be
+	 * written as zero.
+	 */
+	private static <T> void writeValues(ByteArrayOutputStream out, Map<String, Integer> dictionary, ValueType type,
+			List<T> values) {
+		if (values == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		writeVarint(out, values.size() + 1L);
+		for (T value : values) {
+			switch (type) {
+			case STRING:
+				writeVarint(out, reference(dictionary, (String) value));
+				break;
+			case DOUBLE:
+				if (writePresent(out, value)) {
+					writeFixed64(out, Double.doubleToRawLongBits((Double) value));
+				}
+				break;
+			case LONG:
+				if (writePresent(out, value)) {
+					writeVarint(out, zigZag((Long) value));
+				}
+				break;
+			case DATE:
+				if (writePresent(out, value)) {
+					writeVarint(out, zigZag(((Date) value).getTime()));
+				}
+				break;
+			case BLOB:
+				byte[] blob = (byte[]) value;
+				if (blob == null) {
+					writeVarint(out, 0);
+				} else {
+					writeVarint(out, blob.length + 1L);
+					out.write(blob, 0, blob.length);
+				}
+				break;
+			}
+		}
+	}
+
+	private static boolean writePresent(ByteArrayOutputStream out, Object value) {
+		out.write(value == null ? 0 : 1);
+		return value != null;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void putValues(Annotations annos, ValueType type, String key, List values) {
+		switch (type) {
+		case STRING:
+			annos.getStringAnnotations().put(key, values);
+			break;
+		case DOUBLE:
+			annos.getDoubleAnnotations().put(key, values);
+			break;
+		case LONG:
+			annos.getLongAnnotations().put(key, values);
+			break;
+		case DATE:
+			annos.getDateAnnotations().put(key, values);
+			break;
+		case BLOB:
+			annos.getBlobAnnotations().put(key, values);
+			break;
+		}
+	}
+
+	private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+		writeVarint(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static void writeFixed64(ByteArrayOutputStream out, long value) {
+		for (int i = 0; i < 8; i++) {
+			out.write((int) (value >>> (i * 8)));
+		}
+	}
+
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static void writeVarint(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0L) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Reads an encoded blob in place.
+	 */
+	private static class Reader {
+
+		final byte[] bytes;
+		int position;
+
+		Reader(byte[] bytes) {
+			ValidateArgument.required(bytes, "bytes");
+			this.bytes = bytes;
+			this.position = 0;
+		}
+
+		/**
+		 * Read the header.
+		 * 
+		 * @return The size of the dictionary.
+		 * @throws IOException
+		 */
+		int readHeader() throws IOException {
+			if (!isBinary(bytes)) {
+				throw new IllegalArgumentException("Not a binary annotation blob");
+			}
+			position = MAGIC.length;
+			int version = readInt();
+			if (version != FORMAT_VERSION) {
+				throw new IllegalArgumentException("Unknown annotation format version: " + version);
+			}
+			return readInt();
+		}
+
+		List<Object> readValues(ValueType type, String[] dictionary) throws IOException {
+			int sizePlusOne = readInt();
+			if (sizePlusOne == 0) {
+				return null;
+			}
+			List<Object> values = new ArrayList<>(sizePlusOne - 1);
+			for (int i = 0; i < sizePlusOne - 1; i++) {
+				switch (type) {
+				case STRING:
+					values.add(lookup(dictionary, readInt()));
+					break;
+				case DOUBLE:
+					values.add(readPresent() ? Double.longBitsToDouble(readFixed64()) : null);
+					break;
+				case LONG:
+					values.add(readPresent() ? unZigZag(readVarint()) : null);
+					break;
+				case DATE:
+					values.add(readPresent() ? new Date(unZigZag(readVarint())) : null);
+					break;
+				case BLOB:
+					int lengthPlusOne = readInt();
+					if (lengthPlusOne == 0) {
+						values.add(null);
+					} else {
+						ensureAvailable(lengthPlusOne - 1);
+						values.add(Arrays.copyOfRange(bytes, position, position + lengthPlusOne - 1));
+						position += lengthPlusOne - 1;
+					}
+					break;
+				}
+			}
+			return values;
+		}
+
+		String readString() throws IOException {
+			int length = readInt();
+			ensureAvailable(length);
+			String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+
+		boolean readPresent() throws IOException {
+			ensureAvailable(1);
+			return bytes[position++] != 0;
+		}
+
+		long readFixed64() throws IOException {
+			ensureAvailable(8);
+			long value = 0L;
+			for (int i = 0; i < 8; i++) {
+				value |= (bytes[position++] & 0xFFL) << (i * 8);
+			}
+			return value;
+		}
+
+		int readInt() throws IOException {
+			long value = readVarint();
+			if (value < 0 || value > Integer.MAX_VALUE) {
+				throw new IOException("Malformed annotations");
+			}
+			return (int) value;
+		}
+
+		long readVarint() throws IOException {
+			long value = 0L;
+			for (int shift = 0; shift < 64; shift += 7) {
+				ensureAvailable(1);
+				int b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		private void ensureAvailable(int length) throws IOException {
+			if (length < 0 || position + length > bytes.length) {
+				throw new IOException("Unexpected end of annotations");
+			}
+		}
+	}
+}
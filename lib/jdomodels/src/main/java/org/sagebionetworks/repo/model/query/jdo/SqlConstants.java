@@ -43,6 +43,13 @@ public class SqlConstants {
 	public static final String COL_REVISION_SCOPE_IDS		= "SCOPE_IDS";
 	public static final String DDL_FILE_REVISION			="schema/Revision-ddl.sql";
 	
+	// The closure of the container (project and folder) hierarchy
+	public static final String TABLE_NODE_CONTAINER_CLOSURE			= "NODE_CONTAINER_CLOSURE";
+	public static final String COL_NODE_CLOSURE_ANCESTOR_ID			= "ANCESTOR_ID";
+	public static final String COL_NODE_CLOSURE_DESCENDANT_ID		= "DESCENDANT_ID";
+	public static final String COL_NODE_CLOSURE_DISTANCE			= "DISTANCE";
+	public static final String DDL_FILE_NODE_CONTAINER_CLOSURE		= "schema/NodeContainerClosure-ddl.sql";
+	
 	public static final String TABLE_STACK_STATUS		= "JDOSTACKSTATUS";
 	
 	
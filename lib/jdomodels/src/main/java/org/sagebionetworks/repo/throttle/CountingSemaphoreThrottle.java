@@ -1,5 +1,14 @@
 package org.sagebionetworks.repo.throttle;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -7,59 +16,292 @@ import org.sagebionetworks.common.util.Clock;
 import org.springframework.beans.factory.annotation.Autowired;
 
 /**
- * Will throttle the methods of CountingSemaphoreImpl by sleeping based on the
- * execution time of the call. So as calls slow down the sleep time increases.
+ * Coordinates the calls of all threads in this JVM to CountingSemaphoreImpl.
+ * <p>
+ * A failed attemptToAcquireLock() on a key with a lock held by this JVM waits
+ * in a fair, per-key queue until another thread of this JVM releases a lock on
+ * the same key, or until the wait times out. A thread woken by a release
+ * attempts to acquire the lock one more time. When all locks on the key are
+ * held by other machines, no local release can arrive, so the failure is
+ * returned immediately. Calls are never delayed based on how long the database
+ * took, so lock throughput does not drop when the database is slow.
+ * <p>
+ * Every refreshLockTimeout() is sent to the database, so a lock lost to an
+ * expired lease is reported to its holder by the next renewal.
+ * <p>
+ * The number of keys used with the semaphore is small (one per worker stack),
+ * so the state of each key is kept for the life of the JVM.
  *
  */
 @Aspect
 public class CountingSemaphoreThrottle {
 
+	public static final String ATTEMPT_TO_ACQUIRE_LOCK = "attemptToAcquireLock";
+	public static final String REFRESH_LOCK_TIMEOUT = "refreshLockTimeout";
+	public static final String RELEASE_LOCK = "releaseLock";
+	public static final String RELEASE_ALL_LOCKS = "releaseAllLocks";
+
+	/**
+	 * The maximum time a failed attemptToAcquireLock() waits for a local
+	 * release of the same key.
+	 */
+	public static final long DEFAULT_FAILED_ACQUIRE_WAIT_MS = 1000L;
+
 	@Autowired
 	Clock clock;
 
-	long throttleCounter = 0;
-	long failedLockAttemptCount = 0;
+	long failedAcquireWaitMs = DEFAULT_FAILED_ACQUIRE_WAIT_MS;
+
+	private final AtomicLong throttleCounter = new AtomicLong(0);
+	private final AtomicLong failedLockAttemptCount = new AtomicLong(0);
+	private final ConcurrentHashMap<String, KeyState> keys = new ConcurrentHashMap<>();
+	// The key of each lock held by this JVM, by token.
+	private final ConcurrentHashMap<String, String> heldTokens = new ConcurrentHashMap<>();
 
 	@Around("execution(* org.sagebionetworks.database.semaphore.CountingSemaphoreImpl.*(..))")
 	public Object profile(ProceedingJoinPoint pjp) throws Throwable {
-		Object result = null;
-		long start = clock.currentTimeMillis();
+		throttleCounter.incrementAndGet();
+		switch (pjp.getSignature().getName()) {
+		case ATTEMPT_TO_ACQUIRE_LOCK:
+			return attemptToAcquireLock(pjp);
+		case REFRESH_LOCK_TIMEOUT:
+			return refreshLockTimeout(pjp);
+		case RELEASE_LOCK:
+			return releaseLock(pjp);
+		case RELEASE_ALL_LOCKS:
+			heldTokens.clear();
+			for (KeyState state : keys.values()) {
+				state.localHolders.set(0);
+			}
+			return pjp.proceed();
+		default:
+			return pjp.proceed();
+		}
+	}
+
+	/**
+	 * Attempt to acquire a lock. On failure, wait for a local release of the
+	 * same key and then try one more time. There is no wait when this JVM does
+	 * not hold a lock on the key.
+	 *
+	 * @param pjp
+	 * @return
+	 * @throws Throwable
+	 */
+	Object attemptToAcquireLock(ProceedingJoinPoint pjp) throws Throwable {
+		Object[] args = pjp.getArgs();
+		String key = (String) args[0];
+		KeyState state = getKeyState(key);
+		state.metrics.acquireAttempts.incrementAndGet();
+		Object token = pjp.proceed();
+		if (token == null) {
+			failedLockAttemptCount.incrementAndGet();
+			state.metrics.failedAcquireAttempts.incrementAndGet();
+			if (state.localHolders.get() < 1) {
+				// The locks are held by other machines.
+				return null;
+			}
+			long start = clock.currentTimeMillis();
+			boolean released = state.awaitRelease(failedAcquireWaitMs);
+			state.metrics.waitTimeMs.addAndGet(clock.currentTimeMillis() - start);
+			if (released) {
+				// Another thread just released a lock on this key.
+				state.metrics.acquireAttempts.incrementAndGet();
+				token = pjp.proceed();
+				if (token == null) {
+					failedLockAttemptCount.incrementAndGet();
+					state.metrics.failedAcquireAttempts.incrementAndGet();
+				}
+			}
+		}
+		if (token != null) {
+			state.metrics.acquired.incrementAndGet();
+			if (heldTokens.put((String) token, key) == null) {
+				state.localHolders.incrementAndGet();
+			}
+		}
+		return token;
+	}
+
+	/**
+	 * Renew a lease.
+	 *
+	 * @param pjp
+	 * @return
+	 * @throws Throwable
+	 */
+	Object refreshLockTimeout(ProceedingJoinPoint pjp) throws Throwable {
+		Object[] args = pjp.getArgs();
+		String key = (String) args[0];
+		KeyState state = getKeyState(key);
+		Object result = pjp.proceed();
+		state.metrics.renewals.incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * Release a lock and wake the next thread waiting on the same key.
+	 *
+	 * @param pjp
+	 * @return
+	 * @throws Throwable
+	 */
+	Object releaseLock(ProceedingJoinPoint pjp) throws Throwable {
+		Object[] args = pjp.getArgs();
+		String key = (String) args[0];
+		String token = (String) args[1];
+		KeyState state = getKeyState(key);
 		try {
-			result = pjp.proceed();
-			return result;
+			return pjp.proceed();
 		} finally {
-			throttleCounter++;
-			long elapse = clock.currentTimeMillis() - start;
-			long sleepTimeMs = elapse;
-			if (result == null && pjp.getSignature().getName().equals("attemptToAcquireLock")) {
-				/*
-				 * For the case where a lock is not acquired we sleep longer as this is the main
-				 * source of too many calls, and throttling here has a limited impact on
-				 * performance.
-				 */
-				sleepTimeMs = elapse * 10;
-				failedLockAttemptCount++;
-			}
-			if (sleepTimeMs > 0) {
-				clock.sleep(sleepTimeMs);
+			if (heldTokens.remove(token) != null) {
+				state.localHolders.decrementAndGet();
 			}
+			state.metrics.released.incrementAndGet();
+			state.signalRelease();
 		}
 	}
 
+	private KeyState getKeyState(String key) {
+		return keys.computeIfAbsent(key, (String k) -> new KeyState());
+	}
+
 	/**
 	 * Get the number of times this throttle has been applied.
-	 * 
+	 *
 	 * @return
 	 */
 	public long getCounter() {
-		return throttleCounter;
+		return throttleCounter.get();
 	}
 
 	/**
 	 * Get the number of times failed attemptToAcquireLock calls were throttled.
 	 */
 	public long getFailedLockAttemptCount() {
-		return failedLockAttemptCount;
+		return failedLockAttemptCount.get();
+	}
+
+	/**
+	 * Get the metrics for a single semaphore key.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public KeyMetrics getKeyMetrics(String key) {
+		return getKeyState(key).metrics;
+	}
+
+	/**
+	 * Get the metrics of every key used by this JVM.
+	 *
+	 * @return
+	 */
+	public Map<String, KeyMetrics> getAllKeyMetrics() {
+		Map<String, KeyMetrics> metrics = new ConcurrentHashMap<>(keys.size());
+		for (Map.Entry<String, KeyState> entry : keys.entrySet()) {
+			metrics.put(entry.getKey(), entry.getValue().metrics);
+		}
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	/**
+	 * The maximum time a failed attemptToAcquireLock() waits for a local
+	 * release.
+	 *
+	 * @param failedAcquireWaitMs
+	 */
+	public void setFailedAcquireWaitMs(long failedAcquireWaitMs) {
+		this.failedAcquireWaitMs = failedAcquireWaitMs;
+	}
+
+	/**
+	 * The local waiting queue of a single key.
+	 *
+	 */
+	static class KeyState {
+
+		// a fair lock so waiters are woken in the order they arrived.
+		final ReentrantLock lock = new ReentrantLock(true);
+		final Condition released = lock.newCondition();
+		final KeyMetrics metrics = new KeyMetrics();
+		// The number of locks on this key held by this JVM.
+		final AtomicInteger localHolders = new AtomicInteger(0);
+
+		/**
+		 * Wait for a release of this key.
+		 *
+		 * @param maxWaitMs
+		 * @return True if woken by a release. False if the wait timed out or the
+		 *         thread was interrupted, in which case the interrupt flag is
+		 *         restored.
+		 */
+		boolean awaitRelease(long maxWaitMs) {
+			lock.lock();
+			try {
+				return released.await(maxWaitMs, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Wake the thread that has waited the longest for this key.
+		 */
+		void signalRelease() {
+			lock.lock();
+			try {
+				released.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Counters for a single semaphore key.
+	 *
+	 */
+	public static class KeyMetrics {
+
+		final AtomicLong acquireAttempts = new AtomicLong(0);
+		final AtomicLong failedAcquireAttempts = new AtomicLong(0);
+		final AtomicLong acquired = new AtomicLong(0);
+		final AtomicLong released = new AtomicLong(0);
+		final AtomicLong renewals = new AtomicLong(0);
+		final AtomicLong waitTimeMs = new AtomicLong(0);
+
+		public long getAcquireAttempts() {
+			return acquireAttempts.get();
+		}
+
+		public long getFailedAcquireAttempts() {
+			return failedAcquireAttempts.get();
+		}
+
+		public long getAcquired() {
+			return acquired.get();
+		}
+
+		public long getReleased() {
+			return released.get();
+		}
+
+		public long getRenewals() {
+			return renewals.get();
+		}
+
+		/**
+		 * The total time spent waiting for a local release.
+		 *
+		 * @return
+		 */
+		public long getWaitTimeMs() {
+			return waitTimeMs.get();
+		}
 	}
 
 }
@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS `NODE_CONTAINER_CLOSURE` (
+  `ANCESTOR_ID` bigint(20) NOT NULL,
+  `DESCENDANT_ID` bigint(20) NOT NULL,
+  `DISTANCE` int(11) NOT NULL,
+  PRIMARY KEY (`ANCESTOR_ID`, `DESCENDANT_ID`),
+  INDEX `NODE_CLOSURE_DESCENDANT_INDEX` (`DESCENDANT_ID`, `DISTANCE`),
+  CONSTRAINT `NODE_CLOSURE_ANCESTOR_FK` FOREIGN KEY (`ANCESTOR_ID`) REFERENCES `JDONODE` (`ID`) ON DELETE CASCADE,
+  CONSTRAINT `NODE_CLOSURE_DESCENDANT_FK` FOREIGN KEY (`DESCENDANT_ID`) REFERENCES `JDONODE` (`ID`) ON DELETE CASCADE
+)
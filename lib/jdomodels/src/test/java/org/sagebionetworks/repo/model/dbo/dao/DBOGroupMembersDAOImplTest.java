@@ -26,6 +26,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.google.common.collect.Sets;
+
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = { "classpath:jdomodels-test-context.xml" })
@@ -127,10 +129,15 @@ public class DBOGroupMembersDAOImplTest {
 		List<UserGroup> newMembers = groupMembersDAO.getMembers(testGroup.getId());
 		assertEquals("Number of users should match", 3, newMembers.size());
 		
-		// Each user should be present, with unaltered etags
-		assertTrue("User one should be in the retrieved member list", newMembers.contains(testUserOne));
-		assertTrue("User two should be in the retrieved member list", newMembers.contains(testUserTwo));
-		assertTrue("User three should be in the retrieved member list", newMembers.contains(testUserThree));
+		// Each user should be present, with a new etag
+		Set<String> newMemberIds = new HashSet<String>();
+		for (UserGroup member : newMembers) {
+			newMemberIds.add(member.getId());
+		}
+		assertEquals(Sets.newHashSet(testUserOne.getId(), testUserTwo.getId(), testUserThree.getId()), newMemberIds);
+		for (UserGroup user : Arrays.asList(testUserOne, testUserTwo, testUserThree)) {
+			assertFalse("Member etag must have changed", user.getEtag().equals(userGroupDAO.getEtag(Long.parseLong(user.getId()))));
+		}
 		
 		// Verify that the parent group's etag has changed
 		UserGroup updatedTestGroup = userGroupDAO.get(Long.parseLong(testGroup.getId()));
@@ -187,7 +194,12 @@ public class DBOGroupMembersDAOImplTest {
 		List<String> remover = new ArrayList<String>(adder);
 		String antisocial = remover.remove(0);
 		assertTrue(groupMembersDAO.areMemberOf(testGroup.getId(), new HashSet<String>(remover)));
+		String removedEtag = userGroupDAO.getEtag(Long.parseLong(remover.get(0)));
+		String keptEtag = userGroupDAO.getEtag(Long.parseLong(antisocial));
 		groupMembersDAO.removeMembers(testGroup.getId(), remover);
+		// only the removed members get a new etag
+		assertFalse(removedEtag.equals(userGroupDAO.getEtag(Long.parseLong(remover.get(0)))));
+		assertEquals(keptEtag, userGroupDAO.getEtag(Long.parseLong(antisocial)));
 
 		assertFalse(groupMembersDAO.areMemberOf(testGroup.getId(), new HashSet<String>(adder)));
 
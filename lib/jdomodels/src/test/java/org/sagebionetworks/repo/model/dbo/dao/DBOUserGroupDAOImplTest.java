@@ -4,6 +4,7 @@ import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -19,6 +20,7 @@ import org.sagebionetworks.repo.model.ACCESS_TYPE;
 import org.sagebionetworks.repo.model.AccessControlList;
 import org.sagebionetworks.repo.model.AccessControlListDAO;
 import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.GroupMembersDAO;
 import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.UserGroup;
@@ -43,6 +45,9 @@ public class DBOUserGroupDAOImplTest {
 	@Autowired
 	private UserGroupDAO userGroupDAO;
 
+	@Autowired
+	private GroupMembersDAO groupMembersDAO;
+
 	@Autowired
 	private AccessControlListDAO aclDAO;
 
@@ -90,6 +95,42 @@ public class DBOUserGroupDAOImplTest {
 		assertEquals(1 + initialCount, userGroupDAO.getCount());
 	}
 
+	@Test
+	public void testGetEtag() throws Exception {
+		UserGroup group = new UserGroup();
+		group.setIsIndividual(true);
+		Long principalId = userGroupDAO.create(group);
+		groupsToDelete.add(principalId.toString());
+		// call under test
+		String etag = userGroupDAO.getEtag(principalId);
+		assertEquals(userGroupDAO.get(principalId).getEtag(), etag);
+		userGroupDAO.touch(principalId);
+		assertFalse(etag.equals(userGroupDAO.getEtag(principalId)));
+	}
+
+	@Test
+	public void testDeleteTouchesMembers() throws Exception {
+		UserGroup group = new UserGroup();
+		group.setIsIndividual(false);
+		Long groupId = userGroupDAO.create(group);
+		UserGroup user = new UserGroup();
+		user.setIsIndividual(true);
+		Long memberId = userGroupDAO.create(user);
+		groupsToDelete.add(memberId.toString());
+		groupMembersDAO.addMembers(groupId.toString(), Collections.singletonList(memberId.toString()));
+		String etag = userGroupDAO.getEtag(memberId);
+		// call under test
+		userGroupDAO.delete(groupId.toString());
+		// the membership is removed by the delete, so the member's etag must change.
+		assertFalse(etag.equals(userGroupDAO.getEtag(memberId)));
+	}
+
+	@Test
+	public void testGetEtagDoesNotExist() {
+		// call under test
+		assertNull(userGroupDAO.getEtag(-1L));
+	}
+
 	@Test(expected = NotFoundException.class)
 	public void testIsIndividualDoesNotExist() {
 		userGroupDAO.isIndividual(-1L);
@@ -47,6 +47,7 @@ import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.EntityTypeUtils;
 import org.sagebionetworks.repo.model.GroupMembersDAO;
 import org.sagebionetworks.repo.model.IdAndEtag;
+import org.sagebionetworks.repo.model.IdRangeChecksum;
 import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.LimitExceededException;
 import org.sagebionetworks.repo.model.NamedAnnotations;
@@ -1619,16 +1620,67 @@ public class NodeDAOImplTest {
 		nodeDao.getEntityPath("syn9999999");
 	}
 	
-	// we introduced batch entity path search so we test the case that 
-	// the path is bigger than one batch
 	@Test
 	public void testGetDeepEntityPath() throws Exception {
-		testGetEntityPath(NodeDAOImpl.BATCH_PATH_DEPTH+3);
+		testGetEntityPath(8);
 	}
 	
 	@Test
 	public void testGetDeepEntityPathEdgeCase() throws Exception {
-		testGetEntityPath(NodeDAOImpl.BATCH_PATH_DEPTH*2);
+		testGetEntityPath(10);
+	}
+	
+	@Test
+	public void testGetEntityPaths() throws Exception {
+		Node node = privateCreateNew("parent");
+		node.setNodeType(EntityType.project);
+		String parentId = nodeDao.createNew(node);
+		toDelete.add(parentId);
+		node = privateCreateNew("childOne");
+		node.setNodeType(EntityType.folder);
+		node.setParentId(parentId);
+		String childOneId = nodeDao.createNew(node);
+		toDelete.add(childOneId);
+		node = privateCreateNew("childTwo");
+		node.setNodeType(EntityType.folder);
+		node.setParentId(parentId);
+		String childTwoId = nodeDao.createNew(node);
+		toDelete.add(childTwoId);
+		node = privateCreateNew("grandChild");
+		node.setNodeType(EntityType.folder);
+		node.setParentId(childTwoId);
+		String grandChildId = nodeDao.createNew(node);
+		toDelete.add(grandChildId);
+		
+		Long doesNotExist = KeyFactory.stringToKey(grandChildId)+1000L;
+		List<Long> ids = Lists.newArrayList(KeyFactory.stringToKey(parentId), KeyFactory.stringToKey(childOneId),
+				KeyFactory.stringToKey(grandChildId), doesNotExist);
+		// call under test
+		Map<Long, List<EntityHeader>> paths = nodeDao.getEntityPaths(ids);
+		assertNotNull(paths);
+		assertEquals(3, paths.size());
+		assertFalse(paths.containsKey(doesNotExist));
+		for(String id: new String[] {parentId, childOneId, grandChildId}) {
+			// each path must match the single path call.
+			assertEquals(nodeDao.getEntityPath(id), paths.get(KeyFactory.stringToKey(id)));
+		}
+		List<EntityHeader> grandChildPath = paths.get(KeyFactory.stringToKey(grandChildId));
+		assertEquals(3, grandChildPath.size());
+		assertEquals(parentId, grandChildPath.get(0).getId());
+		assertEquals(childTwoId, grandChildPath.get(1).getId());
+		assertEquals(grandChildId, grandChildPath.get(2).getId());
+	}
+	
+	@Test
+	public void testGetEntityPathsEmpty() throws Exception {
+		Map<Long, List<EntityHeader>> paths = nodeDao.getEntityPaths(new LinkedList<Long>());
+		assertNotNull(paths);
+		assertTrue(paths.isEmpty());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testGetEntityPathsNull() throws Exception {
+		nodeDao.getEntityPaths(null);
 	}
 	
 	@Test 
@@ -2484,6 +2536,131 @@ public class NodeDAOImplTest {
 		nodeDao.getAllContainerIds(Arrays.asList(projectIdLong), maxIds);
 	}
 	
+	@Test
+	public void testGetAllContainerIdsAfterMove() throws Exception {
+		List<Node> hierarchy = createHierarchy();
+		int maxIds = hierarchy.size()+1;
+		Long projectId = KeyFactory.stringToKey(hierarchy.get(0).getId());
+		Long folder0Id = KeyFactory.stringToKey(hierarchy.get(1).getId());
+		Long folder1Id = KeyFactory.stringToKey(hierarchy.get(2).getId());
+		Long folder2Id = KeyFactory.stringToKey(hierarchy.get(4).getId());
+		
+		// move folder1 (which contains folder2) into folder0
+		Node folder1 = hierarchy.get(2);
+		folder1.setParentId(hierarchy.get(1).getId());
+		nodeDao.updateNode(folder1);
+		
+		Set<Long> containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		// ordered by depth
+		assertEquals(Lists.newArrayList(projectId, folder0Id, folder1Id, folder2Id), new ArrayList<>(containers));
+		containers = nodeDao.getAllContainerIds(Arrays.asList(folder0Id), maxIds);
+		assertEquals(Lists.newArrayList(folder0Id, folder1Id, folder2Id), new ArrayList<>(containers));
+		
+		// move folder1 to a new project
+		Node otherProject = NodeTestUtils.createNew("otherProject", creatorUserGroupId);
+		otherProject.setNodeType(EntityType.project);
+		String otherProjectId = nodeDao.createNew(otherProject);
+		toDelete.add(otherProjectId);
+		folder1 = nodeDao.getNode(folder1.getId());
+		folder1.setParentId(otherProjectId);
+		nodeDao.updateNode(folder1);
+		
+		containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		assertEquals(Lists.newArrayList(projectId, folder0Id), new ArrayList<>(containers));
+		containers = nodeDao.getAllContainerIds(Arrays.asList(KeyFactory.stringToKey(otherProjectId)), maxIds);
+		assertEquals(Lists.newArrayList(KeyFactory.stringToKey(otherProjectId), folder1Id, folder2Id), new ArrayList<>(containers));
+	}
+	
+	@Test
+	public void testGetAllContainerIdsAfterDelete() throws Exception {
+		List<Node> hierarchy = createHierarchy();
+		int maxIds = hierarchy.size()+1;
+		Long projectId = KeyFactory.stringToKey(hierarchy.get(0).getId());
+		Long folder0Id = KeyFactory.stringToKey(hierarchy.get(1).getId());
+		
+		// deleting folder1 also deletes folder2
+		nodeDao.delete(hierarchy.get(2).getId());
+		
+		Set<Long> containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		assertEquals(Lists.newArrayList(projectId, folder0Id), new ArrayList<>(containers));
+	}
+	
+	@Test
+	public void testRebuildContainerClosure() throws Exception {
+		List<Node> hierarchy = createHierarchy();
+		int maxIds = hierarchy.size()+1;
+		Long projectId = KeyFactory.stringToKey(hierarchy.get(0).getId());
+		Long folder0Id = KeyFactory.stringToKey(hierarchy.get(1).getId());
+		Long folder1Id = KeyFactory.stringToKey(hierarchy.get(2).getId());
+		Long folder2Id = KeyFactory.stringToKey(hierarchy.get(4).getId());
+		// simulate nodes written without maintaining the closure.
+		jdbcTemplate.update("DELETE FROM NODE_CONTAINER_CLOSURE WHERE DESCENDANT_ID IN (?, ?, ?, ?)", projectId,
+				folder0Id, folder1Id, folder2Id);
+		Set<Long> containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		assertEquals(Lists.newArrayList(projectId), new ArrayList<>(containers));
+		
+		// call under test
+		nodeDao.rebuildContainerClosure(Arrays.asList(projectId));
+		
+		containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		assertEquals(Lists.newArrayList(projectId, folder0Id, folder1Id, folder2Id), new ArrayList<>(containers));
+		containers = nodeDao.getAllContainerIds(Arrays.asList(folder1Id), maxIds);
+		assertEquals(Lists.newArrayList(folder1Id, folder2Id), new ArrayList<>(containers));
+	}
+	
+	@Test
+	public void testRebuildContainerClosureEmpty() throws Exception {
+		// call under test
+		nodeDao.rebuildContainerClosure(new LinkedList<Long>());
+	}
+	
+	@Test
+	public void testDeleteContainerClosureForRange() throws Exception {
+		List<Node> hierarchy = createHierarchy();
+		int maxIds = hierarchy.size()+1;
+		Long projectId = KeyFactory.stringToKey(hierarchy.get(0).getId());
+		Long folder0Id = KeyFactory.stringToKey(hierarchy.get(1).getId());
+		Long folder1Id = KeyFactory.stringToKey(hierarchy.get(2).getId());
+		Long folder2Id = KeyFactory.stringToKey(hierarchy.get(4).getId());
+		
+		// call under test
+		nodeDao.deleteContainerClosureForRange(folder1Id, folder1Id);
+		
+		long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM NODE_CONTAINER_CLOSURE WHERE ANCESTOR_ID = ? OR DESCENDANT_ID = ?",
+				Long.class, folder1Id, folder1Id);
+		assertEquals(0L, count);
+		// other containers keep their links.
+		Set<Long> containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		assertEquals(Lists.newArrayList(projectId, folder0Id, folder2Id), new ArrayList<>(containers));
+	}
+	
+	@Test
+	public void testRepairContainerClosure() throws Exception {
+		List<Node> hierarchy = createHierarchy();
+		int maxIds = hierarchy.size()+1;
+		Long projectId = KeyFactory.stringToKey(hierarchy.get(0).getId());
+		Long folder0Id = KeyFactory.stringToKey(hierarchy.get(1).getId());
+		Long folder1Id = KeyFactory.stringToKey(hierarchy.get(2).getId());
+		Long folder2Id = KeyFactory.stringToKey(hierarchy.get(4).getId());
+		// simulate containers that were created before the closure existed.
+		jdbcTemplate.update("DELETE FROM NODE_CONTAINER_CLOSURE WHERE DESCENDANT_ID IN (?, ?, ?, ?)", projectId,
+				folder0Id, folder1Id, folder2Id);
+		
+		// call under test, in batches of two until every container is linked.
+		while(nodeDao.repairContainerClosure(2) > 0) {
+		}
+		
+		Set<Long> containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		assertEquals(Lists.newArrayList(projectId, folder0Id, folder1Id, folder2Id), new ArrayList<>(containers));
+		containers = nodeDao.getAllContainerIds(Arrays.asList(folder1Id), maxIds);
+		assertEquals(Lists.newArrayList(folder1Id, folder2Id), new ArrayList<>(containers));
+		
+		// a second call has nothing to do.
+		assertEquals(0, nodeDao.repairContainerClosure(2));
+		containers = nodeDao.getAllContainerIds(Arrays.asList(projectId), maxIds);
+		assertEquals(Lists.newArrayList(projectId, folder0Id, folder1Id, folder2Id), new ArrayList<>(containers));
+	}
+	
 	@Test
 	public void testGetNodeIdByAlias(){
 		Node node = privateCreateNew("testGetNodeIdByAlias");
@@ -3452,6 +3629,37 @@ public class NodeDAOImplTest {
 		assertEquals("Entity should be its own benefactor",grandparent.getId(), benefactor);
 	}
 	
+	@Test (expected=NotFoundException.class)
+	public void testGetBenefactorAndAclEtagEntityDoesNotExist(){
+		// call under test
+		nodeDao.getBenefactorAndAclEtag("syn9999");
+	}
+	
+	@Test
+	public void testGetBenefactorAndAclEtag(){
+		Node parent = NodeTestUtils.createNew("parent", creatorUserGroupId);
+		parent = nodeDao.createNewNode(parent);
+		toDelete.add(parent.getId());
+		Node child = NodeTestUtils.createNew("child", creatorUserGroupId);
+		child.setParentId(parent.getId());
+		child = nodeDao.createNewNode(child);
+		toDelete.add(child.getId());
+		AccessControlList acl = AccessControlListUtil.createACLToGrantEntityAdminAccess(parent.getId(), adminUser, new Date());
+		// an ACL with the same ID but another type must not be used.
+		accessControlListDAO.create(acl, ObjectType.EVALUATION);
+		accessControlListDAO.create(acl, ObjectType.ENTITY);
+		acl = accessControlListDAO.get(parent.getId(), ObjectType.ENTITY);
+		// call under test
+		IdAndEtag result = nodeDao.getBenefactorAndAclEtag(child.getId());
+		assertEquals(KeyFactory.stringToKey(child.getId()), result.getId());
+		assertEquals(KeyFactory.stringToKey(parent.getId()), result.getBenefactorId());
+		assertEquals(acl.getEtag(), result.getEtag());
+		// an update of the ACL issues a new etag.
+		accessControlListDAO.update(acl, ObjectType.ENTITY);
+		String newEtag = accessControlListDAO.get(parent.getId(), ObjectType.ENTITY).getEtag();
+		assertEquals(newEtag, nodeDao.getBenefactorAndAclEtag(child.getId()).getEtag());
+	}
+	
 	@Test
 	public void testGetBenefactorNotSelf(){
 		// Setup some hierarchy.
@@ -3581,6 +3789,48 @@ public class NodeDAOImplTest {
 		assertEquals(0, results.size());
 	}
 	
+	@Test
+	public void testGetChildrenInIdRange(){
+		Node parent = NodeTestUtils.createNew("parent", creatorUserGroupId);
+		parent = nodeDao.createNewNode(parent);
+		Long parentId = KeyFactory.stringToKey(parent.getId());
+		toDelete.add(parent.getId());
+		AccessControlList acl = AccessControlListUtil.createACLToGrantEntityAdminAccess(""+parentId, adminUser, new Date());
+		accessControlListDAO.create(acl, ObjectType.ENTITY);
+		List<Node> children = new LinkedList<>();
+		for(int i=0; i<3; i++){
+			Node child = NodeTestUtils.createNew("child"+i, creatorUserGroupId);
+			child.setParentId(parent.getId());
+			child = nodeDao.createNewNode(child);
+			toDelete.add(child.getId());
+			children.add(child);
+		}
+		Long firstId = KeyFactory.stringToKey(children.get(0).getId());
+		Long secondId = KeyFactory.stringToKey(children.get(1).getId());
+		Long thirdId = KeyFactory.stringToKey(children.get(2).getId());
+		
+		// call under test
+		List<IdAndEtag> results = nodeDao.getChildrenInIdRange(parentId, secondId, thirdId);
+		assertEquals(2, results.size());
+		assertEquals(new IdAndEtag(secondId, children.get(1).getETag(), parentId), results.get(0));
+		
+		// call under test
+		IdRangeChecksum all = nodeDao.getChildChecksumForIdRange(parentId, 0L, Long.MAX_VALUE);
+		assertEquals(3L, all.getCount());
+		assertEquals(firstId, all.getMinId());
+		assertEquals(thirdId, all.getMaxId());
+		IdRangeChecksum lower = nodeDao.getChildChecksumForIdRange(parentId, 0L, firstId);
+		IdRangeChecksum upper = nodeDao.getChildChecksumForIdRange(parentId, secondId, Long.MAX_VALUE);
+		assertEquals(1L, lower.getCount());
+		assertEquals(2L, upper.getCount());
+		// the checksum of the whole range is the sum of its parts.
+		assertEquals(all.getChecksum(), lower.getChecksum() + upper.getChecksum());
+		
+		// an empty range
+		IdRangeChecksum empty = nodeDao.getChildChecksumForIdRange(parentId, thirdId + 1, Long.MAX_VALUE);
+		assertEquals(new IdRangeChecksum(0L, 0L, null, null), empty);
+	}
+	
 	@Test
 	public void testGetAvailableNodesEmpty(){
 		List<Long> empty = new LinkedList<Long>();
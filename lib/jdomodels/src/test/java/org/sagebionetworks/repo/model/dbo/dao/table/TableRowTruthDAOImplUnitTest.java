@@ -1,10 +1,14 @@
 package org.sagebionetworks.repo.model.dbo.dao.table;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -13,19 +17,29 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Optional;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.sagebionetworks.aws.SynapseS3Client;
+import org.sagebionetworks.repo.model.dao.table.WriterCallback;
 import org.sagebionetworks.repo.model.dbo.DBOBasicDao;
+import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.util.FileProvider;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.collect.Lists;
+
 @RunWith(MockitoJUnitRunner.class)
 public class TableRowTruthDAOImplUnitTest {
 
@@ -43,6 +57,10 @@ public class TableRowTruthDAOImplUnitTest {
 	OutputStream mockOutputStream;
 	@Mock
 	WriterCallback mockCallback;
+	@Mock
+	ObjectListing mockListing;
+	@Captor
+	ArgumentCaptor<ListObjectsRequest> requestCaptor;
 	
 	String s3Bucket;
 	
@@ -51,10 +69,11 @@ public class TableRowTruthDAOImplUnitTest {
 	
 	@Before
 	public void before() throws IOException {
-		when(mockFileProvider.createTempFile(anyString(), anyString())).thenReturn(mockFile);
-		when(mockFileProvider.createFileOutputStream(any(File.class))).thenReturn(mockOutputStream);
+		lenient().when(mockFileProvider.createTempFile(anyString(), anyString())).thenReturn(mockFile);
+		lenient().when(mockFileProvider.createFileOutputStream(any(File.class))).thenReturn(mockOutputStream);
 		s3Bucket = "a.bucket";
 		ReflectionTestUtils.setField(dao, "s3Bucket",s3Bucket);
+		dao.setStackInstancePrefix("dev-456");
 	}
 	
 	@Test
@@ -82,5 +101,120 @@ public class TableRowTruthDAOImplUnitTest {
 		// temp should still be deleted.
 		verify(mockFile).delete();
 	}
-	
+
+	@Test
+	public void testSaveIndexSnapshot() throws IOException {
+		String prefix = "snapshot/dev-456/123/current/";
+		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockListing);
+		when(mockListing.getObjectSummaries()).thenReturn(Lists.newArrayList(summary(prefix + "0000000000000000005.gz"),
+				summary(prefix + "0000000000000000010.gz")));
+		// Call under test
+		dao.saveIndexSnapshot(IdAndVersion.parse("syn123"), 10L, mockCallback);
+		verify(mockCallback).write(mockOutputStream);
+		verify(mockS3Client).putObject(s3Bucket, prefix + "0000000000000000010.gz", mockFile);
+		verify(mockS3Client).listObjects(requestCaptor.capture());
+		assertEquals(s3Bucket, requestCaptor.getValue().getBucketName());
+		assertEquals(prefix, requestCaptor.getValue().getPrefix());
+		// the older snapshot is deleted.
+		verify(mockS3Client).deleteObject(s3Bucket, prefix + "0000000000000000005.gz");
+		verify(mockS3Client, never()).deleteObject(s3Bucket, prefix + "0000000000000000010.gz");
+	}
+
+	@Test
+	public void testSaveIndexSnapshotVersion() throws IOException {
+		String prefix = "snapshot/dev-456/123/4/";
+		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockListing);
+		when(mockListing.getObjectSummaries()).thenReturn(Lists.newArrayList(summary(prefix + "0000000000000000010.gz")));
+		// Call under test
+		dao.saveIndexSnapshot(IdAndVersion.parse("syn123.4"), 10L, mockCallback);
+		verify(mockS3Client).putObject(s3Bucket, prefix + "0000000000000000010.gz", mockFile);
+		verify(mockS3Client).listObjects(requestCaptor.capture());
+		// only the snapshots of the same version are listed.
+		assertEquals(prefix, requestCaptor.getValue().getPrefix());
+		verify(mockS3Client, never()).deleteObject(anyString(), anyString());
+	}
+
+	@Test
+	public void testGetIndexSnapshotChangeNumber() {
+		String prefix = "snapshot/dev-456/123/current/";
+		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockListing);
+		when(mockListing.getObjectSummaries()).thenReturn(Lists.newArrayList(summary(prefix + "0000000000000000005.gz"),
+				summary(prefix + "0000000000000000010.gz"), summary(prefix + "notASnapshot")));
+		IdAndVersion idAndVersion = IdAndVersion.parse("syn123");
+		// Call under test
+		assertEquals(Optional.of(10L), dao.getIndexSnapshotChangeNumber(idAndVersion, 11L));
+		assertEquals(Optional.of(5L), dao.getIndexSnapshotChangeNumber(idAndVersion, 9L));
+		assertFalse(dao.getIndexSnapshotChangeNumber(idAndVersion, 4L).isPresent());
+	}
+
+	@Test
+	public void testGetIndexSnapshotChangeNumberMultiplePages() {
+		String prefix = "snapshot/dev-456/123/current/";
+		ObjectListing secondPage = new ObjectListing();
+		secondPage.getObjectSummaries().add(summary(prefix + "0000000000000000010.gz"));
+		secondPage.setTruncated(false);
+		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockListing, secondPage);
+		when(mockListing.getObjectSummaries()).thenReturn(Lists.newArrayList(summary(prefix + "0000000000000000005.gz")));
+		when(mockListing.isTruncated()).thenReturn(true);
+		// Call under test
+		assertEquals(Optional.of(10L), dao.getIndexSnapshotChangeNumber(IdAndVersion.parse("syn123"), 11L));
+		verify(mockS3Client, times(2)).listObjects(requestCaptor.capture());
+		assertNull(requestCaptor.getAllValues().get(0).getMarker());
+		// the second page starts after the last key of the first page.
+		assertEquals(prefix + "0000000000000000005.gz", requestCaptor.getAllValues().get(1).getMarker());
+	}
+
+	@Test
+	public void testDeleteAllRowDataForTable() {
+		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockListing);
+		when(mockListing.getObjectSummaries()).thenReturn(Lists.newArrayList(
+				summary("snapshot/dev-456/123/current/0000000000000000010.gz"), summary("snapshot/dev-456/123/4/0000000000000000005.gz")));
+		// Call under test
+		dao.deleteAllRowDataForTable("syn123");
+		verify(mockS3Client).listObjects(requestCaptor.capture());
+		// the snapshots of every version are deleted.
+		assertEquals("snapshot/dev-456/123/", requestCaptor.getValue().getPrefix());
+		verify(mockS3Client).deleteObject(s3Bucket, "snapshot/dev-456/123/current/0000000000000000010.gz");
+		verify(mockS3Client).deleteObject(s3Bucket, "snapshot/dev-456/123/4/0000000000000000005.gz");
+	}
+
+	@Test
+	public void testTruncateAllRowData() {
+		when(mockS3Client.listObjects(any(ListObjectsRequest.class))).thenReturn(mockListing);
+		when(mockListing.getObjectSummaries()).thenReturn(Lists.newArrayList(
+				summary("snapshot/dev-456/123/current/0000000000000000010.gz")));
+		// Call under test
+		dao.truncateAllRowData();
+		verify(mockS3Client).listObjects(requestCaptor.capture());
+		// the snapshots of other stack instances are not deleted.
+		assertEquals("snapshot/dev-456/", requestCaptor.getValue().getPrefix());
+		verify(mockS3Client).deleteObject(s3Bucket, "snapshot/dev-456/123/current/0000000000000000010.gz");
+	}
+
+	@Test
+	public void testParseSnapshotChangeNumber() {
+		String prefix = dao.getSnapshotPrefix(IdAndVersion.parse("syn123"));
+		assertEquals("snapshot/dev-456/123/current/", prefix);
+		String key = dao.getSnapshotKey(IdAndVersion.parse("syn123"), 42L);
+		// call under test
+		assertEquals(new Long(42L), TableRowTruthDAOImpl.parseSnapshotChangeNumber(prefix, key));
+		assertNull(TableRowTruthDAOImpl.parseSnapshotChangeNumber(prefix, "snapshot/dev-456/1234/current/0000000000000000042.gz"));
+		assertNull(TableRowTruthDAOImpl.parseSnapshotChangeNumber(prefix, prefix + "foo.gz"));
+	}
+
+	@Test
+	public void testGetSnapshotKeyVersion() {
+		// call under test
+		assertEquals("snapshot/dev-456/123/4/0000000000000000042.gz",
+				dao.getSnapshotKey(IdAndVersion.parse("syn123.4"), 42L));
+		assertEquals("snapshot/dev-456/123/", dao.getSnapshotTablePrefix("syn123"));
+		assertEquals("snapshot/dev-456/", dao.getSnapshotInstancePrefix());
+	}
+
+	private static S3ObjectSummary summary(String key) {
+		S3ObjectSummary summary = new S3ObjectSummary();
+		summary.setKey(key);
+		return summary;
+	}
+
 }
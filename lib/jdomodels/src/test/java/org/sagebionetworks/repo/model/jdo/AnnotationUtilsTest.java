@@ -257,6 +257,29 @@ public class AnnotationUtilsTest {
 		Assertions.assertEquals(additionalAnnotations.getStringAnnotations(), deserialziedAdditionalAnnotations.getStringAnnotations());
 	}
 
+	@Test
+	public void testDecompressedAnnotationsXml() throws IOException {
+		NamedAnnotations namedAnnotations = new NamedAnnotations();
+		namedAnnotations.getAdditionalAnnotations().addAnnotation("key", "value");
+		namedAnnotations.getPrimaryAnnotations().addAnnotation("long", 123L);
+		// annotations written before the binary format.
+		byte[] xmlBytes = AnnotationUtils.compressAnnotationsXml(namedAnnotations);
+		assertTrue(!AnnotationsBinaryCodec.isBinary(xmlBytes));
+		// call under test
+		NamedAnnotations clone = AnnotationUtils.decompressedAnnotations(xmlBytes);
+		Assertions.assertEquals(namedAnnotations, clone);
+	}
+
+	@Test
+	public void testCompressAnnotationsBinary() throws IOException {
+		NamedAnnotations namedAnnotations = new NamedAnnotations();
+		namedAnnotations.getAdditionalAnnotations().addAnnotation("key", "value");
+		// call under test
+		byte[] bytes = AnnotationUtils.compressAnnotations(namedAnnotations);
+		assertTrue(AnnotationsBinaryCodec.isBinary(bytes));
+		Assertions.assertEquals(namedAnnotations, AnnotationUtils.decompressedAnnotations(bytes));
+	}
+
 	/**
 	 * See PLFM_4222 & PLFM-4184
 	 */
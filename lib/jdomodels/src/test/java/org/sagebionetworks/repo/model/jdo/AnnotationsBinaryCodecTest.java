@@ -0,0 +1,141 @@
+package org.sagebionetworks.repo.model.jdo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sagebionetworks.repo.model.AnnotationNameSpace;
+import org.sagebionetworks.repo.model.Annotations;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.util.RandomAnnotationsUtil;
+
+import com.google.common.collect.Lists;
+
+public class AnnotationsBinaryCodecTest {
+
+	NamedAnnotations named;
+
+	@BeforeEach
+	public void before() throws IOException {
+		named = new NamedAnnotations();
+		Annotations primary = named.getPrimaryAnnotations();
+		primary.addAnnotation("name", "repeated");
+		primary.addAnnotation("long", -5L);
+		primary.addAnnotation("long", Long.MAX_VALUE);
+		Annotations additional = named.getAdditionalAnnotations();
+		additional.addAnnotation("string", "repeated");
+		additional.addAnnotation("string", "other");
+		additional.addAnnotation("double", 1.5);
+		additional.addAnnotation("double", Double.NaN);
+		additional.addAnnotation("date", new Date(123L));
+		additional.addAnnotation("blob", "some bytes".getBytes("UTF-8"));
+		// null values, null lists and empty lists must survive.
+		additional.getStringAnnotations().put("nullValue", Lists.newArrayList("one", null));
+		additional.getLongAnnotations().put("nullLong", Lists.newArrayList((Long) null));
+		additional.getDoubleAnnotations().put("nullList", null);
+		additional.getDateAnnotations().put("emptyList", new ArrayList<>());
+		additional.getBlobAnnotations().put("nullBlob", Lists.newArrayList((byte[]) null));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		// call under test
+		byte[] bytes = AnnotationsBinaryCodec.encode(named);
+		assertTrue(AnnotationsBinaryCodec.isBinary(bytes));
+		NamedAnnotations clone = AnnotationsBinaryCodec.decode(bytes);
+		assertEquals(named, clone);
+		assertTrue(clone.getAdditionalAnnotations().getDoubleAnnotations().containsKey("nullList"));
+		assertNull(clone.getAdditionalAnnotations().getDoubleAnnotations().get("nullList"));
+		assertEquals(Arrays.asList((Long) null), clone.getAdditionalAnnotations().getLongAnnotations().get("nullLong"));
+		assertEquals(Arrays.asList((byte[]) null), clone.getAdditionalAnnotations().getBlobAnnotations().get("nullBlob"));
+	}
+
+	@Test
+	public void testRoundTripRandom() throws IOException {
+		named = new NamedAnnotations();
+		named.put(AnnotationNameSpace.ADDITIONAL, RandomAnnotationsUtil.generateRandom(123L, 50));
+		// call under test
+		NamedAnnotations clone = AnnotationsBinaryCodec.decode(AnnotationsBinaryCodec.encode(named));
+		assertEquals(named, clone);
+	}
+
+	@Test
+	public void testRoundTripEmpty() throws IOException {
+		named = new NamedAnnotations();
+		// call under test
+		NamedAnnotations clone = AnnotationsBinaryCodec.decode(AnnotationsBinaryCodec.encode(named));
+		assertTrue(clone.isEmpty());
+	}
+
+	@Test
+	public void testDictionaryEncoding() throws IOException {
+		named = new NamedAnnotations();
+		for (int i = 0; i < 100; i++) {
+			named.getAdditionalAnnotations().addAnnotation("key", "a value repeated many times");
+		}
+		// call under test
+		byte[] bytes = AnnotationsBinaryCodec.encode(named);
+		// each repeated value is a single byte reference.
+		assertTrue(bytes.length < 200);
+		assertEquals(named, AnnotationsBinaryCodec.decode(bytes));
+	}
+
+	@Test
+	public void testDecodeInternsKeys() throws IOException {
+		byte[] bytes = AnnotationsBinaryCodec.encode(named);
+		// call under test
+		NamedAnnotations one = AnnotationsBinaryCodec.decode(bytes);
+		NamedAnnotations two = AnnotationsBinaryCodec.decode(bytes);
+		String keyOne = one.getPrimaryAnnotations().getStringAnnotations().keySet().iterator().next();
+		String keyTwo = two.getPrimaryAnnotations().getStringAnnotations().keySet().iterator().next();
+		assertSame(keyOne, keyTwo);
+	}
+
+	@Test
+	public void testIsBinary() throws IOException {
+		assertFalse(AnnotationsBinaryCodec.isBinary(null));
+		assertFalse(AnnotationsBinaryCodec.isBinary(new byte[] { 'N' }));
+		assertFalse(AnnotationsBinaryCodec.isBinary(AnnotationUtils.compressAnnotationsXml(named)));
+		assertTrue(AnnotationsBinaryCodec.isBinary(AnnotationsBinaryCodec.MAGIC));
+	}
+
+	@Test
+	public void testDecodeUnknownVersion() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(AnnotationsBinaryCodec.MAGIC);
+		AnnotationsBinaryCodec.writeVarint(out, AnnotationsBinaryCodec.FORMAT_VERSION + 1);
+		assertThrows(IllegalArgumentException.class, () -> {
+			// call under test
+			AnnotationsBinaryCodec.decode(out.toByteArray());
+		});
+	}
+
+	@Test
+	public void testDecodeTruncated() throws IOException {
+		byte[] bytes = AnnotationsBinaryCodec.encode(named);
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+		assertThrows(IOException.class, () -> {
+			// call under test
+			AnnotationsBinaryCodec.decode(truncated);
+		});
+	}
+
+	@Test
+	public void testZigZag() {
+		long[] values = new long[] { 0L, 1L, -1L, Long.MAX_VALUE, Long.MIN_VALUE };
+		for (long value : values) {
+			assertEquals(value, AnnotationsBinaryCodec.unZigZag(AnnotationsBinaryCodec.zigZag(value)));
+		}
+	}
+}
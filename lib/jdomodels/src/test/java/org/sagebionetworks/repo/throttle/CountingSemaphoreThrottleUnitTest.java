@@ -1,11 +1,20 @@
 package org.sagebionetworks.repo.throttle;
 
 import static org.junit.Assert.assertEquals;
-import static org.mockito.Matchers.any;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.Signature;
 import org.junit.Before;
@@ -13,75 +22,236 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.junit.MockitoJUnitRunner;
 import org.sagebionetworks.common.util.Clock;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CountingSemaphoreThrottleUnitTest {
-	
+
 	@Mock
 	Clock mockClock;
 	@Mock
 	ProceedingJoinPoint mockPoint;
 	@Mock
 	Signature mockSignature;
-	
-	String result;
-	
+	@Mock
+	ProceedingJoinPoint mockReleasePoint;
+	@Mock
+	Signature mockReleaseSignature;
+
+	String key;
+	String token;
+	String heldToken;
+	long timeoutSec;
+
 	@InjectMocks
 	CountingSemaphoreThrottle throttle;
-	
+
 	@Before
 	public void before() throws Throwable {
-		when(mockClock.currentTimeMillis()).thenReturn(1L, 3L, 9L, 81L);
-		result = "foo";
+		key = "someKey";
+		token = "someToken";
+		heldToken = "heldToken";
+		timeoutSec = 30L;
 		when(mockPoint.getSignature()).thenReturn(mockSignature);
+		throttle.setFailedAcquireWaitMs(10L);
 	}
-	
-	@Test
-	public void testThrottle() throws Throwable {
-		when(mockPoint.proceed()).thenReturn(result);
-		// call under test
-		Object back = throttle.profile(mockPoint);
-		assertEquals(result, back);
-		verify(mockClock).sleep((3-1));
-		// one more time
-		throttle.profile(mockPoint);
-		verify(mockClock).sleep((81-9));
+
+	/**
+	 * Setup a call to releaseLock().
+	 */
+	void setupRelease() throws Throwable {
+		when(mockReleasePoint.getSignature()).thenReturn(mockReleaseSignature);
+		when(mockReleaseSignature.getName()).thenReturn(CountingSemaphoreThrottle.RELEASE_LOCK);
+		when(mockReleasePoint.getArgs()).thenReturn(new Object[] { key, token });
 	}
-	
+
 	@Test
-	public void testThrottleZeroElapse() throws Throwable {
-		when(mockPoint.proceed()).thenReturn(result);
-		// elapse should be zero
-		when(mockClock.currentTimeMillis()).thenReturn(1L, 1L);
+	public void testAcquireLock() throws Throwable {
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
+		when(mockPoint.proceed()).thenReturn(token);
 		// call under test
 		Object back = throttle.profile(mockPoint);
-		assertEquals(result, back);
-		// with zero elapse so sleep.
-		verify(mockClock, never()).sleep(any(Long.class));
+		assertEquals(token, back);
+		// a successful call is never delayed.
+		verify(mockClock, never()).sleep(anyLong());
+		verify(mockPoint, times(1)).proceed();
+		assertEquals(1L, throttle.getCounter());
+		assertEquals(0L, throttle.getFailedLockAttemptCount());
+		assertEquals(1L, throttle.getKeyMetrics(key).getAcquired());
 	}
-	
+
 	@Test
-	public void testThrottleNullResultNotAqcuire() throws Throwable {
+	public void testFailedAcquireLockHeldRemotely() throws Throwable {
+		throttle.setFailedAcquireWaitMs(60000L);
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
 		when(mockPoint.proceed()).thenReturn(null);
-		when(mockSignature.getName()).thenReturn("refreshLockTimeout");
 		// call under test
 		Object back = throttle.profile(mockPoint);
 		assertEquals(null, back);
-		// Should sleep for only the elapse as not an acquire lock call.
-		verify(mockClock).sleep((3-1));
+		// no local release can arrive so there is no wait and no second attempt.
+		verify(mockPoint, times(1)).proceed();
+		verify(mockClock, never()).currentTimeMillis();
+		assertEquals(1L, throttle.getFailedLockAttemptCount());
+		assertEquals(1L, throttle.getKeyMetrics(key).getFailedAcquireAttempts());
+		assertEquals(0L, throttle.getKeyMetrics(key).getWaitTimeMs());
 	}
-	
+
 	@Test
-	public void testThrottleFailedAcquireLock() throws Throwable {
-		when(mockPoint.proceed()).thenReturn(null);
-		when(mockSignature.getName()).thenReturn("attemptToAcquireLock");
+	public void testFailedAcquireLockHeldLocallyNoRelease() throws Throwable {
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
+		when(mockPoint.proceed()).thenReturn(heldToken, null);
+		when(mockClock.currentTimeMillis()).thenReturn(0L, 10L);
+		throttle.profile(mockPoint);
 		// call under test
 		Object back = throttle.profile(mockPoint);
 		assertEquals(null, back);
-		// Should sleep for longer as this was a failure.
-		verify(mockClock).sleep((3-1)*10);
+		// the wait timed out so there is no second attempt.
+		verify(mockPoint, times(2)).proceed();
+		verify(mockClock, never()).sleep(anyLong());
+		assertEquals(1L, throttle.getFailedLockAttemptCount());
+		assertEquals(10L, throttle.getKeyMetrics(key).getWaitTimeMs());
+	}
+
+	@Test
+	public void testFailedAcquireLockInterrupted() throws Throwable {
+		throttle.setFailedAcquireWaitMs(60000L);
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
+		when(mockPoint.proceed()).thenReturn(heldToken, null);
+		throttle.profile(mockPoint);
+		Thread.currentThread().interrupt();
+		try {
+			// call under test
+			Object back = throttle.profile(mockPoint);
+			assertNull(back);
+			verify(mockPoint, times(2)).proceed();
+		} finally {
+			// the interrupt must be restored for the caller.
+			assertTrue(Thread.interrupted());
+		}
+	}
+
+	@Test
+	public void testFailedAcquireLockWokenByRelease() throws Throwable {
+		throttle.setFailedAcquireWaitMs(60000L);
+		setupRelease();
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
+		final CountDownLatch firstAttempt = new CountDownLatch(1);
+		when(mockPoint.proceed()).thenReturn(heldToken).then((invocation) -> {
+			firstAttempt.countDown();
+			return null;
+		}).thenReturn(token);
+		// another thread of this JVM holds a lock on the key.
+		throttle.profile(mockPoint);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// call under test
+			Future<Object> future = executor.submit(() -> {
+				try {
+					return throttle.profile(mockPoint);
+				} catch (Throwable e) {
+					throw new RuntimeException(e);
+				}
+			});
+			firstAttempt.await();
+			// release until the waiting thread wakes.
+			while (!future.isDone()) {
+				throttle.profile(mockReleasePoint);
+				Thread.sleep(10);
+			}
+			// the waiting thread should get the lock after the release.
+			assertEquals(token, future.get());
+		} finally {
+			executor.shutdownNow();
+		}
+		verify(mockPoint, times(3)).proceed();
+		assertEquals(1L, throttle.getFailedLockAttemptCount());
+		assertEquals(2L, throttle.getKeyMetrics(key).getAcquired());
+		assertTrue(throttle.getKeyMetrics(key).getReleased() > 0);
+	}
+
+	@Test
+	public void testRefreshLockTimeoutAlwaysRenews() throws Throwable {
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK,
+				CountingSemaphoreThrottle.REFRESH_LOCK_TIMEOUT, CountingSemaphoreThrottle.REFRESH_LOCK_TIMEOUT);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 },
+				new Object[] { key, token, timeoutSec }, new Object[] { key, token, timeoutSec });
+		when(mockPoint.proceed()).thenReturn(token, null);
+		throttle.profile(mockPoint);
+		// call under test
+		throttle.profile(mockPoint);
+		throttle.profile(mockPoint);
+		// each renewal goes to the database so a lost lock is detected.
+		verify(mockPoint, times(3)).proceed();
+		assertEquals(2L, throttle.getKeyMetrics(key).getRenewals());
+	}
+
+	@Test
+	public void testRefreshLockTimeoutUnknownLease() throws Throwable {
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.REFRESH_LOCK_TIMEOUT);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, token, timeoutSec });
+		// call under test
+		throttle.profile(mockPoint);
+		// a lease not acquired by this JVM is always renewed.
+		verify(mockPoint).proceed();
+		assertEquals(1L, throttle.getKeyMetrics(key).getRenewals());
+	}
+
+	@Test
+	public void testReleaseLockForgetsLocalHolder() throws Throwable {
+		throttle.setFailedAcquireWaitMs(60000L);
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
+		when(mockPoint.proceed()).thenReturn(token, null);
+		setupRelease();
+		throttle.profile(mockPoint);
+		// call under test
+		throttle.profile(mockReleasePoint);
+		verify(mockReleasePoint).proceed();
+		// with no local holder a failed attempt does not wait.
+		assertNull(throttle.profile(mockPoint));
+		verify(mockClock, never()).currentTimeMillis();
+	}
+
+	@Test
+	public void testReleaseAllLocksForgetsLocalHolders() throws Throwable {
+		throttle.setFailedAcquireWaitMs(60000L);
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK,
+				CountingSemaphoreThrottle.RELEASE_ALL_LOCKS, CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
+		when(mockPoint.proceed()).thenReturn(token, null, null);
+		throttle.profile(mockPoint);
+		// call under test
+		throttle.profile(mockPoint);
+		assertNull(throttle.profile(mockPoint));
+		verify(mockPoint, times(3)).proceed();
+		verify(mockClock, never()).currentTimeMillis();
+	}
+
+	@Test
+	public void testGetAllKeyMetrics() throws Throwable {
+		when(mockSignature.getName()).thenReturn(CountingSemaphoreThrottle.ATTEMPT_TO_ACQUIRE_LOCK);
+		when(mockPoint.getArgs()).thenReturn(new Object[] { key, timeoutSec, 1 });
+		when(mockPoint.proceed()).thenReturn(token);
+		throttle.profile(mockPoint);
+		// call under test
+		Map<String, CountingSemaphoreThrottle.KeyMetrics> metrics = throttle.getAllKeyMetrics();
+		assertEquals(1, metrics.size());
+		assertEquals(1L, metrics.get(key).getAcquired());
+	}
+
+	@Test
+	public void testOtherMethod() throws Throwable {
+		when(mockSignature.getName()).thenReturn("releaseAllLocks");
+		// call under test
+		throttle.profile(mockPoint);
+		verify(mockPoint).proceed();
+		verify(mockClock, never()).sleep(anyLong());
 	}
 
 }
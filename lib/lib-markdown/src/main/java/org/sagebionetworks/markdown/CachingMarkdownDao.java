@@ -0,0 +1,150 @@
+package org.sagebionetworks.markdown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.client.ClientProtocolException;
+import org.json.JSONException;
+
+/**
+ * A MarkdownDao that keeps the most recently converted documents in memory, so
+ * the same document is only sent to the Markdown Server once. Documents are
+ * keyed by a hash of their content and output type, so the cache holds the
+ * converted results but not the raw markdown.
+ * <p>
+ * The least recently used results are removed once the total size of all
+ * results exceeds the limit.
+ */
+public class CachingMarkdownDao implements MarkdownDao {
+
+	public static final long DEFAULT_MAX_CACHED_CHARACTERS = 10 * 1000 * 1000;
+
+	private final MarkdownDao delegate;
+	private final long maxCachedCharacters;
+	// access ordered so the first entry is the least recently used.
+	private final LinkedHashMap<String, String> cache = new LinkedHashMap<String, String>(16, 0.75f, true);
+	private long cachedCharacters = 0L;
+	private long hitCount = 0L;
+	private long missCount = 0L;
+
+	/**
+	 * 
+	 * @param delegate
+	 *            Converts the documents that are not cached.
+	 * @param maxCachedCharacters
+	 *            The maximum total length of all cached results.
+	 */
+	public CachingMarkdownDao(MarkdownDao delegate, long maxCachedCharacters) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("delegate cannot be null");
+		}
+		this.delegate = delegate;
+		this.maxCachedCharacters = maxCachedCharacters;
+	}
+
+	public CachingMarkdownDao(MarkdownDao delegate) {
+		this(delegate, DEFAULT_MAX_CACHED_CHARACTERS);
+	}
+
+	@Override
+	public String convertMarkdown(String rawMarkdown, String outputType)
+			throws ClientProtocolException, IOException, JSONException, MarkdownClientException {
+		if (rawMarkdown == null) {
+			throw new IllegalArgumentException("rawMarkdown cannot be null");
+		}
+		String key = createKey(rawMarkdown, outputType);
+		synchronized (this) {
+			String result = cache.get(key);
+			if (result != null) {
+				hitCount++;
+				return result;
+			}
+			missCount++;
+		}
+		// The conversion is not done while holding the lock.
+		String result = delegate.convertMarkdown(rawMarkdown, outputType);
+		if (result != null) {
+			put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Add a result to the cache, removing the least recently used results as
+	 * needed.
+	 * 
+	 * @param key
+	 * @param result
+	 */
+	private synchronized void put(String key, String result) {
+		if (result.length() > maxCachedCharacters) {
+			// too large to cache.
+			return;
+		}
+		String previous = cache.put(key, result);
+		if (previous != null) {
+			cachedCharacters -= previous.length();
+		}
+		cachedCharacters += result.length();
+		Iterator<Map.Entry<String, String>> it = cache.entrySet().iterator();
+		while (cachedCharacters > maxCachedCharacters && it.hasNext()) {
+			cachedCharacters -= it.next().getValue().length();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Create the cache key of a document from the SHA-256 of its output type
+	 * and content.
+	 * 
+	 * @param rawMarkdown
+	 * @param outputType
+	 * @return
+	 */
+	static String createKey(String rawMarkdown, String outputType) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			if (outputType != null) {
+				digest.update(outputType.getBytes(StandardCharsets.UTF_8));
+			}
+			// separates the output type from the content.
+			digest.update((byte) 0);
+			digest.update(rawMarkdown.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The number of results currently cached.
+	 * 
+	 * @return
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * The total length of all cached results.
+	 * 
+	 * @return
+	 */
+	public synchronized long getCachedCharacters() {
+		return cachedCharacters;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+}
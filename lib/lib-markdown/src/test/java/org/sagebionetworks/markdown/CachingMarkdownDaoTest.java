@@ -0,0 +1,93 @@
+package org.sagebionetworks.markdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class CachingMarkdownDaoTest {
+	@Mock
+	MarkdownDao mockDelegate;
+
+	private CachingMarkdownDao dao;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		dao = new CachingMarkdownDao(mockDelegate, 10L);
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testConvertMarkdownWithNullMarkdown() throws Exception {
+		dao.convertMarkdown(null, null);
+	}
+
+	@Test
+	public void testConvertMarkdownCached() throws Exception {
+		when(mockDelegate.convertMarkdown("# a", null)).thenReturn("<h1>a</h1>");
+		// call under test
+		assertEquals("<h1>a</h1>", dao.convertMarkdown("# a", null));
+		assertEquals("<h1>a</h1>", dao.convertMarkdown("# a", null));
+		// the server is only called once.
+		verify(mockDelegate, times(1)).convertMarkdown("# a", null);
+		assertEquals(1, dao.size());
+		assertEquals(1L, dao.getHitCount());
+		assertEquals(1L, dao.getMissCount());
+	}
+
+	@Test
+	public void testConvertMarkdownOutputType() throws Exception {
+		when(mockDelegate.convertMarkdown("# a", null)).thenReturn("<h1>a</h1>");
+		when(mockDelegate.convertMarkdown("# a", "plain")).thenReturn("a");
+		// call under test
+		assertEquals("<h1>a</h1>", dao.convertMarkdown("# a", null));
+		assertEquals("a", dao.convertMarkdown("# a", "plain"));
+		assertEquals(2, dao.size());
+	}
+
+	@Test
+	public void testConvertMarkdownEvictLeastRecentlyUsed() throws Exception {
+		when(mockDelegate.convertMarkdown("a", null)).thenReturn("12345");
+		when(mockDelegate.convertMarkdown("b", null)).thenReturn("12345");
+		when(mockDelegate.convertMarkdown("c", null)).thenReturn("12345");
+		dao.convertMarkdown("a", null);
+		dao.convertMarkdown("b", null);
+		// a is now more recent than b.
+		dao.convertMarkdown("a", null);
+		// call under test
+		dao.convertMarkdown("c", null);
+		assertEquals(2, dao.size());
+		assertEquals(10L, dao.getCachedCharacters());
+		dao.convertMarkdown("a", null);
+		verify(mockDelegate, times(1)).convertMarkdown("a", null);
+		dao.convertMarkdown("b", null);
+		verify(mockDelegate, times(2)).convertMarkdown("b", null);
+	}
+
+	@Test
+	public void testConvertMarkdownTooLarge() throws Exception {
+		when(mockDelegate.convertMarkdown("a", null)).thenReturn("12345678901");
+		// call under test
+		assertEquals("12345678901", dao.convertMarkdown("a", null));
+		assertEquals(0, dao.size());
+	}
+
+	@Test (expected = MarkdownClientException.class)
+	public void testConvertMarkdownFailure() throws Exception {
+		when(mockDelegate.convertMarkdown("a", null)).thenThrow(new MarkdownClientException(500, ""));
+		dao.convertMarkdown("a", null);
+	}
+
+	@Test
+	public void testCreateKey() {
+		assertEquals(CachingMarkdownDao.createKey("a", null), CachingMarkdownDao.createKey("a", null));
+		assertNotEquals(CachingMarkdownDao.createKey("a", null), CachingMarkdownDao.createKey("a", "html"));
+		assertNotEquals(CachingMarkdownDao.createKey("ab", null), CachingMarkdownDao.createKey("b", "a"));
+	}
+}
@@ -0,0 +1,202 @@
+package org.sagebionetworks.table.cluster;
+
+import static org.sagebionetworks.repo.model.table.TableConstants.ROW_ETAG;
+import static org.sagebionetworks.repo.model.table.TableConstants.ROW_ID;
+import static org.sagebionetworks.repo.model.table.TableConstants.ROW_VERSION;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.sagebionetworks.table.cluster.utils.TableModelUtils;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * A reusable, column oriented buffer for a batch of query results.
+ * <p>
+ * Row IDs and versions are held in primitive arrays and the values of each
+ * select column are held in their own array, so streaming a large result does
+ * not allocate a Row and a List of values for every row. The same batch is
+ * cleared and refilled for each batch of results, so a handler must not keep a
+ * reference to it after {@link ColumnarRowBatchHandler#nextBatch(ColumnarRowBatch)}
+ * returns.
+ *
+ */
+public class ColumnarRowBatch {
+
+	private final ColumnTypeInfo[] columnTypes;
+	private final boolean includesRowIdAndVersion;
+	private final boolean includesEtag;
+	private final int capacity;
+	private final long[] rowIds;
+	private final long[] rowVersions;
+	private final String[] etags;
+	private final String[][] columns;
+	private int size;
+
+	/**
+	 *
+	 * @param columnTypes The type of each select column.
+	 * @param includesRowIdAndVersion Does the result include ROW_ID and ROW_VERSION?
+	 * @param includesEtag Does the result include ROW_ETAG?
+	 * @param capacity The maximum number of rows held by this batch.
+	 */
+	public ColumnarRowBatch(ColumnTypeInfo[] columnTypes, boolean includesRowIdAndVersion, boolean includesEtag,
+			int capacity) {
+		ValidateArgument.required(columnTypes, "columnTypes");
+		ValidateArgument.requirement(capacity > 0, "Capacity must be greater than zero");
+		this.columnTypes = columnTypes;
+		this.includesRowIdAndVersion = includesRowIdAndVersion;
+		this.includesEtag = includesRowIdAndVersion && includesEtag;
+		this.capacity = capacity;
+		this.rowIds = includesRowIdAndVersion ? new long[capacity] : null;
+		this.rowVersions = includesRowIdAndVersion ? new long[capacity] : null;
+		this.etags = this.includesEtag ? new String[capacity] : null;
+		this.columns = new String[columnTypes.length][capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Read the current row of the given ResultSet into the next free row of
+	 * this batch.
+	 *
+	 * @param rs
+	 * @throws SQLException
+	 */
+	public void readRow(ResultSet rs) throws SQLException {
+		if (isFull()) {
+			throw new IllegalStateException("Batch is full");
+		}
+		if (includesRowIdAndVersion) {
+			rowIds[size] = rs.getLong(ROW_ID);
+			rowVersions[size] = rs.getLong(ROW_VERSION);
+			if (includesEtag) {
+				etags[size] = rs.getString(ROW_ETAG);
+			}
+		}
+		for (int i = 0; i < columnTypes.length; i++) {
+			columns[i][size] = TableModelUtils.translateRowValueFromQuery(rs.getString(i + 1), columnTypes[i]);
+		}
+		size++;
+	}
+
+	/**
+	 * Write a single row into the given array using the same layout as
+	 * {@link TableModelUtils#writeRowToStringArray(org.sagebionetworks.repo.model.table.Row, boolean, boolean)}.
+	 *
+	 * @param row
+	 * @param includeRowIdAndVersion
+	 * @param includeRowEtag
+	 * @param buffer Must have a length of {@link #getRowArrayLength(boolean, boolean)}
+	 */
+	public void writeRowToArray(int row, boolean includeRowIdAndVersion, boolean includeRowEtag, String[] buffer) {
+		checkRow(row);
+		int index = 0;
+		if (includeRowIdAndVersion) {
+			buffer[index++] = Long.toString(getRowId(row));
+			buffer[index++] = Long.toString(getRowVersion(row));
+			if (includeRowEtag) {
+				buffer[index++] = getEtag(row);
+			}
+		}
+		for (int i = 0; i < columns.length; i++) {
+			buffer[index++] = columns[i][row];
+		}
+	}
+
+	/**
+	 * The length of the array needed by
+	 * {@link #writeRowToArray(int, boolean, boolean, String[])}.
+	 *
+	 * @param includeRowIdAndVersion
+	 * @param includeRowEtag
+	 * @return
+	 */
+	public int getRowArrayLength(boolean includeRowIdAndVersion, boolean includeRowEtag) {
+		int length = columns.length;
+		if (includeRowIdAndVersion) {
+			length += 2;
+			if (includeRowEtag) {
+				length++;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Clear this batch so it can be refilled.
+	 */
+	public void clear() {
+		for (String[] column : columns) {
+			Arrays.fill(column, 0, size, null);
+		}
+		if (etags != null) {
+			Arrays.fill(etags, 0, size, null);
+		}
+		size = 0;
+	}
+
+	public boolean isFull() {
+		return size == capacity;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * The number of rows currently in this batch.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public long getRowId(int row) {
+		checkRowIdAndVersion(row);
+		return rowIds[row];
+	}
+
+	public long getRowVersion(int row) {
+		checkRowIdAndVersion(row);
+		return rowVersions[row];
+	}
+
+	public String getEtag(int row) {
+		checkRow(row);
+		if (!includesEtag) {
+			throw new IllegalStateException("The results do not include an etag");
+		}
+		return etags[row];
+	}
+
+	/**
+	 * Get the value of a select column for a single row.
+	 *
+	 * @param row
+	 * @param column
+	 * @return
+	 */
+	public String getValue(int row, int column) {
+		checkRow(row);
+		return columns[column][row];
+	}
+
+	private void checkRowIdAndVersion(int row) {
+		checkRow(row);
+		if (!includesRowIdAndVersion) {
+			throw new IllegalStateException("The results do not include row IDs and versions");
+		}
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + " size: " + size);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package org.sagebionetworks.table.cluster;
+
+/**
+ * Abstraction for a consumer of query results that are streamed in column
+ * oriented batches.
+ *
+ */
+public interface ColumnarRowBatchHandler {
+
+	/**
+	 * Called for each batch of results. The batch is reused for the next batch
+	 * so it must not be kept after this call returns.
+	 * 
+	 * @param batch
+	 */
+	public void nextBatch(ColumnarRowBatch batch);
+}
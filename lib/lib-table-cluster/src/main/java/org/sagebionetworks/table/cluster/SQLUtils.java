@@ -17,6 +17,7 @@ import static org.sagebionetworks.repo.model.table.TableConstants.ROW_ETAG;
 import static org.sagebionetworks.repo.model.table.TableConstants.ROW_ID;
 import static org.sagebionetworks.repo.model.table.TableConstants.ROW_VERSION;
 import static org.sagebionetworks.repo.model.table.TableConstants.SCHEMA_HASH;
+import static org.sagebionetworks.repo.model.table.TableConstants.SNAPSHOT_VERSION;
 import static org.sagebionetworks.repo.model.table.TableConstants.SINGLE_KEY;
 import static org.sagebionetworks.table.cluster.utils.ColumnConstants.isTableTooLargeForFourByteUtf8;
 
@@ -140,7 +141,8 @@ public class SQLUtils {
 		case STATUS:
 			columnDefinitions.append("single_key ENUM('1') NOT NULL PRIMARY KEY, ");
 			columnDefinitions.append(ROW_VERSION).append(" bigint(20) NOT NULL,");
-			columnDefinitions.append(SCHEMA_HASH).append(" CHAR(35) NOT NULL");
+			columnDefinitions.append(SCHEMA_HASH).append(" CHAR(35) NOT NULL,");
+			columnDefinitions.append(SNAPSHOT_VERSION).append(" bigint(20) NOT NULL DEFAULT -1");
 			break;
 		case FILE_IDS:
 			columnDefinitions.append(FILE_ID).append(" bigint(20) NOT NULL PRIMARY KEY");
@@ -438,6 +440,24 @@ public class SQLUtils {
 		builder.append(" ) VALUES ('1', ?, ? ) ON DUPLICATE KEY UPDATE "+ROW_VERSION+" = ?, "+SCHEMA_HASH+" = ? ");
 		return builder.toString();
 	}
+	
+	public static String buildCreateOrUpdateStatusSnapshotVersionSQL(IdAndVersion tableId){
+		if (tableId == null)
+			throw new IllegalArgumentException("TableID cannot be null");
+		StringBuilder builder = new StringBuilder();
+		builder.append("INSERT INTO ");
+		builder.append(getTableNameForId(tableId, TableType.STATUS));
+		builder.append(" ( ");
+		builder.append(SINGLE_KEY);
+		builder.append(",");
+		builder.append(ROW_VERSION);
+		builder.append(",");
+		builder.append(SCHEMA_HASH);
+		builder.append(",");
+		builder.append(SNAPSHOT_VERSION);
+		builder.append(" ) VALUES ('1', -1, 'DEFAULT', ? ) ON DUPLICATE KEY UPDATE "+SNAPSHOT_VERSION+" = ? ");
+		return builder.toString();
+	}
 
 	/**
 	 * Build the delete statement for inserting rows into a table.
@@ -562,6 +582,15 @@ public class SQLUtils {
 		return "SELECT " + SCHEMA_HASH + " FROM " + getTableNameForId(tableId, TableType.STATUS);
 	}
 	
+	/**
+	 * Create SQL used to get the change number of the last snapshot of a table.
+	 * @param tableId
+	 * @return
+	 */
+	public static String getStatusSnapshotVersionSQL(IdAndVersion tableId) {
+		return "SELECT " + SNAPSHOT_VERSION + " FROM " + getTableNameForId(tableId, TableType.STATUS);
+	}
+	
 	/**
 	 * Insert ignore file handle ids into a table's secondary file index.
 	 * @param tableId
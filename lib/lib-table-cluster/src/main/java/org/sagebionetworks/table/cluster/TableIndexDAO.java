@@ -6,6 +6,7 @@ import java.util.Set;
 
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.model.IdAndEtag;
+import org.sagebionetworks.repo.model.IdRangeChecksum;
 import org.sagebionetworks.repo.model.dao.table.RowHandler;
 import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.report.SynapseStorageProjectStats;
@@ -83,6 +84,18 @@ public interface TableIndexDAO {
 	 */
 	public boolean queryAsStream(ProgressCallback callback, SqlQuery query, RowHandler handler);
 	
+	/**
+	 * Stream over query results in column oriented batches. A single batch
+	 * buffer is reused for the entire query, so the memory used is bound by the
+	 * batch size rather than the size of the results.
+	 * 
+	 * @param callback
+	 * @param query
+	 * @param batchSize The maximum number of rows passed to the handler at a time.
+	 * @param handler
+	 */
+	public void queryAsColumnarBatches(ProgressCallback callback, SqlQuery query, int batchSize, ColumnarRowBatchHandler handler);
+	
 	/**
 	 * Get the row count for this table.
 	 * 
@@ -108,6 +121,23 @@ public interface TableIndexDAO {
 	 */
 	public void setMaxCurrentCompleteVersionForTable(IdAndVersion tableId, Long highestVersion);
 	
+	/**
+	 * Get the change number of the last snapshot saved for this table's index.
+	 * 
+	 * @param tableId
+	 * @return The change number of the last snapshot. If there is no snapshot or the
+	 *         table does not exist then -1L.
+	 */
+	public long getSnapshotVersionForTable(IdAndVersion tableId);
+	
+	/**
+	 * Set the change number of the last snapshot saved for this table's index.
+	 * 
+	 * @param tableId
+	 * @param snapshotVersion
+	 */
+	public void setSnapshotVersionForTable(IdAndVersion tableId, long snapshotVersion);
+	
 	/**
 	 * Set the MD5 hex of the table's current schema.
 	 * 
@@ -395,6 +425,28 @@ public interface TableIndexDAO {
 	 * @return
 	 */
 	public List<IdAndEtag> getEntityChildren(Long parentId);
+	
+	/**
+	 * Get the checksum of the children of the given parent with an ID within the
+	 * given range.
+	 * 
+	 * @param parentId
+	 * @param minIdInclusive
+	 * @param maxIdInclusive
+	 * @return
+	 */
+	public IdRangeChecksum getEntityChildChecksumForIdRange(Long parentId, long minIdInclusive, long maxIdInclusive);
+	
+	/**
+	 * Get the Id and Etag of the children of the given parent with an ID within
+	 * the given range.
+	 * 
+	 * @param parentId
+	 * @param minIdInclusive
+	 * @param maxIdInclusive
+	 * @return
+	 */
+	public List<IdAndEtag> getEntityChildrenInIdRange(Long parentId, long minIdInclusive, long maxIdInclusive);
 
 	/**
 	 * Get the rowIds for the given query.
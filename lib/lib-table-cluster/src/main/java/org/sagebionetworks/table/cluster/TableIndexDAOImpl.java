@@ -28,7 +28,9 @@ import static org.sagebionetworks.repo.model.table.TableConstants.PARENT_ID_PARA
 import static org.sagebionetworks.repo.model.table.TableConstants.P_LIMIT;
 import static org.sagebionetworks.repo.model.table.TableConstants.P_OFFSET;
 import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_ENTITY_CHILD_CRC;
+import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_ENTITY_CHILD_CRC_FOR_ID_RANGE;
 import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_ENTITY_CHILD_ID_ETAG;
+import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_ENTITY_CHILD_ID_ETAG_FOR_ID_RANGE;
 import static org.sagebionetworks.repo.model.table.TableConstants.SELECT_NON_EXPIRED_IDS;
 import static org.sagebionetworks.repo.model.table.TableConstants.TRUNCATE_REPLICATION_SYNC_EXPIRATION_TABLE;
 
@@ -53,6 +55,7 @@ import javax.sql.DataSource;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.IdAndEtag;
+import org.sagebionetworks.repo.model.IdRangeChecksum;
 import org.sagebionetworks.repo.model.dao.table.RowHandler;
 import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.report.SynapseStorageProjectStats;
@@ -228,6 +231,23 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 		template.update(createOrUpdateStatusSql, version, version);
 	}
 	
+	@Override
+	public long getSnapshotVersionForTable(IdAndVersion tableId) {
+		String sql = SQLUtils.getStatusSnapshotVersionSQL(tableId);
+		try {
+			return template.queryForObject(sql, new SingleColumnRowMapper<Long>());
+		} catch (Exception e) {
+			// Spring throws this when the table is empty
+			return -1L;
+		}
+	}
+
+	@Override
+	public void setSnapshotVersionForTable(IdAndVersion tableId, long snapshotVersion) {
+		String createOrUpdateStatusSql = SQLUtils.buildCreateOrUpdateStatusSnapshotVersionSQL(tableId);
+		template.update(createOrUpdateStatusSql, snapshotVersion, snapshotVersion);
+	}
+	
 	@Override
 	public void setCurrentSchemaMD5Hex(IdAndVersion tableId, String schemaMD5Hex) {
 		String createOrUpdateStatusSql = SQLUtils.buildCreateOrUpdateStatusHashSQL(tableId);
@@ -281,7 +301,7 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 	public RowSet query(ProgressCallback callback, final SqlQuery query) {
 		if (query == null)
 			throw new IllegalArgumentException("SqlQuery cannot be null");
-		final List<Row> rows = new LinkedList<Row>();
+		final List<Row> rows = new ArrayList<Row>();
 		final RowSet rowSet = new RowSet();
 		rowSet.setRows(rows);
 		rowSet.setHeaders(query.getSelectColumns());
@@ -320,6 +340,30 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 		});
 		return true;
 	}
+	
+	@Override
+	public void queryAsColumnarBatches(ProgressCallback callback, SqlQuery query, int batchSize, final ColumnarRowBatchHandler handler) {
+		ValidateArgument.required(query, "Query");
+		ValidateArgument.required(handler, "Handler");
+		final ColumnTypeInfo[] infoArray = SQLTranslatorUtils.getColumnTypeInfoArray(query.getSelectColumns());
+		final ColumnarRowBatch batch = new ColumnarRowBatch(infoArray, query.includesRowIdAndVersion(), query.includeEntityEtag(), batchSize);
+		NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(this.template);
+		namedTemplate.query(query.getOutputSQL(), new MapSqlParameterSource(query.getParameters()), new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				batch.readRow(rs);
+				if(batch.isFull()){
+					handler.nextBatch(batch);
+					batch.clear();
+				}
+			}
+		});
+		// push the last partial batch
+		if(!batch.isEmpty()){
+			handler.nextBatch(batch);
+			batch.clear();
+		}
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -861,21 +905,52 @@ public class TableIndexDAOImpl implements TableIndexDAO {
 	@Override
 	public List<IdAndEtag> getEntityChildren(Long parentId) {
 		ValidateArgument.required(parentId, "parentId");
-		return this.template.query(SELECT_ENTITY_CHILD_ID_ETAG, new RowMapper<IdAndEtag>(){
+		return this.template.query(SELECT_ENTITY_CHILD_ID_ETAG, ID_AND_ETAG_ROW_MAPPER, parentId);
+	}
+
+	@Override
+	public List<IdAndEtag> getEntityChildrenInIdRange(Long parentId, long minIdInclusive, long maxIdInclusive) {
+		ValidateArgument.required(parentId, "parentId");
+		return this.template.query(SELECT_ENTITY_CHILD_ID_ETAG_FOR_ID_RANGE, ID_AND_ETAG_ROW_MAPPER, parentId,
+				minIdInclusive, maxIdInclusive);
+	}
+
+	@Override
+	public IdRangeChecksum getEntityChildChecksumForIdRange(Long parentId, long minIdInclusive, long maxIdInclusive) {
+		ValidateArgument.required(parentId, "parentId");
+		return this.template.queryForObject(SELECT_ENTITY_CHILD_CRC_FOR_ID_RANGE, new RowMapper<IdRangeChecksum>() {
 
 			@Override
-			public IdAndEtag mapRow(ResultSet rs, int rowNum)
-					throws SQLException {
-				Long id = rs.getLong(TableConstants.ENTITY_REPLICATION_COL_ID);
-				String etag = rs.getString(ENTITY_REPLICATION_COL_ETAG);
-				Long benefactorId = rs.getLong(ENTITY_REPLICATION_COL_BENEFACTOR_ID);
-				if(rs.wasNull()) {
-					benefactorId = null;
+			public IdRangeChecksum mapRow(ResultSet rs, int rowNum) throws SQLException {
+				long count = rs.getLong(1);
+				long checksum = rs.getLong(2);
+				Long minId = rs.getLong(3);
+				if (rs.wasNull()) {
+					minId = null;
+				}
+				Long maxId = rs.getLong(4);
+				if (rs.wasNull()) {
+					maxId = null;
 				}
-				return new IdAndEtag(id, etag, benefactorId);
-			}}, parentId);
+				return new IdRangeChecksum(count, checksum, minId, maxId);
+			}
+		}, parentId, minIdInclusive, maxIdInclusive);
 	}
 
+	private static final RowMapper<IdAndEtag> ID_AND_ETAG_ROW_MAPPER = new RowMapper<IdAndEtag>(){
+
+		@Override
+		public IdAndEtag mapRow(ResultSet rs, int rowNum)
+				throws SQLException {
+			Long id = rs.getLong(TableConstants.ENTITY_REPLICATION_COL_ID);
+			String etag = rs.getString(ENTITY_REPLICATION_COL_ETAG);
+			Long benefactorId = rs.getLong(ENTITY_REPLICATION_COL_BENEFACTOR_ID);
+			if(rs.wasNull()) {
+				benefactorId = null;
+			}
+			return new IdAndEtag(id, etag, benefactorId);
+		}};
+
 	@Override
 	public List<Long> getExpiredContainerIds(List<Long> entityContainerIds) {
 		ValidateArgument.required(entityContainerIds, "entityContainerIds");
@@ -16,10 +16,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.sagebionetworks.repo.model.asynch.AsynchronousResponseBody;
 import org.sagebionetworks.repo.model.dao.table.RowHandler;
@@ -43,11 +41,10 @@ import org.sagebionetworks.repo.model.table.TableUpdateRequest;
 import org.sagebionetworks.repo.model.table.TableUpdateResponse;
 import org.sagebionetworks.repo.model.table.TableUpdateTransactionRequest;
 import org.sagebionetworks.repo.model.table.TableUpdateTransactionResponse;
-import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
-import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
 import org.sagebionetworks.table.cluster.ColumnChangeDetails;
 import org.sagebionetworks.table.cluster.ColumnTypeInfo;
 import org.sagebionetworks.table.model.SparseChangeSet;
+import org.sagebionetworks.table.model.SparseChangeSetBinaryCodec;
 import org.sagebionetworks.table.model.SparseRow;
 import org.sagebionetworks.util.ValidateArgument;
 
@@ -103,24 +100,16 @@ public class TableModelUtils {
 	};
 	
 	/**
-	 * Write a SparseChangeSetDto to the given output stream as GZIP compressed JSON.
+	 * Write a SparseChangeSetDto to the given output stream as GZIP compressed
+	 * binary. See {@link SparseChangeSetBinaryCodec}.
 	 * @param set
 	 * @param out
 	 * @throws IOException
 	 */
 	public static void writeSparesChangeSetToGz(SparseChangeSetDto set, OutputStream out) throws IOException {
-		GZIPOutputStream zipOut = null;
 		try{
-			zipOut = new GZIPOutputStream(out);
-			String jsonString = EntityFactory.createJSONStringForEntity(set);
-			IOUtils.write(jsonString, zipOut, UTF_8);
-		} catch (JSONObjectAdapterException e) {
-			throw new RuntimeException(e);
+			SparseChangeSetBinaryCodec.writeToGz(set, out);
 		}finally{
-			if(zipOut != null){
-				zipOut.flush();
-				zipOut.close();
-			}
 			if(out != null){
 				out.close();
 			}
@@ -399,25 +388,15 @@ public class TableModelUtils {
 	}
 	
 	/**
-	 * Read GZIP compressed JSON from the passed stream.
+	 * Read a GZIP compressed change set from the passed stream. Both the binary
+	 * and the older JSON formats are supported.
 	 * 
 	 * @param zippedStream
 	 * @return
 	 * @throws IOException
 	 */
 	public static SparseChangeSetDto readSparseChangeSetDtoFromGzStream(InputStream zippedStream) throws IOException {
-		GZIPInputStream zipIn = null;
-		try{
-			zipIn = new GZIPInputStream(zippedStream);
-			String json = IOUtils.toString(zipIn, UTF_8);
-			return EntityFactory.createEntityFromJSONString(json, SparseChangeSetDto.class);
-		} catch (JSONObjectAdapterException e) {
-			throw new RuntimeException(e);
-		}finally{
-			if(zipIn != null){
-				zipIn.close();
-			}
-		}
+		return SparseChangeSetBinaryCodec.readDtoFromGz(zippedStream);
 	}
 	
 	/**
@@ -1,5 +1,7 @@
 package org.sagebionetworks.table.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -104,8 +106,8 @@ public class SparseChangeSet implements TableChange {
 	 */
 	private void initialize(String tableId, List<ColumnModel> schema, String etag) {
 		this.tableId = tableId;
-		this.sparseRows = new LinkedList<SparseRow>();
-		this.schema = new LinkedList<>(schema);
+		this.sparseRows = new ArrayList<SparseRow>();
+		this.schema = new ArrayList<>(schema);
 		this.etag = etag;
 		schemaMap = new HashMap<String, ColumnModel>(schema.size());
 		columnIndexMap = new HashMap<String, Integer>(schema.size());
@@ -220,10 +222,11 @@ public class SparseChangeSet implements TableChange {
 		// group rows by the columns with values
 		Map<List<String>, List<SparseRow>> groupMap = new LinkedHashMap<>();
 		for(SparseRow row: this.rowIterator()){
-			List<String> columnIds = new LinkedList<>();
-			for(ColumnModel cm: schema){
-				if(row.hasCellValue(cm.getId())){
-					columnIds.add(cm.getId());
+			boolean[] hasValue = ((SparseRowImpl) row).hasValue;
+			List<String> columnIds = new ArrayList<>(hasValue.length);
+			for(int i=0; i<hasValue.length; i++){
+				if(hasValue[i]){
+					columnIds.add(schema.get(i).getId());
 				}
 			}
 			List<SparseRow> groupRows = groupMap.get(columnIds);
@@ -314,6 +317,9 @@ public class SparseChangeSet implements TableChange {
 	/**
 	 * Private implementation of SparseRow. Note this class is not static, and
 	 * accesses members of the parent change set.
+	 * 
+	 * Cell values are held in an array indexed by the column's position in the
+	 * schema rather than a map per row.
 	 */
 	private class SparseRowImpl implements SparseRow {
 
@@ -321,10 +327,15 @@ public class SparseChangeSet implements TableChange {
 		Long rowId;
 		Long versionNumber;
 		String etag;
-		Map<String, String> valueMap = new HashMap<String, String>();
+		String[] values;
+		boolean[] hasValue;
+		int valueCount;
 
 		private SparseRowImpl(int rowIndex) {
 			this.rowIndex = rowIndex;
+			this.values = new String[schema.size()];
+			this.hasValue = new boolean[schema.size()];
+			this.valueCount = 0;
 		}
 
 		@Override
@@ -349,7 +360,8 @@ public class SparseChangeSet implements TableChange {
 		@Override
 		public boolean hasCellValue(String columnId) {
 			ValidateArgument.required(columnId, "columnId");
-			return valueMap.containsKey(columnId);
+			Integer columnIndex = columnIndexMap.get(columnId);
+			return columnIndex != null && hasValue[columnIndex];
 		}
 
 		@Override
@@ -358,7 +370,7 @@ public class SparseChangeSet implements TableChange {
 				throw new NotFoundException(
 						"Cell value does not exist for column Id: " + columnId);
 			}
-			return valueMap.get(columnId);
+			return values[columnIndexMap.get(columnId)];
 		}
 
 		@Override
@@ -369,13 +381,22 @@ public class SparseChangeSet implements TableChange {
 			// process and validate the value.
 			value = TableModelUtils.validateRowValue(value, cm, rowIndex,
 					columnIndex);
-			valueMap.put(columnId, value);
+			if (!hasValue[columnIndex]) {
+				hasValue[columnIndex] = true;
+				valueCount++;
+			}
+			values[columnIndex] = value;
 		}
 
 		@Override
 		public void removeValue(String columnId) {
 			ValidateArgument.required(columnId, "columnId");
-			valueMap.remove(columnId);
+			Integer columnIndex = columnIndexMap.get(columnId);
+			if (columnIndex != null && hasValue[columnIndex]) {
+				hasValue[columnIndex] = false;
+				values[columnIndex] = null;
+				valueCount--;
+			}
 		}
 
 		@Override
@@ -386,7 +407,7 @@ public class SparseChangeSet implements TableChange {
 		@Override
 		public boolean isDelete() {
 			// this is a delete if there are no values
-			return valueMap.keySet().isEmpty();
+			return valueCount == 0;
 		}
 		
 		@Override
@@ -406,8 +427,8 @@ public class SparseChangeSet implements TableChange {
 			result = prime * result + ((etag == null) ? 0 : etag.hashCode());
 			result = prime * result + ((rowId == null) ? 0 : rowId.hashCode());
 			result = prime * result + rowIndex;
-			result = prime * result
-					+ ((valueMap == null) ? 0 : valueMap.hashCode());
+			result = prime * result + Arrays.hashCode(hasValue);
+			result = prime * result + Arrays.hashCode(values);
 			result = prime * result
 					+ ((versionNumber == null) ? 0 : versionNumber.hashCode());
 			return result;
@@ -434,10 +455,9 @@ public class SparseChangeSet implements TableChange {
 				return false;
 			if (rowIndex != other.rowIndex)
 				return false;
-			if (valueMap == null) {
-				if (other.valueMap != null)
-					return false;
-			} else if (!valueMap.equals(other.valueMap))
+			if (!Arrays.equals(hasValue, other.hasValue))
+				return false;
+			if (!Arrays.equals(values, other.values))
 				return false;
 			if (versionNumber == null) {
 				if (other.versionNumber != null)
@@ -449,6 +469,12 @@ public class SparseChangeSet implements TableChange {
 
 		@Override
 		public String toString() {
+			Map<String, String> valueMap = new LinkedHashMap<String, String>(valueCount);
+			for (int i = 0; i < values.length; i++) {
+				if (hasValue[i]) {
+					valueMap.put(schema.get(i).getId(), values[i]);
+				}
+			}
 			return "SparseRowImpl [rowIndex=" + rowIndex + ", rowId=" + rowId
 					+ ", rowVersionNumber=" + versionNumber + ", valueMap="
 					+ valueMap + "]";
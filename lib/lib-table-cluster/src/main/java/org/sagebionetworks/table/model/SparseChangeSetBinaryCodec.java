@@ -0,0 +1,468 @@
+package org.sagebionetworks.table.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.sagebionetworks.repo.model.table.ColumnModel;
+import org.sagebionetworks.repo.model.table.SparseChangeSetDto;
+import org.sagebionetworks.repo.model.table.SparseRowDto;
+import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
+import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * Versioned binary encoding of a sparse change set. The data is column
+ * oriented:
+ * <ol>
+ * <li>A header with the magic bytes, the format version, the table ID, the
+ * etag and the column IDs of the change set.</li>
+ * <li>A dictionary of every distinct string in the change set.</li>
+ * <li>The row IDs and the row versions, each as a varint of the delta from the
+ * previous row.</li>
+ * <li>The row etags followed by the cells of each column, each as a varint
+ * reference into the dictionary.</li>
+ * </ol>
+ * Change sets are stored GZIP compressed. Change sets written before this
+ * format existed are GZIP compressed JSON, and are detected by the absence of
+ * the magic bytes, so they can still be read.
+ *
+ */
+public class SparseChangeSetBinaryCodec {
+
+	/**
+	 * The first bytes of every binary change set. JSON always starts with '{'.
+	 */
+	public static final byte[] MAGIC = new byte[] { 'S', 'C', 'S', 'B' };
+	public static final int FORMAT_VERSION = 1;
+
+	/*
+	 * Cell references. Anything greater than or equal to FIRST_DICTIONARY_REF
+	 * is an index into the dictionary.
+	 */
+	static final int REF_NO_VALUE = 0;
+	static final int REF_NULL_VALUE = 1;
+	static final int FIRST_DICTIONARY_REF = 2;
+	/*
+	 * Nullable references used for row IDs, versions and etags.
+	 */
+	static final int REF_NULL = 0;
+
+	/**
+	 * Write the given change set to the stream as GZIP compressed binary.
+	 *
+	 * @param dto
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void writeToGz(SparseChangeSetDto dto, OutputStream out) throws IOException {
+		GZIPOutputStream zipOut = new GZIPOutputStream(out);
+		try {
+			BufferedOutputStream buffered = new BufferedOutputStream(zipOut);
+			write(dto, buffered);
+			buffered.flush();
+		} finally {
+			zipOut.close();
+		}
+	}
+
+	/**
+	 * Read a GZIP compressed change set in either the binary or JSON format.
+	 *
+	 * @param zippedStream
+	 * @return
+	 * @throws IOException
+	 */
+	public static SparseChangeSetDto readDtoFromGz(InputStream zippedStream) throws IOException {
+		try (InputStream in = openGz(zippedStream)) {
+			if (isBinary(in)) {
+				return readDto(in);
+			}
+			return readJson(in);
+		}
+	}
+
+	/**
+	 * Read a GZIP compressed change set in either the binary or JSON format
+	 * directly into a {@link SparseChangeSet}. Binary change sets are decoded
+	 * straight into the rows of the change set without creating a
+	 * {@link SparseRowDto} for each row.
+	 *
+	 * @param zippedStream
+	 * @param schemaProvider Provides the schema for the column IDs of the change
+	 *                       set.
+	 * @return
+	 * @throws IOException
+	 */
+	public static SparseChangeSet readFromGz(InputStream zippedStream,
+			Function<List<String>, List<ColumnModel>> schemaProvider) throws IOException {
+		ValidateArgument.required(schemaProvider, "schemaProvider");
+		try (InputStream in = openGz(zippedStream)) {
+			if (isBinary(in)) {
+				return read(in, schemaProvider);
+			}
+			SparseChangeSetDto dto = readJson(in);
+			return new SparseChangeSet(dto, schemaProvider.apply(dto.getColumnIds()));
+		}
+	}
+
+	/**
+	 * Read each change set from a GZIP compressed stream of consecutive binary
+	 * change sets. Such a stream is created by calling
+	 * {@link #write(SparseChangeSetDto, OutputStream)} for each change set with
+	 * the same GZIP stream. Only one change set is held in memory at a time.
+	 *
+	 * @param zippedStream
+	 * @param schemaProvider Provides the schema for the column IDs of each change
+	 *                       set.
+	 * @param consumer       Called with each change set in order.
+	 * @throws IOException
+	 */
+	public static void readEachFromGz(InputStream zippedStream,
+			Function<List<String>, List<ColumnModel>> schemaProvider, Consumer<SparseChangeSet> consumer)
+			throws IOException {
+		ValidateArgument.required(schemaProvider, "schemaProvider");
+		ValidateArgument.required(consumer, "consumer");
+		try (InputStream in = openGz(zippedStream)) {
+			while (!isEndOfStream(in)) {
+				consumer.accept(read(in, schemaProvider));
+			}
+		}
+	}
+
+	/**
+	 * Write the given change set to the stream in the binary format.
+	 *
+	 * @param dto
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(SparseChangeSetDto dto, OutputStream out) throws IOException {
+		ValidateArgument.required(dto, "dto");
+		ValidateArgument.required(dto.getColumnIds(), "dto.columnIds");
+		ValidateArgument.required(dto.getRows(), "dto.rows");
+		List<String> columnIds = dto.getColumnIds();
+		List<SparseRowDto> rows = dto.getRows();
+		// build the dictionary of all distinct strings.
+		Map<String, Integer> dictionary = new LinkedHashMap<>();
+		for (SparseRowDto row : rows) {
+			addToDictionary(dictionary, row.getEtag());
+			if (row.getValues() != null) {
+				for (String value : row.getValues().values()) {
+					addToDictionary(dictionary, value);
+				}
+			}
+		}
+		// header
+		out.write(MAGIC);
+		writeVarint(out, FORMAT_VERSION);
+		writeString(out, dto.getTableId());
+		writeString(out, dto.getEtag());
+		writeVarint(out, columnIds.size());
+		for (String columnId : columnIds) {
+			writeString(out, columnId);
+		}
+		// dictionary
+		writeVarint(out, dictionary.size());
+		for (String value : dictionary.keySet()) {
+			writeString(out, value);
+		}
+		writeVarint(out, rows.size());
+		// row IDs
+		long previous = 0L;
+		for (SparseRowDto row : rows) {
+			previous = writeDelta(out, row.getRowId(), previous);
+		}
+		// row versions
+		previous = 0L;
+		for (SparseRowDto row : rows) {
+			previous = writeDelta(out, row.getVersionNumber(), previous);
+		}
+		// row etags
+		for (SparseRowDto row : rows) {
+			writeVarint(out, row.getEtag() == null ? REF_NULL : dictionary.get(row.getEtag()) + 1);
+		}
+		// the cells of each column.
+		for (String columnId : columnIds) {
+			for (SparseRowDto row : rows) {
+				int ref = REF_NO_VALUE;
+				if (row.getValues() != null && row.getValues().containsKey(columnId)) {
+					String value = row.getValues().get(columnId);
+					ref = value == null ? REF_NULL_VALUE : dictionary.get(value) + FIRST_DICTIONARY_REF;
+				}
+				writeVarint(out, ref);
+			}
+		}
+	}
+
+	/**
+	 * Read a binary change set, including the magic bytes, into a DTO.
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static SparseChangeSetDto readDto(InputStream in) throws IOException {
+		Decoded decoded = decode(in);
+		SparseChangeSetDto dto = new SparseChangeSetDto();
+		dto.setTableId(decoded.tableId);
+		dto.setEtag(decoded.etag);
+		dto.setColumnIds(decoded.columnIds);
+		List<SparseRowDto> rows = new ArrayList<>(decoded.rowCount);
+		for (int i = 0; i < decoded.rowCount; i++) {
+			SparseRowDto row = new SparseRowDto();
+			row.setRowId(decoded.rowIds[i]);
+			row.setVersionNumber(decoded.rowVersions[i]);
+			row.setEtag(decoded.etags[i]);
+			HashMap<String, String> values = new HashMap<>();
+			for (int c = 0; c < decoded.columnIds.size(); c++) {
+				int ref = decoded.cells[c][i];
+				if (ref != REF_NO_VALUE) {
+					values.put(decoded.columnIds.get(c), decoded.getValue(ref));
+				}
+			}
+			row.setValues(values);
+			rows.add(row);
+		}
+		dto.setRows(rows);
+		return dto;
+	}
+
+	/**
+	 * Read a binary change set, including the magic bytes, directly into a
+	 * {@link SparseChangeSet}.
+	 *
+	 * @param in
+	 * @param schemaProvider
+	 * @return
+	 * @throws IOException
+	 */
+	public static SparseChangeSet read(InputStream in, Function<List<String>, List<ColumnModel>> schemaProvider)
+			throws IOException {
+		Decoded decoded = decode(in);
+		List<ColumnModel> schema = schemaProvider.apply(decoded.columnIds);
+		SparseChangeSet set = new SparseChangeSet(decoded.tableId, schema, decoded.etag);
+		for (int i = 0; i < decoded.rowCount; i++) {
+			SparseRow row = set.addEmptyRow();
+			row.setRowId(decoded.rowIds[i]);
+			row.setVersionNumber(decoded.rowVersions[i]);
+			row.setRowEtag(decoded.etags[i]);
+			for (int c = 0; c < decoded.columnIds.size(); c++) {
+				int ref = decoded.cells[c][i];
+				if (ref != REF_NO_VALUE) {
+					row.setCellValue(decoded.columnIds.get(c), decoded.getValue(ref));
+				}
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Does the given stream start with the magic bytes? The stream is left
+	 * positioned at the start.
+	 *
+	 * @param in Must support mark.
+	 * @return
+	 * @throws IOException
+	 */
+	static boolean isBinary(InputStream in) throws IOException {
+		in.mark(MAGIC.length);
+		byte[] start = new byte[MAGIC.length];
+		int read = IOUtils.read(in, start);
+		in.reset();
+		return read == MAGIC.length && Arrays.equals(MAGIC, start);
+	}
+
+	/**
+	 * Is the given stream at its end? The stream is left at the same position.
+	 *
+	 * @param in Must support mark.
+	 * @return
+	 * @throws IOException
+	 */
+	static boolean isEndOfStream(InputStream in) throws IOException {
+		in.mark(1);
+		int next = in.read();
+		in.reset();
+		return next < 0;
+	}
+
+	private static InputStream openGz(InputStream zippedStream) throws IOException {
+		ValidateArgument.required(zippedStream, "zippedStream");
+		return new BufferedInputStream(new GZIPInputStream(zippedStream));
+	}
+
+	private static SparseChangeSetDto readJson(InputStream in) throws IOException {
+		try {
+			String json = IOUtils.toString(in, StandardCharsets.UTF_8);
+			return EntityFactory.createEntityFromJSONString(json, SparseChangeSetDto.class);
+		} catch (JSONObjectAdapterException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Decode a binary change set.
+	 */
+	private static Decoded decode(InputStream in) throws IOException {
+		byte[] start = new byte[MAGIC.length];
+		IOUtils.readFully(in, start);
+		if (!Arrays.equals(MAGIC, start)) {
+			throw new IllegalArgumentException("Not a binary change set");
+		}
+		int version = (int) readVarint(in);
+		if (version != FORMAT_VERSION) {
+			throw new IllegalArgumentException("Unsupported change set format version: " + version);
+		}
+		Decoded decoded = new Decoded();
+		decoded.tableId = readString(in);
+		decoded.etag = readString(in);
+		int columnCount = (int) readVarint(in);
+		decoded.columnIds = new ArrayList<>(columnCount);
+		for (int i = 0; i < columnCount; i++) {
+			decoded.columnIds.add(readString(in));
+		}
+		int dictionarySize = (int) readVarint(in);
+		decoded.dictionary = new String[dictionarySize];
+		for (int i = 0; i < dictionarySize; i++) {
+			decoded.dictionary[i] = readString(in);
+		}
+		int rowCount = (int) readVarint(in);
+		decoded.rowCount = rowCount;
+		decoded.rowIds = readDeltas(in, rowCount);
+		decoded.rowVersions = readDeltas(in, rowCount);
+		decoded.etags = new String[rowCount];
+		for (int i = 0; i < rowCount; i++) {
+			int ref = (int) readVarint(in);
+			decoded.etags[i] = ref == REF_NULL ? null : decoded.dictionary[ref - 1];
+		}
+		decoded.cells = new int[columnCount][rowCount];
+		for (int c = 0; c < columnCount; c++) {
+			for (int i = 0; i < rowCount; i++) {
+				decoded.cells[c][i] = (int) readVarint(in);
+			}
+		}
+		return decoded;
+	}
+
+	/**
+	 * The decoded contents of a binary change set.
+	 */
+	private static class Decoded {
+		String tableId;
+		String etag;
+		List<String> columnIds;
+		String[] dictionary;
+		int rowCount;
+		Long[] rowIds;
+		Long[] rowVersions;
+		String[] etags;
+		int[][] cells;
+
+		String getValue(int ref) {
+			return ref == REF_NULL_VALUE ? null : dictionary[ref - FIRST_DICTIONARY_REF];
+		}
+	}
+
+	private static void addToDictionary(Map<String, Integer> dictionary, String value) {
+		if (value != null && !dictionary.containsKey(value)) {
+			dictionary.put(value, dictionary.size());
+		}
+	}
+
+	/**
+	 * Write a nullable value as the zig-zag encoded delta from the previous
+	 * value, plus one so that zero can represent null.
+	 *
+	 * @return The new previous value.
+	 */
+	private static long writeDelta(OutputStream out, Long value, long previous) throws IOException {
+		if (value == null) {
+			writeVarint(out, REF_NULL);
+			return previous;
+		}
+		long delta = value - previous;
+		writeVarint(out, ((delta << 1) ^ (delta >> 63)) + 1);
+		return value;
+	}
+
+	private static Long[] readDeltas(InputStream in, int count) throws IOException {
+		Long[] values = new Long[count];
+		long previous = 0L;
+		for (int i = 0; i < count; i++) {
+			long encoded = readVarint(in);
+			if (encoded != REF_NULL) {
+				long zigZag = encoded - 1;
+				long delta = (zigZag >>> 1) ^ -(zigZag & 1);
+				previous = previous + delta;
+				values[i] = previous;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Write a nullable string as the varint length plus one followed by the
+	 * UTF-8 bytes.
+	 */
+	private static void writeString(OutputStream out, String value) throws IOException {
+		if (value == null) {
+			writeVarint(out, REF_NULL);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length + 1L);
+		out.write(bytes);
+	}
+
+	private static String readString(InputStream in) throws IOException {
+		long length = readVarint(in);
+		if (length == REF_NULL) {
+			return null;
+		}
+		byte[] bytes = new byte[(int) (length - 1)];
+		IOUtils.readFully(in, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write an unsigned variable length integer, seven bits at a time.
+	 */
+	static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0L) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static long readVarint(InputStream in) throws IOException {
+		long value = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Unexpected end of change set");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+}
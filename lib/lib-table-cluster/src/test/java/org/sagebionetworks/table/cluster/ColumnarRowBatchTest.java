@@ -0,0 +1,135 @@
+package org.sagebionetworks.table.cluster;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.repo.model.table.TableConstants.ROW_ETAG;
+import static org.sagebionetworks.repo.model.table.TableConstants.ROW_ID;
+import static org.sagebionetworks.repo.model.table.TableConstants.ROW_VERSION;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ColumnarRowBatchTest {
+
+	@Mock
+	ResultSet mockResultSet;
+
+	ColumnTypeInfo[] types;
+
+	@Before
+	public void before() throws SQLException {
+		MockitoAnnotations.initMocks(this);
+		types = new ColumnTypeInfo[] { ColumnTypeInfo.STRING, ColumnTypeInfo.BOOLEAN };
+		when(mockResultSet.getLong(ROW_ID)).thenReturn(123L, 456L);
+		when(mockResultSet.getLong(ROW_VERSION)).thenReturn(2L, 3L);
+		when(mockResultSet.getString(ROW_ETAG)).thenReturn("etagOne", "etagTwo");
+		when(mockResultSet.getString(1)).thenReturn("one", "two");
+		when(mockResultSet.getString(2)).thenReturn("1", "0");
+	}
+
+	@Test
+	public void testReadRow() throws SQLException {
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, true, true, 2);
+		assertTrue(batch.isEmpty());
+		// call under test
+		batch.readRow(mockResultSet);
+		batch.readRow(mockResultSet);
+		assertTrue(batch.isFull());
+		assertEquals(2, batch.size());
+		assertEquals(2, batch.getColumnCount());
+		assertEquals(123L, batch.getRowId(0));
+		assertEquals(3L, batch.getRowVersion(1));
+		assertEquals("etagTwo", batch.getEtag(1));
+		assertEquals("one", batch.getValue(0, 0));
+		// boolean values are translated
+		assertEquals("true", batch.getValue(0, 1));
+		assertEquals("false", batch.getValue(1, 1));
+	}
+
+	@Test
+	public void testReadRowNoRowIdAndVersion() throws SQLException {
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, false, true, 2);
+		// call under test
+		batch.readRow(mockResultSet);
+		assertEquals("one", batch.getValue(0, 0));
+		verify(mockResultSet, never()).getLong(ROW_ID);
+		verify(mockResultSet, never()).getLong(ROW_VERSION);
+		verify(mockResultSet, never()).getString(ROW_ETAG);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testReadRowFull() throws SQLException {
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, true, false, 1);
+		batch.readRow(mockResultSet);
+		// call under test
+		batch.readRow(mockResultSet);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testGetEtagNotIncluded() throws SQLException {
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, true, false, 1);
+		batch.readRow(mockResultSet);
+		// call under test
+		batch.getEtag(0);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetValueOutOfBounds() throws SQLException {
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, true, false, 2);
+		batch.readRow(mockResultSet);
+		// call under test
+		batch.getValue(1, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityZero() {
+		new ColumnarRowBatch(types, true, false, 0);
+	}
+
+	@Test
+	public void testWriteRowToArray() throws SQLException {
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, true, true, 2);
+		batch.readRow(mockResultSet);
+		batch.readRow(mockResultSet);
+		String[] buffer = new String[batch.getRowArrayLength(true, true)];
+		// call under test
+		batch.writeRowToArray(1, true, true, buffer);
+		assertArrayEquals(new String[] { "456", "3", "etagTwo", "two", "false" }, buffer);
+		buffer = new String[batch.getRowArrayLength(false, false)];
+		// call under test
+		batch.writeRowToArray(0, false, false, buffer);
+		assertArrayEquals(new String[] { "one", "true" }, buffer);
+	}
+
+	@Test
+	public void testClear() throws SQLException {
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, true, true, 1);
+		batch.readRow(mockResultSet);
+		// call under test
+		batch.clear();
+		assertTrue(batch.isEmpty());
+		assertFalse(batch.isFull());
+		batch.readRow(mockResultSet);
+		assertEquals("two", batch.getValue(0, 0));
+	}
+
+	@Test
+	public void testReadRowNullValue() throws SQLException {
+		when(mockResultSet.getString(1)).thenReturn(null);
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, false, false, 1);
+		// call under test
+		batch.readRow(mockResultSet);
+		assertNull(batch.getValue(0, 0));
+	}
+}
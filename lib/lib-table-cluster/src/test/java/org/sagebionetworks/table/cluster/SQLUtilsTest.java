@@ -315,6 +315,20 @@ public class SQLUtilsTest {
 		assertEquals(expected, result);
 	}
 	
+	@Test
+	public void testGetStatusSnapshotVersionSQL(){
+		String expected = "SELECT SNAPSHOT_VERSION FROM T999S";
+		String result = SQLUtils.getStatusSnapshotVersionSQL(tableId);
+		assertEquals(expected, result);
+	}
+	
+	@Test
+	public void testBuildCreateOrUpdateStatusSnapshotVersionSQL(){
+		String expected = "INSERT INTO T999S ( SINGLE_KEY,ROW_VERSION,SCHEMA_HASH,SNAPSHOT_VERSION ) VALUES ('1', -1, 'DEFAULT', ? ) ON DUPLICATE KEY UPDATE SNAPSHOT_VERSION = ? ";
+		String result = SQLUtils.buildCreateOrUpdateStatusSnapshotVersionSQL(tableId);
+		assertEquals(expected, result);
+	}
+	
 	@Test
 	public void testCreateSQLInsertIgnoreFileHandleId(){
 		String expected = "INSERT IGNORE INTO T999F (FILE_ID) VALUES(?)";
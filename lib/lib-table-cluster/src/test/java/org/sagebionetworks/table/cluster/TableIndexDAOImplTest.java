@@ -30,6 +30,7 @@ import org.sagebionetworks.StackConfiguration;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.IdAndEtag;
+import org.sagebionetworks.repo.model.IdRangeChecksum;
 import org.sagebionetworks.repo.model.dbo.dao.table.TableModelTestUtils;
 import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.report.SynapseStorageProjectStats;
@@ -340,6 +341,24 @@ public class TableIndexDAOImplTest {
 		returnHash = tableIndexDAO.getCurrentSchemaMD5Hex(tableId);
 		assertEquals(hash, returnHash);
 	}
+	
+	@Test
+	public void testGetSnapshotVersionForTable(){
+		tableIndexDAO.createSecondaryTables(tableId);
+		// Before a snapshot is set the version should be -1L
+		assertEquals(-1L, tableIndexDAO.getSnapshotVersionForTable(tableId));
+		
+		tableIndexDAO.setSnapshotVersionForTable(tableId, 3L);
+		assertEquals(3L, tableIndexDAO.getSnapshotVersionForTable(tableId));
+		// setting the version should not change the snapshot version
+		tableIndexDAO.setMaxCurrentCompleteVersionForTable(tableId, 4L);
+		assertEquals(3L, tableIndexDAO.getSnapshotVersionForTable(tableId));
+		assertEquals(4L, tableIndexDAO.getMaxCurrentCompleteVersionForTable(tableId).longValue());
+		// setting the snapshot version should not change the version
+		tableIndexDAO.setSnapshotVersionForTable(tableId, 5L);
+		assertEquals(5L, tableIndexDAO.getSnapshotVersionForTable(tableId));
+		assertEquals(4L, tableIndexDAO.getMaxCurrentCompleteVersionForTable(tableId).longValue());
+	}
 
 	@Test
 	public void testSimpleQuery() throws ParseException, SimpleAggregateQueryException {
@@ -1736,6 +1755,42 @@ public class TableIndexDAOImplTest {
 		assertEquals(0, results.size());
 	}
 	
+	@Test
+	public void testGetEntityChildrenInIdRange(){
+		// delete all data
+		tableIndexDAO.deleteEntityData(mockProgressCallback, Lists.newArrayList(2L,3L,4L));
+		
+		Long parentOneId = 333L;
+		EntityDTO file1 = createEntityDTO(2L, EntityType.file, 2);
+		file1.setParentId(parentOneId);
+		EntityDTO file2 = createEntityDTO(3L, EntityType.file, 2);
+		file2.setParentId(parentOneId);
+		EntityDTO file3 = createEntityDTO(4L, EntityType.file, 2);
+		file3.setParentId(parentOneId);
+		tableIndexDAO.addEntityData(mockProgressCallback, Lists.newArrayList(file1, file2, file3));
+		
+		// call under test
+		List<IdAndEtag> results = tableIndexDAO.getEntityChildrenInIdRange(parentOneId, 3L, 4L);
+		assertEquals(Lists.newArrayList(new IdAndEtag(file2.getId(), file2.getEtag(), 2L),
+				new IdAndEtag(file3.getId(), file3.getEtag(), 2L)), results);
+		
+		// call under test
+		IdRangeChecksum all = tableIndexDAO.getEntityChildChecksumForIdRange(parentOneId, 0L, Long.MAX_VALUE);
+		assertEquals(3L, all.getCount());
+		assertEquals(new Long(2L), all.getMinId());
+		assertEquals(new Long(4L), all.getMaxId());
+		IdRangeChecksum lower = tableIndexDAO.getEntityChildChecksumForIdRange(parentOneId, 0L, 2L);
+		IdRangeChecksum upper = tableIndexDAO.getEntityChildChecksumForIdRange(parentOneId, 3L, 4L);
+		assertEquals(1L, lower.getCount());
+		assertEquals(2L, upper.getCount());
+		// the checksum of the whole range is the sum of its parts.
+		assertEquals(all.getChecksum(), lower.getChecksum() + upper.getChecksum());
+		
+		// an empty range
+		IdRangeChecksum empty = tableIndexDAO.getEntityChildChecksumForIdRange(parentOneId, 5L, 10L);
+		assertEquals(new IdRangeChecksum(0L, 0L, null, null), empty);
+	}
+	
 	@Test
 	public void testGetSumOfFileSizes(){
 		// delete all data
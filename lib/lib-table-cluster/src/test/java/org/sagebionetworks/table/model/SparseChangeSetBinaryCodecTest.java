@@ -0,0 +1,212 @@
+package org.sagebionetworks.table.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.repo.model.dbo.dao.table.TableModelTestUtils;
+import org.sagebionetworks.repo.model.table.ColumnModel;
+import org.sagebionetworks.repo.model.table.ColumnType;
+import org.sagebionetworks.repo.model.table.SparseChangeSetDto;
+import org.sagebionetworks.repo.model.table.SparseRowDto;
+import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
+
+import com.google.common.collect.Lists;
+
+public class SparseChangeSetBinaryCodecTest {
+
+	ColumnModel booleanColumn;
+	ColumnModel stringColumn;
+	ColumnModel doubleColumn;
+	List<ColumnModel> schema;
+	Function<List<String>, List<ColumnModel>> schemaProvider;
+	SparseChangeSetDto dto;
+
+	@Before
+	public void before() {
+		booleanColumn = TableModelTestUtils.createColumn(1L, "aBoolean", ColumnType.BOOLEAN);
+		stringColumn = TableModelTestUtils.createColumn(2L, "aString", ColumnType.STRING);
+		doubleColumn = TableModelTestUtils.createColumn(3L, "aDouble", ColumnType.DOUBLE);
+		schema = Lists.newArrayList(booleanColumn, stringColumn, doubleColumn);
+		schemaProvider = (List<String> columnIds) -> schema;
+
+		SparseChangeSet changeSet = new SparseChangeSet("syn123", schema, "setEtag");
+		SparseRow one = changeSet.addEmptyRow();
+		one.setRowId(15L);
+		one.setVersionNumber(3L);
+		one.setRowEtag("rowEtag");
+		one.setCellValue(booleanColumn.getId(), "true");
+		one.setCellValue(stringColumn.getId(), "repeated");
+		// a null value is not the same as no value.
+		one.setCellValue(doubleColumn.getId(), null);
+		SparseRow two = changeSet.addEmptyRow();
+		two.setRowId(2L);
+		two.setVersionNumber(3L);
+		two.setCellValue(stringColumn.getId(), "repeated");
+		// a delete
+		SparseRow three = changeSet.addEmptyRow();
+		three.setRowId(1000000000000L);
+		three.setVersionNumber(3L);
+		// a new row
+		SparseRow four = changeSet.addEmptyRow();
+		four.setCellValue(doubleColumn.getId(), "-1.5");
+		dto = changeSet.writeToDto();
+	}
+
+	@Test
+	public void testWriteReadDto() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// call under test
+		SparseChangeSetBinaryCodec.write(dto, out);
+		SparseChangeSetDto copy = SparseChangeSetBinaryCodec.readDto(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(dto, copy);
+	}
+
+	@Test
+	public void testWriteReadGz() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// call under test
+		SparseChangeSetBinaryCodec.writeToGz(dto, out);
+		SparseChangeSetDto copy = SparseChangeSetBinaryCodec
+				.readDtoFromGz(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(dto, copy);
+	}
+
+	@Test
+	public void testReadFromGz() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SparseChangeSetBinaryCodec.writeToGz(dto, out);
+		// call under test
+		SparseChangeSet set = SparseChangeSetBinaryCodec.readFromGz(new ByteArrayInputStream(out.toByteArray()),
+				schemaProvider);
+		assertEquals(new SparseChangeSet(dto, schema), set);
+		assertEquals("setEtag", set.getEtag());
+		Iterator<SparseRow> it = set.rowIterator().iterator();
+		SparseRow one = it.next();
+		assertEquals(new Long(15L), one.getRowId());
+		assertEquals("rowEtag", one.getRowEtag());
+		assertTrue(one.hasCellValue(doubleColumn.getId()));
+		assertNull(one.getCellValue(doubleColumn.getId()));
+		SparseRow two = it.next();
+		assertFalse(two.hasCellValue(booleanColumn.getId()));
+		assertEquals("repeated", two.getCellValue(stringColumn.getId()));
+		assertTrue(it.next().isDelete());
+		SparseRow four = it.next();
+		assertNull(four.getRowId());
+		assertNull(four.getVersionNumber());
+		assertEquals("-1.5", four.getCellValue(doubleColumn.getId()));
+	}
+
+	@Test
+	public void testReadJsonFromGz() throws Exception {
+		// change sets written before the binary format are GZIP compressed JSON.
+		dto.getRows().get(0).getValues().remove(doubleColumn.getId());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream zipOut = new GZIPOutputStream(out)) {
+			IOUtils.write(EntityFactory.createJSONStringForEntity(dto), zipOut, "UTF-8");
+		}
+		// call under test
+		SparseChangeSetDto copy = SparseChangeSetBinaryCodec
+				.readDtoFromGz(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(dto, copy);
+		// call under test
+		SparseChangeSet set = SparseChangeSetBinaryCodec.readFromGz(new ByteArrayInputStream(out.toByteArray()),
+				schemaProvider);
+		assertEquals(new SparseChangeSet(dto, schema), set);
+	}
+
+	@Test
+	public void testDictionaryEncoding() throws IOException {
+		SparseChangeSet changeSet = new SparseChangeSet("syn123", schema);
+		for (int i = 0; i < 1000; i++) {
+			SparseRow row = changeSet.addEmptyRow();
+			row.setRowId((long) i);
+			row.setVersionNumber(1L);
+			row.setCellValue(stringColumn.getId(), "a value repeated on every row");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// call under test
+		SparseChangeSetBinaryCodec.write(changeSet.writeToDto(), out);
+		// each row needs one byte for each of the ID, version, etag and three cells.
+		assertTrue(out.size() < 1000 * 6 + 100);
+		SparseChangeSetDto copy = SparseChangeSetBinaryCodec.readDto(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(changeSet.writeToDto(), copy);
+	}
+
+	@Test
+	public void testReadEachFromGz() throws IOException {
+		SparseChangeSet second = new SparseChangeSet("syn123", schema, "secondEtag");
+		SparseRow row = second.addEmptyRow();
+		row.setRowId(16L);
+		row.setVersionNumber(4L);
+		row.setCellValue(stringColumn.getId(), "second");
+		SparseChangeSet empty = new SparseChangeSet("syn123", schema, "emptyEtag");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream zipOut = new GZIPOutputStream(out)) {
+			SparseChangeSetBinaryCodec.write(dto, zipOut);
+			SparseChangeSetBinaryCodec.write(second.writeToDto(), zipOut);
+			SparseChangeSetBinaryCodec.write(empty.writeToDto(), zipOut);
+		}
+		List<SparseChangeSet> results = new LinkedList<>();
+		// call under test
+		SparseChangeSetBinaryCodec.readEachFromGz(new ByteArrayInputStream(out.toByteArray()), schemaProvider,
+				results::add);
+		assertEquals(3, results.size());
+		assertEquals(new SparseChangeSet(dto, schema), results.get(0));
+		assertEquals(second, results.get(1));
+		assertEquals("emptyEtag", results.get(2).getEtag());
+		assertEquals(0, results.get(2).getRowCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadUnknownVersion() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(SparseChangeSetBinaryCodec.MAGIC);
+		SparseChangeSetBinaryCodec.writeVarint(out, SparseChangeSetBinaryCodec.FORMAT_VERSION + 1);
+		// call under test
+		SparseChangeSetBinaryCodec.readDto(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	@Test
+	public void testVarint() throws IOException {
+		long[] values = new long[] { 0L, 1L, 127L, 128L, 16384L, Long.MAX_VALUE, -1L };
+		for (long value : values) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			SparseChangeSetBinaryCodec.writeVarint(out, value);
+			assertEquals(value, SparseChangeSetBinaryCodec.readVarint(new ByteArrayInputStream(out.toByteArray())));
+		}
+	}
+
+	@Test
+	public void testWriteReadNullValues() throws IOException {
+		SparseChangeSetDto empty = new SparseChangeSetDto();
+		empty.setTableId("syn123");
+		empty.setColumnIds(Lists.newArrayList("1"));
+		SparseRowDto row = new SparseRowDto();
+		row.setRowId(-5L);
+		Map<String, String> values = new HashMap<>();
+		values.put("1", null);
+		row.setValues(values);
+		empty.setRows(Lists.newArrayList(row));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// call under test
+		SparseChangeSetBinaryCodec.write(empty, out);
+		SparseChangeSetDto copy = SparseChangeSetBinaryCodec.readDto(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(empty, copy);
+	}
+}
@@ -1,23 +1,48 @@
 package org.sagebionetworks.asynchronous.workers.changes;
 
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.asynchronous.workers.sqs.MessageUtils;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeMessages;
 import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
 import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
 import org.sagebionetworks.workers.util.aws.message.MessageDrivenRunner;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * A message driven runner that can read a batch of change messages and
  * forwarded each message to the provided worker.
+ * <p>
+ * When a {@link BatchChangeMessageDrivenRunner} fails on a batch, the batch is
+ * split in half and each half is retried in place, so a single bad message
+ * only costs a few extra runs rather than one queued job per message. A
+ * batch failing with a {@link RecoverableMessageException} is instead
+ * returned to the queue as a single batch, until one of its messages has
+ * failed {@link #MAX_FAILURES_PER_MESSAGE} times.
+ * <p>
+ * A single message left over from a split is returned to the queue on its
+ * own, with a delay that grows with each failure. A message read from the
+ * queue on its own is retried by the container, as before. Only when a dead
+ * letter queue is configured is a message that keeps failing moved there;
+ * otherwise it keeps being retried. Failures are counted on this machine only.
  * 
  * @author jhill
  *
@@ -27,17 +52,93 @@ public class ChangeMessageBatchProcessor implements MessageDrivenRunner {
 	static private Logger log = LogManager
 			.getLogger(ChangeMessageBatchProcessor.class);
 
+	/**
+	 * The number of times a message can fail before it is sent to the dead
+	 * letter queue.
+	 */
+	public static final int MAX_FAILURES_PER_MESSAGE = 3;
+	/**
+	 * Bounds the memory used to count failures. The least recently counted
+	 * messages are evicted first.
+	 */
+	public static final int MAX_TRACKED_FAILURES = 10000;
+	/**
+	 * Splitting a batch of 2^MAX_SPLIT_DEPTH messages reaches single messages.
+	 */
+	public static final int MAX_SPLIT_DEPTH = 16;
+	/**
+	 * A message returned to the queue after its first failure is not visible
+	 * for this long, giving a transient failure time to clear. The delay
+	 * doubles with each further failure.
+	 */
+	public static final int RETRY_DELAY_SECONDS = 30;
+	/**
+	 * The longest delay SQS allows.
+	 */
+	public static final int MAX_RETRY_DELAY_SECONDS = 900;
+
+	public static final String METRIC_NAMESPACE_PREFIX = "ChangeMessageBatchProcessor-";
+	public static final String METRIC_SPLIT = "BatchSplit";
+	public static final String METRIC_REQUEUED_BATCH = "BatchRequeued";
+	public static final String METRIC_REQUEUED_MESSAGE = "MessageRequeued";
+	public static final String METRIC_DEAD_LETTER = "MessageDeadLettered";
+	public static final String DIMENSION_QUEUE_NAME = "queueName";
+	public static final String DIMENSION_SPLIT_DEPTH = "splitDepth";
+
 	private AmazonSQS awsSQSClient;
+	private String queueName;
 	private String queueUrl;
+	private String deadLetterQueueUrl;
 	private ChangeMessageRunner runner;
 
+	private final ConcurrentMap<ChangeMessage, Integer> failureCounts = CacheBuilder.newBuilder()
+			.maximumSize(MAX_TRACKED_FAILURES).<ChangeMessage, Integer>build().asMap();
+	private final AtomicLong splitCount = new AtomicLong(0);
+	private final AtomicLong requeuedBatchCount = new AtomicLong(0);
+	private final AtomicLong requeuedMessageCount = new AtomicLong(0);
+	private final AtomicLong deadLetterCount = new AtomicLong(0);
+	// The number of failed batches split at each depth.
+	private final AtomicLongArray splitDepthCounts = new AtomicLongArray(MAX_SPLIT_DEPTH + 1);
+
+	private Consumer consumer;
+	private String metricNamespace;
+
 	public ChangeMessageBatchProcessor(AmazonSQS awsSQSClient,
 			String queueName, ChangeMessageRunner runner) {
+		this(awsSQSClient, queueName, null, runner);
+	}
+
+	/**
+	 * 
+	 * @param awsSQSClient
+	 * @param queueName
+	 * @param deadLetterQueueName
+	 *            Optional. Messages that keep failing are sent to this queue.
+	 * @param runner
+	 */
+	public ChangeMessageBatchProcessor(AmazonSQS awsSQSClient,
+			String queueName, String deadLetterQueueName, ChangeMessageRunner runner) {
 		this.awsSQSClient = awsSQSClient;
+		this.queueName = queueName;
 		this.queueUrl = awsSQSClient.getQueueUrl(queueName).getQueueUrl();
+		if (deadLetterQueueName != null) {
+			this.deadLetterQueueUrl = awsSQSClient.getQueueUrl(deadLetterQueueName).getQueueUrl();
+		}
 		this.runner = runner;
 	}
 
+	/**
+	 * Optional. When set, each split, requeue and dead letter is published to
+	 * the given consumer.
+	 * 
+	 * @param consumer
+	 * @param stackInstance
+	 */
+	public void setConsumer(Consumer consumer, String stackInstance) {
+		this.consumer = consumer;
+		this.metricNamespace = METRIC_NAMESPACE_PREFIX + stackInstance;
+	}
+
 	@Override
 	public void run(final ProgressCallback progressCallback,
 			final Message message) throws RecoverableMessageException,
@@ -62,25 +163,192 @@ public class ChangeMessageBatchProcessor implements MessageDrivenRunner {
 			throws RecoverableMessageException, Exception {
 		try{
 			batchRunner.run(progressCallback, batch);
+			clearFailures(batch);
 		} catch (Exception e) {
-			//if part of the batch fails for any reason, put everything back onto the queue as individual batched messages and retry later
-
 			if (batch.size() == 1) {
+				int failures = recordFailures(batch);
+				if (failures >= MAX_FAILURES_PER_MESSAGE && deadLetterQueueUrl != null) {
+					sendToDeadLetterQueue(batch.get(0), e);
+					return;
+				}
 				// Let the container handle retry for single messages.
 				throw e;
-			} else {
-				// Push each single message back onto the queue
-				for(ChangeMessage message: batch){
-					// Add the message back to the queue as a single message
-					awsSQSClient.sendMessage(queueUrl,
-							EntityFactory.createJSONStringForEntity(message));
-				}
 			}
+			// Any failure to return a part of the batch to the queue is thrown,
+			// so the whole batch is retried rather than lost.
+			handleFailedBatch(progressCallback, batch, batchRunner, e, 0);
 		} catch (Throwable e) {
 			log.error("Failed on Batch: " + batch.toString(), e);
 		}
 	}
 
+	/**
+	 * Run a part of a failed batch in place.
+	 * 
+	 * @param progressCallback
+	 * @param batch
+	 * @param batchRunner
+	 * @param depth
+	 *            The number of times the original batch was split to get this
+	 *            part.
+	 * @throws JSONObjectAdapterException
+	 */
+	void runSplit(final ProgressCallback progressCallback,
+			List<ChangeMessage> batch,
+			BatchChangeMessageDrivenRunner batchRunner, int depth) throws JSONObjectAdapterException {
+		try {
+			batchRunner.run(progressCallback, batch);
+			clearFailures(batch);
+		} catch (Exception e) {
+			handleFailedBatch(progressCallback, batch, batchRunner, e, depth);
+		}
+	}
+
+	/**
+	 * Decide what to do with a batch that failed: return it to the queue,
+	 * split it, or move its single message to the dead letter queue.
+	 * 
+	 * @param progressCallback
+	 * @param batch
+	 * @param batchRunner
+	 * @param cause
+	 * @param depth
+	 * @throws JSONObjectAdapterException
+	 */
+	void handleFailedBatch(final ProgressCallback progressCallback,
+			List<ChangeMessage> batch,
+			BatchChangeMessageDrivenRunner batchRunner, Exception cause, int depth)
+			throws JSONObjectAdapterException {
+		if (batch.size() == 1) {
+			ChangeMessage message = batch.get(0);
+			int failures = recordFailures(batch);
+			if (failures >= MAX_FAILURES_PER_MESSAGE && deadLetterQueueUrl != null) {
+				sendToDeadLetterQueue(message, cause);
+				return;
+			}
+			// Add the message back to the queue as a single message
+			requeuedMessageCount.incrementAndGet();
+			publishCount(METRIC_REQUEUED_MESSAGE, null);
+			awsSQSClient.sendMessage(createRequeueRequest(
+					EntityFactory.createJSONStringForEntity(message), failures));
+			return;
+		}
+		if (cause instanceof RecoverableMessageException) {
+			int failures = recordFailures(batch);
+			if (failures < MAX_FAILURES_PER_MESSAGE) {
+				// Probably a transient failure of the whole batch, so retry it later as a whole.
+				requeuedBatchCount.incrementAndGet();
+				publishCount(METRIC_REQUEUED_BATCH, null);
+				ChangeMessages messages = new ChangeMessages();
+				messages.setList(batch);
+				awsSQSClient.sendMessage(createRequeueRequest(
+						EntityFactory.createJSONStringForEntity(messages), failures));
+				return;
+			}
+		}
+		// Isolate the bad messages by splitting the batch in half.
+		int boundedDepth = Math.min(depth, MAX_SPLIT_DEPTH);
+		splitCount.incrementAndGet();
+		splitDepthCounts.incrementAndGet(boundedDepth);
+		publishCount(METRIC_SPLIT, boundedDepth);
+		int middle = batch.size() / 2;
+		runSplit(progressCallback, batch.subList(0, middle), batchRunner, depth + 1);
+		runSplit(progressCallback, batch.subList(middle, batch.size()), batchRunner, depth + 1);
+	}
+
+	/**
+	 * Create a request to return a failed message to the queue after a delay.
+	 * 
+	 * @param body
+	 * @param failures
+	 *            The number of times the message has failed so far.
+	 * @return
+	 */
+	SendMessageRequest createRequeueRequest(String body, int failures) {
+		return new SendMessageRequest(queueUrl, body).withDelaySeconds(getRetryDelaySeconds(failures));
+	}
+
+	/**
+	 * The delay before a message that failed the given number of times is
+	 * retried.
+	 * 
+	 * @param failures
+	 * @return
+	 */
+	public static int getRetryDelaySeconds(int failures) {
+		long delay = RETRY_DELAY_SECONDS;
+		for (int i = 1; i < failures && delay < MAX_RETRY_DELAY_SECONDS; i++) {
+			delay *= 2;
+		}
+		return (int) Math.min(delay, MAX_RETRY_DELAY_SECONDS);
+	}
+
+	/**
+	 * Move a message that keeps failing to the dead letter queue.
+	 * 
+	 * @param message
+	 * @param cause
+	 * @throws JSONObjectAdapterException
+	 */
+	private void sendToDeadLetterQueue(ChangeMessage message, Exception cause) throws JSONObjectAdapterException {
+		awsSQSClient.sendMessage(deadLetterQueueUrl,
+				EntityFactory.createJSONStringForEntity(message));
+		deadLetterCount.incrementAndGet();
+		publishCount(METRIC_DEAD_LETTER, null);
+		failureCounts.remove(message);
+		log.warn("Sent change message to the dead letter queue: " + message, cause);
+	}
+
+	/**
+	 * Count a failure for each message of the batch. Failures are only counted
+	 * when a message is returned to the queue, not while a batch is split.
+	 * 
+	 * @param batch
+	 * @return The highest failure count of any message of the batch.
+	 */
+	private int recordFailures(List<ChangeMessage> batch) {
+		int max = 0;
+		for (ChangeMessage message : batch) {
+			max = Math.max(max, failureCounts.merge(message, 1, Integer::sum));
+		}
+		return max;
+	}
+
+	private void clearFailures(List<ChangeMessage> batch) {
+		if (failureCounts.isEmpty()) {
+			return;
+		}
+		for (ChangeMessage message : batch) {
+			failureCounts.remove(message);
+		}
+	}
+
+	/**
+	 * Publish a single event to the consumer, when one is set.
+	 * 
+	 * @param name
+	 * @param splitDepth
+	 *            Optional.
+	 */
+	private void publishCount(String name, Integer splitDepth) {
+		if (consumer == null) {
+			return;
+		}
+		ProfileData profileData = new ProfileData();
+		profileData.setNamespace(metricNamespace);
+		profileData.setName(name);
+		profileData.setValue(1.0);
+		profileData.setUnit(StandardUnit.Count.name());
+		profileData.setTimestamp(new Date());
+		Map<String, String> dimension = new HashMap<String, String>();
+		dimension.put(DIMENSION_QUEUE_NAME, queueName);
+		if (splitDepth != null) {
+			dimension.put(DIMENSION_SPLIT_DEPTH, splitDepth.toString());
+		}
+		profileData.setDimension(dimension);
+		consumer.addProfileData(profileData);
+	}
+
 	/**
 	 * Run each messages from the batch separately.
 	 * @param progressCallback
@@ -114,4 +382,51 @@ public class ChangeMessageBatchProcessor implements MessageDrivenRunner {
 			}
 		}
 	}
+
+	/**
+	 * The number of times a failed batch was split.
+	 * 
+	 * @return
+	 */
+	public long getSplitCount() {
+		return splitCount.get();
+	}
+
+	/**
+	 * The number of failed batches split at the given depth, where depth zero
+	 * is a batch as read from the queue.
+	 * 
+	 * @param depth
+	 * @return
+	 */
+	public long getSplitCountAtDepth(int depth) {
+		return splitDepthCounts.get(depth);
+	}
+
+	/**
+	 * The number of failed batches returned to the queue as a whole.
+	 * 
+	 * @return
+	 */
+	public long getRequeuedBatchCount() {
+		return requeuedBatchCount.get();
+	}
+
+	/**
+	 * The number of failed messages returned to the queue individually.
+	 * 
+	 * @return
+	 */
+	public long getRequeuedMessageCount() {
+		return requeuedMessageCount.get();
+	}
+
+	/**
+	 * The number of messages given up on after too many failures.
+	 * 
+	 * @return
+	 */
+	public long getDeadLetterCount() {
+		return deadLetterCount.get();
+	}
 }
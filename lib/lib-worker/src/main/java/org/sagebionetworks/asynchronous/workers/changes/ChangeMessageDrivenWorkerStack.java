@@ -1,7 +1,10 @@
 package org.sagebionetworks.asynchronous.workers.changes;
 
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.cloudwatch.Consumer;
 import org.sagebionetworks.database.semaphore.CountingSemaphore;
 import org.sagebionetworks.workers.util.aws.message.MessageDrivenWorkerStack;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClient;
@@ -15,6 +18,7 @@ import com.amazonaws.services.sqs.AmazonSQSClient;
 public class ChangeMessageDrivenWorkerStack implements Runnable {
 
 	MessageDrivenWorkerStack stack;
+	ChangeMessageBatchProcessor batchProcessor;
 
 	public ChangeMessageDrivenWorkerStack(CountingSemaphore semaphore,
 										  AmazonSQS awsSQSClient,
@@ -28,13 +32,24 @@ public class ChangeMessageDrivenWorkerStack implements Runnable {
 		}
 		// Wrap the runner in a processor that converts batches of change
 		// messages into single messages.
-		ChangeMessageBatchProcessor batchProcessor = new ChangeMessageBatchProcessor(
+		batchProcessor = new ChangeMessageBatchProcessor(
 				awsSQSClient, config.getConfig().getMessageQueueConfiguration()
-						.getQueueName(), changeRunner);
+						.getQueueName(), config.getDeadLetterQueueName(), changeRunner);
 		config.getConfig().setRunner(batchProcessor);
 		stack = new MessageDrivenWorkerStack(semaphore, (AmazonSQSClient) awsSQSClient, config.getConfig());
 	}
 
+	/**
+	 * Publish the splits, requeues and dead letters of the batch processor.
+	 * 
+	 * @param consumer
+	 * @param stackConfig
+	 */
+	@Autowired
+	public void configureMetrics(Consumer consumer, StackConfiguration stackConfig) {
+		batchProcessor.setConsumer(consumer, stackConfig.getStackInstance());
+	}
+
 	@Override
 	public void run() {
 		stack.run();
@@ -6,6 +6,7 @@ import org.sagebionetworks.workers.util.aws.message.MessageDrivenWorkerStackConf
 public class ChangeMessageDrivenWorkerStackConfig {
 
 	ChangeMessageRunner runner;
+	String deadLetterQueueName;
 	MessageDrivenWorkerStackConfiguration config = new MessageDrivenWorkerStackConfiguration();
 	
 	/**
@@ -60,6 +61,20 @@ public class ChangeMessageDrivenWorkerStackConfig {
 		config.setGate(gate);
 	}
 
+	/**
+	 * An optional parameter. When set, change messages that keep failing are
+	 * sent to this queue.
+	 * 
+	 * @param deadLetterQueueName
+	 */
+	public void setDeadLetterQueueName(String deadLetterQueueName) {
+		this.deadLetterQueueName = deadLetterQueueName;
+	}
+
+	public String getDeadLetterQueueName() {
+		return deadLetterQueueName;
+	}
+
 	public ChangeMessageRunner getRunner() {
 		return runner;
 	}
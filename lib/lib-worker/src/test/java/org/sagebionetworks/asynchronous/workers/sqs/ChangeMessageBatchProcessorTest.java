@@ -1,9 +1,14 @@
 package org.sagebionetworks.asynchronous.workers.sqs;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyListOf;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -13,6 +18,7 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
@@ -21,6 +27,8 @@ import org.sagebionetworks.asynchronous.workers.changes.BatchChangeMessageDriven
 import org.sagebionetworks.asynchronous.workers.changes.ChangeMessageBatchProcessor;
 import org.sagebionetworks.asynchronous.workers.changes.ChangeMessageDrivenRunner;
 import org.sagebionetworks.asynchronous.workers.changes.ChangeMessageRunner;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
 import org.sagebionetworks.repo.model.message.ChangeMessages;
@@ -28,9 +36,11 @@ import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.GetQueueUrlResult;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
 
 public class ChangeMessageBatchProcessorTest {
 
@@ -44,6 +54,8 @@ public class ChangeMessageBatchProcessorTest {
 	BatchChangeMessageDrivenRunner mockBatchRunner;
 	@Mock
 	ChangeMessageRunner mockUnknownRunner;
+	@Mock
+	Consumer mockConsumer;
 	
 	String queueName;
 	String queueUrl;
@@ -111,8 +123,8 @@ public class ChangeMessageBatchProcessorTest {
 	}
 	
 	/**
-	 * When a batch processor fails with RecoverableMessageException, each
-	 * change message should be restored to the queue individually.  
+	 * When a batch processor keeps failing, the batch is split down to single
+	 * messages and each is restored to the queue individually.  
 	 * 
 	 * @throws RecoverableMessageException
 	 * @throws Exception
@@ -127,12 +139,240 @@ public class ChangeMessageBatchProcessorTest {
 				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
 		// call under test
 		processor.run(mockProgressCallback, awsMessage);
-		verify(mockBatchRunner).run(any(ProgressCallback.class),
+		// the batch and each half.
+		verify(mockBatchRunner, times(3)).run(any(ProgressCallback.class),
 				anyListOf(ChangeMessage.class));
-		verify(mockAwsSQSClient).sendMessage(queueUrl,
+		assertEquals(1L, processor.getSplitCount());
+		assertEquals(1L, processor.getSplitCountAtDepth(0));
+		verify(mockAwsSQSClient).sendMessage(createRequeueRequest(
+				EntityFactory.createJSONStringForEntity(one), 1));
+		verify(mockAwsSQSClient).sendMessage(createRequeueRequest(
+				EntityFactory.createJSONStringForEntity(two), 1));
+	}
+
+	@Test
+	public void testBatchSplitIsolatesFailure() throws RecoverableMessageException, Exception {
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, mockBatchRunner);
+		ChangeMessage three = createChange("synThree");
+		ChangeMessage four = createChange("synFour");
+		List<ChangeMessage> batch = Arrays.asList(one, two, three, four);
+		// any batch that includes three fails.
+		doAnswer((InvocationOnMock invocation) -> {
+			List<ChangeMessage> list = invocation.getArgument(1);
+			if (list.contains(three)) {
+				throw new IllegalArgumentException("bad entity");
+			}
+			return null;
+		}).when(mockBatchRunner).run(any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		// call under test
+		processor.run(mockProgressCallback, createBatchMessage(batch));
+		verify(mockBatchRunner).run(mockProgressCallback, Arrays.asList(one, two));
+		verify(mockBatchRunner).run(mockProgressCallback, Arrays.asList(three));
+		verify(mockBatchRunner).run(mockProgressCallback, Arrays.asList(four));
+		// only the bad message goes back to the queue.
+		verify(mockAwsSQSClient).sendMessage(createRequeueRequest(
+				EntityFactory.createJSONStringForEntity(three), 1));
+		verify(mockAwsSQSClient, times(1)).sendMessage(any(SendMessageRequest.class));
+		verify(mockAwsSQSClient, never()).sendMessage(anyString(), anyString());
+		assertEquals(1L, processor.getSplitCountAtDepth(0));
+		assertEquals(1L, processor.getSplitCountAtDepth(1));
+		assertEquals(1L, processor.getRequeuedMessageCount());
+	}
+
+	@Test
+	public void testRecoverableBatchRequeuedWhole() throws RecoverableMessageException, Exception {
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, mockBatchRunner);
+		doThrow(new RecoverableMessageException()).when(mockBatchRunner).run(
+				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		ChangeMessages messages = new ChangeMessages();
+		messages.setList(messageList);
+		// call under test
+		processor.run(mockProgressCallback, awsMessage);
+		// the batch is not split.
+		verify(mockBatchRunner, times(1)).run(any(ProgressCallback.class),
+				anyListOf(ChangeMessage.class));
+		verify(mockAwsSQSClient).sendMessage(createRequeueRequest(
+				EntityFactory.createJSONStringForEntity(messages), 1));
+		assertEquals(1L, processor.getRequeuedBatchCount());
+		assertEquals(0L, processor.getSplitCount());
+	}
+
+	@Test
+	public void testRepeatedFailureSentToDeadLetterQueue() throws RecoverableMessageException, Exception {
+		String deadLetterQueueName = "deadLetterQueue";
+		String deadLetterQueueUrl = "deadLetterQueueUrl";
+		when(mockAwsSQSClient.getQueueUrl(deadLetterQueueName)).thenReturn(
+				new GetQueueUrlResult().withQueueUrl(deadLetterQueueUrl));
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, deadLetterQueueName, mockBatchRunner);
+		doThrow(new RecoverableMessageException()).when(mockBatchRunner).run(
+				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		// call under test
+		for (int i = 0; i < ChangeMessageBatchProcessor.MAX_FAILURES_PER_MESSAGE; i++) {
+			processor.run(mockProgressCallback, awsMessage);
+		}
+		// the last failure splits the batch and gives up on each message.
+		assertEquals(ChangeMessageBatchProcessor.MAX_FAILURES_PER_MESSAGE - 1, processor.getRequeuedBatchCount());
+		assertEquals(1L, processor.getSplitCount());
+		verify(mockAwsSQSClient).sendMessage(deadLetterQueueUrl,
 				EntityFactory.createJSONStringForEntity(one));
-		verify(mockAwsSQSClient).sendMessage(queueUrl,
+		verify(mockAwsSQSClient).sendMessage(deadLetterQueueUrl,
 				EntityFactory.createJSONStringForEntity(two));
+		assertEquals(2L, processor.getDeadLetterCount());
+	}
+
+	@Test
+	public void testRepeatedFailureWithoutDeadLetterQueueRequeued() throws RecoverableMessageException, Exception {
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, mockBatchRunner);
+		doThrow(new RecoverableMessageException()).when(mockBatchRunner).run(
+				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		// call under test
+		for (int i = 0; i < ChangeMessageBatchProcessor.MAX_FAILURES_PER_MESSAGE; i++) {
+			processor.run(mockProgressCallback, awsMessage);
+		}
+		// without a dead letter queue each message keeps being retried, with a longer delay.
+		int failures = ChangeMessageBatchProcessor.MAX_FAILURES_PER_MESSAGE + 1;
+		verify(mockAwsSQSClient).sendMessage(createRequeueRequest(
+				EntityFactory.createJSONStringForEntity(one), failures));
+		verify(mockAwsSQSClient).sendMessage(createRequeueRequest(
+				EntityFactory.createJSONStringForEntity(two), failures));
+		verify(mockAwsSQSClient, never()).sendMessage(anyString(), anyString());
+		assertEquals(0L, processor.getDeadLetterCount());
+	}
+
+	/**
+	 * A single message read from the queue is retried by the container.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSingleMessageBatchFailureThrown() throws RecoverableMessageException, Exception {
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, mockBatchRunner);
+		RecoverableMessageException exception = new RecoverableMessageException();
+		doThrow(exception).when(mockBatchRunner).run(
+				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		awsMessage = MessageUtils.createMessage(one, "messageId", "messageHandle");
+		try {
+			// call under test
+			processor.run(mockProgressCallback, awsMessage);
+			fail();
+		} catch (RecoverableMessageException e) {
+			assertEquals(exception, e);
+		}
+		verify(mockAwsSQSClient, never()).sendMessage(any(SendMessageRequest.class));
+		verify(mockAwsSQSClient, never()).sendMessage(anyString(), anyString());
+	}
+
+	@Test
+	public void testSingleMessageRepeatedFailureSentToDeadLetterQueue() throws RecoverableMessageException, Exception {
+		String deadLetterQueueName = "deadLetterQueue";
+		String deadLetterQueueUrl = "deadLetterQueueUrl";
+		when(mockAwsSQSClient.getQueueUrl(deadLetterQueueName)).thenReturn(
+				new GetQueueUrlResult().withQueueUrl(deadLetterQueueUrl));
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, deadLetterQueueName, mockBatchRunner);
+		doThrow(new IllegalArgumentException("bad entity")).when(mockBatchRunner).run(
+				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		awsMessage = MessageUtils.createMessage(one, "messageId", "messageHandle");
+		for (int i = 1; i < ChangeMessageBatchProcessor.MAX_FAILURES_PER_MESSAGE; i++) {
+			try {
+				processor.run(mockProgressCallback, awsMessage);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		// call under test
+		processor.run(mockProgressCallback, awsMessage);
+		verify(mockAwsSQSClient).sendMessage(deadLetterQueueUrl,
+				EntityFactory.createJSONStringForEntity(one));
+		verify(mockAwsSQSClient, never()).sendMessage(any(SendMessageRequest.class));
+		assertEquals(1L, processor.getDeadLetterCount());
+	}
+
+	/**
+	 * When part of a split batch cannot be returned to the queue, the whole
+	 * batch must be retried rather than deleted.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRequeueFailureThrown() throws RecoverableMessageException, Exception {
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, mockBatchRunner);
+		doThrow(new IllegalArgumentException("bad entity")).when(mockBatchRunner).run(
+				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		AmazonServiceException exception = new AmazonServiceException("SQS is down");
+		when(mockAwsSQSClient.sendMessage(any(SendMessageRequest.class))).thenThrow(exception);
+		try {
+			// call under test
+			processor.run(mockProgressCallback, awsMessage);
+			fail();
+		} catch (AmazonServiceException e) {
+			assertEquals(exception, e);
+		}
+	}
+
+	@Test
+	public void testGetRetryDelaySeconds() {
+		assertEquals(ChangeMessageBatchProcessor.RETRY_DELAY_SECONDS, ChangeMessageBatchProcessor.getRetryDelaySeconds(1));
+		assertEquals(ChangeMessageBatchProcessor.RETRY_DELAY_SECONDS * 2, ChangeMessageBatchProcessor.getRetryDelaySeconds(2));
+		assertEquals(ChangeMessageBatchProcessor.RETRY_DELAY_SECONDS * 4, ChangeMessageBatchProcessor.getRetryDelaySeconds(3));
+		// SQS does not allow longer delays.
+		assertEquals(ChangeMessageBatchProcessor.MAX_RETRY_DELAY_SECONDS, ChangeMessageBatchProcessor.getRetryDelaySeconds(100));
+	}
+
+	@Test
+	public void testPublishMetrics() throws RecoverableMessageException, Exception {
+		processor = new ChangeMessageBatchProcessor(mockAwsSQSClient,
+				queueName, mockBatchRunner);
+		processor.setConsumer(mockConsumer, "123");
+		doThrow(new Exception()).when(mockBatchRunner).run(
+				any(ProgressCallback.class), anyListOf(ChangeMessage.class));
+		// call under test
+		processor.run(mockProgressCallback, awsMessage);
+		ArgumentCaptor<ProfileData> captor = ArgumentCaptor.forClass(ProfileData.class);
+		verify(mockConsumer, times(3)).addProfileData(captor.capture());
+		List<ProfileData> published = captor.getAllValues();
+		ProfileData split = published.get(0);
+		assertEquals("ChangeMessageBatchProcessor-123", split.getNamespace());
+		assertEquals(ChangeMessageBatchProcessor.METRIC_SPLIT, split.getName());
+		assertEquals(1.0, split.getValue().doubleValue(), 0.0001);
+		assertEquals(queueName, split.getDimension().get(ChangeMessageBatchProcessor.DIMENSION_QUEUE_NAME));
+		assertEquals("0", split.getDimension().get(ChangeMessageBatchProcessor.DIMENSION_SPLIT_DEPTH));
+		ProfileData requeued = published.get(1);
+		assertEquals(ChangeMessageBatchProcessor.METRIC_REQUEUED_MESSAGE, requeued.getName());
+		assertNull(requeued.getDimension().get(ChangeMessageBatchProcessor.DIMENSION_SPLIT_DEPTH));
+		assertEquals(ChangeMessageBatchProcessor.METRIC_REQUEUED_MESSAGE, published.get(2).getName());
+	}
+
+	private SendMessageRequest createRequeueRequest(String body, int failures) {
+		return new SendMessageRequest(queueUrl, body)
+				.withDelaySeconds(ChangeMessageBatchProcessor.getRetryDelaySeconds(failures));
+	}
+
+	/**
+	 * Helper to create a change message for a new entity.
+	 * 
+	 * @param objectId
+	 * @return
+	 */
+	private static ChangeMessage createChange(String objectId) {
+		ChangeMessage change = new ChangeMessage();
+		change.setChangeType(ChangeType.UPDATE);
+		change.setObjectEtag("etag");
+		change.setObjectId(objectId);
+		return change;
+	}
+
+	private static Message createBatchMessage(List<ChangeMessage> batch) throws Exception {
+		ChangeMessages messages = new ChangeMessages();
+		messages.setList(batch);
+		return MessageUtils.createTopicMessage(messages, "topic:arn", "id", "handle");
 	}
 
 	@Test(expected = RecoverableMessageException.class)
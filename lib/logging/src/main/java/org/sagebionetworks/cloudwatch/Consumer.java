@@ -1,11 +1,14 @@
 package org.sagebionetworks.cloudwatch;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,6 +25,12 @@ import com.amazonaws.services.cloudwatch.model.StatisticSet;
  * Sends metric information to AmazonWebServices CloudWatch. It's the consumer
  * in the producer/consumer pattern and it handles the Watchers in the Observer
  * pattern. Watchers can monitor success or failure of "puts" to CloudWatch
+ * <p>
+ * ProfileData is not queued one event at a time. Instead, all data with the
+ * same namespace, name, unit and dimensions is folded into a single
+ * MetricAggregate until the next put, so the memory used and the number of
+ * metrics sent per put are bounded by the number of distinct metrics rather
+ * than by the number of events.
  * 
  * @author ntiedema
  */
@@ -30,8 +39,12 @@ public class Consumer {
 	
 	public static final int MAX_BATCH_SIZE = 20;
 
-	// We us an atomic reference to the list instead of using synchronization.
-	private ConcurrentLinkedQueue<ProfileData> listProfileData = new ConcurrentLinkedQueue<ProfileData>();
+	// The aggregates of all data added since the last put.
+	private ConcurrentHashMap<MetricAggregate.Key, MetricAggregate> aggregates = new ConcurrentHashMap<MetricAggregate.Key, MetricAggregate>();
+	// Used to publish aggregates in the order they were created.
+	private AtomicLong aggregateSequence = new AtomicLong(0);
+	// The aggregates sent by the last put, for debugging.
+	private volatile List<MetricAggregate> lastPublished = Collections.emptyList();
 
 	// need a cloudWatch client
 	@Autowired
@@ -52,16 +65,35 @@ public class Consumer {
 	}
 
 	/**
-	 * Takes a ProfileData and adds it to synchronized list. If ProfileData item
-	 * is null, it does not add to the list.
+	 * Takes a ProfileData and folds it into the aggregate of its metric.
 	 * 
 	 * @param addToListMDS
 	 *            ProfileData Data Transfer Object
 	 * @throws IllegalArgumentException
-	 *             if the given object is null
+	 *             if the given object is null, or is missing its namespace,
+	 *             name or unit
 	 */
 	public void addProfileData(ProfileData addToList) {
-		listProfileData.add(addToList);
+		if (addToList == null) throw new IllegalArgumentException("ProfileData cannot be null");
+		if (addToList.getNamespace() == null) throw new IllegalArgumentException("ProfileData.namespace cannot be null");
+		if (addToList.getName() == null) throw new IllegalArgumentException("ProfileData.name cannot be null");
+		if (addToList.getUnit() == null) throw new IllegalArgumentException("ProfileData.unit cannot be null");
+		MetricAggregate.Key key = MetricAggregate.Key.of(addToList);
+		while (true) {
+			MetricAggregate aggregate = aggregates.get(key);
+			if (aggregate == null) {
+				MetricAggregate created = new MetricAggregate(addToList, aggregateSequence.incrementAndGet());
+				aggregate = aggregates.putIfAbsent(created.getKey(), created);
+				if (aggregate == null) {
+					aggregate = created;
+				}
+			}
+			if (aggregate.add(addToList)) {
+				return;
+			}
+			// The aggregate was closed by a put, so start a new one.
+			aggregates.remove(key, aggregate);
+		}
 	}
 	
 	/**
@@ -70,7 +102,9 @@ public class Consumer {
 	 * @param toAdd
 	 */
 	public void addProfileData(List<ProfileData> toAdd) {
-		listProfileData.addAll(toAdd);
+		for (ProfileData pd : toAdd) {
+			addProfileData(pd);
+		}
 	}
 
 	/**
@@ -80,7 +114,7 @@ public class Consumer {
 	 */
 	public List<String> executeCloudWatchPut() {
 		try {
-			// collect the ProfileData from synchronized list
+			// collect the aggregated ProfileData
 			List<ProfileData> nextBunch = pollListFromQueue();
 
 			//here I have a list of potentially different namespaces
@@ -120,21 +154,54 @@ public class Consumer {
 		}
 	}
 	/**
-	 * Poll all data currently on the queue and add it to a list.
+	 * Close all current aggregates and convert each to the ProfileData to
+	 * publish, in the order the aggregates were created.
 	 * @return
 	 */
 	private List<ProfileData> pollListFromQueue(){
+		List<MetricAggregate> closed = new ArrayList<MetricAggregate>(aggregates.size());
+		for (MetricAggregate.Key key : aggregates.keySet()) {
+			MetricAggregate aggregate = aggregates.remove(key);
+			if (aggregate != null) {
+				// Data added after this point goes to a new aggregate.
+				closed.add(aggregate.close());
+			}
+		}
+		Collections.sort(closed, Comparator.comparingLong(MetricAggregate::getSequence));
+		lastPublished = Collections.unmodifiableList(closed);
 		List<ProfileData> list = new LinkedList<ProfileData>();
-		for(ProfileData pd = this.listProfileData.poll(); pd != null; pd = this.listProfileData.poll()){
-			// Add to the list
-			list.add(pd);
+		for (MetricAggregate aggregate : closed) {
+			list.add(aggregate.toProfileData());
 		}
 		return list;
 	}
+
+	/**
+	 * A snapshot of the aggregates of all data added since the last put.
+	 * 
+	 * @return
+	 */
+	public List<MetricAggregate> getPendingAggregates() {
+		List<MetricAggregate> snapshot = new ArrayList<MetricAggregate>(aggregates.size());
+		for (MetricAggregate aggregate : aggregates.values()) {
+			snapshot.add(aggregate.snapshot());
+		}
+		Collections.sort(snapshot, Comparator.comparingLong(MetricAggregate::getSequence));
+		return snapshot;
+	}
+
+	/**
+	 * The aggregates sent to CloudWatch by the last put.
+	 * 
+	 * @return
+	 */
+	public List<MetricAggregate> getLastPublishedAggregates() {
+		return lastPublished;
+	}
 	
 	// for testing only
 	public void clearProfileData() {
-		this.listProfileData.clear();
+		this.aggregates.clear();
 	}
 
 	/**
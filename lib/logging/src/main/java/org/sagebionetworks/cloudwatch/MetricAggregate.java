@@ -0,0 +1,316 @@
+package org.sagebionetworks.cloudwatch;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The statistics of all ProfileData with the same namespace, name, unit and
+ * dimensions that were added to the Consumer since the last put to CloudWatch.
+ * <p>
+ * Each sample is folded into a sample count, sum, minimum and maximum, and into
+ * a histogram with one bucket per power of two that can be used to estimate
+ * percentiles locally. ProfileData that already carries MetricStats is merged
+ * into the count, sum, minimum and maximum only, as its distribution is
+ * unknown.
+ * <p>
+ * Once an aggregate is closed for publishing it no longer accepts data, and the
+ * caller must start a new aggregate.
+ *
+ */
+public class MetricAggregate {
+
+	public static final int HISTOGRAM_BUCKETS = 64;
+
+	private final Key key;
+	private final long sequence;
+
+	private ProfileData first;
+	private long eventCount;
+	private boolean hasStats;
+	private double sampleCount;
+	private double sum;
+	private double minimum;
+	private double maximum;
+	private long[] histogram;
+	private Date timestamp;
+	private boolean closed;
+
+	/**
+	 * Create an empty aggregate for the key of the given data.
+	 * 
+	 * @param pd
+	 * @param sequence
+	 *            Used to publish aggregates in the order they were created.
+	 */
+	MetricAggregate(ProfileData pd, long sequence) {
+		Map<String, String> dimension = pd.getDimension() == null ? null : new HashMap<>(pd.getDimension());
+		this.key = new Key(pd.getNamespace(), pd.getName(), pd.getUnit(), dimension);
+		this.sequence = sequence;
+		this.histogram = new long[HISTOGRAM_BUCKETS];
+	}
+
+	/**
+	 * Copy constructor used for snapshots.
+	 * 
+	 * @param toCopy
+	 */
+	private MetricAggregate(MetricAggregate toCopy) {
+		this.key = toCopy.key;
+		this.sequence = toCopy.sequence;
+		this.first = toCopy.first;
+		this.eventCount = toCopy.eventCount;
+		this.hasStats = toCopy.hasStats;
+		this.sampleCount = toCopy.sampleCount;
+		this.sum = toCopy.sum;
+		this.minimum = toCopy.minimum;
+		this.maximum = toCopy.maximum;
+		this.histogram = Arrays.copyOf(toCopy.histogram, HISTOGRAM_BUCKETS);
+		this.timestamp = toCopy.timestamp;
+		this.closed = toCopy.closed;
+	}
+
+	/**
+	 * Fold the given data into this aggregate.
+	 * 
+	 * @param pd
+	 * @return False if this aggregate was already closed, in which case the
+	 *         data was not added.
+	 */
+	synchronized boolean add(ProfileData pd) {
+		if (closed) {
+			return false;
+		}
+		if (first == null) {
+			first = pd;
+		}
+		eventCount++;
+		if (pd.getTimestamp() != null && (timestamp == null || pd.getTimestamp().after(timestamp))) {
+			timestamp = pd.getTimestamp();
+		}
+		MetricStats stats = pd.getMetricStats();
+		if (stats != null) {
+			hasStats = true;
+			merge(stats.getCount(), stats.getSum(), stats.getMinimum(), stats.getMaximum());
+		} else if (pd.getValue() != null) {
+			double value = pd.getValue();
+			merge(1.0, value, value, value);
+			histogram[getBucketIndex(value)]++;
+		}
+		return true;
+	}
+
+	private void merge(Double count, Double sum, Double min, Double max) {
+		if (count == null || count <= 0) {
+			return;
+		}
+		if (sampleCount == 0) {
+			this.minimum = min;
+			this.maximum = max;
+		} else {
+			this.minimum = Math.min(this.minimum, min);
+			this.maximum = Math.max(this.maximum, max);
+		}
+		this.sampleCount += count;
+		this.sum += sum;
+	}
+
+	/**
+	 * Close this aggregate so it no longer accepts data.
+	 * 
+	 * @return A snapshot of the final state of this aggregate.
+	 */
+	synchronized MetricAggregate close() {
+		closed = true;
+		return new MetricAggregate(this);
+	}
+
+	/**
+	 * A copy of the current state of this aggregate.
+	 * 
+	 * @return
+	 */
+	synchronized MetricAggregate snapshot() {
+		return new MetricAggregate(this);
+	}
+
+	/**
+	 * Convert this aggregate to the ProfileData to publish. A single sample is
+	 * published as-is, while anything else is published as a statistic set.
+	 * 
+	 * @return
+	 */
+	synchronized ProfileData toProfileData() {
+		if ((eventCount == 1 && !hasStats) || sampleCount == 0) {
+			return first;
+		}
+		ProfileData pd = new ProfileData();
+		pd.setNamespace(key.namespace);
+		pd.setName(key.name);
+		pd.setUnit(key.unit);
+		if (timestamp != null) {
+			pd.setTimestamp(timestamp);
+		}
+		pd.setDimension(key.dimension);
+		MetricStats stats = new MetricStats();
+		stats.setCount(sampleCount);
+		stats.setSum(sum);
+		stats.setMinimum(minimum);
+		stats.setMaximum(maximum);
+		pd.setMetricStats(stats);
+		return pd;
+	}
+
+	/**
+	 * Estimate a percentile of the individual samples of this aggregate from
+	 * its histogram. The estimate is the upper bound of the bucket holding the
+	 * percentile, clamped to the observed minimum and maximum.
+	 * 
+	 * @param percentile
+	 *            Between 0.0 and 1.0
+	 * @return Null if this aggregate has no individual samples.
+	 */
+	public synchronized Double getPercentile(double percentile) {
+		if (percentile < 0.0 || percentile > 1.0) {
+			throw new IllegalArgumentException("Percentile must be between 0.0 and 1.0");
+		}
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		if (total == 0) {
+			return null;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(percentile * total));
+		long seen = 0;
+		int index = 0;
+		for (; index < HISTOGRAM_BUCKETS - 1; index++) {
+			seen += histogram[index];
+			if (seen >= rank) {
+				break;
+			}
+		}
+		double upperBound = Math.pow(2, index);
+		return Math.max(minimum, Math.min(maximum, upperBound));
+	}
+
+	/**
+	 * The histogram bucket of a value. Bucket zero holds all values less than
+	 * one, and bucket i holds values from 2^(i-1) up to 2^i.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	static int getBucketIndex(double value) {
+		if (!(value >= 1.0)) {
+			return 0;
+		}
+		long whole = (long) value;
+		return Math.min(HISTOGRAM_BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(whole));
+	}
+
+	public String getNamespace() {
+		return key.namespace;
+	}
+
+	public String getName() {
+		return key.name;
+	}
+
+	public String getUnit() {
+		return key.unit;
+	}
+
+	public Map<String, String> getDimension() {
+		return key.dimension;
+	}
+
+	public synchronized long getEventCount() {
+		return eventCount;
+	}
+
+	public synchronized double getSampleCount() {
+		return sampleCount;
+	}
+
+	public synchronized double getSum() {
+		return sum;
+	}
+
+	public synchronized double getMinimum() {
+		return minimum;
+	}
+
+	public synchronized double getMaximum() {
+		return maximum;
+	}
+
+	public synchronized long[] getHistogram() {
+		return Arrays.copyOf(histogram, HISTOGRAM_BUCKETS);
+	}
+
+	Key getKey() {
+		return key;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "MetricAggregate [namespace=" + key.namespace + ", name=" + key.name + ", unit=" + key.unit
+				+ ", dimension=" + key.dimension + ", sampleCount=" + sampleCount + ", sum=" + sum + ", minimum="
+				+ minimum + ", maximum=" + maximum + "]";
+	}
+
+	/**
+	 * Identifies the metric an aggregate belongs to.
+	 *
+	 */
+	static class Key {
+
+		final String namespace;
+		final String name;
+		final String unit;
+		final Map<String, String> dimension;
+		final int hashCode;
+
+		Key(String namespace, String name, String unit, Map<String, String> dimension) {
+			this.namespace = namespace;
+			this.name = name;
+			this.unit = unit;
+			this.dimension = dimension;
+			this.hashCode = Objects.hash(namespace, name, unit, dimension);
+		}
+
+		/**
+		 * The key of the given data.
+		 * 
+		 * @param pd
+		 * @return
+		 */
+		static Key of(ProfileData pd) {
+			return new Key(pd.getNamespace(), pd.getName(), pd.getUnit(), pd.getDimension());
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hashCode == other.hashCode && Objects.equals(namespace, other.namespace)
+					&& Objects.equals(name, other.name) && Objects.equals(unit, other.unit)
+					&& Objects.equals(dimension, other.dimension);
+		}
+	}
+}
@@ -7,6 +7,7 @@ import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -138,6 +139,105 @@ public class ConsumerTest {
 		verify(mockClient, times(1)).putMetricData(batch1);
 	}
 	
+	@Test
+	public void testExecuteCloudWatchPutAggregates(){
+		Date first = new Date(1000L);
+		Date last = new Date(2000L);
+		for(double value: new double[]{5.0, 1.0, 12.0}){
+			consumer.addProfileData(createLatency("latency", value, value == 12.0 ? last : first));
+		}
+		// a different dimension is a different metric.
+		ProfileData other = createLatency("latency", 7.0, first);
+		other.getDimension().put("type", "other");
+		consumer.addProfileData(other);
+		
+		List<MetricAggregate> pending = consumer.getPendingAggregates();
+		assertEquals(2, pending.size());
+		assertEquals(3L, pending.get(0).getEventCount());
+		assertEquals(3.0, pending.get(0).getSampleCount(), 0.0);
+		assertEquals(12.0, pending.get(0).getPercentile(1.0), 0.0);
+		
+		// the first three are sent as a single statistic set.
+		ProfileData expectedStats = new ProfileData();
+		expectedStats.setNamespace("namespace");
+		expectedStats.setName("latency");
+		expectedStats.setUnit("Milliseconds");
+		expectedStats.setTimestamp(last);
+		expectedStats.setDimension(createLatency("latency", 0.0, first).getDimension());
+		MetricStats stats = new MetricStats();
+		stats.setCount(3.0);
+		stats.setSum(18.0);
+		stats.setMinimum(1.0);
+		stats.setMaximum(12.0);
+		expectedStats.setMetricStats(stats);
+		PutMetricDataRequest batch0 = new PutMetricDataRequest();
+		batch0.setNamespace("namespace");
+		batch0.getMetricData().add(Consumer.makeMetricDatum(expectedStats));
+		// a single sample is sent as-is.
+		batch0.getMetricData().add(Consumer.makeMetricDatum(other));
+		// call under test
+		consumer.executeCloudWatchPut();
+		verify(mockClient, times(1)).putMetricData(batch0);
+		assertEquals(0, consumer.getPendingAggregates().size());
+		assertEquals(2, consumer.getLastPublishedAggregates().size());
+		// data added after the put starts a new aggregate.
+		consumer.addProfileData(createLatency("latency", 3.0, last));
+		assertEquals(1L, consumer.getPendingAggregates().get(0).getEventCount());
+	}
+	
+	@Test
+	public void testExecuteCloudWatchPutMergesStats(){
+		ProfileData pd = createLatency("latency", 0.0, new Date(1000L));
+		MetricStats stats = new MetricStats();
+		stats.setCount(10.0);
+		stats.setSum(100.0);
+		stats.setMinimum(2.0);
+		stats.setMaximum(20.0);
+		pd.setMetricStats(stats);
+		consumer.addProfileData(pd);
+		consumer.addProfileData(createLatency("latency", 50.0, new Date(1000L)));
+		// call under test
+		consumer.executeCloudWatchPut();
+		MetricAggregate published = consumer.getLastPublishedAggregates().get(0);
+		assertEquals(11.0, published.getSampleCount(), 0.0);
+		assertEquals(150.0, published.getSum(), 0.0);
+		assertEquals(2.0, published.getMinimum(), 0.0);
+		assertEquals(50.0, published.getMaximum(), 0.0);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testAddProfileDataNullName(){
+		ProfileData pd = new ProfileData();
+		pd.setNamespace("namespace");
+		pd.setUnit("Count");
+		// call under test
+		consumer.addProfileData(pd);
+	}
+	
+	@Test
+	public void testGetBucketIndex(){
+		assertEquals(0, MetricAggregate.getBucketIndex(-1.0));
+		assertEquals(0, MetricAggregate.getBucketIndex(0.5));
+		assertEquals(1, MetricAggregate.getBucketIndex(1.0));
+		assertEquals(2, MetricAggregate.getBucketIndex(3.0));
+		assertEquals(3, MetricAggregate.getBucketIndex(4.0));
+		assertEquals(MetricAggregate.HISTOGRAM_BUCKETS-1, MetricAggregate.getBucketIndex(Double.MAX_VALUE));
+		assertEquals(0, MetricAggregate.getBucketIndex(Double.NaN));
+	}
+	
+	private static ProfileData createLatency(String name, double value, Date timestamp){
+		ProfileData pd = new ProfileData();
+		pd.setNamespace("namespace");
+		pd.setName(name);
+		pd.setUnit("Milliseconds");
+		pd.setTimestamp(timestamp);
+		pd.setValue(value);
+		Map<String, String> dimension = new HashMap<String, String>();
+		dimension.put("worker", "someWorker");
+		pd.setDimension(dimension);
+		return pd;
+	}
+	
 	/**
 	 * Helper used to build up expected PutMetricDataRequest
 	 * @param list
@@ -0,0 +1,89 @@
+package org.sagebionetworks.repo.model;
+
+/**
+ * Data transfer object to capture the checksum of the children of a single
+ * parent that fall within a range of IDs. Two ranges with the same count,
+ * checksum, minimum and maximum ID are assumed to contain the same children.
+ * 
+ */
+public class IdRangeChecksum {
+
+	long count;
+	long checksum;
+	Long minId;
+	Long maxId;
+
+	/**
+	 * @param count The number of children in the range.
+	 * @param checksum The sum of the CRC32 of each child in the range.
+	 * @param minId The smallest child ID in the range. Null when the range is empty.
+	 * @param maxId The largest child ID in the range. Null when the range is empty.
+	 */
+	public IdRangeChecksum(long count, long checksum, Long minId, Long maxId) {
+		super();
+		this.count = count;
+		this.checksum = checksum;
+		this.minId = minId;
+		this.maxId = maxId;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getChecksum() {
+		return checksum;
+	}
+
+	public Long getMinId() {
+		return minId;
+	}
+
+	public Long getMaxId() {
+		return maxId;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (int) (checksum ^ (checksum >>> 32));
+		result = prime * result + (int) (count ^ (count >>> 32));
+		result = prime * result + ((maxId == null) ? 0 : maxId.hashCode());
+		result = prime * result + ((minId == null) ? 0 : minId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		IdRangeChecksum other = (IdRangeChecksum) obj;
+		if (checksum != other.checksum)
+			return false;
+		if (count != other.count)
+			return false;
+		if (maxId == null) {
+			if (other.maxId != null)
+				return false;
+		} else if (!maxId.equals(other.maxId))
+			return false;
+		if (minId == null) {
+			if (other.minId != null)
+				return false;
+		} else if (!minId.equals(other.minId))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "IdRangeChecksum [count=" + count + ", checksum=" + checksum + ", minId=" + minId + ", maxId=" + maxId
+				+ "]";
+	}
+
+}
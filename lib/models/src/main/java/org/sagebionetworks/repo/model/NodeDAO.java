@@ -242,6 +242,15 @@ public interface NodeDAO {
 	 */
 	public List<EntityHeader> getEntityPath(String nodeId) throws DatastoreException, NotFoundException;
 	
+	/**
+	 * Get the full path for each of the given entities with a single query.
+	 * 
+	 * @param nodeIds
+	 * @return Map.key = the node ID and Map.value = the path of that node, ordered from the
+	 *         root to the node itself. Nodes that do not exist are not included in the map.
+	 */
+	public Map<Long, List<EntityHeader>> getEntityPaths(Collection<Long> nodeIds);
+	
 	/**
 	 * Lookup a node id using its unique path.
 	 * @param path
@@ -416,6 +425,43 @@ public interface NodeDAO {
 	 */
 	Set<Long> getAllContainerIds(String parentId, int maxNumberIds) throws LimitExceededException;
 	
+	/**
+	 * Rebuild the container closure of each of the given nodes and all of the
+	 * containers beneath them. The closure is maintained as nodes are created,
+	 * moved, and deleted through this DAO, so this is only needed when nodes
+	 * are written directly, such as during migration.
+	 * 
+	 * @param nodeIds
+	 */
+	void rebuildContainerClosure(Collection<Long> nodeIds);
+	
+	/**
+	 * Remove every container closure row that references a node with an ID in
+	 * the given range. Migration deletes nodes with foreign key checks
+	 * disabled, so the cascade of the closure does not fire.
+	 * 
+	 * @param minimumId minimum ID (inclusive).
+	 * @param maximumId maximum ID (inclusive).
+	 */
+	void deleteContainerClosureForRange(long minimumId, long maximumId);
+	
+	/**
+	 * Link up to the given number of containers that are missing from the
+	 * container closure to themselves and to their ancestors. Used to backfill
+	 * the closure of an existing stack, one batch per call.
+	 * 
+	 * @param maxContainers
+	 * @return The number of containers linked. Zero once every container is in
+	 *         the closure.
+	 */
+	int repairContainerClosure(int maxContainers);
+	
+	/**
+	 * Remove every container closure row that references a node that no
+	 * longer exists. This scans the whole closure.
+	 */
+	void deleteOrphanedContainerClosure();
+	
 	/**
 	 * Lookup a nodeId using its alias.
 	 * @param alias
@@ -437,6 +483,17 @@ public interface NodeDAO {
 	 * @return
 	 */
 	public String getBenefactor(String beneficiaryId);
+	
+	/**
+	 * Get a node's benefactor and the etag of the benefactor's ACL with a single
+	 * query. The ACL etag changes each time the ACL is created or updated.
+	 * Throws a NotFoundException if the node does not exist.
+	 * 
+	 * @param beneficiaryId
+	 * @return The ID of the node, the etag of its benefactor's ACL and the ID of
+	 *         its benefactor. The etag is null if the benefactor has no ACL.
+	 */
+	public IdAndEtag getBenefactorAndAclEtag(String beneficiaryId);
 
 	/**
 	 * Return a set of fileHandleIds that associated with entityId and appear in the provided list.
@@ -522,6 +579,28 @@ public interface NodeDAO {
 	 */
 	public List<IdAndEtag> getChildren(long parentId);
 	
+	/**
+	 * Get the checksum of the children of the given parent with an ID within the
+	 * given range.
+	 * 
+	 * @param parentId
+	 * @param minIdInclusive
+	 * @param maxIdInclusive
+	 * @return
+	 */
+	public IdRangeChecksum getChildChecksumForIdRange(long parentId, long minIdInclusive, long maxIdInclusive);
+	
+	/**
+	 * Get the Id and Etag of the children of the given parent with an ID within
+	 * the given range.
+	 * 
+	 * @param parentId
+	 * @param minIdInclusive
+	 * @param maxIdInclusive
+	 * @return
+	 */
+	public List<IdAndEtag> getChildrenInIdRange(long parentId, long minIdInclusive, long maxIdInclusive);
+	
 	/**
 	 * Touch the node and change the etag, modified on, and modified by.
 	 * 
@@ -44,6 +44,12 @@ public interface UserGroupDAO {
 	 */
 	public void touch(Long principalId);
 	
+	/**
+	 * Get the etag of the principal without locking the row.
+	 * @return The etag or null if the principal does not exist.
+	 */
+	public String getEtag(Long principalId);
+	
 	/**
 	 * @param dto
 	 *            object to be created
@@ -0,0 +1,21 @@
+package org.sagebionetworks.repo.model.dao.table;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Callback for a reader of an input stream.
+ *
+ * @param <T> The type of the object read from the stream.
+ */
+public interface ReaderCallback<T> {
+
+	/**
+	 * Read the data from the given input stream.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	T read(InputStream in) throws IOException;
+
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
+import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.table.ColumnChange;
 import org.sagebionetworks.repo.model.table.ColumnModel;
 import org.sagebionetworks.repo.model.table.IdRange;
@@ -117,6 +118,52 @@ public interface TableRowTruthDAO {
 	 * @throws IOException 
 	 */
 	public SparseChangeSetDto getRowSet(TableRowChange dto) throws IOException;
+	
+	/**
+	 * Read the stored ChangeSet for the given dto with the given reader. The
+	 * reader is passed the GZIP compressed contents of the change set, which
+	 * is closed after the reader returns.
+	 * 
+	 * @param dto
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public <T> T readRowSet(TableRowChange dto, ReaderCallback<T> reader) throws IOException;
+
+	/**
+	 * Save a snapshot of a table's index as of the given change number. Each
+	 * version of a table has its own snapshots. Any older snapshot of the same
+	 * table version is deleted once the new snapshot is saved.
+	 * 
+	 * @param tableId      The table and optional version of the index.
+	 * @param changeNumber The last change number included in the snapshot.
+	 * @param writer       Writes the snapshot.
+	 */
+	public void saveIndexSnapshot(IdAndVersion tableId, long changeNumber, WriterCallback writer);
+
+	/**
+	 * Get the change number of the newest index snapshot of the given table
+	 * version that does not include changes beyond the given change number.
+	 * 
+	 * @param tableId
+	 * @param maxChangeNumber
+	 * @return Will return an empty Optional if the table version does not have
+	 *         such a snapshot.
+	 */
+	public Optional<Long> getIndexSnapshotChangeNumber(IdAndVersion tableId, long maxChangeNumber);
+
+	/**
+	 * Read the index snapshot of the given table version for the given change
+	 * number.
+	 * 
+	 * @param tableId
+	 * @param changeNumber
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public <T> T readIndexSnapshot(IdAndVersion tableId, long changeNumber, ReaderCallback<T> reader) throws IOException;
 
 	/**
 	 * List the keys of all change sets applied to a table.
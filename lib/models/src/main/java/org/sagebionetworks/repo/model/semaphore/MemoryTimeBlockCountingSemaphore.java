@@ -26,6 +26,22 @@ public interface MemoryTimeBlockCountingSemaphore {
 	 */
 	public boolean attemptToAcquireLock(String key, long timeoutSec,
 			long maxLockCount);
+
+	/**
+	 * Attempt to acquire a lock with a key made of two parts. This is the same
+	 * as locking on the concatenation of both parts, without building the
+	 * concatenated key on each call.
+	 * 
+	 * @param key
+	 *            The first part of the key.
+	 * @param subKey
+	 *            The second part of the key.
+	 * @param timeoutSec
+	 * @param maxLockCount
+	 * @return boolean true if lock was acquired successfully. false otherwise.
+	 */
+	public boolean attemptToAcquireLock(String key, String subKey, long timeoutSec,
+			long maxLockCount);
 	
 	/**
 	 * Force the release of all locks.
@@ -1,16 +1,70 @@
 package org.sagebionetworks.repo.model.semaphore;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.sagebionetworks.util.Clock;
+import org.sagebionetworks.util.DefaultClock;
 import org.sagebionetworks.util.ValidateArgument;
 
+/**
+ * A lock-free implementation of MemoryTimeBlockCountingSemaphore.
+ * <p>
+ * Each key has a time block with an atomic count. A lock is issued by
+ * incrementing the count with compare-and-set, and an expired block is
+ * replaced with a new one, so threads never wait on each other. Expired blocks
+ * are evicted from memory by the first call after each sweep interval.
+ * <p>
+ * Two-part keys are looked up with a per-thread probe, so a composite key is
+ * only allocated the first time it is seen in each time block.
+ *
+ */
 public class MemoryTimeBlockCountingSemaphoreImpl implements MemoryTimeBlockCountingSemaphore{
-	private Map<String, SimpleSemaphore> keySemaphoreMap = new HashMap<String,SimpleSemaphore>();
-	
+
+	/**
+	 * How often expired time blocks are removed from memory.
+	 */
+	public static final long SWEEP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+	private final ConcurrentHashMap<Object, TimeBlock> keyToTimeBlock = new ConcurrentHashMap<>();
+	private final AtomicLong nextSweepMs = new AtomicLong(0);
+	private final ThreadLocal<CompositeKey> probe = ThreadLocal.withInitial(CompositeKey::new);
+
+	Clock clock = new DefaultClock();
+
 	@Override
-	public synchronized boolean attemptToAcquireLock(String key, long timeoutSec, long maxLockCount) {
+	public boolean attemptToAcquireLock(String key, long timeoutSec, long maxLockCount) {
 		ValidateArgument.required(key, "key");
+		return attemptToAcquire(key, key, timeoutSec, maxLockCount);
+	}
+
+	@Override
+	public boolean attemptToAcquireLock(String key, String subKey, long timeoutSec, long maxLockCount) {
+		ValidateArgument.required(key, "key");
+		ValidateArgument.required(subKey, "subKey");
+		CompositeKey lookupKey = probe.get().set(key, subKey);
+		try {
+			return attemptToAcquire(lookupKey, null, timeoutSec, maxLockCount);
+		} finally {
+			// do not hold references to the key parts.
+			lookupKey.set(null, null);
+		}
+	}
+
+	/**
+	 * Attempt to acquire a lock from the time block of the given key.
+	 * 
+	 * @param lookupKey
+	 *            The key used to find the current time block.
+	 * @param storeKey
+	 *            The key used to store a new time block. When null a copy of
+	 *            the lookup key is stored.
+	 * @param timeoutSec
+	 * @param maxLockCount
+	 * @return
+	 */
+	private boolean attemptToAcquire(Object lookupKey, Object storeKey, long timeoutSec, long maxLockCount) {
 		ValidateArgument.requirement(timeoutSec >= 0, "timeoutSec must be a positive value");
 		ValidateArgument.requirement(maxLockCount >= 0, "maxLockCount must be a positive value");
 		
@@ -18,44 +72,141 @@ public class MemoryTimeBlockCountingSemaphoreImpl implements MemoryTimeBlockCoun
 			//no need to track nor do anything if the max number of acquirable locks is 0
 			return false;
 		}
-		
-		SimpleSemaphore semaphore = keySemaphoreMap.get(key);
-		
-		if(semaphore == null){
-			//no semaphore created for key yet
-			//create new semaphore and increment
-			SimpleSemaphore newSem = new SimpleSemaphore();
-			resetAndIncrementSemaphore(newSem, timeoutSec);
-			keySemaphoreMap.put(key, newSem);
-			return true;
+		long now = clock.currentTimeMillis();
+		evictExpiredBlocks(now);
+		while (true) {
+			TimeBlock block = keyToTimeBlock.get(lookupKey);
+			if (block == null) {
+				//no time block for key yet
+				TimeBlock newBlock = new TimeBlock(now + TimeUnit.SECONDS.toMillis(timeoutSec));
+				if (keyToTimeBlock.putIfAbsent(copyKey(lookupKey, storeKey), newBlock) == null) {
+					return true;
+				}
+				// another thread created the block first.
+				continue;
+			}
+			if (block.isExpired(now)) {
+				//start a new time block if the current block has expired
+				TimeBlock newBlock = new TimeBlock(now + TimeUnit.SECONDS.toMillis(timeoutSec));
+				if (keyToTimeBlock.replace(lookupKey, block, newBlock)) {
+					return true;
+				}
+				// another thread replaced the block first.
+				continue;
+			}
+			return block.tryIncrement(maxLockCount);
 		}
-		
-		if(semaphore.isExpired()){
-			//reset and increment if semaphore has expired
-			resetAndIncrementSemaphore(semaphore, timeoutSec);
-			return true;
+	}
+
+	private static Object copyKey(Object lookupKey, Object storeKey) {
+		if (storeKey != null) {
+			return storeKey;
 		}
-		
-		if(semaphore.getCount() < maxLockCount){
-			//current count not exceeding maximum. just increment
-			semaphore.increment();
-			return true;
+		return ((CompositeKey) lookupKey).copy();
+	}
+
+	/**
+	 * Remove all expired time blocks, at most once per sweep interval.
+	 * 
+	 * @param now
+	 */
+	void evictExpiredBlocks(long now) {
+		long nextSweep = nextSweepMs.get();
+		if (now < nextSweep || !nextSweepMs.compareAndSet(nextSweep, now + SWEEP_INTERVAL_MS)) {
+			return;
 		}
-		
-		return false;
+		// only removes a block if it has not been replaced.
+		keyToTimeBlock.values().removeIf((TimeBlock block) -> block.isExpired(now));
 	}
-	
-	//resets the semaphore, give it a new expiration and increment the count
-	private static void resetAndIncrementSemaphore(SimpleSemaphore semaphore, long timeoutSec){
-		long newExpiration = System.currentTimeMillis() + timeoutSec * 1000;
-		semaphore.setExpiration(newExpiration);
-		semaphore.resetCount();
-		semaphore.increment();
+
+	/**
+	 * The number of keys with a time block in memory.
+	 * 
+	 * @return
+	 */
+	public int getKeyCount() {
+		return keyToTimeBlock.size();
 	}
 
 	@Override
-	public synchronized void releaseAllLocks() {
-		keySemaphoreMap.clear();
+	public void releaseAllLocks() {
+		keyToTimeBlock.clear();
+	}
+
+	/**
+	 * The locks issued for a single key until the block expires.
+	 *
+	 */
+	static class TimeBlock {
+
+		final long expiresOnMs;
+		final AtomicLong count;
+
+		/**
+		 * A new block always starts with the lock that created it.
+		 * 
+		 * @param expiresOnMs
+		 */
+		TimeBlock(long expiresOnMs) {
+			this.expiresOnMs = expiresOnMs;
+			this.count = new AtomicLong(1);
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresOnMs;
+		}
+
+		boolean tryIncrement(long maxLockCount) {
+			while (true) {
+				long current = count.get();
+				if (current >= maxLockCount) {
+					return false;
+				}
+				if (count.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A key made of two parts. The instance used for lookups is reused by each
+	 * thread, so only keys that are stored in the map are allocated.
+	 *
+	 */
+	static class CompositeKey {
+
+		String key;
+		String subKey;
+		int hash;
+
+		CompositeKey set(String key, String subKey) {
+			this.key = key;
+			this.subKey = subKey;
+			this.hash = key == null ? 0 : 31 * key.hashCode() + subKey.hashCode();
+			return this;
+		}
+
+		CompositeKey copy() {
+			return new CompositeKey().set(key, subKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CompositeKey)) {
+				return false;
+			}
+			CompositeKey other = (CompositeKey) obj;
+			return hash == other.hash && key.equals(other.key) && subKey.equals(other.subKey);
+		}
 	}
 
 }
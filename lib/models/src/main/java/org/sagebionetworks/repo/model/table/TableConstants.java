@@ -22,6 +22,10 @@ public class TableConstants {
 	public static final String ROW_VERSION = "ROW_VERSION";
 	public static final String SINGLE_KEY = "SINGLE_KEY";
 	public static final String SCHEMA_HASH = "SCHEMA_HASH";
+	/**
+	 * The change number of the last snapshot saved for an index.
+	 */
+	public static final String SNAPSHOT_VERSION = "SNAPSHOT_VERSION";
 	
 	public static final String ROW_ETAG = "ROW_ETAG";
 	public static final String ROW_BENEFACTOR = "ROW_BENEFACTOR";
@@ -309,6 +313,22 @@ public class TableConstants {
 			+ " FROM "+ENTITY_REPLICATION_TABLE
 			+ " WHERE "+ENTITY_REPLICATION_COL_PARENT_ID+" = ?";
 	
+	public static final String SELECT_ENTITY_CHILD_ID_ETAG_FOR_ID_RANGE = SELECT_ENTITY_CHILD_ID_ETAG
+			+ " AND "+ENTITY_REPLICATION_COL_ID+" BETWEEN ? AND ?";
+	
+	public static final String SELECT_ENTITY_CHILD_CRC_FOR_ID_RANGE =
+			"SELECT COUNT(*)"
+					+", SUM(CRC32(CONCAT("
+					+ENTITY_REPLICATION_COL_ID
+					+",'-',"+ENTITY_REPLICATION_COL_ETAG
+					+",'-',"+ENTITY_REPLICATION_COL_BENEFACTOR_ID
+					+ ")))"
+					+", MIN("+ENTITY_REPLICATION_COL_ID+")"
+					+", MAX("+ENTITY_REPLICATION_COL_ID+")"
+					+" FROM "+ENTITY_REPLICATION_TABLE
+					+" WHERE "+ENTITY_REPLICATION_COL_PARENT_ID+" = ?"
+					+" AND "+ENTITY_REPLICATION_COL_ID+" BETWEEN ? AND ?";
+	
 	public static final String BATCH_INSERT_REPLICATION_SYNC_EXP =
 			"INSERT INTO "+REPLICATION_SYNC_EXPIRATION_TABLE
 			+" ("+REPLICATION_SYNC_EXP_COL_ID+", "+REPLICATION_SYNC_EXP_COL_EXPIRES+")"
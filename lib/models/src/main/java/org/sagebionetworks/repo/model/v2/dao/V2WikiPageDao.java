@@ -85,6 +85,17 @@ public interface V2WikiPageDao {
 	 */
 	public String getMarkdown(WikiPageKey key, Long version) throws IOException, NotFoundException;
 	
+	/**
+	 * Get the markdown stored in the given markdown file handle as a string.
+	 * The content of a file handle never changes, so the result can be cached
+	 * by the file handle ID.
+	 * @param markdownFileHandleId
+	 * @return
+	 * @throws IOException
+	 * @throws NotFoundException
+	 */
+	public String getMarkdown(String markdownFileHandleId) throws IOException, NotFoundException;
+	
 	/**
 	 * Get ALL the file handle ids used (in the past/currently) for a wiki page.
 	 * @param key
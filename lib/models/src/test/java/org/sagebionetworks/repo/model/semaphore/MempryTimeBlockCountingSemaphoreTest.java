@@ -3,46 +3,40 @@ package org.sagebionetworks.repo.model.semaphore;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
-import java.util.Map;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.springframework.test.util.ReflectionTestUtils;
+import org.sagebionetworks.util.Clock;
 
 @RunWith(MockitoJUnitRunner.class)
 public class MempryTimeBlockCountingSemaphoreTest {
 	
-	private MemoryTimeBlockCountingSemaphore memoryTimeBlockCountingSemaphore;
+	private MemoryTimeBlockCountingSemaphoreImpl memoryTimeBlockCountingSemaphore;
 	
 	@Mock
-	private Map<String, SimpleSemaphore> keySemaphoreMap;
-	
-	@Mock
-	private SimpleSemaphore mockSemaphore;
+	private Clock mockClock;
 	
 	private static String key = "some key";
 	
-	private static final int limit = 1;
+	private static final int limit = 2;
 	
 	private static final int timeoutSec = 2;
 	
 	@Before
 	public void setUp() throws Exception {
-		MockitoAnnotations.initMocks(this);
 		memoryTimeBlockCountingSemaphore = new MemoryTimeBlockCountingSemaphoreImpl();
-		ReflectionTestUtils.setField(memoryTimeBlockCountingSemaphore, "keySemaphoreMap", keySemaphoreMap);
+		memoryTimeBlockCountingSemaphore.clock = mockClock;
 	}
 	
 	@Test (expected = IllegalArgumentException.class)
@@ -50,6 +44,11 @@ public class MempryTimeBlockCountingSemaphoreTest {
 		memoryTimeBlockCountingSemaphore.attemptToAcquireLock(null, timeoutSec, limit);
 	}
 	
+	@Test (expected = IllegalArgumentException.class)
+	public void testAcquireLockNullSubKey(){
+		memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, null, timeoutSec, limit);
+	}
+	
 	@Test (expected = IllegalArgumentException.class)
 	public void testAcquireLockNegativeTimeoutSec(){
 		memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, -1, limit);
@@ -63,72 +62,107 @@ public class MempryTimeBlockCountingSemaphoreTest {
 
 	@Test
 	public void testAcquireLockNoExistentSemaphore() {
-		when(keySemaphoreMap.get(key)).thenReturn(null);
+		when(mockClock.currentTimeMillis()).thenReturn(1000L);
 		
 		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		ArgumentCaptor<SimpleSemaphore> semaphoreCaptor = ArgumentCaptor.forClass(SimpleSemaphore.class);
-		verify(keySemaphoreMap).put(eq(key), semaphoreCaptor.capture());
-		SimpleSemaphore capturedSemaphore = semaphoreCaptor.getValue();
-		assertEquals(1, capturedSemaphore.getCount());
-		verifyNoMoreInteractions(keySemaphoreMap);
+		assertEquals(1, memoryTimeBlockCountingSemaphore.getKeyCount());
 	}
 	
 	@Test
-	public void testAcquireLockExpiredSemaphore() throws InterruptedException {
-		when(keySemaphoreMap.get(key)).thenReturn(mockSemaphore);
-		when(mockSemaphore.isExpired()).thenReturn(true);
+	public void testAcquireLockOverCountLimit(){
+		when(mockClock.currentTimeMillis()).thenReturn(1000L);
 		
 		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		verify(mockSemaphore).isExpired();
-		verify(mockSemaphore).setExpiration(any(Long.class));
-		verify(mockSemaphore).resetCount();
-		verify(mockSemaphore).increment();
-		
-		verifyNoMoreInteractions(keySemaphoreMap,  mockSemaphore);
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
+		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
+		// other keys are not affected
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock("other key", timeoutSec, limit));
 	}
 	
 	@Test
-	public void testAcquireLockOverCountLimit(){
-		when(keySemaphoreMap.get(key)).thenReturn(mockSemaphore);
-		when(mockSemaphore.isExpired()).thenReturn(false);
-		when(mockSemaphore.getCount()).thenReturn(limit);
+	public void testAcquireLockExpiredSemaphore() {
+		when(mockClock.currentTimeMillis()).thenReturn(1000L, 1000L, 1000L, 2999L, 3000L);
 		
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
 		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		verify(mockSemaphore).isExpired();
-		verify(mockSemaphore).getCount();
-		verifyNoMoreInteractions(keySemaphoreMap,  mockSemaphore);
+		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
+		// all locks expire at the end of the block.
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
 	}
 	
 	@Test
-	public void testAcquireLockUnderCountLimit(){
-		when(keySemaphoreMap.get(key)).thenReturn(mockSemaphore);
-		when(mockSemaphore.isExpired()).thenReturn(false);
-		when(mockSemaphore.getCount()).thenReturn(limit - 1);
+	public void testAcquireLockZeroMaxLocks(){
+		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, 0));
+		assertEquals(0, memoryTimeBlockCountingSemaphore.getKeyCount());
+	}
+	
+	@Test
+	public void testAcquireLockCompositeKey(){
+		when(mockClock.currentTimeMillis()).thenReturn(1000L);
 		
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, "path", timeoutSec, 1));
+		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(new String(key), new String("path"), timeoutSec, 1));
+		// each part is matched separately.
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, "other path", timeoutSec, 1));
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key + "path", timeoutSec, 1));
+		assertEquals(3, memoryTimeBlockCountingSemaphore.getKeyCount());
+	}
+	
+	@Test
+	public void testEvictExpiredBlocks(){
+		long start = 1000L;
+		long afterExpire = start + MemoryTimeBlockCountingSemaphoreImpl.SWEEP_INTERVAL_MS;
+		when(mockClock.currentTimeMillis()).thenReturn(start, start, afterExpire);
 		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, limit));
-		
-		verify(keySemaphoreMap).get(key);
-		verify(mockSemaphore).isExpired();
-		verify(mockSemaphore).getCount();
-		verify(mockSemaphore).increment();
-		verifyNoMoreInteractions(keySemaphoreMap,  mockSemaphore);
-
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, "path", timeoutSec, limit));
+		assertEquals(2, memoryTimeBlockCountingSemaphore.getKeyCount());
+		// call under test
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock("new key", timeoutSec, limit));
+		// expired keys are removed.
+		assertEquals(1, memoryTimeBlockCountingSemaphore.getKeyCount());
 	}
 	
 	@Test
-	public void testAcquireLockZeroMaxLocks(){
-		assertFalse(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, 0));
-		verify(keySemaphoreMap, never()).get(key);
-		verify(mockSemaphore, never()).isExpired();
-		verify(mockSemaphore, never()).getCount();
-		verify(mockSemaphore, never()).increment();
-		verify(mockSemaphore, never()).setExpiration(any(Long.class));
+	public void testReleaseAllLocks(){
+		when(mockClock.currentTimeMillis()).thenReturn(1000L);
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, 1));
+		// call under test
+		memoryTimeBlockCountingSemaphore.releaseAllLocks();
+		assertTrue(memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, timeoutSec, 1));
+	}
+	
+	@Test
+	public void testAcquireLockConcurrent() throws Exception {
+		when(mockClock.currentTimeMillis()).thenReturn(1000L);
+		int maxLocks = 500;
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Integer>> futures = new LinkedList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(new Callable<Integer>() {
+
+					@Override
+					public Integer call() throws Exception {
+						int acquired = 0;
+						for (int j = 0; j < 200; j++) {
+							if (memoryTimeBlockCountingSemaphore.attemptToAcquireLock(key, "path", timeoutSec, maxLocks)) {
+								acquired++;
+							}
+						}
+						return acquired;
+					}
+				}));
+			}
+			int total = 0;
+			for (Future<Integer> future : futures) {
+				total += future.get();
+			}
+			// exactly the maximum number of locks must be issued.
+			assertEquals(maxLocks, total);
+		} finally {
+			executor.shutdownNow();
+		}
 	}
 
 }
@@ -536,6 +536,21 @@ public interface StackConfiguration {
 	 */
 	public long getTableReadTimeoutMS();
 
+	/**
+	 * The maximum number of threads used to run facet queries concurrently.
+	 * 
+	 * @return
+	 */
+	public int getTableFacetQueryMaxThreads();
+
+	/**
+	 * The maximum amount of time in MS to wait for the facet queries of a
+	 * single table query to complete.
+	 * 
+	 * @return
+	 */
+	public long getTableFacetQueryTimeoutMS();
+
 	public Integer getMaxConcurrentRepoConnections();
 
 	/**
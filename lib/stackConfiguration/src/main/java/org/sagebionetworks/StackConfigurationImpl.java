@@ -833,6 +833,25 @@ public class StackConfigurationImpl implements StackConfiguration {
 		return Long.parseLong(configuration.getProperty("org.sagebionetworks.table.read.timeout.ms"));
 	}
 
+	/**
+	 * The maximum number of threads used to run facet queries concurrently.
+	 * 
+	 * @return
+	 */
+	public int getTableFacetQueryMaxThreads() {
+		return Integer.parseInt(configuration.getProperty("org.sagebionetworks.table.facet.query.max.threads"));
+	}
+
+	/**
+	 * The maximum amount of time in MS to wait for the facet queries of a
+	 * single table query to complete.
+	 * 
+	 * @return
+	 */
+	public long getTableFacetQueryTimeoutMS() {
+		return Long.parseLong(configuration.getProperty("org.sagebionetworks.table.facet.query.timeout.ms"));
+	}
+
 	public Integer getMaxConcurrentRepoConnections() {
 		return Integer.parseInt(configuration.getProperty("org.sagebionetworks.max.concurrent.repo.connections"));
 	}
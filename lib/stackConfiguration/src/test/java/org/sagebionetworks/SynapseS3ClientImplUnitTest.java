@@ -21,6 +21,7 @@ import org.sagebionetworks.aws.CannotDetermineBucketLocationException;
 import org.sagebionetworks.aws.SynapseS3ClientImpl;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.Bucket;
 import com.amazonaws.services.s3.model.BucketCrossOriginConfiguration;
@@ -42,6 +43,8 @@ import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.Region;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SynapseS3ClientImplUnitTest {
@@ -312,6 +315,29 @@ public class SynapseS3ClientImplUnitTest {
 		assertEquals(expected, actual);
 	}
 
+	@Test
+	public void testUploadPart() {
+		UploadPartResult expected = new UploadPartResult();
+		UploadPartRequest request = new UploadPartRequest().withBucketName(BUCKET_NAME);
+		when(mockAmazonClient.uploadPart(request)).thenReturn(expected);
+
+		// method under test
+		UploadPartResult actual = client.uploadPart(request);
+		
+		verify(mockAmazonClient).uploadPart(request);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testAbortMultipartUpload() {
+		AbortMultipartUploadRequest request = new AbortMultipartUploadRequest(BUCKET_NAME, "key", "uploadId");
+
+		// method under test
+		client.abortMultipartUpload(request);
+		
+		verify(mockAmazonClient).abortMultipartUpload(request);
+	}
+
 	@Test
 	public void testBucketWebsiteConfiguration() {
 		BucketWebsiteConfiguration bucketWebsiteConfiguration = new BucketWebsiteConfiguration();
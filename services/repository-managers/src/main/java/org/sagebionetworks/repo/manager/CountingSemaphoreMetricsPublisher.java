@@ -0,0 +1,83 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.repo.throttle.CountingSemaphoreThrottle;
+import org.sagebionetworks.repo.throttle.CountingSemaphoreThrottle.KeyMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+/**
+ * Publishes the per-key metrics of the {@link CountingSemaphoreThrottle} to
+ * cloud watch. Each call to {@link #timerFired()} publishes the change of each
+ * counter since the previous call.
+ *
+ */
+public class CountingSemaphoreMetricsPublisher {
+
+	public static final String METRIC_NAMESPACE_PREFIX = "CountingSemaphore-";
+	public static final String DIMENSION_KEY = "key";
+	public static final String METRIC_ACQUIRE_ATTEMPTS = "AcquireAttempts";
+	public static final String METRIC_FAILED_ACQUIRE_ATTEMPTS = "FailedAcquireAttempts";
+	public static final String METRIC_ACQUIRED = "Acquired";
+	public static final String METRIC_RELEASED = "Released";
+	public static final String METRIC_RENEWALS = "Renewals";
+	public static final String METRIC_WAIT_TIME = "WaitTime";
+
+	@Autowired
+	CountingSemaphoreThrottle throttle;
+	@Autowired
+	Consumer consumer;
+	@Autowired
+	StackConfiguration stackConfig;
+
+	// The last published value of each counter, by key and metric name.
+	private final Map<String, Map<String, Long>> published = new HashMap<>();
+	private String metricNamespace;
+
+	/**
+	 * Called from a timer to push the change of each counter to cloud watch.
+	 */
+	public void timerFired() {
+		Date now = new Date();
+		for (Map.Entry<String, KeyMetrics> entry : throttle.getAllKeyMetrics().entrySet()) {
+			String key = entry.getKey();
+			KeyMetrics metrics = entry.getValue();
+			Map<String, Long> last = published.computeIfAbsent(key, (String k) -> new HashMap<>());
+			publish(key, last, METRIC_ACQUIRE_ATTEMPTS, metrics.getAcquireAttempts(), StandardUnit.Count, now);
+			publish(key, last, METRIC_FAILED_ACQUIRE_ATTEMPTS, metrics.getFailedAcquireAttempts(), StandardUnit.Count, now);
+			publish(key, last, METRIC_ACQUIRED, metrics.getAcquired(), StandardUnit.Count, now);
+			publish(key, last, METRIC_RELEASED, metrics.getReleased(), StandardUnit.Count, now);
+			publish(key, last, METRIC_RENEWALS, metrics.getRenewals(), StandardUnit.Count, now);
+			publish(key, last, METRIC_WAIT_TIME, metrics.getWaitTimeMs(), StandardUnit.Milliseconds, now);
+		}
+	}
+
+	private void publish(String key, Map<String, Long> last, String name, long total, StandardUnit unit,
+			Date timestamp) {
+		Long previous = last.put(name, total);
+		long delta = total - (previous == null ? 0L : previous);
+		ProfileData profileData = new ProfileData();
+		profileData.setNamespace(getMetricNamespace());
+		profileData.setName(name);
+		profileData.setValue((double) delta);
+		profileData.setUnit(unit.name());
+		profileData.setTimestamp(timestamp);
+		profileData.setDimension(Collections.singletonMap(DIMENSION_KEY, key));
+		consumer.addProfileData(profileData);
+	}
+
+	public String getMetricNamespace() {
+		if (this.metricNamespace == null) {
+			this.metricNamespace = METRIC_NAMESPACE_PREFIX + stackConfig.getStackInstance();
+		}
+		return this.metricNamespace;
+	}
+}
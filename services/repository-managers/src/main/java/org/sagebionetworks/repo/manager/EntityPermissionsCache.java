@@ -0,0 +1,34 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Set;
+
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.DatastoreException;
+
+/**
+ * A bounded cache of the ACL decisions made against entity benefactors. A
+ * cached decision is only used while the etag of the benefactor's ACL is
+ * unchanged, so an ACL change made by any JVM takes effect on the next call.
+ * The caller reads the etag with the benefactor, see
+ * {@link org.sagebionetworks.repo.model.NodeDAO#getBenefactorAndAclEtag(String)}.
+ *
+ */
+public interface EntityPermissionsCache {
+
+	/**
+	 * Does the ACL of the given benefactor grant the given access to any of the
+	 * given groups?
+	 *
+	 * @param groups
+	 * @param benefactorId
+	 * @param aclEtag The etag of the benefactor's ACL, read before this call.
+	 * @param accessType
+	 * @return
+	 */
+	boolean canAccess(Set<Long> groups, String benefactorId, String aclEtag, ACCESS_TYPE accessType) throws DatastoreException;
+
+	/**
+	 * Clear all cached decisions.
+	 */
+	void invalidateAll();
+}
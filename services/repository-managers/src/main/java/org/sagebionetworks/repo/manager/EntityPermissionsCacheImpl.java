@@ -0,0 +1,123 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.AccessControlListDAO;
+import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Guava backed implementation of the {@link EntityPermissionsCache}. Each
+ * decision is cached with the etag of the ACL it was made against. Every ACL
+ * change issues a new etag, so a cached decision is only used while the
+ * caller's etag, read with the benefactor, is the same. This makes changes
+ * committed by any JVM visible immediately without another database call.
+ *
+ */
+public class EntityPermissionsCacheImpl implements EntityPermissionsCache {
+
+	private final AccessControlListDAO aclDAO;
+	private final Cache<AccessKey, Decision> accessCache;
+
+	/**
+	 *
+	 * @param aclDAO
+	 * @param maximumSize  The maximum number of decisions in the cache.
+	 * @param timeToLiveMS The maximum time a decision is kept after it was read
+	 *                     from the database.
+	 */
+	public EntityPermissionsCacheImpl(AccessControlListDAO aclDAO, long maximumSize, long timeToLiveMS) {
+		ValidateArgument.required(aclDAO, "aclDAO");
+		this.aclDAO = aclDAO;
+		this.accessCache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(timeToLiveMS, TimeUnit.MILLISECONDS).build();
+	}
+
+	@Override
+	public boolean canAccess(Set<Long> groups, String benefactorId, String aclEtag, ACCESS_TYPE accessType)
+			throws DatastoreException {
+		ValidateArgument.required(groups, "groups");
+		ValidateArgument.required(benefactorId, "benefactorId");
+		ValidateArgument.required(accessType, "accessType");
+		Long benefactorKey = KeyFactory.stringToKey(benefactorId);
+		AccessKey key = new AccessKey(groups, benefactorKey, accessType);
+		/*
+		 * The etag was read before the decision. If the ACL changes in between,
+		 * the decision is cached with the old etag and is rejected by the next call.
+		 */
+		Decision decision = accessCache.getIfPresent(key);
+		if (decision != null && Objects.equals(aclEtag, decision.etag)) {
+			return decision.canAccess;
+		}
+		boolean canAccess = aclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, accessType);
+		accessCache.put(key, new Decision(aclEtag, canAccess));
+		return canAccess;
+	}
+
+	@Override
+	public void invalidateAll() {
+		accessCache.invalidateAll();
+	}
+
+	/**
+	 * A cached decision and the etag of the ACL it was made against.
+	 *
+	 */
+	static class Decision {
+
+		private final String etag;
+		private final boolean canAccess;
+
+		Decision(String etag, boolean canAccess) {
+			this.etag = etag;
+			this.canAccess = canAccess;
+		}
+	}
+
+	/**
+	 * Key for a single ACL decision. The group set is copied so the key cannot
+	 * change after it is added to the cache.
+	 *
+	 */
+	static class AccessKey {
+
+		private final Set<Long> groups;
+		private final Long benefactorId;
+		private final ACCESS_TYPE accessType;
+		private final int hashCode;
+
+		AccessKey(Set<Long> groups, Long benefactorId, ACCESS_TYPE accessType) {
+			this.groups = ImmutableSet.copyOf(groups);
+			this.benefactorId = benefactorId;
+			this.accessType = accessType;
+			this.hashCode = Objects.hash(this.groups, benefactorId, accessType);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof AccessKey)) {
+				return false;
+			}
+			AccessKey other = (AccessKey) obj;
+			return hashCode == other.hashCode && accessType == other.accessType
+					&& Objects.equals(benefactorId, other.benefactorId) && Objects.equals(groups, other.groups);
+		}
+	}
+}
@@ -30,6 +30,7 @@ import org.sagebionetworks.repo.model.AuthorizationUtils;
 import org.sagebionetworks.repo.model.ConflictingUpdateException;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.IdAndEtag;
 import org.sagebionetworks.repo.model.InvalidModelException;
 import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeDAO;
@@ -77,6 +78,8 @@ public class EntityPermissionsManagerImpl implements EntityPermissionsManager {
 	private ProjectStatsManager projectStatsManager;
 	@Autowired
 	private TransactionalMessenger transactionalMessenger;
+	@Autowired
+	private EntityPermissionsCache entityPermissionsCache;
 
 
 	@Override
@@ -323,7 +326,8 @@ public class EntityPermissionsManagerImpl implements EntityPermissionsManager {
 		// In the case of the trash can, throw the EntityInTrashCanException
 		// The only operations allowed over the trash can is CREATE (i.e. moving
 		// items into the trash can) and DELETE (i.e. purging the trash).
-		final String benefactor = nodeDao.getBenefactor(entityId);
+		final IdAndEtag benefactorAndAclEtag = nodeDao.getBenefactorAndAclEtag(entityId);
+		final String benefactor = KeyFactory.keyToString(benefactorAndAclEtag.getBenefactorId());
 		if (TRASH_FOLDER_ID.equals(KeyFactory.stringToKey(benefactor))
 				&& !CREATE.equals(accessType)
 				&& !DELETE.equals(accessType)) {
@@ -342,13 +346,13 @@ public class EntityPermissionsManagerImpl implements EntityPermissionsManager {
 		}
 		// Can download
 		if (accessType == DOWNLOAD) {
-			return canDownload(userInfo, entityId, benefactor, entityType);
+			return canDownload(userInfo, entityId, benefactorAndAclEtag, entityType);
 		}
 		// Can upload
 		if (accessType == UPLOAD) {
 			return canUpload(userInfo, entityId);
 		}
-		if (aclDAO.canAccess(userInfo.getGroups(), benefactor, ObjectType.ENTITY, accessType)) {
+		if (entityPermissionsCache.canAccess(userInfo.getGroups(), benefactor, benefactorAndAclEtag.getEtag(), accessType)) {
 			return AuthorizationStatus.authorized();
 		} else {
 			return AuthorizationStatus.accessDenied("You do not have "+accessType+" permission for the requested entity.");
@@ -370,7 +374,7 @@ public class EntityPermissionsManagerImpl implements EntityPermissionsManager {
 
 		Node node = nodeDao.getNode(entityId);
 		
-		String benefactor = nodeDao.getBenefactor(entityId);
+		IdAndEtag benefactorAndAclEtag = nodeDao.getBenefactorAndAclEtag(entityId);
 
 		UserEntityPermissions permissions = new UserEntityPermissions();
 		permissions.setCanAddChild(hasAccess(entityId, CREATE, userInfo).isAuthorized());
@@ -381,7 +385,7 @@ public class EntityPermissionsManagerImpl implements EntityPermissionsManager {
 		permissions.setCanEdit(hasAccess(entityId, UPDATE, userInfo).isAuthorized());
 		permissions.setCanCertifiedUserEdit(certifiedUserHasAccess(entityId, node.getNodeType(), UPDATE, userInfo).isAuthorized());
 		permissions.setCanView(hasAccess(entityId, READ, userInfo).isAuthorized());
-		permissions.setCanDownload(canDownload(userInfo, entityId, benefactor, node.getNodeType()).isAuthorized());
+		permissions.setCanDownload(canDownload(userInfo, entityId, benefactorAndAclEtag, node.getNodeType()).isAuthorized());
 		permissions.setCanUpload(canUpload(userInfo, entityId).isAuthorized());
 		permissions.setCanModerate(hasAccess(entityId, MODERATE, userInfo).isAuthorized());
 
@@ -413,13 +417,14 @@ public class EntityPermissionsManagerImpl implements EntityPermissionsManager {
 	}
 
 	// entities have to meet access requirements (ARs)
-	private AuthorizationStatus canDownload(UserInfo userInfo, String entityId, String benefactor, EntityType entityType)
+	private AuthorizationStatus canDownload(UserInfo userInfo, String entityId, IdAndEtag benefactorAndAclEtag, EntityType entityType)
 			throws DatastoreException, NotFoundException {
 		if (userInfo.isAdmin()) return AuthorizationStatus.authorized();
 		
 		// if the ACL and access requirements permit DOWNLOAD, then its permitted,
 		// and this applies to any type of entity
-		boolean aclAllowsDownload = aclDAO.canAccess(userInfo.getGroups(), benefactor, ObjectType.ENTITY, ACCESS_TYPE.DOWNLOAD);
+		boolean aclAllowsDownload = entityPermissionsCache.canAccess(userInfo.getGroups(),
+				KeyFactory.keyToString(benefactorAndAclEtag.getBenefactorId()), benefactorAndAclEtag.getEtag(), ACCESS_TYPE.DOWNLOAD);
 		AuthorizationStatus meetsAccessRequirements = meetsAccessRequirements(userInfo, entityId);
 		if (meetsAccessRequirements.isAuthorized() && aclAllowsDownload) {
 			return AuthorizationStatus.authorized();
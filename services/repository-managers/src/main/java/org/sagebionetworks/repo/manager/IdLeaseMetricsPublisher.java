@@ -0,0 +1,83 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.ids.IdGenerator;
+import org.sagebionetworks.ids.IdLeaseStatistics;
+import org.sagebionetworks.ids.IdType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+/**
+ * Publishes the counters of each leased {@link IdType} to cloud watch. Each
+ * call to {@link #timerFired()} publishes the change of each counter since the
+ * previous call, and the number of IDs left in the current block.
+ *
+ */
+public class IdLeaseMetricsPublisher {
+
+	public static final String METRIC_NAMESPACE_PREFIX = "IdLease-";
+	public static final String DIMENSION_TYPE = "type";
+	public static final String METRIC_IDS_ISSUED = "IdsIssued";
+	public static final String METRIC_BLOCKS_LEASED = "BlocksLeased";
+	public static final String METRIC_BLOCKING_FETCHES = "BlockingFetches";
+	public static final String METRIC_REMAINING = "Remaining";
+
+	@Autowired
+	IdGenerator idGenerator;
+	@Autowired
+	Consumer consumer;
+	@Autowired
+	StackConfiguration stackConfig;
+
+	// The last published statistics of each type.
+	private final Map<IdType, IdLeaseStatistics> published = new EnumMap<>(IdType.class);
+	private String metricNamespace;
+
+	/**
+	 * Called from a timer to push the lease counters to cloud watch.
+	 */
+	public void timerFired() {
+		Date now = new Date();
+		for (IdType type : IdType.values()) {
+			IdLeaseStatistics stats = idGenerator.getLeaseStatistics(type);
+			if (stats == null) {
+				// this type is not leased.
+				continue;
+			}
+			IdLeaseStatistics last = published.put(type, stats);
+			if (last == null) {
+				last = new IdLeaseStatistics(0L, 0L, 0L, 0L);
+			}
+			publish(type, METRIC_IDS_ISSUED, stats.getIdsIssued() - last.getIdsIssued(), now);
+			publish(type, METRIC_BLOCKS_LEASED, stats.getBlocksLeased() - last.getBlocksLeased(), now);
+			publish(type, METRIC_BLOCKING_FETCHES, stats.getBlockingFetches() - last.getBlockingFetches(), now);
+			publish(type, METRIC_REMAINING, stats.getRemaining(), now);
+		}
+	}
+
+	private void publish(IdType type, String name, long value, Date timestamp) {
+		ProfileData profileData = new ProfileData();
+		profileData.setNamespace(getMetricNamespace());
+		profileData.setName(name);
+		profileData.setValue((double) value);
+		profileData.setUnit(StandardUnit.Count.name());
+		profileData.setTimestamp(timestamp);
+		profileData.setDimension(Collections.singletonMap(DIMENSION_TYPE, type.name()));
+		consumer.addProfileData(profileData);
+	}
+
+	public String getMetricNamespace() {
+		if (this.metricNamespace == null) {
+			this.metricNamespace = METRIC_NAMESPACE_PREFIX + stackConfig.getStackInstance();
+		}
+		return this.metricNamespace;
+	}
+}
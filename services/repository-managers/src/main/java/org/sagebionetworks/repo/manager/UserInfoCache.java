@@ -0,0 +1,62 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.concurrent.Callable;
+
+import org.sagebionetworks.repo.model.UserInfo;
+import org.sagebionetworks.repo.web.NotFoundException;
+
+/**
+ * A bounded cache of {@link UserInfo} keyed by principal ID. A cached UserInfo
+ * is only used while the etag of its principal is unchanged. Every change to
+ * the principal's group membership, including certification, issues a new
+ * etag, so changes made by any JVM take effect on the next call.
+ *
+ */
+public interface UserInfoCache {
+
+	/**
+	 * Get the UserInfo of the given principal, building it with the given loader
+	 * if it is not cached. Each call returns a new copy so callers are free to
+	 * modify the result.
+	 *
+	 * @param principalId
+	 * @param loader
+	 * @return
+	 * @throws NotFoundException If the loader cannot find the principal.
+	 */
+	UserInfo getUserInfo(Long principalId, Callable<UserInfo> loader) throws NotFoundException;
+
+	/**
+	 * Remove the UserInfo of a single principal.
+	 *
+	 * @param principalId
+	 */
+	void invalidate(Long principalId);
+
+	/**
+	 * Clear all cached UserInfo.
+	 */
+	void invalidateAll();
+
+	/**
+	 * The number of calls answered from the cache.
+	 *
+	 * @return
+	 */
+	long getHitCount();
+
+	/**
+	 * The number of calls that had to build the UserInfo.
+	 *
+	 * @return
+	 */
+	long getMissCount();
+
+	/**
+	 * The fraction of calls answered from the cache, or 1.0 if there have been
+	 * no calls.
+	 *
+	 * @return
+	 */
+	double getHitRate();
+}
@@ -0,0 +1,180 @@
+package org.sagebionetworks.repo.manager;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.repo.model.UserGroupDAO;
+import org.sagebionetworks.repo.model.UserInfo;
+import org.sagebionetworks.repo.web.NotFoundException;
+import org.sagebionetworks.util.ValidateArgument;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Guava backed implementation of the {@link UserInfoCache}. Each UserInfo is
+ * cached with the etag of its principal. The GroupMembersDAO issues a new etag
+ * to every member it adds or removes, so a cached UserInfo is only used while
+ * the etag in the database still matches. This makes membership changes
+ * committed by any JVM visible immediately, including certification and
+ * administrator status, which are both group memberships.
+ *
+ */
+public class UserInfoCacheImpl implements UserInfoCache {
+
+	public static final String METRIC_NAMESPACE_PREFIX = "UserInfoCache-";
+	public static final String METRIC_HITS = "Hits";
+	public static final String METRIC_MISSES = "Misses";
+
+	private final UserGroupDAO userGroupDAO;
+	private final Cache<Long, Entry> cache;
+	private final AtomicLong hitCount = new AtomicLong(0L);
+	private final AtomicLong missCount = new AtomicLong(0L);
+	private final AtomicLong publishedHitCount = new AtomicLong(0L);
+	private final AtomicLong publishedMissCount = new AtomicLong(0L);
+
+	@Autowired
+	Consumer consumer;
+	@Autowired
+	StackConfiguration stackConfig;
+
+	private String metricNamespace;
+
+	/**
+	 *
+	 * @param userGroupDAO
+	 * @param maximumSize  The maximum number of users in the cache.
+	 * @param timeToLiveMS The maximum time an entry is kept after it was read
+	 *                     from the database.
+	 */
+	public UserInfoCacheImpl(UserGroupDAO userGroupDAO, long maximumSize, long timeToLiveMS) {
+		ValidateArgument.required(userGroupDAO, "userGroupDAO");
+		this.userGroupDAO = userGroupDAO;
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(timeToLiveMS, TimeUnit.MILLISECONDS).build();
+	}
+
+	@Override
+	public UserInfo getUserInfo(Long principalId, Callable<UserInfo> loader) throws NotFoundException {
+		ValidateArgument.required(principalId, "principalId");
+		ValidateArgument.required(loader, "loader");
+		/*
+		 * The etag must be read before the UserInfo. If a membership changes in
+		 * between, the UserInfo is cached with the old etag and is rejected by the
+		 * next call.
+		 */
+		String etag = userGroupDAO.getEtag(principalId);
+		Entry entry = cache.getIfPresent(principalId);
+		if (entry != null && etag != null && etag.equals(entry.etag)) {
+			hitCount.incrementAndGet();
+			return copy(entry.info);
+		}
+		missCount.incrementAndGet();
+		UserInfo info;
+		try {
+			info = loader.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		cache.put(principalId, new Entry(etag, copy(info)));
+		return info;
+	}
+
+	/**
+	 * Copy a UserInfo so the cached value cannot be changed by a caller.
+	 *
+	 * @param info
+	 * @return
+	 */
+	static UserInfo copy(UserInfo info) {
+		UserInfo copy = new UserInfo(info.isAdmin());
+		copy.setId(info.getId());
+		copy.setCreationDate(info.getCreationDate());
+		if (info.getGroups() != null) {
+			copy.setGroups(new HashSet<Long>(info.getGroups()));
+		}
+		return copy;
+	}
+
+	@Override
+	public void invalidate(Long principalId) {
+		ValidateArgument.required(principalId, "principalId");
+		cache.invalidate(principalId);
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	@Override
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total == 0L ? 1.0 : (double) hits / total;
+	}
+
+	/**
+	 * Called from a timer to push the hits and misses since the last call to
+	 * cloud watch.
+	 */
+	public void timerFired() {
+		Date now = new Date();
+		long hits = hitCount.get();
+		long misses = missCount.get();
+		consumer.addProfileData(createMetric(METRIC_HITS, hits - publishedHitCount.getAndSet(hits), now));
+		consumer.addProfileData(createMetric(METRIC_MISSES, misses - publishedMissCount.getAndSet(misses), now));
+	}
+
+	private ProfileData createMetric(String name, long count, Date timestamp) {
+		ProfileData profileData = new ProfileData();
+		profileData.setNamespace(getMetricNamespace());
+		profileData.setName(name);
+		profileData.setValue((double) count);
+		profileData.setUnit(StandardUnit.Count.name());
+		profileData.setTimestamp(timestamp);
+		return profileData;
+	}
+
+	public String getMetricNamespace() {
+		if (this.metricNamespace == null) {
+			this.metricNamespace = METRIC_NAMESPACE_PREFIX + stackConfig.getStackInstance();
+		}
+		return this.metricNamespace;
+	}
+
+	/**
+	 * A cached UserInfo and the etag of its principal when it was read.
+	 *
+	 */
+	private static class Entry {
+
+		private final String etag;
+		private final UserInfo info;
+
+		Entry(String etag, UserInfo info) {
+			this.etag = etag;
+			this.info = info;
+		}
+	}
+}
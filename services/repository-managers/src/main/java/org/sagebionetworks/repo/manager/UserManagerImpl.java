@@ -63,6 +63,9 @@ public class UserManagerImpl implements UserManager {
 	@Autowired
 	private DBOBasicDao basicDAO;
 
+	@Autowired
+	private UserInfoCache userInfoCache;
+
 	
 	public void setUserGroupDAO(UserGroupDAO userGroupDAO) {
 		this.userGroupDAO = userGroupDAO;
@@ -183,6 +186,17 @@ public class UserManagerImpl implements UserManager {
 
 	@Override
 	public UserInfo getUserInfo(Long principalId) throws NotFoundException {
+		return userInfoCache.getUserInfo(principalId, () -> buildUserInfo(principalId));
+	}
+
+	/**
+	 * Build the UserInfo of the given principal from the database.
+	 * 
+	 * @param principalId
+	 * @return
+	 * @throws NotFoundException
+	 */
+	UserInfo buildUserInfo(Long principalId) throws NotFoundException {
 		UserGroup principal = userGroupDAO.get(principalId);
 		if(!principal.getIsIndividual()) throw new IllegalArgumentException("Principal: "+principalId+" is not a User");
 		// Lookup the user's name
@@ -227,6 +241,8 @@ public class UserManagerImpl implements UserManager {
 		}
 		
 		userGroupDAO.delete(principalId.toString());
+		// the missing etag is seen by every machine, this only frees the entry.
+		userInfoCache.invalidate(principalId);
 	}
 
 	@Override
@@ -7,7 +7,8 @@ import org.sagebionetworks.audit.dao.ObjectRecordBatch;
 /**
  * Abstraction for an in-memory queue that gathers ObjectRecords from various
  * thread. The queue is emptied from a timer thread that sends the ObjectRecords
- * to S3 in batches.
+ * to S3 in batches. The queue is bounded in memory, so records pushed while it
+ * is full, or that fail to be sent, are spilled to a local file and sent later.
  * 
  * @author John
  * 
@@ -24,7 +25,7 @@ public interface ObjectRecordQueue {
 	public void pushObjectRecordBatch(ObjectRecordBatch batch);
 	
 	/**
-	 * Get the number of batches in the Queue.
+	 * Get the number of records in the Queue.
 	 * 
 	 * @return
 	 */
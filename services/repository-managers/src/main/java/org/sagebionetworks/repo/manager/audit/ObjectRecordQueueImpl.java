@@ -1,93 +1,316 @@
-package org.sagebionetworks.repo.manager.audit;
-
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.sagebionetworks.audit.dao.ObjectRecordBatch;
-import org.sagebionetworks.audit.dao.ObjectRecordDAO;
-import org.sagebionetworks.repo.model.audit.ObjectRecord;
-import org.sagebionetworks.util.ValidateArgument;
-import org.springframework.beans.factory.annotation.Autowired;
-
-
-public class ObjectRecordQueueImpl implements ObjectRecordQueue {
-	
-
-	static private Log log = LogFactory.getLog(ObjectRecordQueueImpl.class);
-	
-	/**
-	 * At any given time, there are multiple threads creating new ObjectRecordBatch
-	 * as new web services request come in. These ObjectRecordBatch are added to
-	 * this queue from the threads where they originated. The queue is then
-	 * processed from a separate timer thread.
-	 */
-	private ConcurrentLinkedQueue<ObjectRecordBatch> queue = new ConcurrentLinkedQueue<ObjectRecordBatch>();
-	
-	@Autowired
-	ObjectRecordDAO objectRecordDAO;
-
-	@Override
-	public void pushObjectRecordBatch(ObjectRecordBatch batch) {
-		ValidateArgument.required(batch, "batch");
-		ValidateArgument.required(batch.getType(), "batch.type");
-		ValidateArgument.required(batch.getRecords(), "batch.records");
-		ValidateArgument.requirement(!batch.getRecords().isEmpty(), "batch.records cannot be empty");
-		queue.add(batch);
-	}
-	
-	/**
-	 * When the timer fires we send the messages to S3.
-	 * @throws IOException 
-	 * 
-	 * 
-	 */
-	@Override
-	public void timerFired() throws IOException {
-		// Poll all data currently on the queue.
-		Map<String, List<ObjectRecord>> batchMap = pollBatches();
-		if(batchMap == null){
-			// there is nothing to send.
-			return;
-		}
-		for(String type: batchMap.keySet()){
-			List<ObjectRecord> batch = batchMap.get(type);
-			// send the batch to S3
-			try {
-				objectRecordDAO.saveBatch(batch, type);
-			} catch (Exception e) {
-				log.error("Failed to send ObjectRecord batch to S3", e);
-			}
-		}
-	}
-	
-	/**
-	 * Poll all data currently on the queue and add it to a list.
-	 * @return
-	 */
-	Map<String, List<ObjectRecord>> pollBatches(){
-		if(this.queue.isEmpty()){
-			return null;
-		}
-		Map<String, List<ObjectRecord>> batchMap = new HashMap<String, List<ObjectRecord>>(this.queue.size());
-		for(ObjectRecordBatch batch = this.queue.poll(); batch != null; batch = this.queue.poll()){
-			List<ObjectRecord> thisBatch = batchMap.get(batch.getType());
-			if(thisBatch == null){
-				thisBatch = new LinkedList<>();
-				batchMap.put(batch.getType(), thisBatch);
-			}
-			thisBatch.addAll(batch.getRecords());
-		}
-		return batchMap;
-	}
-
-	@Override
-	public int getQueueSize() {
-		return queue.size();
-	}
-}
+package org.sagebionetworks.repo.manager.audit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.sagebionetworks.audit.dao.ObjectRecordBatch;
+import org.sagebionetworks.audit.dao.ObjectRecordDAO;
+import org.sagebionetworks.repo.model.audit.ObjectRecord;
+import org.sagebionetworks.schema.adapter.JSONObjectAdapterException;
+import org.sagebionetworks.schema.adapter.org.json.EntityFactory;
+import org.sagebionetworks.util.FileProvider;
+import org.sagebionetworks.util.ValidateArgument;
+import org.springframework.beans.factory.annotation.Autowired;
+
+
+public class ObjectRecordQueueImpl implements ObjectRecordQueue {
+	
+
+	static private Log log = LogFactory.getLog(ObjectRecordQueueImpl.class);
+
+	/**
+	 * The queue never holds more than this many records in memory. A batch that
+	 * would exceed it is spilled to a local file, so a pushing thread never waits
+	 * for S3.
+	 */
+	public static final int DEFAULT_MAX_RECORD_COUNT = 50000;
+	/**
+	 * The spill files never hold more than this many records waiting to be sent.
+	 * A batch that would exceed it is dropped and counted.
+	 */
+	public static final int DEFAULT_MAX_SPILL_RECORD_COUNT = 1000000;
+	/**
+	 * Separates the type from the record JSON in each line of a spill file.
+	 */
+	private static final char SPILL_TYPE_SEPARATOR = '\t';
+
+	/**
+	 * At any given time, there are multiple threads creating new ObjectRecordBatch
+	 * as new web services request come in. These ObjectRecordBatch are added to
+	 * this buffer from the threads where they originated. The buffer is then
+	 * swapped out and sent from a separate timer thread. Guarded by bufferLock.
+	 */
+	private Map<String, List<ObjectRecord>> buffer = new HashMap<String, List<ObjectRecord>>();
+	private int bufferedRecordCount = 0;
+	private final Object bufferLock = new Object();
+	private final AtomicLong droppedRecordCount = new AtomicLong(0);
+	private long reportedDroppedRecordCount = 0;
+	/*
+	 * Records that did not fit in the buffer, or that failed to be sent, are
+	 * appended to the current spill file. The timer rolls the current file over
+	 * to the pending files and sends each pending file until it succeeds. The
+	 * spill count covers the current and the pending files. Guarded by bufferLock.
+	 */
+	private File spillFile;
+	private Writer spillWriter;
+	private int spillFileRecordCount = 0;
+	private int spilledRecordCount = 0;
+	/*
+	 * Spill files waiting to be sent mapped to their record counts. Only used by
+	 * the timer thread.
+	 */
+	private final Map<File, Integer> pendingSpillFiles = new LinkedHashMap<File, Integer>();
+
+	int maxRecordCount = DEFAULT_MAX_RECORD_COUNT;
+	int maxSpillRecordCount = DEFAULT_MAX_SPILL_RECORD_COUNT;
+	
+	@Autowired
+	ObjectRecordDAO objectRecordDAO;
+	@Autowired
+	FileProvider fileProvider;
+
+	@Override
+	public void pushObjectRecordBatch(ObjectRecordBatch batch) {
+		ValidateArgument.required(batch, "batch");
+		ValidateArgument.required(batch.getType(), "batch.type");
+		ValidateArgument.required(batch.getRecords(), "batch.records");
+		ValidateArgument.requirement(!batch.getRecords().isEmpty(), "batch.records cannot be empty");
+		int size = batch.getRecords().size();
+		synchronized (bufferLock) {
+			if (bufferedRecordCount + size > maxRecordCount) {
+				// The timer is not keeping up, so the batch is spilled rather than blocking the caller.
+				spillRecords(batch.getType(), batch.getRecords());
+				return;
+			}
+			List<ObjectRecord> records = buffer.get(batch.getType());
+			if (records == null) {
+				records = new ArrayList<ObjectRecord>();
+				buffer.put(batch.getType(), records);
+			}
+			records.addAll(batch.getRecords());
+			bufferedRecordCount += size;
+		}
+	}
+	
+	/**
+	 * When the timer fires we send the messages to S3.
+	 * @throws IOException 
+	 * 
+	 * 
+	 */
+	@Override
+	public void timerFired() throws IOException {
+		long dropped = droppedRecordCount.get();
+		if (dropped > reportedDroppedRecordCount) {
+			log.warn("Dropped " + (dropped - reportedDroppedRecordCount)
+					+ " ObjectRecords because the queue and its spill files were full");
+			reportedDroppedRecordCount = dropped;
+		}
+		// Send the records spilled since the last time first.
+		sendSpilledRecords();
+		// Poll all data currently on the queue.
+		Map<String, List<ObjectRecord>> batchMap = pollBatches();
+		if(batchMap == null){
+			// there is nothing to send.
+			return;
+		}
+		for(String type: batchMap.keySet()){
+			List<ObjectRecord> batch = batchMap.get(type);
+			// send the batch to S3
+			try {
+				objectRecordDAO.saveBatch(batch, type);
+			} catch (Exception e) {
+				log.error("Failed to send ObjectRecord batch to S3. The batch will be sent again.", e);
+				synchronized (bufferLock) {
+					spillRecords(type, batch);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Append the given records to the current spill file. The records are
+	 * dropped and counted when the spill files are full or cannot be written.
+	 * The caller must hold the bufferLock.
+	 * 
+	 * @param type
+	 * @param records
+	 */
+	private void spillRecords(String type, List<ObjectRecord> records) {
+		if (spilledRecordCount + records.size() > maxSpillRecordCount) {
+			droppedRecordCount.addAndGet(records.size());
+			return;
+		}
+		try {
+			if (spillWriter == null) {
+				spillFile = fileProvider.createTempFile("ObjectRecordQueue", ".spill");
+				spillWriter = new BufferedWriter(new OutputStreamWriter(fileProvider.createFileOutputStream(spillFile),
+						StandardCharsets.UTF_8));
+			}
+			for (ObjectRecord record : records) {
+				spillWriter.write(type);
+				spillWriter.write(SPILL_TYPE_SEPARATOR);
+				spillWriter.write(EntityFactory.createJSONStringForEntity(record));
+				spillWriter.write('\n');
+			}
+			spillWriter.flush();
+			spillFileRecordCount += records.size();
+			spilledRecordCount += records.size();
+		} catch (IOException | JSONObjectAdapterException e) {
+			log.error("Failed to spill ObjectRecords to a local file", e);
+			droppedRecordCount.addAndGet(records.size());
+		}
+	}
+	
+	/**
+	 * Send each pending spill file to S3, including the current one. A file is
+	 * deleted once all of its records are sent. After a failure the remaining
+	 * files are sent the next time the timer fires, so records of a partly sent
+	 * file can be sent twice.
+	 */
+	void sendSpilledRecords() {
+		synchronized (bufferLock) {
+			if (spillWriter != null) {
+				try {
+					spillWriter.close();
+				} catch (IOException e) {
+					log.error("Failed to close ObjectRecord spill file", e);
+				}
+				pendingSpillFiles.put(spillFile, spillFileRecordCount);
+				spillWriter = null;
+				spillFile = null;
+				spillFileRecordCount = 0;
+			}
+		}
+		Iterator<Map.Entry<File, Integer>> iterator = pendingSpillFiles.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<File, Integer> pending = iterator.next();
+			try {
+				sendSpillFile(pending.getKey());
+			} catch (Exception e) {
+				log.error("Failed to send spilled ObjectRecords to S3. The records will be sent again.", e);
+				return;
+			}
+			pending.getKey().delete();
+			iterator.remove();
+			synchronized (bufferLock) {
+				spilledRecordCount -= pending.getValue();
+			}
+		}
+	}
+	
+	/**
+	 * Send the records of a spill file to S3 in batches of up to maxRecordCount records.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 * @throws JSONObjectAdapterException
+	 */
+	private void sendSpillFile(File file) throws IOException, JSONObjectAdapterException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(fileProvider.createFileInputStream(file), StandardCharsets.UTF_8))) {
+			Map<String, List<ObjectRecord>> batchMap = new HashMap<String, List<ObjectRecord>>();
+			int count = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				int index = line.indexOf(SPILL_TYPE_SEPARATOR);
+				String type = line.substring(0, index);
+				ObjectRecord record = EntityFactory.createEntityFromJSONString(line.substring(index + 1), ObjectRecord.class);
+				List<ObjectRecord> records = batchMap.get(type);
+				if (records == null) {
+					records = new ArrayList<ObjectRecord>();
+					batchMap.put(type, records);
+				}
+				records.add(record);
+				count++;
+				if (count >= maxRecordCount) {
+					saveBatches(batchMap);
+					batchMap.clear();
+					count = 0;
+				}
+			}
+			saveBatches(batchMap);
+		}
+	}
+	
+	private void saveBatches(Map<String, List<ObjectRecord>> batchMap) throws IOException {
+		for (Map.Entry<String, List<ObjectRecord>> entry : batchMap.entrySet()) {
+			objectRecordDAO.saveBatch(entry.getValue(), entry.getKey());
+		}
+	}
+	
+	/**
+	 * Poll all data currently on the queue and add it to a list.
+	 * @return
+	 */
+	Map<String, List<ObjectRecord>> pollBatches(){
+		synchronized (bufferLock) {
+			if (bufferedRecordCount == 0) {
+				return null;
+			}
+			Map<String, List<ObjectRecord>> toSend = buffer;
+			buffer = new HashMap<String, List<ObjectRecord>>();
+			bufferedRecordCount = 0;
+			return toSend;
+		}
+	}
+
+	@Override
+	public int getQueueSize() {
+		synchronized (bufferLock) {
+			return bufferedRecordCount;
+		}
+	}
+
+	/**
+	 * The number of records dropped because the queue and its spill files were full.
+	 * 
+	 * @return
+	 */
+	public long getDroppedRecordCount() {
+		return droppedRecordCount.get();
+	}
+
+	/**
+	 * The number of records in spill files waiting to be sent.
+	 * 
+	 * @return
+	 */
+	public int getSpilledRecordCount() {
+		synchronized (bufferLock) {
+			return spilledRecordCount;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of records held by the queue.
+	 * 
+	 * @param maxRecordCount
+	 */
+	public void setMaxRecordCount(int maxRecordCount) {
+		this.maxRecordCount = maxRecordCount;
+	}
+
+	/**
+	 * Sets the maximum number of records held by the spill files.
+	 * 
+	 * @param maxSpillRecordCount
+	 */
+	public void setMaxSpillRecordCount(int maxSpillRecordCount) {
+		this.maxSpillRecordCount = maxSpillRecordCount;
+	}
+}
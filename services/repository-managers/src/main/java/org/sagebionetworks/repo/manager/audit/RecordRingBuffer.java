@@ -0,0 +1,140 @@
+package org.sagebionetworks.repo.manager.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.sagebionetworks.util.ValidateArgument;
+
+/**
+ * A bounded, lock-free, multi-producer queue of records backed by a
+ * pre-allocated array.
+ * <p>
+ * Each slot has a sequence number that tells producers and consumers whether
+ * the slot is free or filled for the current lap around the ring, so neither
+ * side ever takes a lock and no node is allocated per record. When the buffer
+ * is full new records are dropped and counted rather than growing memory
+ * without limit.
+ *
+ * @param <T>
+ */
+public class RecordRingBuffer<T> {
+
+	private final int mask;
+	private final AtomicReferenceArray<T> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong(0);
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong droppedCount = new AtomicLong(0);
+
+	/**
+	 * 
+	 * @param capacity
+	 *            Must be a power of two.
+	 */
+	public RecordRingBuffer(int capacity) {
+		ValidateArgument.requirement(capacity > 0 && Integer.bitCount(capacity) == 1,
+				"Capacity must be a power of two");
+		this.mask = capacity - 1;
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Add a record to the buffer.
+	 * 
+	 * @param record
+	 * @return False if the buffer was full and the record was dropped.
+	 */
+	public boolean offer(T record) {
+		ValidateArgument.required(record, "record");
+		long position = tail.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				// the slot is free for this lap.
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.set(index, record);
+					// publish the record to consumers.
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				// the slot still holds a record from the previous lap.
+				droppedCount.incrementAndGet();
+				return false;
+			} else {
+				// another producer claimed this position.
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Remove the oldest record from the buffer.
+	 * 
+	 * @return Null if the buffer is empty.
+	 */
+	public T poll() {
+		long position = head.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					T record = slots.getAndSet(index, null);
+					// free the slot for the next lap.
+					sequences.set(index, position + mask + 1);
+					return record;
+				}
+				position = head.get();
+			} else if (difference < 0) {
+				// empty, or the producer has not published yet.
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Move up to the given number of records from the buffer to the given list.
+	 * 
+	 * @param target
+	 * @param maxRecords
+	 * @return The number of records moved.
+	 */
+	public int drainTo(List<T> target, int maxRecords) {
+		int count = 0;
+		T record;
+		while (count < maxRecords && (record = poll()) != null) {
+			target.add(record);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * The total number of records dropped because the buffer was full.
+	 * 
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * The maximum number of records the buffer can hold.
+	 * 
+	 * @return
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+}
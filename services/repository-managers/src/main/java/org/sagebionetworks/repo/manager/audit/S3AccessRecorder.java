@@ -1,9 +1,8 @@
 package org.sagebionetworks.repo.manager.audit;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -21,13 +20,21 @@ public class S3AccessRecorder implements AccessRecorder {
 
 	static private Log log = LogFactory.getLog(S3AccessRecorder.class);
 
+	/**
+	 * The maximum number of records held between timer fires. The timer fires
+	 * about once a second, so this is far more than a single machine receives
+	 * in that time.
+	 */
+	public static final int MAX_BUFFERED_RECORDS = 1 << 16;
+
 	/**
 	 * At any given time, there are multiple threads creating new AccessRecords
 	 * as new web services request come in. These AccessRecords are added to
-	 * this batch from the threads where they originated. The batch is then
-	 * processed from a separate timer thread.
+	 * this buffer from the threads where they originated. The buffer is then
+	 * drained from a separate timer thread.
 	 */
-	private ConcurrentLinkedQueue<AccessRecord> recordBatch = new ConcurrentLinkedQueue<AccessRecord>();
+	private RecordRingBuffer<AccessRecord> recordBuffer = new RecordRingBuffer<AccessRecord>(MAX_BUFFERED_RECORDS);
+	private long lastReportedDroppedCount = 0;
 	
 	@Autowired
 	AccessRecordManager accessRecordManager;
@@ -50,8 +57,17 @@ public class S3AccessRecorder implements AccessRecorder {
 	 */
 	@Override
 	public void save(AccessRecord record) {
-		// add the messages to the queue;
-		recordBatch.add(record);
+		// add the messages to the buffer, dropping the record if it is full.
+		recordBuffer.offer(record);
+	}
+
+	/**
+	 * The total number of records dropped because the buffer was full.
+	 * 
+	 * @return
+	 */
+	public long getDroppedRecordCount() {
+		return recordBuffer.getDroppedCount();
 	}
 
 	/**
@@ -62,6 +78,11 @@ public class S3AccessRecorder implements AccessRecorder {
 	public String timerFired() throws IOException {
 		// Poll all data currently on the queue.
 		List<AccessRecord> currentBatch = pollListFromQueue();
+		long droppedCount = recordBuffer.getDroppedCount();
+		if (droppedCount > lastReportedDroppedCount) {
+			log.warn((droppedCount - lastReportedDroppedCount) + " AccessRecords were dropped because the buffer was full.");
+			lastReportedDroppedCount = droppedCount;
+		}
 		// There is nothing to do if the batch is empty.
 		if(currentBatch.isEmpty()) return null;
 		// Check to see if the data should be sent to S3
@@ -85,11 +106,8 @@ public class S3AccessRecorder implements AccessRecorder {
 	 * @return
 	 */
 	private List<AccessRecord> pollListFromQueue(){
-		List<AccessRecord> list = new LinkedList<AccessRecord>();
-		for(AccessRecord ac = this.recordBatch.poll(); ac != null; ac = this.recordBatch.poll()){
-			// Add to the list
-			list.add(ac);
-		}
+		List<AccessRecord> list = new ArrayList<AccessRecord>();
+		recordBuffer.drainTo(list, recordBuffer.getCapacity());
 		return list;
 	}
 	
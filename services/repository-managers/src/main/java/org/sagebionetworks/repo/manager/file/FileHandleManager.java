@@ -228,6 +228,16 @@ public interface FileHandleManager {
 	 */
 	S3FileHandle multipartUploadLocalFile(LocalFileUploadRequest request);
 
+	/**
+	 * Multi-part upload a file to S3 as it is written, without a local copy.
+	 * This is used by workers.
+	 * 
+	 * @param request
+	 * @param writer
+	 * @return The new FileHandle, or null if the writer discarded the upload.
+	 */
+	S3FileHandle multipartUploadLocalStream(LocalFileUploadRequest request, UploadStreamWriter writer);
+
 	/**
 	 * Only the creator of a FileHandle can call this method.
 	 * 
@@ -677,6 +677,11 @@ public class FileHandleManagerImpl implements FileHandleManager {
 		return multipartManager.multipartUploadLocalFile(request);
 	}
 
+	@Override
+	public S3FileHandle multipartUploadLocalStream(LocalFileUploadRequest request, UploadStreamWriter writer) {
+		return multipartManager.multipartUploadLocalStream(request, writer);
+	}
+
 	@Override
 	public UploadDaemonStatus getUploadDaemonStatus(UserInfo userInfo,
 			String daemonId) throws DatastoreException, NotFoundException {
@@ -91,4 +91,15 @@ public interface MultipartManager {
 	 * @return
 	 */
 	S3FileHandle multipartUploadLocalFile(LocalFileUploadRequest request);
+
+	/**
+	 * Upload a file to S3 as it is written by the given writer, without
+	 * writing it to the local disk. The file name of the request is required,
+	 * while its file and listener are ignored.
+	 * 
+	 * @param request
+	 * @param writer
+	 * @return The new FileHandle, or null if the writer discarded the upload.
+	 */
+	S3FileHandle multipartUploadLocalStream(LocalFileUploadRequest request, UploadStreamWriter writer);
 }
@@ -22,6 +22,7 @@ import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.project.StorageLocationSetting;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.util.ContentDispositionUtils;
+import org.sagebionetworks.util.ValidateArgument;
 import org.sagebionetworks.utils.MD5ChecksumHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -50,6 +51,12 @@ import com.amazonaws.util.BinaryUtils;
  *
  */
 public class MultipartManagerImpl implements MultipartManager {
+
+	/**
+	 * The size of each part of a streamed upload, which is also the memory
+	 * used to buffer it.
+	 */
+	public static final int STREAM_PART_SIZE_BYTES = 8 * 1024 * 1024;
 	
 	@Autowired
 	SynapseS3Client s3Client;
@@ -265,4 +272,42 @@ public class MultipartManagerImpl implements MultipartManager {
 		} 
 	}
 
+	@Override
+	public S3FileHandle multipartUploadLocalStream(LocalFileUploadRequest request, UploadStreamWriter writer) {
+		ValidateArgument.required(request, "request");
+		ValidateArgument.required(request.getFileName(), "request.fileName");
+		ValidateArgument.required(writer, "writer");
+		StorageLocationSetting storageLocationSetting = getStorageLocationSetting(request.getStorageLocationId());
+		String bucket = MultipartUtils.getBucket(storageLocationSetting);
+		String key = MultipartUtils.createNewKey(request.getUserId(), request.getFileName(), storageLocationSetting);
+		S3FileHandle handle = new S3FileHandle();
+		handle.setBucketName(bucket);
+		handle.setKey(key);
+		handle.setContentType(request.getContentType());
+		handle.setCreatedBy(request.getUserId());
+		handle.setCreatedOn(new Date(System.currentTimeMillis()));
+		handle.setEtag(UUID.randomUUID().toString());
+		handle.setFileName(request.getFileName());
+		// The MD5 is not known until the content is written.
+		InitiateMultipartUploadResult imur = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(
+				bucket, key).withObjectMetadata(TransferUtils.prepareObjectMetadata(handle))
+				.withCannedACL(CannedAccessControlList.BucketOwnerFullControl));
+		MultipartUploadOutputStream out = new MultipartUploadOutputStream(s3Client, bucket, key, imur.getUploadId(),
+				STREAM_PART_SIZE_BYTES);
+		try {
+			if (!writer.write(out)) {
+				out.abort();
+				return null;
+			}
+			out.complete();
+		} catch (Exception e) {
+			out.abort();
+			throw new DatastoreException(e);
+		}
+		handle.setContentMd5(out.getContentMD5());
+		handle.setContentSize(out.getContentSize());
+		handle.setId(idGenerator.generateNewId(IdType.FILE_IDS).toString());
+		return (S3FileHandle) fileHandleDao.createFile(handle);
+	}
+
 }
@@ -0,0 +1,151 @@
+package org.sagebionetworks.repo.manager.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sagebionetworks.aws.SynapseS3Client;
+
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.BinaryUtils;
+
+/**
+ * An OutputStream that sends everything written to it to an S3 multi-part
+ * upload, one part at a time, so the content never needs to be held on the
+ * local disk. Only a single part is buffered in memory.
+ * <p>
+ * Closing the stream does not finish the upload; the owner must call either
+ * {@link #complete()} or {@link #abort()}.
+ *
+ */
+public class MultipartUploadOutputStream extends OutputStream {
+
+	/**
+	 * S3 requires each part but the last to be at least 5 MB.
+	 */
+	public static final int MIN_PART_SIZE_BYTES = 5 * 1024 * 1024;
+
+	private final SynapseS3Client s3Client;
+	private final String bucket;
+	private final String key;
+	private final String uploadId;
+	private final byte[] buffer;
+	private final MessageDigest digest;
+	private final List<PartETag> partETags = new ArrayList<PartETag>();
+	private int bufferSize = 0;
+	private long contentSize = 0L;
+	private boolean finished = false;
+
+	/**
+	 * 
+	 * @param s3Client
+	 * @param bucket
+	 * @param key
+	 * @param uploadId
+	 *            The ID of an upload already started for the bucket and key.
+	 * @param partSizeBytes
+	 */
+	public MultipartUploadOutputStream(SynapseS3Client s3Client, String bucket, String key, String uploadId,
+			int partSizeBytes) {
+		if (partSizeBytes < MIN_PART_SIZE_BYTES) {
+			throw new IllegalArgumentException("Part size must be at least " + MIN_PART_SIZE_BYTES + " bytes");
+		}
+		this.s3Client = s3Client;
+		this.bucket = bucket;
+		this.key = key;
+		this.uploadId = uploadId;
+		this.buffer = new byte[partSizeBytes];
+		try {
+			this.digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("The upload is already finished");
+		}
+		while (len > 0) {
+			int toCopy = Math.min(len, buffer.length - bufferSize);
+			System.arraycopy(b, off, buffer, bufferSize, toCopy);
+			bufferSize += toCopy;
+			off += toCopy;
+			len -= toCopy;
+			if (bufferSize == buffer.length) {
+				uploadPart();
+			}
+		}
+	}
+
+	/**
+	 * Send the buffered bytes as the next part.
+	 */
+	private void uploadPart() {
+		int partNumber = partETags.size() + 1;
+		digest.update(buffer, 0, bufferSize);
+		UploadPartResult result = s3Client.uploadPart(new UploadPartRequest().withBucketName(bucket).withKey(key)
+				.withUploadId(uploadId).withPartNumber(partNumber).withPartSize(bufferSize)
+				.withInputStream(new ByteArrayInputStream(buffer, 0, bufferSize)));
+		partETags.add(result.getPartETag());
+		contentSize += bufferSize;
+		bufferSize = 0;
+	}
+
+	/**
+	 * Send the remaining bytes and finish the upload.
+	 */
+	public void complete() {
+		if (bufferSize > 0 || partETags.isEmpty()) {
+			// An upload needs at least one part, even if it is empty.
+			uploadPart();
+		}
+		finished = true;
+		s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+	}
+
+	/**
+	 * Discard the upload and all parts sent so far.
+	 */
+	public void abort() {
+		finished = true;
+		s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+	}
+
+	/**
+	 * The hex MD5 of all the bytes sent. Only valid after {@link #complete()}.
+	 * 
+	 * @return
+	 */
+	public String getContentMD5() {
+		return BinaryUtils.toHex(digest.digest());
+	}
+
+	/**
+	 * The total number of bytes sent.
+	 * 
+	 * @return
+	 */
+	public long getContentSize() {
+		return contentSize;
+	}
+
+	@Override
+	public void close() {
+		// The owner of the stream decides if the upload is completed or aborted.
+	}
+}
@@ -0,0 +1,22 @@
+package org.sagebionetworks.repo.manager.file;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the content of a file that is streamed to S3 as it is written.
+ *
+ */
+public interface UploadStreamWriter {
+
+	/**
+	 * Write the content of the file to the given stream. Closing the stream
+	 * does not finish the upload; that only happens once this method returns.
+	 * 
+	 * @param out
+	 * @return False if nothing worth keeping was written, in which case the
+	 *         upload is discarded.
+	 * @throws IOException
+	 */
+	boolean write(OutputStream out) throws IOException;
+}
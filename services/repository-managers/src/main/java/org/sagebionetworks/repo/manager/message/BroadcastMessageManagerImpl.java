@@ -2,9 +2,13 @@ package org.sagebionetworks.repo.manager.message;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.http.client.ClientProtocolException;
 import org.apache.logging.log4j.LogManager;
@@ -32,6 +36,8 @@ import org.sagebionetworks.util.ValidateArgument;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.amazonaws.services.simpleemail.model.SendRawEmailRequest;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class BroadcastMessageManagerImpl implements BroadcastMessageManager {
 	
@@ -41,6 +47,11 @@ public class BroadcastMessageManagerImpl implements BroadcastMessageManager {
 	 * Ignore any message older than 24 hours.
 	 */
 	public static final long MESSAGE_EXPIRATION_MS = 1000*60*60*24; // 24 hours
+
+	/**
+	 * The default maximum rate at which this JVM sends broadcast emails.
+	 */
+	public static final double DEFAULT_MAX_EMAILS_PER_SECOND = 10.0;
 	
 	/*
 	 *  For each ChangeMessage that is processed by this manager, we map the
@@ -72,6 +83,13 @@ public class BroadcastMessageManagerImpl implements BroadcastMessageManager {
 	UserManager userManager;
 	@Autowired
 	AuthorizationManager authManager;
+	/*
+	 * Emails are sent concurrently on this pool, at no more than the rate
+	 * allowed by the limiter, while the rest of the emails are built.
+	 */
+	@Autowired
+	ExecutorService broadcastEmailExecutorService;
+	RateLimiter emailRateLimiter = RateLimiter.create(DEFAULT_MAX_EMAILS_PER_SECOND);
 
 	@Override
 	public void broadcastMessage(UserInfo user,	ProgressCallback progressCallback, ChangeMessage changeMessage) throws ClientProtocolException, JSONException, IOException, MarkdownClientException {
@@ -116,16 +134,21 @@ public class BroadcastMessageManagerImpl implements BroadcastMessageManager {
 		// Get all of the email subscribers for this topic.
 		List<Subscriber> subscribers = subscriptionDAO.getAllEmailSubscribers(topic.getObjectId(), topic.getObjectType());
 		List<String> subscriberIds = new ArrayList<String>();
-		// The builder will prepare an email for each subscriber
-		for(Subscriber subscriber: subscribers){
-			subscriberIds.add(subscriber.getSubscriberId());
-			// do not send an email to the user who created this change
-			if (subscriber.getSubscriberId().equals(changeMessage.getUserId().toString())) {
-				continue;
+		List<Future<?>> sends = new LinkedList<Future<?>>();
+		try {
+			// The builder will prepare an email for each subscriber
+			for(Subscriber subscriber: subscribers){
+				subscriberIds.add(subscriber.getSubscriberId());
+				// do not send an email to the user who created this change
+				if (subscriber.getSubscriberId().equals(changeMessage.getUserId().toString())) {
+					continue;
+				}
+				SendRawEmailRequest emailRequest = builder.buildEmailForSubscriber(subscriber);
+				log.debug("sending email to "+subscriber.getNotificationEmail());
+				sends.add(sendEmail(emailRequest));
 			}
-			SendRawEmailRequest emailRequest = builder.buildEmailForSubscriber(subscriber);
-			log.debug("sending email to "+subscriber.getNotificationEmail());
-			sesClient.sendRawEmail(emailRequest);
+		} finally {
+			waitForSends(sends);
 		}
 
 		sendMessageToNonSubscribers(progressCallback, changeMessage, builder, subscriberIds, topic);
@@ -149,19 +172,61 @@ public class BroadcastMessageManagerImpl implements BroadcastMessageManager {
 		mentionedUserIds.removeAll(subscriberIds);
 		// create list of MentionedUser from their ids
 		List<UserNotificationInfo> mentionedUsers = userProfileDao.getUserNotificationInfo(mentionedUserIds);
-		// build and send email to each mentioned user
-		for(UserNotificationInfo userNotificationInfo: mentionedUsers){
-			// do not send an email to the user who created this change
-			if (userNotificationInfo.getUserId().equals(changeMessage.getUserId().toString())) {
-				continue;
+		List<Future<?>> sends = new LinkedList<Future<?>>();
+		try {
+			// build and send email to each mentioned user
+			for(UserNotificationInfo userNotificationInfo: mentionedUsers){
+				// do not send an email to the user who created this change
+				if (userNotificationInfo.getUserId().equals(changeMessage.getUserId().toString())) {
+					continue;
+				}
+				UserInfo userInfo = userManager.getUserInfo(Long.parseLong(userNotificationInfo.getUserId()));
+				if (authManager.canSubscribe(userInfo, topic.getObjectId(), topic.getObjectType()).isAuthorized()) {
+					SendRawEmailRequest emailRequest = builder.buildEmailForNonSubscriber(userNotificationInfo);
+					log.debug("sending email to "+userNotificationInfo.getNotificationEmail());
+					sends.add(sendEmail(emailRequest));
+				}
 			}
-			UserInfo userInfo = userManager.getUserInfo(Long.parseLong(userNotificationInfo.getUserId()));
-			if (authManager.canSubscribe(userInfo, topic.getObjectId(), topic.getObjectType()).isAuthorized()) {
-				SendRawEmailRequest emailRequest = builder.buildEmailForNonSubscriber(userNotificationInfo);
-				log.debug("sending email to "+userNotificationInfo.getNotificationEmail());
-				sesClient.sendRawEmail(emailRequest);
+		} finally {
+			waitForSends(sends);
+		}
+	}
+
+	/**
+	 * Start sending a single email.
+	 * 
+	 * @param emailRequest
+	 * @return
+	 */
+	Future<?> sendEmail(final SendRawEmailRequest emailRequest) {
+		return broadcastEmailExecutorService.submit(() -> {
+			emailRateLimiter.acquire();
+			sesClient.sendRawEmail(emailRequest);
+		});
+	}
+
+	/**
+	 * Wait for all of the given emails to be sent. If any of the emails could
+	 * not be sent, the first failure is thrown once all of the sends are done.
+	 * 
+	 * @param sends
+	 */
+	static void waitForSends(List<Future<?>> sends) {
+		RuntimeException failure = null;
+		for (Future<?> send : sends) {
+			try {
+				Uninterruptibles.getUninterruptibly(send);
+			} catch (ExecutionException e) {
+				log.error("Failed to send a broadcast email", e.getCause());
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+							: new RuntimeException(e.getCause());
+				}
 			}
 		}
+		if (failure != null) {
+			throw failure;
+		}
 	}
 	
 	/**
@@ -182,6 +247,16 @@ public class BroadcastMessageManagerImpl implements BroadcastMessageManager {
 	public void setMessageBuilderFactoryMap(Map<ObjectType, MessageBuilderFactory> factoryMap) {
 		this.messageBuilderFactoryMap = factoryMap;
 	}
+
+	/**
+	 * IoC. The maximum rate at which this JVM sends broadcast emails, which
+	 * should be kept under the sending limit of the SES account.
+	 * 
+	 * @param maxEmailsPerSecond
+	 */
+	public void setMaxEmailsPerSecond(double maxEmailsPerSecond) {
+		this.emailRateLimiter = RateLimiter.create(maxEmailsPerSecond);
+	}
 	
 	
 }
@@ -17,6 +17,7 @@ import org.sagebionetworks.repo.model.dao.subscription.Subscriber;
 import org.sagebionetworks.repo.model.subscription.SubscriptionObjectType;
 import org.sagebionetworks.repo.model.subscription.Topic;
 import org.sagebionetworks.util.ValidateArgument;
+import org.springframework.web.util.HtmlUtils;
 
 import com.amazonaws.services.simpleemail.model.SendRawEmailRequest;
 
@@ -26,6 +27,13 @@ public class DiscussionBroadcastMessageBuilder implements BroadcastMessageBuilde
 	public static final long MAX_USER_IDS_PER_MESSAGE = 1000L;
 	public static final String GREETING = "Hello %1$s,\n\n";
 	public static final String SUBSCRIBE_THREAD = "[Subscribe to the thread](https://www.synapse.org/#!Subscription:objectID=%1$s&objectType=THREAD)\n";
+	/*
+	 * The markdown of a message is converted to HTML once with these in place
+	 * of the parts that differ for each recipient. They are plain words so the
+	 * conversion leaves them unchanged.
+	 */
+	public static final String RECIPIENT_NAME_PLACEHOLDER = "SynapseBroadcastRecipientName";
+	public static final String SUBSCRIPTION_ID_PLACEHOLDER = "SynapseBroadcastSubscriptionId";
 	MarkdownDao markdownDao;
 	String actorUsername;
 	String actorUserId;
@@ -39,6 +47,8 @@ public class DiscussionBroadcastMessageBuilder implements BroadcastMessageBuilde
 	String unsubscribe;
 	Topic broadcastTopic;
 	UserManager userManager;
+	String subscriberHtmlTemplate;
+	String nonSubscriberHtmlTemplate;
 
 	public DiscussionBroadcastMessageBuilder(String actorUsername, String actorUserId,
 			String threadTitle, String threadId, String projectId, String projectName,
@@ -79,11 +89,9 @@ public class DiscussionBroadcastMessageBuilder implements BroadcastMessageBuilde
 
 	@Override
 	public SendRawEmailRequest buildEmailForSubscriber(Subscriber subscriber) throws ClientProtocolException, JSONException, IOException, MarkdownClientException {
-		// build the email body
-		String body = buildRawBodyForSubscriber(subscriber);
 		return new SendRawEmailRequestBuilder()
 		.withSubject(subject)
-		.withBody(markdownDao.convertMarkdown(body, null), BodyType.HTML)
+		.withBody(buildHtmlBodyForSubscriber(subscriber), BodyType.HTML)
 		.withSenderDisplayName("noreply")
 		.withRecipientEmail(subscriber.getNotificationEmail())
 		.build();
@@ -91,15 +99,43 @@ public class DiscussionBroadcastMessageBuilder implements BroadcastMessageBuilde
 
 	@Override
 	public SendRawEmailRequest buildEmailForNonSubscriber(UserNotificationInfo user) throws ClientProtocolException, JSONException, IOException, MarkdownClientException {
-		// build the email body
-		String body = buildRawBodyForNonSubscriber(user);
 		return new SendRawEmailRequestBuilder()
 		.withSubject(subject)
-		.withBody(markdownDao.convertMarkdown(body, null), BodyType.HTML)
+		.withBody(buildHtmlBodyForNonSubscriber(user), BodyType.HTML)
 		.withSenderDisplayName("noreply")
 		.withRecipientEmail(user.getNotificationEmail())
 		.build();
 	}
+
+	/**
+	 * Build the HTML email body for a subscriber. The markdown is only
+	 * converted for the first subscriber.
+	 * @param subscriber
+	 * @return
+	 */
+	String buildHtmlBodyForSubscriber(Subscriber subscriber) throws ClientProtocolException, JSONException, IOException, MarkdownClientException {
+		if (subscriberHtmlTemplate == null) {
+			subscriberHtmlTemplate = markdownDao.convertMarkdown(
+					buildRawBodyForSubscriber(RECIPIENT_NAME_PLACEHOLDER, SUBSCRIPTION_ID_PLACEHOLDER), null);
+		}
+		String recipientName = EmailUtils.getDisplayNameWithUsername(subscriber.getFirstName(), subscriber.getLastName(), subscriber.getUsername());
+		return subscriberHtmlTemplate.replace(RECIPIENT_NAME_PLACEHOLDER, HtmlUtils.htmlEscape(recipientName))
+				.replace(SUBSCRIPTION_ID_PLACEHOLDER, HtmlUtils.htmlEscape(subscriber.getSubscriptionId()));
+	}
+
+	/**
+	 * Build the HTML email body for a user that is not subscribed. The
+	 * markdown is only converted for the first user.
+	 * @param user
+	 * @return
+	 */
+	String buildHtmlBodyForNonSubscriber(UserNotificationInfo user) throws ClientProtocolException, JSONException, IOException, MarkdownClientException {
+		if (nonSubscriberHtmlTemplate == null) {
+			nonSubscriberHtmlTemplate = markdownDao.convertMarkdown(buildRawBodyForNonSubscriber(RECIPIENT_NAME_PLACEHOLDER), null);
+		}
+		String recipientName = EmailUtils.getDisplayNameWithUsername(user.getFirstName(), user.getLastName(), user.getUsername());
+		return nonSubscriberHtmlTemplate.replace(RECIPIENT_NAME_PLACEHOLDER, HtmlUtils.htmlEscape(recipientName));
+	}
 	
 	/**
 	 * Build the email body.
@@ -107,8 +143,18 @@ public class DiscussionBroadcastMessageBuilder implements BroadcastMessageBuilde
 	 * @return
 	 */
 	public String buildRawBodyForSubscriber(Subscriber subscriber){
-		StringBuilder sb = new StringBuilder();
 		String recipientName = EmailUtils.getDisplayNameWithUsername(subscriber.getFirstName(), subscriber.getLastName(), subscriber.getUsername());
+		return buildRawBodyForSubscriber(recipientName, subscriber.getSubscriptionId());
+	}
+
+	/**
+	 * Build the email body for a subscriber.
+	 * @param recipientName
+	 * @param subscriptionId
+	 * @return
+	 */
+	String buildRawBodyForSubscriber(String recipientName, String subscriptionId){
+		StringBuilder sb = new StringBuilder();
 		sb.append(String.format(GREETING, recipientName));
 		sb.append(String.format(emailTemplate, actorUsername, actorUserId, threadTitleTruncated, projectId, threadId, projectName));
 		sb.append(markdown+"\n\n");
@@ -116,7 +162,7 @@ public class DiscussionBroadcastMessageBuilder implements BroadcastMessageBuilde
 		if (broadcastTopic.getObjectType() != SubscriptionObjectType.THREAD) {
 			sb.append(String.format(SUBSCRIBE_THREAD, threadId));
 		}
-		sb.append(String.format(unsubscribe, subscriber.getSubscriptionId()));
+		sb.append(String.format(unsubscribe, subscriptionId));
 		return sb.toString();
 	}
 
@@ -126,8 +172,17 @@ public class DiscussionBroadcastMessageBuilder implements BroadcastMessageBuilde
 	 * @return
 	 */
 	public String buildRawBodyForNonSubscriber(UserNotificationInfo user){
-		StringBuilder sb = new StringBuilder();
 		String recipientName = EmailUtils.getDisplayNameWithUsername(user.getFirstName(), user.getLastName(), user.getUsername());
+		return buildRawBodyForNonSubscriber(recipientName);
+	}
+
+	/**
+	 * Build the email body for a user that is not subscribed.
+	 * @param recipientName
+	 * @return
+	 */
+	String buildRawBodyForNonSubscriber(String recipientName){
+		StringBuilder sb = new StringBuilder();
 		sb.append(String.format(GREETING, recipientName));
 		sb.append(String.format(emailTemplate, actorUsername, actorUserId, threadTitleTruncated, projectId, threadId, projectName));
 		sb.append(markdown+"\n\n");
@@ -18,7 +18,8 @@ public interface BackupFileStream {
 	 * Stream over all of the data in the given backup file InputStream. The data is
 	 * read from the provided stream, one sub-file at a time. This means each
 	 * sub-file must be small enough to fit in memory. After each sub-file is read,
-	 * all data from that file will be flushed from memory.
+	 * all data from that file will be flushed from memory. A small, bounded
+	 * number of sub-files may be decoded ahead of the caller.
 	 * 
 	 * Note: The caller is responsible for closing the passed stream.
 	 * 
@@ -2,6 +2,8 @@ package org.sagebionetworks.repo.manager.migration;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -9,9 +11,13 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -35,8 +41,16 @@ public class BackupFileStreamImpl implements BackupFileStream {
 	private static final String DOT = ".";
 	private static final String FILE_NAME_TEMPLATE = "%1$s.%2$d.xml";
 
+	/**
+	 * The maximum number of sub-files that can be encoded or decoded ahead of the
+	 * calling thread. This bounds the number of batches held in memory.
+	 */
+	public static final int MAX_PENDING_FILES = 4;
+
 	@Autowired
 	MigrationTypeProvider typeProvider;
+	@Autowired
+	ExecutorService migrationExecutorService;
 
 	/*
 	 * (non-Javadoc)
@@ -53,8 +67,12 @@ public class BackupFileStreamImpl implements BackupFileStream {
 	}
 
 	/**
-	 * This Iterator will read one file at a time from the provided zip file. Note:
-	 * All data for any single file must fit in memory.
+	 * This Iterator will read one file at a time from the provided zip file. The
+	 * raw bytes of each file are read on the calling thread while the XML of up
+	 * to {@link #MAX_PENDING_FILES} files is parsed and translated on the
+	 * executor, so the caller can write one batch to the database while the next
+	 * batches are decoded. Files are returned in the order they occur in the zip.
+	 * Note: All data for any single file must fit in memory.
 	 *
 	 */
 	private class InputStreamIterator
@@ -63,12 +81,15 @@ public class BackupFileStreamImpl implements BackupFileStream {
 		BackupAliasType backupAliasType;
 		ZipInputStream zipInputStream;
 		Iterator<MigratableDatabaseObject<?,?>> currentFile;
+		Deque<Future<List<MigratableDatabaseObject<?, ?>>>> pendingFiles;
+		boolean endOfZip;
 
 		InputStreamIterator(InputStream input, BackupAliasType backupAliasType) throws IOException {
 			this.backupAliasType = backupAliasType;
 			this.zipInputStream = new ZipInputStream(new BufferedInputStream(input));
 			this.currentFile = null;
-
+			this.pendingFiles = new LinkedList<>();
+			this.endOfZip = false;
 		}
 
 		@Override
@@ -79,10 +100,45 @@ public class BackupFileStreamImpl implements BackupFileStream {
 					return true;
 				}
 			}
-			// read the next file from the zip.
-			this.currentFile = readBatchFromZip(this.zipInputStream, this.backupAliasType).iterator();
-			// The current file will be empty at the end of the stream.
-			return this.currentFile.hasNext();
+			try {
+				fillPendingFiles();
+				while (!pendingFiles.isEmpty()) {
+					this.currentFile = getResult(pendingFiles.poll()).iterator();
+					// keep the executor busy while the caller consumes this file.
+					fillPendingFiles();
+					if (this.currentFile.hasNext()) {
+						return true;
+					}
+				}
+			} catch (RuntimeException e) {
+				cancelAll(pendingFiles);
+				throw e;
+			}
+			// There is no more data in the zip.
+			return false;
+		}
+
+		/**
+		 * Read files from the zip until the maximum number of files are pending or
+		 * the end of the zip is reached.
+		 */
+		void fillPendingFiles() {
+			try {
+				while (!endOfZip && pendingFiles.size() < MAX_PENDING_FILES) {
+					ZipEntry entry = zipInputStream.getNextEntry();
+					if (entry == null) {
+						endOfZip = true;
+						return;
+					}
+					final String fileName = entry.getName();
+					final byte[] fileBytes = IOUtils.toByteArray(zipInputStream);
+					pendingFiles.add(migrationExecutorService.submit(() -> {
+						return readFileFromBytes(fileBytes, backupAliasType, fileName);
+					}));
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
 		}
 
 		@Override
@@ -126,6 +182,38 @@ public class BackupFileStreamImpl implements BackupFileStream {
 		return String.format(FILE_NAME_TEMPLATE, type.name(), index);
 	}
 
+	/**
+	 * Wait for the result of a pending file.
+	 * 
+	 * @param future
+	 * @return
+	 */
+	static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Cancel all of the given pending files.
+	 * 
+	 * @param pending
+	 */
+	static void cancelAll(Deque<? extends Future<?>> pending) {
+		for (Future<?> future : pending) {
+			future.cancel(true);
+		}
+		pending.clear();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.sagebionetworks.repo.manager.migration.BackupFileStream#writeBackupFile(java.io.OutputStream, java.lang.Iterable, org.sagebionetworks.repo.model.daemon.BackupAliasType, int)
@@ -137,6 +225,7 @@ public class BackupFileStreamImpl implements BackupFileStream {
 		ValidateArgument.required(stream, "Stream");
 		ValidateArgument.required(backupAliasType, "BackupAliasType");
 		ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(out));
+		Deque<Future<BatchFile>> pendingFiles = new LinkedList<>();
 		try {
 			MigrationType currentType = null;
 			int index = 0;
@@ -157,8 +246,9 @@ public class BackupFileStreamImpl implements BackupFileStream {
 				 * file if the maximum batch size is exceeded or if there is a type change.
 				 */
 				if (currentType != row.getMigratableTableType() || currentBatch.size() >= maximumRowsPerFile) {
-					writeBatchToZip(zos, currentBatch, index, currentType, backupAliasType);
-					currentBatch.clear();
+					submitBatch(zos, pendingFiles, currentBatch, index, currentType, backupAliasType);
+					// the submitted batch is still in use by the executor.
+					currentBatch = new LinkedList<>();
 					index++;
 				}
 				// add this row to the current batch
@@ -166,12 +256,111 @@ public class BackupFileStreamImpl implements BackupFileStream {
 				currentType = row.getMigratableTableType();
 			}
 			// Write the remaining data
-			writeBatchToZip(zos, currentBatch, index, currentType, backupAliasType);
+			submitBatch(zos, pendingFiles, currentBatch, index, currentType, backupAliasType);
+			while (!pendingFiles.isEmpty()) {
+				writeNextPendingFile(zos, pendingFiles);
+			}
 		} finally {
+			cancelAll(pendingFiles);
 			IOUtils.closeQuietly(zos);
 		}
 	}
 
+	/**
+	 * Submit a batch of rows to be encoded on the executor. If the maximum number
+	 * of files are already pending, the oldest pending file is first written to
+	 * the zip. This keeps the files in order and bounds the number of batches in
+	 * memory.
+	 * 
+	 * @throws IOException
+	 */
+	void submitBatch(ZipOutputStream zos, Deque<Future<BatchFile>> pendingFiles,
+			List<MigratableDatabaseObject<?, ?>> currentBatch, int index, MigrationType currentType,
+			BackupAliasType backupAliasType) throws IOException {
+		if (currentType != null && currentBatch != null && !currentBatch.isEmpty()) {
+			while (pendingFiles.size() >= MAX_PENDING_FILES) {
+				writeNextPendingFile(zos, pendingFiles);
+			}
+			final String fileName = createFileName(currentType, index);
+			pendingFiles.add(migrationExecutorService.submit(() -> {
+				return new BatchFile(fileName, encodeBatch(currentBatch, currentType, backupAliasType));
+			}));
+		}
+	}
+
+	/**
+	 * Wait for the oldest pending file to be encoded and write it to the zip.
+	 * 
+	 * @param zos
+	 * @param pendingFiles
+	 * @throws IOException
+	 */
+	void writeNextPendingFile(ZipOutputStream zos, Deque<Future<BatchFile>> pendingFiles) throws IOException {
+		BatchFile file;
+		try {
+			file = pendingFiles.poll().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		writeFileToZip(zos, file.fileName, file.content);
+	}
+
+	/**
+	 * Write a single encoded file to the zip.
+	 * 
+	 * @param zos
+	 * @param fileName
+	 * @param content
+	 * @throws IOException
+	 */
+	static void writeFileToZip(ZipOutputStream zos, String fileName, byte[] content) throws IOException {
+		ZipEntry entry = new ZipEntry(fileName);
+		zos.putNextEntry(entry);
+		zos.write(content);
+		zos.closeEntry();
+	}
+
+	/**
+	 * Encode a single batch of rows as the UTF-8 XML of a sub-file.
+	 * 
+	 * @param currentBatch
+	 * @param currentType
+	 * @param backupAliasType
+	 * @return
+	 * @throws IOException
+	 */
+	byte[] encodeBatch(List<MigratableDatabaseObject<?, ?>> currentBatch, MigrationType currentType,
+			BackupAliasType backupAliasType) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(buffer, UTF_8);
+		writeBatchToStream(currentBatch, currentType, backupAliasType, writer);
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * A sub-file that has been encoded but not yet written to the zip.
+	 *
+	 */
+	static class BatchFile {
+
+		final String fileName;
+		final byte[] content;
+
+		BatchFile(String fileName, byte[] content) {
+			this.fileName = fileName;
+			this.content = content;
+		}
+	}
+
 	/**
 	 * Write a single batch of rows as a new sub-file in the zip stream.
 	 * 
@@ -188,11 +377,7 @@ public class BackupFileStreamImpl implements BackupFileStream {
 		if(currentType != null && currentBatch != null && !currentBatch.isEmpty()) {
 			// Write the current batch as a sub-file to the zip
 			String fileName = createFileName(currentType, index);
-			ZipEntry entry = new ZipEntry(fileName);
-			zos.putNextEntry(entry);
-			Writer zipWriter = new OutputStreamWriter(zos, UTF_8);
-
-			writeBatchToStream(currentBatch, currentType, backupAliasType, zipWriter);
+			writeFileToZip(zos, fileName, encodeBatch(currentBatch, currentType, backupAliasType));
 		}
 	}
 
@@ -221,31 +406,22 @@ public class BackupFileStreamImpl implements BackupFileStream {
 	}
 
 	/**
-	 * Read a batch of rows from the ZipInputStream.  If an empty list is returned then there is no
-	 * more data within the zip.
-	 * @param zipStream
+	 * Read all of the rows from the bytes of a single file in the zip.
+	 * 
+	 * @param fileBytes
 	 * @param backupAliasType
-	 * @return Will return the contents of the next file in the zip.  An empty list will be returned if 
-	 * no more data could be read from the stream.
+	 * @param fileName
+	 * @return The rows of the file. An empty list will be returned if the file
+	 *         contains no data.
 	 */
-	public <D extends DatabaseObject<D>, B> List<MigratableDatabaseObject<?,?>> readBatchFromZip(ZipInputStream zipStream, BackupAliasType backupAliasType) {
+	List<MigratableDatabaseObject<?, ?>> readFileFromBytes(byte[] fileBytes, BackupAliasType backupAliasType,
+			String fileName) {
 		try {
-			// Keep reading files until new data is found.
-			ZipEntry entry;
-			while((entry = zipStream.getNextEntry()) != null) {
-				try {
-					// Read the zip entry.
-					return readFileFromStream(zipStream, backupAliasType, entry.getName());
-				} catch (EmptyFileException e) {
-					// This file is empty so move to the next file...
-					continue;
-				}
-			}
-			// No new data was found in the zip
+			return readFileFromStream(new ByteArrayInputStream(fileBytes), backupAliasType, fileName);
+		} catch (EmptyFileException e) {
+			// This file is empty so move to the next file...
 			return new LinkedList<>();
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}		
+		}
 	}
 	
 	/**
@@ -149,6 +149,20 @@ public class MigrationManagerImpl implements MigrationManager {
 		}
 	}
 
+	/**
+	 * Fire a delete event for a given migration type.
+	 * @param type
+	 * @param minimumId
+	 * @param maximumId
+	 */
+	private void fireDeleteByRangeEvent(MigrationType type, long minimumId, long maximumId){
+		if(this.migrationListeners != null){
+			for(MigrationTypeListener listener: this.migrationListeners){
+				listener.afterDeleteByRange(type, minimumId, maximumId);
+			}
+		}
+	}
+
 
 	@Override
 	public List<MigrationType> getPrimaryMigrationTypes(UserInfo user) {
@@ -565,6 +579,7 @@ public class MigrationManagerImpl implements MigrationManager {
 				this.migratableTableDao.deleteByRange(secondaryType, minimumId, maximumId);
 			}
 			this.migratableTableDao.deleteByRange(type, minimumId, maximumId);
+			fireDeleteByRangeEvent(type, minimumId, maximumId);
 		}
 	}
 
@@ -22,4 +22,14 @@ public interface MigrationTypeListener {
 	 */
 	public <D extends DatabaseObject<?>> void afterCreateOrUpdate(MigrationType type, List<D> delta);
 
+	/**
+	 * Will be called AFTER all primary and secondary rows of the given type
+	 * within the given ID range have been deleted during migration.
+	 * 
+	 * @param type
+	 * @param minimumId minimum ID (inclusive).
+	 * @param maximumId maximum ID (inclusive).
+	 */
+	public void afterDeleteByRange(MigrationType type, long minimumId, long maximumId);
+
 }
@@ -0,0 +1,51 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.dbo.DatabaseObject;
+import org.sagebionetworks.repo.model.dbo.persistence.DBONode;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Migration writes nodes directly to the database so the container closure
+ * maintained by the NodeDAO must be rebuilt for each batch of restored nodes,
+ * and cleared for each range of deleted nodes.
+ *
+ */
+public class NodeContainerClosureMigrationListener implements MigrationTypeListener {
+
+	@Autowired
+	NodeDAO nodeDao;
+
+	@Override
+	public <D extends DatabaseObject<?>> void afterCreateOrUpdate(MigrationType type, List<D> delta) {
+		if (!MigrationType.NODE.equals(type)) {
+			return;
+		}
+		List<Long> containerIds = new ArrayList<>(delta.size());
+		for (D dbo : delta) {
+			if (dbo instanceof DBONode) {
+				DBONode node = (DBONode) dbo;
+				if (EntityType.folder.name().equals(node.getType()) || EntityType.project.name().equals(node.getType())) {
+					containerIds.add(node.getId());
+				}
+			}
+		}
+		if (!containerIds.isEmpty()) {
+			nodeDao.rebuildContainerClosure(containerIds);
+		}
+	}
+
+	@Override
+	public void afterDeleteByRange(MigrationType type, long minimumId, long maximumId) {
+		if (!MigrationType.NODE.equals(type)) {
+			return;
+		}
+		nodeDao.deleteContainerClosureForRange(minimumId, maximumId);
+	}
+
+}
@@ -1,5 +1,10 @@
 package org.sagebionetworks.repo.manager.search;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.apache.logging.log4j.LogManager;
@@ -32,26 +37,84 @@ public class ChangeMessageToSearchDocumentTranslator {
 	@Autowired
 	CloudSearchLogger recordLogger;
 
-	Document generateSearchDocumentIfNecessary(ChangeMessage change) {
-		// start a log record for this message.
-		CloudSearchDocumentLogRecord record = recordLogger.startRecordForChangeMessage(change);
+	/**
+	 * Generate the documents for a whole batch of changes. Each entity is only
+	 * checked once, and all of the new documents are built with a single call
+	 * to {@link SearchDocumentDriver#formulateSearchDocuments(List)}.
+	 * 
+	 * @param changes
+	 * @return The documents in the order their entities first appear in the
+	 *         batch. Changes that do not need a document are skipped.
+	 */
+	List<Document> generateSearchDocumentsIfNecessary(List<ChangeMessage> changes) {
+		Map<String, DocumentAction> entityActions = new LinkedHashMap<>();
+		List<String> entitiesToFormulate = new ArrayList<>();
+		for (ChangeMessage change : changes) {
+			// start a log record for this message.
+			CloudSearchDocumentLogRecord record = recordLogger.startRecordForChangeMessage(change);
+			String entityId = getEntityId(change, record);
+			if (entityId == null) {
+				continue;
+			}
+			DocumentAction action = entityActions.get(entityId);
+			if (action == null) {
+				action = getEntityAction(entityId);
+				entityActions.put(entityId, action);
+				if (DocumentAction.CREATE_OR_UPDATE == action) {
+					entitiesToFormulate.add(entityId);
+				}
+			}
+			recordAction(record, action);
+		}
+		Map<String, Document> formulated = Collections.emptyMap();
+		if (!entitiesToFormulate.isEmpty()) {
+			formulated = searchDocumentDriver.formulateSearchDocuments(entitiesToFormulate);
+		}
+		List<Document> documents = new ArrayList<>(entityActions.size());
+		for (Map.Entry<String, DocumentAction> entry : entityActions.entrySet()) {
+			String entityId = entry.getKey();
+			switch (entry.getValue()) {
+			case DELETE:
+				documents.add(createDeleteDocument(entityId));
+				break;
+			case CREATE_OR_UPDATE:
+				Document document = formulated.get(entityId);
+				// The entity was deleted after its etag was checked.
+				documents.add(document != null ? document : createDeleteDocument(entityId));
+				break;
+			default:
+				break;
+			}
+		}
+		return documents;
+	}
+
+	/**
+	 * Get the ID of the entity changed by the given message.
+	 * 
+	 * @param change
+	 * @param record
+	 * @return null if the change does not affect an entity.
+	 */
+	String getEntityId(ChangeMessage change, CloudSearchDocumentLogRecord record) {
 		switch (change.getObjectType()) {
 		case ENTITY:
-			return entityChange(change.getObjectId(), record);
+			return change.getObjectId();
 		case WIKI:
-			return wikiChange(change.getObjectId(), record);
+			return getWikiOwnerId(change.getObjectId(), record);
 		default:
 			throw new IllegalArgumentException("Unknown change type: " + change.getChangeType());
 		}
 	}
 
 	/**
-	 * Wiki changes are converted into entity changes.
+	 * Get the ID of the entity that owns the given wiki.
+	 * 
 	 * @param wikiId
 	 * @param record
-	 * @return
+	 * @return null if the wiki does not exist or is not owned by an entity.
 	 */
-	Document wikiChange(String wikiId, CloudSearchDocumentLogRecord record) {
+	String getWikiOwnerId(String wikiId, CloudSearchDocumentLogRecord record) {
 		// Lookup the owner of the page
 		try {
 			WikiPageKey key = wikiPageDao.lookupWikiKey(wikiId);
@@ -59,7 +122,7 @@ public class ChangeMessageToSearchDocumentTranslator {
 			// message.
 			if (ObjectType.ENTITY == key.getOwnerObjectType()) {
 				record.withWikiOwner(key.getOwnerObjectId());
-				return entityChange(key.getOwnerObjectId(), record);
+				return key.getOwnerObjectId();
 			}
 		} catch (NotFoundException e) {
 			// Nothing to do if the wiki does not exist
@@ -71,30 +134,39 @@ public class ChangeMessageToSearchDocumentTranslator {
 	}
 
 	/**
-	 * Create a change document for the given wiki.
+	 * Determine what must be done to the search index for the given entity.
 	 * 
 	 * @param entityId
-	 * @param record
 	 * @return
 	 */
-	Document entityChange(String entityId, CloudSearchDocumentLogRecord record) {
+	DocumentAction getEntityAction(String entityId) {
 		// Lookup the current etag for this entity
 		Optional<String> etag = searchDocumentDriver.getEntityEtagFromRepository(entityId);
 		if(!etag.isPresent()) {
 			// Deleted documents will not have an etag.
-			record.withAction(DocumentAction.DELETE);
-			return createDeleteDocument(entityId);
+			return DocumentAction.DELETE;
 		}
 		// Does this entity already exist in the search index with the given etag?
 		if(!searchDao.doesDocumentExistInSearchIndex(entityId, etag.get())) {
-			record.withAction(DocumentAction.CREATE_OR_UPDATE);
-			record.withExistsOnIndex(false);
-			return searchDocumentDriver.formulateSearchDocument(entityId);
+			return DocumentAction.CREATE_OR_UPDATE;
 		}else {
 			log.info("Search index is already already up-to-date for entity: "+entityId);
-			record.withAction(DocumentAction.IGNORE);
+			return DocumentAction.IGNORE;
+		}
+	}
+
+	/**
+	 * Record the action taken for an entity.
+	 * 
+	 * @param record
+	 * @param action
+	 */
+	static void recordAction(CloudSearchDocumentLogRecord record, DocumentAction action) {
+		record.withAction(action);
+		if (DocumentAction.CREATE_OR_UPDATE == action) {
+			record.withExistsOnIndex(false);
+		} else if (DocumentAction.IGNORE == action) {
 			record.withExistsOnIndex(true);
-			return null;
 		}
 	}
 
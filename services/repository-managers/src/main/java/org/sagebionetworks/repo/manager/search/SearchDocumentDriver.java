@@ -1,6 +1,8 @@
 package org.sagebionetworks.repo.manager.search;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.sagebionetworks.repo.model.AccessControlList;
@@ -33,6 +35,17 @@ public interface SearchDocumentDriver {
 	 * @throws IOException TODO
 	 */
 	public Document formulateSearchDocument(String nodeId) throws DatastoreException, NotFoundException;
+	
+	/**
+	 * Create the search documents for many nodes at once. The nodes are read
+	 * concurrently and the ACL of each benefactor is only read once.
+	 * 
+	 * @param nodeIds
+	 * @return Map.key = the node ID and Map.value = the search document of that
+	 *         node. Nodes that do not exist are not included in the map.
+	 */
+	public Map<String, Document> formulateSearchDocuments(List<String> nodeIds);
+	
 	/**
 	 * Create a search document and return it.
 	 *
@@ -55,6 +68,15 @@ public interface SearchDocumentDriver {
 	 */
 	public EntityPath getEntityPath(String nodeId) throws NotFoundException;
 	
+	/**
+	 * Get the paths of many entities at once.
+	 * 
+	 * @param nodeIds
+	 * @return Map.key = the node ID and Map.value = the path of that node. Nodes
+	 *         that do not exist are not included in the map.
+	 */
+	public Map<String, EntityPath> getEntityPaths(List<String> nodeIds);
+	
 	
 	public String getAllWikiPageText(String nodeId) throws DatastoreException;
 	
@@ -10,9 +10,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,6 +37,7 @@ import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.ResourceAccess;
 import org.sagebionetworks.repo.model.dao.WikiPageKey;
 import org.sagebionetworks.repo.model.dao.WikiPageKeyHelper;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.search.Document;
 import org.sagebionetworks.repo.model.search.DocumentFields;
 import org.sagebionetworks.repo.model.search.DocumentTypeNames;
@@ -39,8 +46,14 @@ import org.sagebionetworks.repo.model.v2.wiki.V2WikiHeader;
 import org.sagebionetworks.repo.model.v2.wiki.V2WikiPage;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.search.SearchUtil;
+import org.sagebionetworks.util.ValidateArgument;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 /**
  * This class writes out search documents in batch.
  * 
@@ -57,6 +70,14 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 	 * No more than 100 values in a field value array
 	 */
 	public static final int FIELD_VALUE_SIZE_LIMIT = 100;
+	/**
+	 * No more than 100 wiki pages of a node are included in its document.
+	 */
+	public static final long WIKI_PAGE_LIMIT = 100L;
+	/**
+	 * The total number of markdown characters kept in memory.
+	 */
+	public static final long MAX_CACHED_MARKDOWN_CHARACTERS = 10L * 1000L * 1000L;
 
 	private static Log log = LogFactory.getLog(SearchDocumentDriverImpl.class);
 
@@ -68,6 +89,16 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 	private AccessControlListDAO aclDAO;
 	@Autowired
 	V2WikiPageDao wikiPageDao;
+	@Autowired
+	ExecutorService searchDocumentExecutorService;
+
+	/*
+	 * The content of a markdown file handle never changes, so the markdown is
+	 * cached by file handle ID. A wiki change creates a new file handle.
+	 */
+	private final Cache<String, String> markdownCache = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHED_MARKDOWN_CHARACTERS)
+			.weigher((String fileHandleId, String markdown) -> markdown.length()).build();
 
 	static { // initialize SEARCHABLE_NODE_ANNOTATIONS
 		// NOTE: ORDER MATTERS. Earlier annotation key names will be preferred over later ones if both keys are present.
@@ -123,6 +154,22 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 		return entityPath;
 	}
 
+	@Override
+	public Map<String, EntityPath> getEntityPaths(List<String> nodeIds) {
+		Map<Long, String> idMap = new HashMap<>(nodeIds.size());
+		for (String nodeId : nodeIds) {
+			idMap.put(KeyFactory.stringToKey(nodeId), nodeId);
+		}
+		Map<Long, List<EntityHeader>> paths = nodeDao.getEntityPaths(idMap.keySet());
+		Map<String, EntityPath> results = new HashMap<>(paths.size());
+		for (Map.Entry<Long, List<EntityHeader>> entry : paths.entrySet()) {
+			EntityPath entityPath = new EntityPath();
+			entityPath.setPath(entry.getValue());
+			results.put(idMap.get(entry.getKey()), entityPath);
+		}
+		return results;
+	}
+
 
 	@Override
 	public Document formulateSearchDocument(Node node, NamedAnnotations annos,
@@ -283,35 +330,194 @@ public class SearchDocumentDriverImpl implements SearchDocumentDriver {
 	public String getAllWikiPageText(String nodeId) throws DatastoreException {
 		// Lookup all wiki pages for this node
 		try {
-			long limit = 100L;
-			long offset = 0L;
-			List<V2WikiHeader> wikiHeaders = wikiPageDao.getHeaderTree(nodeId,
-					ObjectType.ENTITY, limit, offset);
+			List<V2WikiHeader> wikiHeaders = getWikiHeaders(nodeId);
 			if (wikiHeaders == null)
 				return null;
 			// For each header get the wikipage
 			StringBuilder builder = new StringBuilder();
 			for (V2WikiHeader header : wikiHeaders) {
 				WikiPageKey key = WikiPageKeyHelper.createWikiPageKey(nodeId, ObjectType.ENTITY, header.getId());
-				V2WikiPage page = wikiPageDao.get(key, null);
-				// Append the title and markdown
-				if (page.getTitle() != null) {
-					builder.append("\n");
-					builder.append(page.getTitle());
-				}
-				String markdownString = wikiPageDao.getMarkdown(key, null);
-				builder.append("\n");
-				builder.append(markdownString);
+				builder.append(getWikiPageText(key));
 			}
 			return builder.toString();
-		} catch (IOException e){
-			throw new RuntimeException(e);
 		} catch (NotFoundException e) {
 			// There is no WikiPage for this node.
 			return null;
 		}
 	}
 
+	/**
+	 * Get the headers of the wiki pages of a node.
+	 * 
+	 * @param nodeId
+	 * @return null if the node has no wiki.
+	 */
+	List<V2WikiHeader> getWikiHeaders(String nodeId) {
+		try {
+			return wikiPageDao.getHeaderTree(nodeId, ObjectType.ENTITY, WIKI_PAGE_LIMIT, 0L);
+		} catch (NotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the title and markdown of a single wiki page.
+	 * 
+	 * @param key
+	 * @return
+	 * @throws NotFoundException If the page no longer exists.
+	 */
+	String getWikiPageText(WikiPageKey key) throws NotFoundException {
+		V2WikiPage page = wikiPageDao.get(key, null);
+		StringBuilder builder = new StringBuilder();
+		// Append the title and markdown
+		if (page.getTitle() != null) {
+			builder.append("\n");
+			builder.append(page.getTitle());
+		}
+		builder.append("\n");
+		builder.append(getMarkdown(page.getMarkdownFileHandleId()));
+		return builder.toString();
+	}
+
+	/**
+	 * Get the markdown of a file handle from the cache, downloading it on a miss.
+	 * 
+	 * @param markdownFileHandleId
+	 * @return
+	 * @throws NotFoundException
+	 */
+	String getMarkdown(String markdownFileHandleId) throws NotFoundException {
+		try {
+			return markdownCache.get(markdownFileHandleId, () -> wikiPageDao.getMarkdown(markdownFileHandleId));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@Override
+	public Map<String, Document> formulateSearchDocuments(List<String> nodeIds) {
+		ValidateArgument.required(nodeIds, "nodeIds");
+		List<Future<?>> allFutures = new LinkedList<>();
+		try {
+			// Read each node along with its annotations and wiki headers.
+			Map<String, Future<NodeData>> nodeFutures = new LinkedHashMap<>();
+			for (String nodeId : new LinkedHashSet<>(nodeIds)) {
+				Future<NodeData> future = searchDocumentExecutorService.submit(() -> readNodeData(nodeId));
+				nodeFutures.put(nodeId, future);
+				allFutures.add(future);
+			}
+			List<NodeData> nodes = new ArrayList<>(nodeFutures.size());
+			for (Future<NodeData> future : nodeFutures.values()) {
+				try {
+					nodes.add(getResult(future));
+				} catch (NotFoundException e) {
+					// The node was deleted after the change.
+				}
+			}
+			// Read every wiki page of the batch at the same time.
+			for (NodeData data : nodes) {
+				if (data.wikiHeaders != null) {
+					data.wikiPageFutures = new ArrayList<>(data.wikiHeaders.size());
+					for (V2WikiHeader header : data.wikiHeaders) {
+						WikiPageKey key = WikiPageKeyHelper.createWikiPageKey(data.node.getId(), ObjectType.ENTITY,
+								header.getId());
+						Future<String> future = searchDocumentExecutorService.submit(() -> getWikiPageText(key));
+						data.wikiPageFutures.add(future);
+						allFutures.add(future);
+					}
+				}
+			}
+			// Nodes of the same project usually share a benefactor.
+			Map<String, AccessControlList> benefactorAcls = new HashMap<>();
+			Map<String, Document> results = new LinkedHashMap<>(nodes.size());
+			for (NodeData data : nodes) {
+				AccessControlList acl = benefactorAcls.get(data.benefactorId);
+				if (acl == null) {
+					acl = aclDAO.get(data.benefactorId, ObjectType.ENTITY);
+					benefactorAcls.put(data.benefactorId, acl);
+				}
+				String wikiPagesText = joinWikiPageText(data.wikiPageFutures);
+				results.put(data.node.getId(), formulateSearchDocument(data.node, data.annotations, acl, wikiPagesText));
+			}
+			return results;
+		} finally {
+			// Nothing is left running if the batch failed.
+			for (Future<?> future : allFutures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Read everything needed for the document of a node except the ACL and the
+	 * wiki pages.
+	 * 
+	 * @param nodeId
+	 * @return
+	 * @throws NotFoundException If the node does not exist.
+	 */
+	NodeData readNodeData(String nodeId) throws NotFoundException {
+		NodeData data = new NodeData();
+		data.node = nodeDao.getNode(nodeId);
+		data.benefactorId = nodeDao.getBenefactor(nodeId);
+		data.annotations = nodeDao.getAnnotationsForVersion(nodeId, data.node.getVersionNumber());
+		data.wikiHeaders = getWikiHeaders(nodeId);
+		return data;
+	}
+
+	/**
+	 * Join the text of all wiki pages of a node, in header order.
+	 * 
+	 * @param wikiPageFutures
+	 * @return null if the node has no wiki or one of its pages no longer exists.
+	 */
+	static String joinWikiPageText(List<Future<String>> wikiPageFutures) {
+		if (wikiPageFutures == null) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder();
+		try {
+			for (Future<String> future : wikiPageFutures) {
+				builder.append(getResult(future));
+			}
+		} catch (NotFoundException e) {
+			return null;
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Wait for the result of a read, throwing the exception of a failed read.
+	 * 
+	 * @param future
+	 * @return
+	 */
+	static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * The data read for the document of a single node.
+	 *
+	 */
+	static class NodeData {
+		Node node;
+		String benefactorId;
+		NamedAnnotations annotations;
+		List<V2WikiHeader> wikiHeaders;
+		List<Future<String>> wikiPageFutures;
+	}
+
 	@Override
 	public Optional<String> getEntityEtagFromRepository(String entityId) throws NotFoundException {
 		// check if the document is in the trash
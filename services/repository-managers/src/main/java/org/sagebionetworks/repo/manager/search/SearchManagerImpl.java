@@ -1,9 +1,9 @@
 package org.sagebionetworks.repo.manager.search;
 
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -14,7 +14,6 @@ import org.sagebionetworks.repo.model.search.Document;
 import org.sagebionetworks.repo.model.search.Hit;
 import org.sagebionetworks.repo.model.search.SearchResults;
 import org.sagebionetworks.repo.model.search.query.SearchQuery;
-import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.search.CloudSearchLogger;
 import org.sagebionetworks.search.SearchConstants;
 import org.sagebionetworks.search.SearchDao;
@@ -23,7 +22,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import com.amazonaws.services.cloudsearchdomain.model.SearchRequest;
 import com.amazonaws.services.cloudsearchdomain.model.SearchResult;
-import com.google.common.collect.Iterators;
 
 public class SearchManagerImpl implements SearchManager{
 	private static final Logger log = LogManager.getLogger(SearchManagerImpl.class.getName());
@@ -79,13 +77,21 @@ public class SearchManagerImpl implements SearchManager{
 	 */
 	public void addReturnDataToHits(List<Hit> hits) {
 		if(hits != null){
-			// For each hit we need to add the path
+			if(hits.isEmpty()){
+				return;
+			}
+			// Fetch the paths of all hits with a single call
+			List<String> hitIds = new ArrayList<>(hits.size());
+			for(Hit hit: hits){
+				hitIds.add(hit.getId());
+			}
+			Map<String, EntityPath> paths = searchDocumentDriver.getEntityPaths(hitIds);
 			List<Hit> toRemove = new LinkedList<>();
 			for(Hit hit: hits){
-				try {
-					EntityPath path = searchDocumentDriver.getEntityPath(hit.getId());
+				EntityPath path = paths.get(hit.getId());
+				if(path != null){
 					hit.setPath(path);
-				} catch (NotFoundException e) {
+				}else{
 					// Add a warning and remove it from the hits
 					log.warn("Found a search document that did not exist in the repository: "+hit);
 					// We need to remove this from the hits
@@ -118,10 +124,9 @@ public class SearchManagerImpl implements SearchManager{
 	@Override
 	public void documentChangeMessages(List<ChangeMessage> messages){
 		try {
-			Iterator<Document> documentIterator = Iterators.filter(
-					Iterators.transform(messages.iterator(), translator::generateSearchDocumentIfNecessary),
-					Objects::nonNull);
-			searchDao.sendDocuments(documentIterator);
+			// build the documents of the whole batch before streaming them to the index.
+			List<Document> documents = translator.generateSearchDocumentsIfNecessary(messages);
+			searchDao.sendDocuments(documents.iterator());
 		}finally {
 			recordLogger.pushAllRecordsAndReset();
 		}
@@ -5,20 +5,26 @@ import java.util.List;
 import org.sagebionetworks.repo.model.dao.table.RowHandler;
 import org.sagebionetworks.repo.model.table.Row;
 import org.sagebionetworks.repo.model.table.SelectColumn;
+import org.sagebionetworks.table.cluster.ColumnarRowBatch;
+import org.sagebionetworks.table.cluster.ColumnarRowBatchHandler;
 import org.sagebionetworks.table.cluster.utils.TableModelUtils;
 import org.sagebionetworks.util.csv.CSVWriterStream;
 
 /**
  * RowHandler that captures rows and write them to the 
  * provided CSV writer.
+ * 
+ * When used as a {@link ColumnarRowBatchHandler} each row is written straight
+ * from the batch using a single reused array.
  *
  */
-public class CSVWriterRowHandler implements RowHandler {
+public class CSVWriterRowHandler implements RowHandler, ColumnarRowBatchHandler {
 	
 	CSVWriterStream writer;
 	List<SelectColumn> selectColumns;
 	boolean includeRowIdAndVersion;
 	boolean includeRowEtag;
+	String[] rowBuffer;
 	
 	public CSVWriterRowHandler(CSVWriterStream writer,
 			List<SelectColumn> selectColumns, boolean includeRowIdAndVersion, boolean includeRowEtag) {
@@ -50,5 +56,16 @@ public class CSVWriterRowHandler implements RowHandler {
 		writer.writeNext(array);
 	}
 
+	@Override
+	public void nextBatch(ColumnarRowBatch batch) {
+		if(rowBuffer == null){
+			rowBuffer = new String[batch.getRowArrayLength(includeRowIdAndVersion, includeRowEtag)];
+		}
+		for(int i=0; i<batch.size(); i++){
+			batch.writeRowToArray(i, includeRowIdAndVersion, includeRowEtag, rowBuffer);
+			writer.writeNext(rowBuffer);
+		}
+	}
+
 
 }
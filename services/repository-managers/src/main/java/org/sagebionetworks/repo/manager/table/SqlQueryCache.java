@@ -0,0 +1,252 @@
+package org.sagebionetworks.repo.manager.table;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.table.FacetColumnRequest;
+import org.sagebionetworks.repo.model.table.Query;
+import org.sagebionetworks.repo.model.table.SortItem;
+import org.sagebionetworks.table.cluster.SqlQuery;
+import org.sagebionetworks.table.query.ParseException;
+import org.sagebionetworks.table.query.TableQueryParser;
+import org.sagebionetworks.util.ValidateArgument;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * LRU cache of parsed and translated {@link SqlQuery}s. Dashboards issue the
+ * same few queries over and over, so parsing the SQL, applying the benefactor
+ * filter and translating the result is only done the first time a query is
+ * seen.
+ * <p>
+ * A cached SqlQuery is shared by all callers with the same {@link Key}, so it
+ * must be treated as read-only. Every input of the query is part of the key,
+ * including the column IDs of the schema, so a schema change results in a new
+ * entry rather than requiring invalidation.
+ *
+ */
+public class SqlQueryCache {
+
+	private final Cache<String, String> tableNameCache;
+	private final Cache<Key, SqlQuery> queryCache;
+
+	/**
+	 *
+	 * @param maximumSize       The maximum number of queries held in the cache.
+	 * @param expireAfterAccessMS An entry not used for this amount of time is
+	 *                          removed.
+	 */
+	public SqlQueryCache(long maximumSize, long expireAfterAccessMS) {
+		this.tableNameCache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterAccess(expireAfterAccessMS, TimeUnit.MILLISECONDS).build();
+		this.queryCache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterAccess(expireAfterAccessMS, TimeUnit.MILLISECONDS).build();
+	}
+
+	/**
+	 * Get the name of the table referenced by the given SQL. The SQL is only
+	 * parsed the first time it is seen.
+	 *
+	 * @param sql
+	 * @return
+	 * @throws IllegalArgumentException If the SQL cannot be parsed.
+	 */
+	public String getTableName(final String sql) {
+		ValidateArgument.required(sql, "sql");
+		return get(tableNameCache, sql, new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				try {
+					return TableQueryParser.parserQuery(sql).getTableName();
+				} catch (ParseException e) {
+					throw new IllegalArgumentException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the SqlQuery for the given key, building it with the provided builder
+	 * if it is not already in the cache.
+	 *
+	 * @param key
+	 * @param builder Called to build the query on a cache miss.
+	 * @return
+	 */
+	public SqlQuery getSqlQuery(Key key, Callable<SqlQuery> builder) {
+		ValidateArgument.required(key, "key");
+		ValidateArgument.required(builder, "builder");
+		return get(queryCache, key, builder);
+	}
+
+	/**
+	 * The number of queries currently in the cache.
+	 *
+	 * @return
+	 */
+	public long size() {
+		return queryCache.size();
+	}
+
+	/**
+	 * Remove all entries from the cache.
+	 */
+	public void clear() {
+		tableNameCache.invalidateAll();
+		queryCache.invalidateAll();
+	}
+
+	/**
+	 * Runtime exceptions thrown while loading a value are passed to the caller
+	 * as-is.
+	 */
+	private static <K, V> V get(Cache<K, V> cache, K key, Callable<V> loader) {
+		try {
+			return cache.get(key, loader);
+		} catch (UncheckedExecutionException | ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * All of the inputs used to build a {@link SqlQuery}.
+	 *
+	 */
+	public static class Key {
+
+		private final String sql;
+		private final List<String> columnIds;
+		private final EntityType tableType;
+		private final Long offset;
+		private final Long limit;
+		private final Long maxBytesPerPage;
+		private final Boolean isConsistent;
+		private final Boolean includeEntityEtag;
+		private final List<SortItem> sort;
+		private final List<FacetColumnRequest> selectedFacets;
+		private final Set<Long> accessibleBenefactors;
+
+		/**
+		 *
+		 * @param query
+		 * @param columnIds             The IDs of the table's schema, in order.
+		 * @param tableType
+		 * @param maxBytesPerPage
+		 * @param accessibleBenefactors The benefactors used to filter a view.
+		 *                              Null for a table.
+		 */
+		public Key(Query query, List<String> columnIds, EntityType tableType, Long maxBytesPerPage,
+				Set<Long> accessibleBenefactors) {
+			ValidateArgument.required(query, "query");
+			ValidateArgument.required(columnIds, "columnIds");
+			this.sql = query.getSql();
+			this.columnIds = columnIds;
+			this.tableType = tableType;
+			this.offset = query.getOffset();
+			this.limit = query.getLimit();
+			this.maxBytesPerPage = maxBytesPerPage;
+			this.isConsistent = query.getIsConsistent();
+			this.includeEntityEtag = query.getIncludeEntityEtag();
+			// copies so later changes to the request do not change the key.
+			this.sort = query.getSort() == null ? null : new ArrayList<SortItem>(query.getSort());
+			this.selectedFacets = query.getSelectedFacets() == null ? null
+					: new ArrayList<FacetColumnRequest>(query.getSelectedFacets());
+			this.accessibleBenefactors = accessibleBenefactors == null ? null
+					: new HashSet<Long>(accessibleBenefactors);
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((accessibleBenefactors == null) ? 0 : accessibleBenefactors.hashCode());
+			result = prime * result + ((columnIds == null) ? 0 : columnIds.hashCode());
+			result = prime * result + ((includeEntityEtag == null) ? 0 : includeEntityEtag.hashCode());
+			result = prime * result + ((isConsistent == null) ? 0 : isConsistent.hashCode());
+			result = prime * result + ((limit == null) ? 0 : limit.hashCode());
+			result = prime * result + ((maxBytesPerPage == null) ? 0 : maxBytesPerPage.hashCode());
+			result = prime * result + ((offset == null) ? 0 : offset.hashCode());
+			result = prime * result + ((selectedFacets == null) ? 0 : selectedFacets.hashCode());
+			result = prime * result + ((sort == null) ? 0 : sort.hashCode());
+			result = prime * result + ((sql == null) ? 0 : sql.hashCode());
+			result = prime * result + ((tableType == null) ? 0 : tableType.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			if (accessibleBenefactors == null) {
+				if (other.accessibleBenefactors != null)
+					return false;
+			} else if (!accessibleBenefactors.equals(other.accessibleBenefactors))
+				return false;
+			if (columnIds == null) {
+				if (other.columnIds != null)
+					return false;
+			} else if (!columnIds.equals(other.columnIds))
+				return false;
+			if (includeEntityEtag == null) {
+				if (other.includeEntityEtag != null)
+					return false;
+			} else if (!includeEntityEtag.equals(other.includeEntityEtag))
+				return false;
+			if (isConsistent == null) {
+				if (other.isConsistent != null)
+					return false;
+			} else if (!isConsistent.equals(other.isConsistent))
+				return false;
+			if (limit == null) {
+				if (other.limit != null)
+					return false;
+			} else if (!limit.equals(other.limit))
+				return false;
+			if (maxBytesPerPage == null) {
+				if (other.maxBytesPerPage != null)
+					return false;
+			} else if (!maxBytesPerPage.equals(other.maxBytesPerPage))
+				return false;
+			if (offset == null) {
+				if (other.offset != null)
+					return false;
+			} else if (!offset.equals(other.offset))
+				return false;
+			if (selectedFacets == null) {
+				if (other.selectedFacets != null)
+					return false;
+			} else if (!selectedFacets.equals(other.selectedFacets))
+				return false;
+			if (sort == null) {
+				if (other.sort != null)
+					return false;
+			} else if (!sort.equals(other.sort))
+				return false;
+			if (sql == null) {
+				if (other.sql != null)
+					return false;
+			} else if (!sql.equals(other.sql))
+				return false;
+			if (tableType != other.tableType)
+				return false;
+			return true;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.sagebionetworks.repo.manager.table;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -67,6 +68,7 @@ import org.sagebionetworks.table.cluster.utils.TableModelUtils;
 import org.sagebionetworks.table.model.ChangeData;
 import org.sagebionetworks.table.model.SchemaChange;
 import org.sagebionetworks.table.model.SparseChangeSet;
+import org.sagebionetworks.table.model.SparseChangeSetBinaryCodec;
 import org.sagebionetworks.table.model.SparseRow;
 import org.sagebionetworks.table.model.TableChange;
 import org.sagebionetworks.table.query.ParseException;
@@ -802,9 +804,9 @@ public class TableEntityManagerImpl implements TableEntityManager {
 	public SparseChangeSet getSparseChangeSet(TableRowChange change) throws NotFoundException, IOException {
 		ValidateArgument.required(change, "TableRowChange");
 		ValidateArgument.required(change.getKeyNew(), "TableRowChange.keyNew");
-		SparseChangeSetDto dto = tableRowTruthDao.getRowSet(change);
-		List<ColumnModel> schema = columModelManager.getAndValidateColumnModels(dto.getColumnIds());
-		return new SparseChangeSet(dto, schema);
+		// decode the change set directly into the SparseChangeSet
+		return tableRowTruthDao.readRowSet(change, (InputStream in) -> SparseChangeSetBinaryCodec.readFromGz(in,
+				(List<String> columnIds) -> columModelManager.getAndValidateColumnModels(columnIds)));
 	}
 
 
@@ -1,17 +1,24 @@
 package org.sagebionetworks.repo.manager.table;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.manager.table.change.TableChangeMetaData;
+import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.NextPageToken;
 import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
@@ -22,14 +29,20 @@ import org.sagebionetworks.repo.model.table.ViewScope;
 import org.sagebionetworks.repo.model.table.ViewTypeMask;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.table.cluster.ColumnChangeDetails;
+import org.sagebionetworks.table.cluster.ColumnarRowBatch;
 import org.sagebionetworks.table.cluster.DatabaseColumnInfo;
 import org.sagebionetworks.table.cluster.SQLUtils;
+import org.sagebionetworks.table.cluster.SqlQuery;
+import org.sagebionetworks.table.cluster.SqlQueryBuilder;
 import org.sagebionetworks.table.cluster.TableIndexDAO;
 import org.sagebionetworks.table.cluster.utils.TableModelUtils;
 import org.sagebionetworks.table.model.ChangeData;
 import org.sagebionetworks.table.model.Grouping;
 import org.sagebionetworks.table.model.SchemaChange;
 import org.sagebionetworks.table.model.SparseChangeSet;
+import org.sagebionetworks.table.model.SparseChangeSetBinaryCodec;
+import org.sagebionetworks.table.model.SparseRow;
+import org.sagebionetworks.table.query.ParseException;
 import org.sagebionetworks.util.ValidateArgument;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.sagebionetworks.workers.util.semaphore.LockUnavilableException;
@@ -41,6 +54,15 @@ public class TableIndexManagerImpl implements TableIndexManager {
 	static private Logger log = LogManager.getLogger(TableIndexManagerImpl.class);
 
 	public static final int MAX_MYSQL_INDEX_COUNT = 60; // mysql only supports a max of 64 secondary indices per table.
+	/**
+	 * A new snapshot of a table's index is saved when at least this many change
+	 * numbers have been applied since the last snapshot.
+	 */
+	public static final long SNAPSHOT_CHANGE_INTERVAL = 1000L;
+	/**
+	 * The maximum number of rows in each change set of a snapshot.
+	 */
+	public static final int SNAPSHOT_BATCH_SIZE = 5000;
 	
 	private final TableIndexDAO tableIndexDao;
 	private final TableManagerSupport tableManagerSupport;
@@ -90,16 +112,7 @@ public class TableIndexManagerImpl implements TableIndexManager {
 					.executeInWriteTransaction(new TransactionCallback<Void>() {
 						@Override
 						public Void doInTransaction(TransactionStatus status) {
-							// apply all groups to the table
-							for(Grouping grouping: rowset.groupByValidValues()){
-								tableIndexDao.createOrUpdateOrDeleteRows(tableId, grouping);
-							}
-							// Extract all file handle IDs from this set
-							Set<Long> fileHandleIds = rowset.getFileHandleIdsInSparseChangeSet();
-							if (!fileHandleIds.isEmpty()) {
-								tableIndexDao.applyFileHandleIdsToTable(
-										tableId, fileHandleIds);
-							}
+							applyRowsToIndex(tableId, rowset);
 							// set the new max version for the index
 							tableIndexDao.setMaxCurrentCompleteVersionForTable(
 									tableId, changeSetVersionNumber);
@@ -109,6 +122,26 @@ public class TableIndexManagerImpl implements TableIndexManager {
 		}
 	}
 
+	/**
+	 * Apply the rows of the given change set to the index. The caller is
+	 * expected to be in a write transaction.
+	 * 
+	 * @param tableId
+	 * @param rowset
+	 */
+	void applyRowsToIndex(final IdAndVersion tableId, final SparseChangeSet rowset) {
+		// apply all groups to the table
+		for(Grouping grouping: rowset.groupByValidValues()){
+			tableIndexDao.createOrUpdateOrDeleteRows(tableId, grouping);
+		}
+		// Extract all file handle IDs from this set
+		Set<Long> fileHandleIds = rowset.getFileHandleIdsInSparseChangeSet();
+		if (!fileHandleIds.isEmpty()) {
+			tableIndexDao.applyFileHandleIdsToTable(
+					tableId, fileHandleIds);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -416,7 +449,9 @@ public class TableIndexManagerImpl implements TableIndexManager {
 	 */
 	String buildIndexToChangeNumberWithExclusiveLock(final IdAndVersion idAndVersion, final Iterator<TableChangeMetaData> iterator,
 			final long targetChangeNumber, final String tableResetToken) throws NotFoundException, IOException {
-		String lastEtag = null;
+		// Start from the newest snapshot when the index is empty.
+		String lastEtag = restoreIndexFromSnapshot(idAndVersion, targetChangeNumber);
+		Long lastChangeNumber = null;
 		// Inspect each change.
 		while(iterator.hasNext()) {
 			TableChangeMetaData changeMetadata = iterator.next();
@@ -431,13 +466,152 @@ public class TableIndexManagerImpl implements TableIndexManager {
 						targetChangeNumber);
 				appleyChangeToIndex(idAndVersion, changeMetadata);
 				lastEtag = changeMetadata.getETag();
+				lastChangeNumber = changeMetadata.getChangeNumber();
 			}
 		}
 		// now that table is created and populated the indices on the table can be optimized.
 		optimizeTableIndices(idAndVersion);
+		if(lastChangeNumber != null) {
+			try {
+				saveIndexSnapshotIfNeeded(idAndVersion, lastChangeNumber, lastEtag);
+			} catch (Exception e) {
+				// The index is complete without a snapshot.
+				log.warn("Failed to save a snapshot of table: " + idAndVersion, e);
+			}
+		}
 		return lastEtag;
 	}
 	
+	/**
+	 * Note: The caller must be holding an exclusive lock on table while calling this method.
+	 * When the index is empty, restore the newest snapshot of the table that does not
+	 * go beyond the target change number. Only the changes after the snapshot then need
+	 * to be applied to the index.
+	 * 
+	 * @param idAndVersion
+	 * @param targetChangeNumber
+	 * @return The etag of the last change included in the restored snapshot. Null if a
+	 *         snapshot was not restored.
+	 * @throws IOException
+	 */
+	String restoreIndexFromSnapshot(final IdAndVersion idAndVersion, final long targetChangeNumber) throws IOException {
+		if(getCurrentVersionOfIndex(idAndVersion) >= 0) {
+			// A snapshot can only be restored to an empty index.
+			return null;
+		}
+		Optional<Long> snapshotChangeNumber = tableManagerSupport.getIndexSnapshotChangeNumber(idAndVersion, targetChangeNumber);
+		if(!snapshotChangeNumber.isPresent()) {
+			return null;
+		}
+		/*
+		 * An earlier restore might have failed after writing some rows. The snapshot
+		 * does not include row deletes, so start from a new index.
+		 */
+		deleteTableIndex(idAndVersion);
+		log.info("Restoring snapshot: " + snapshotChangeNumber.get() + " for table: " + idAndVersion);
+		// Every change set of a snapshot has the same schema.
+		final Map<List<String>, List<ColumnModel>> schemas = new HashMap<>();
+		final String[] etag = new String[1];
+		tableManagerSupport.readIndexSnapshot(idAndVersion, snapshotChangeNumber.get(), (InputStream in) -> {
+			SparseChangeSetBinaryCodec.readEachFromGz(in,
+					(List<String> columnIds) -> schemas.computeIfAbsent(columnIds, tableManagerSupport::getColumnModel),
+					(SparseChangeSet snapshot) -> {
+						if (etag[0] == null) {
+							boolean isTableView = false;
+							setIndexSchema(idAndVersion, isTableView, snapshot.getSchema());
+						}
+						tableIndexDao.executeInWriteTransaction((TransactionStatus status) -> {
+							applyRowsToIndex(idAndVersion, snapshot);
+							return null;
+						});
+						etag[0] = snapshot.getEtag();
+					});
+			return null;
+		});
+		// The version is only set once all rows are restored.
+		tableIndexDao.setSnapshotVersionForTable(idAndVersion, snapshotChangeNumber.get());
+		setIndexVersion(idAndVersion, snapshotChangeNumber.get());
+		return etag[0];
+	}
+	
+	/**
+	 * Note: The caller must be holding an exclusive lock on table while calling this method.
+	 * Save a snapshot of the table's index if enough changes have been applied since the
+	 * last snapshot.
+	 * 
+	 * @param idAndVersion
+	 * @param changeNumber The last change number applied to the index.
+	 * @param etag The etag of the last change applied to the index.
+	 */
+	void saveIndexSnapshotIfNeeded(final IdAndVersion idAndVersion, final long changeNumber, final String etag) {
+		long lastSnapshotChangeNumber = tableIndexDao.getSnapshotVersionForTable(idAndVersion);
+		if(changeNumber - lastSnapshotChangeNumber < SNAPSHOT_CHANGE_INTERVAL) {
+			return;
+		}
+		// The snapshot is read using the table's schema, so it must match the index.
+		final List<ColumnModel> schema = tableManagerSupport.getColumnModelsForTable(idAndVersion);
+		String schemaMD5Hex = TableModelUtils.createSchemaMD5Hex(TableModelUtils.getIds(schema));
+		if(schema.isEmpty() || !schemaMD5Hex.equals(getCurrentSchemaMD5Hex(idAndVersion))) {
+			log.info("Index schema does not match the table schema. Snapshot not saved for table: " + idAndVersion);
+			return;
+		}
+		final SqlQuery query;
+		try {
+			query = new SqlQueryBuilder("SELECT * FROM " + idAndVersion, schema).tableType(EntityType.table).build();
+		} catch (ParseException e) {
+			throw new IllegalArgumentException(e);
+		}
+		log.info("Saving snapshot: " + changeNumber + " for table: " + idAndVersion);
+		tableManagerSupport.saveIndexSnapshot(idAndVersion, changeNumber, (OutputStream out) -> {
+			GZIPOutputStream zipOut = new GZIPOutputStream(out);
+			try {
+				final BufferedOutputStream buffered = new BufferedOutputStream(zipOut);
+				final int[] batchCount = new int[1];
+				tableIndexDao.queryAsColumnarBatches(null, query, SNAPSHOT_BATCH_SIZE, (ColumnarRowBatch batch) -> {
+					writeSnapshotBatch(idAndVersion, schema, etag, batch, buffered);
+					batchCount[0]++;
+				});
+				if (batchCount[0] == 0) {
+					// an empty table still needs its schema in the snapshot.
+					writeSnapshotBatch(idAndVersion, schema, etag, null, buffered);
+				}
+				buffered.flush();
+			} finally {
+				zipOut.close();
+			}
+		});
+		tableIndexDao.setSnapshotVersionForTable(idAndVersion, changeNumber);
+	}
+	
+	/**
+	 * Write a single batch of index rows to a snapshot as a binary change set.
+	 * 
+	 * @param idAndVersion
+	 * @param schema
+	 * @param etag
+	 * @param batch Null to write a change set without any rows.
+	 * @param out
+	 */
+	static void writeSnapshotBatch(IdAndVersion idAndVersion, List<ColumnModel> schema, String etag, ColumnarRowBatch batch, OutputStream out) {
+		SparseChangeSet changeSet = new SparseChangeSet(idAndVersion.toString(), schema, etag);
+		if (batch != null) {
+			for (int i = 0; i < batch.size(); i++) {
+				SparseRow row = changeSet.addEmptyRow();
+				row.setRowId(batch.getRowId(i));
+				row.setVersionNumber(batch.getRowVersion(i));
+				for (int c = 0; c < schema.size(); c++) {
+					// nulls are included so all rows of the batch are applied as one group.
+					row.setCellValue(schema.get(c).getId(), batch.getValue(i, c));
+				}
+			}
+		}
+		try {
+			SparseChangeSetBinaryCodec.write(changeSet.writeToDto(), out);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	/**
 	 * Apply the provided change to the provided index.
 	 * 
@@ -1,6 +1,8 @@
 package org.sagebionetworks.repo.manager.table;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import org.sagebionetworks.common.util.progress.ProgressCallback;
@@ -11,6 +13,8 @@ import org.sagebionetworks.repo.model.EntityType;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
+import org.sagebionetworks.repo.model.dao.table.ReaderCallback;
+import org.sagebionetworks.repo.model.dao.table.WriterCallback;
 import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.table.ColumnModel;
 import org.sagebionetworks.repo.model.table.EntityField;
@@ -415,5 +419,44 @@ public interface TableManagerSupport {
 	 * @return
 	 */
 	public boolean doesTableExist(IdAndVersion tableId);
+
+	/**
+	 * Get the ColumnModels for the given column IDs, in the same order.
+	 * 
+	 * @param columnIds
+	 * @return
+	 */
+	public List<ColumnModel> getColumnModel(List<String> columnIds);
+
+	/**
+	 * Get the change number of the newest index snapshot of the given table that
+	 * does not include changes beyond the given change number.
+	 * 
+	 * @param tableId
+	 * @param maxChangeNumber
+	 * @return
+	 */
+	public Optional<Long> getIndexSnapshotChangeNumber(IdAndVersion tableId, long maxChangeNumber);
+
+	/**
+	 * Save a snapshot of the given table's index as of the given change number.
+	 * 
+	 * @param tableId
+	 * @param changeNumber
+	 * @param writer
+	 */
+	public void saveIndexSnapshot(IdAndVersion tableId, long changeNumber, WriterCallback writer);
+
+	/**
+	 * Read the index snapshot of the given table for the given change number.
+	 * 
+	 * @param tableId
+	 * @param changeNumber
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	public <T> T readIndexSnapshot(IdAndVersion tableId, long changeNumber, ReaderCallback<T> reader)
+			throws IOException;
 
 }
@@ -1,5 +1,6 @@
 package org.sagebionetworks.repo.manager.table;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Collections;
@@ -30,8 +31,10 @@ import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.dao.table.ColumnModelDAO;
+import org.sagebionetworks.repo.model.dao.table.ReaderCallback;
 import org.sagebionetworks.repo.model.dao.table.TableRowTruthDAO;
 import org.sagebionetworks.repo.model.dao.table.TableStatusDAO;
+import org.sagebionetworks.repo.model.dao.table.WriterCallback;
 import org.sagebionetworks.repo.model.dbo.dao.table.ViewScopeDao;
 import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
@@ -590,4 +593,39 @@ public class TableManagerSupportImpl implements TableManagerSupport {
 		return nodeDao.touch(user.getId(), tableId);
 	}
 
+	@Override
+	public List<ColumnModel> getColumnModel(List<String> columnIds) {
+		ValidateArgument.required(columnIds, "columnIds");
+		Map<String, ColumnModel> idToModel = TableModelUtils
+				.createIdToColumnModelMap(columnModelDao.getColumnModel(columnIds));
+		List<ColumnModel> results = new LinkedList<>();
+		for (String columnId : columnIds) {
+			ColumnModel model = idToModel.get(columnId);
+			if (model == null) {
+				throw new NotFoundException("Column does not exist for id: " + columnId);
+			}
+			results.add(model);
+		}
+		return results;
+	}
+
+	@Override
+	public Optional<Long> getIndexSnapshotChangeNumber(IdAndVersion idAndVersion, long maxChangeNumber) {
+		ValidateArgument.required(idAndVersion, "idAndVersion");
+		return tableTruthDao.getIndexSnapshotChangeNumber(idAndVersion, maxChangeNumber);
+	}
+
+	@Override
+	public void saveIndexSnapshot(IdAndVersion idAndVersion, long changeNumber, WriterCallback writer) {
+		ValidateArgument.required(idAndVersion, "idAndVersion");
+		tableTruthDao.saveIndexSnapshot(idAndVersion, changeNumber, writer);
+	}
+
+	@Override
+	public <T> T readIndexSnapshot(IdAndVersion idAndVersion, long changeNumber, ReaderCallback<T> reader)
+			throws IOException {
+		ValidateArgument.required(idAndVersion, "idAndVersion");
+		return tableTruthDao.readIndexSnapshot(idAndVersion, changeNumber, reader);
+	}
+
 }
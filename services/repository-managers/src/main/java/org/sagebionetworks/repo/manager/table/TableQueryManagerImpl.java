@@ -5,6 +5,12 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.common.util.progress.ProgressingCallable;
@@ -33,6 +39,7 @@ import org.sagebionetworks.repo.model.table.TableFailedException;
 import org.sagebionetworks.repo.model.table.TableStatus;
 import org.sagebionetworks.repo.model.table.TableUnavailableException;
 import org.sagebionetworks.repo.web.NotFoundException;
+import org.sagebionetworks.table.cluster.ColumnarRowBatchHandler;
 import org.sagebionetworks.table.cluster.ConnectionFactory;
 import org.sagebionetworks.table.cluster.SqlQuery;
 import org.sagebionetworks.table.cluster.SqlQueryBuilder;
@@ -56,6 +63,10 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	public static final int READ_LOCK_TIMEOUT_SEC = 60;
 	
 	public static final long MAX_ROWS_PER_CALL = 100;
+	/**
+	 * The number of rows buffered at a time when streaming results to a columnar handler.
+	 */
+	public static final int COLUMNAR_BATCH_SIZE = 1000;
 
 	@Autowired
 	TableManagerSupport tableManagerSupport;
@@ -63,16 +74,29 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	ConnectionFactory tableConnectionFactory;
 	@Autowired
 	ColumnModelDAO columnModelDAO;
+	@Autowired
+	ExecutorService tableFacetQueryExecutorService;
+	@Autowired
+	SqlQueryCache sqlQueryCache;
 
 	/**
 	 * Injected via spring
 	 */
 	long maxBytesPerRequest;
+	
+	/**
+	 * Injected via spring
+	 */
+	long facetQueryTimeoutMS;
 
 	public void setMaxBytesPerRequest(long maxBytesPerRequest) {
 		this.maxBytesPerRequest = maxBytesPerRequest;
 	}
 
+	public void setFacetQueryTimeoutMS(long facetQueryTimeoutMS) {
+		this.facetQueryTimeoutMS = facetQueryTimeoutMS;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -131,7 +155,8 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	 * <li>Add row level filtering as needed.</li>
 	 * <li>Create processed {@link SqlQuery} that is ready for execution.</li>
 	 * </ol>
-	 * a
+	 * The processed query is cached using all of the inputs of the query, so
+	 * steps 1, 4 and 5 are only done the first time a query is seen.
 	 * 
 	 * @param user
 	 * @param query
@@ -141,36 +166,49 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	 * @throws TableUnavailableException
 	 * @throws NotFoundException
 	 */
-	SqlQuery queryPreflight(UserInfo user, Query query, Long maxBytesPerPage)
+	SqlQuery queryPreflight(UserInfo user, final Query query, final Long maxBytesPerPage)
 			throws EmptyResultException, NotFoundException, TableUnavailableException, TableFailedException {
 		ValidateArgument.required(user, "UserInfo");
 		ValidateArgument.required(query, "Query");
 		ValidateArgument.required(query.getSql(), "Query");
-		// 1. Parse the SQL string
-		QuerySpecification model = parserQuery(query.getSql());
-		// We now have the table's ID.
-		String tableId = model.getTableName();
+		// 1. Parse the SQL string to get the table's ID.
+		String tableId = sqlQueryCache.getTableName(query.getSql());
 		IdAndVersion idAndVersion = IdAndVersion.parse(tableId);
 
 		// 2. Validate the user has read access on this table
-		EntityType tableType = tableManagerSupport.validateTableReadAccess(user, idAndVersion);
+		final EntityType tableType = tableManagerSupport.validateTableReadAccess(user, idAndVersion);
 
 		// 3. Get the table's schema
-		List<ColumnModel> columnModels = columnModelDAO.getColumnModelsForObject(tableId);
+		final List<ColumnModel> columnModels = columnModelDAO.getColumnModelsForObject(tableId);
 		if (columnModels.isEmpty()) {
 			throw new EmptyResultException("Table schema is empty for: " + tableId, tableId);
 		}
 
-		// 4. Add row level filter as needed.
+		// 4. Gather the row level filter as needed.
+		Set<Long> accessibleBenefactors = null;
 		if (EntityType.entityview.equals(tableType)) {
 			// Table views must have a row level filter applied to the query
-			model = addRowLevelFilter(user, model);
-		}
-		// Return the prepared query.
-		return new SqlQueryBuilder(model).tableSchema(columnModels).overrideOffset(query.getOffset())
-				.overrideLimit(query.getLimit()).maxBytesPerPage(maxBytesPerPage).isConsistent(query.getIsConsistent())
-				.includeEntityEtag(query.getIncludeEntityEtag()).selectedFacets(query.getSelectedFacets())
-				.sortList(query.getSort()).tableType(tableType).build();
+			accessibleBenefactors = getAccessibleBenefactors(user, idAndVersion);
+		}
+		final Set<Long> benefactorFilter = accessibleBenefactors;
+		SqlQueryCache.Key key = new SqlQueryCache.Key(query, TableModelUtils.getIds(columnModels), tableType,
+				maxBytesPerPage, benefactorFilter);
+		// 5. Build the query if it is not already cached.
+		return sqlQueryCache.getSqlQuery(key, new Callable<SqlQuery>() {
+
+			@Override
+			public SqlQuery call() throws Exception {
+				QuerySpecification model = parserQuery(query.getSql());
+				if (benefactorFilter != null) {
+					model = buildBenefactorFilter(model, benefactorFilter);
+				}
+				return new SqlQueryBuilder(model).tableSchema(columnModels).overrideOffset(query.getOffset())
+						.overrideLimit(query.getLimit()).maxBytesPerPage(maxBytesPerPage)
+						.isConsistent(query.getIsConsistent()).includeEntityEtag(query.getIncludeEntityEtag())
+						.selectedFacets(query.getSelectedFacets()).sortList(query.getSort()).tableType(tableType)
+						.build();
+			}
+		});
 	}
 
 	/**
@@ -296,34 +334,48 @@ public class TableQueryManagerImpl implements TableQueryManager {
 			queryToRun = query;
 		}
 
-		// run the actual query if needed.
-		if (rowHandler != null) {
-			// run the query
-			RowSet rowSet = runQueryAsStream(progressCallback, queryToRun, rowHandler, indexDao);
-			QueryResult queryResult = new QueryResult();
-			queryResult.setQueryResults(rowSet);
-			bundle.setQueryResult(queryResult);
+		// Start the facet queries first so they can run while the other queries run.
+		List<Future<FacetColumnResult>> facetFutures = null;
+		if (options.returnFacets()) {
+			// use original query instead of queryToRun because need the where clause that
+			// was not modified by any facets
+			facetFutures = startFacetQueries(facetModel, indexDao);
 		}
 
-		// run the count query if needed.
-		if (options.runCount()) {
-			// count requested.
-			Long count = runCountQuery(queryToRun, indexDao);
-			bundle.setQueryCount(count);
+		try {
+			// run the actual query if needed.
+			if (rowHandler != null) {
+				// run the query
+				RowSet rowSet = runQueryAsStream(progressCallback, queryToRun, rowHandler, indexDao);
+				QueryResult queryResult = new QueryResult();
+				queryResult.setQueryResults(rowSet);
+				bundle.setQueryResult(queryResult);
+			}
+
+			// run the count query if needed.
+			if (options.runCount()) {
+				// count requested.
+				Long count = runCountQuery(queryToRun, indexDao);
+				bundle.setQueryCount(count);
+			}
+
+			if(options.runSumFileSizes()) {
+				SumFileSizes sumFileSizes = runSumFileSize(queryToRun, indexDao);
+				bundle.setSumFileSizes(sumFileSizes);
+			}
+		} catch (RuntimeException e) {
+			// the facet results are no longer needed.
+			if (facetFutures != null) {
+				cancelAll(facetFutures);
+			}
+			throw e;
 		}
 
-		// run the facet counts if needed
-		if (options.returnFacets()) {
-			// use original query instead of queryToRun because need the where clause that
-			// was not modified by any facets
-			List<FacetColumnResult> facetResults = runFacetQueries(facetModel, indexDao);
+		// wait for the facet counts if needed
+		if (facetFutures != null) {
+			List<FacetColumnResult> facetResults = waitForFacetResults(facetFutures);
 			bundle.setFacets(facetResults);
 		}
-		
-		if(options.runSumFileSizes()) {
-			SumFileSizes sumFileSizes = runSumFileSize(queryToRun, indexDao);
-			bundle.setSumFileSizes(sumFileSizes);
-		}
 
 		return bundle;
 	}
@@ -339,15 +391,80 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	 * @return
 	 */
 	public List<FacetColumnResult> runFacetQueries(FacetModel facetModel, TableIndexDAO indexDao) {
+		return waitForFacetResults(startFacetQueries(facetModel, indexDao));
+	}
+
+	/**
+	 * Submit one facet query for each column in the facet model to the facet
+	 * thread pool. The queries are run concurrently against the same index
+	 * connection. Use {@link #waitForFacetResults(List)} to gather the results.
+	 * 
+	 * @param facetModel
+	 * @param indexDao
+	 * @return One future per facet, in the order of the facet model.
+	 */
+	List<Future<FacetColumnResult>> startFacetQueries(FacetModel facetModel, final TableIndexDAO indexDao) {
 		ValidateArgument.required(facetModel, "queryFacetColumns");
 		ValidateArgument.required(indexDao, "indexDao");
 
-		List<FacetColumnResult> facetResults = new ArrayList<>();
-		for (FacetTransformer facetQueryTransformer : facetModel.getFacetInformationQueries()) {
-			RowSet rowSet = indexDao.query(null, facetQueryTransformer.getFacetSqlQuery());
-			facetResults.add(facetQueryTransformer.translateToResult(rowSet));
+		List<Future<FacetColumnResult>> futures = new ArrayList<>();
+		for (final FacetTransformer facetQueryTransformer : facetModel.getFacetInformationQueries()) {
+			futures.add(tableFacetQueryExecutorService.submit(new Callable<FacetColumnResult>() {
+				@Override
+				public FacetColumnResult call() throws Exception {
+					RowSet rowSet = indexDao.query(null, facetQueryTransformer.getFacetSqlQuery());
+					return facetQueryTransformer.translateToResult(rowSet);
+				}
+			}));
+		}
+		return futures;
+	}
+
+	/**
+	 * Wait for each of the passed facet queries to complete. All of the facet
+	 * queries for a single table query share one timeout budget. If the budget is
+	 * exceeded or any facet query fails, all of the remaining facet queries are
+	 * cancelled.
+	 * 
+	 * @param futures
+	 * @return The facet results, in the same order as the passed futures.
+	 */
+	List<FacetColumnResult> waitForFacetResults(List<Future<FacetColumnResult>> futures) {
+		ValidateArgument.required(futures, "futures");
+		long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(facetQueryTimeoutMS);
+		List<FacetColumnResult> facetResults = new ArrayList<>(futures.size());
+		try {
+			for (Future<FacetColumnResult> future : futures) {
+				long remainingNanos = Math.max(0L, deadlineNanos - System.nanoTime());
+				facetResults.add(future.get(remainingNanos, TimeUnit.NANOSECONDS));
+			}
+			return facetResults;
+		} catch (ExecutionException e) {
+			cancelAll(futures);
+			if (e.getCause() instanceof RuntimeException) {
+				// runtime exceptions are unchanged.
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (TimeoutException e) {
+			cancelAll(futures);
+			throw new RuntimeException("Facet queries did not complete within " + facetQueryTimeoutMS + " MS", e);
+		} catch (InterruptedException e) {
+			cancelAll(futures);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Cancel all of the passed futures that are not yet done.
+	 * 
+	 * @param futures
+	 */
+	static void cancelAll(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
 		}
-		return facetResults;
 	}
 
 	/**
@@ -492,7 +609,12 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	RowSet runQueryAsStream(ProgressCallback callback, SqlQuery query, RowHandler rowHandler, TableIndexDAO indexDao) {
 		ValidateArgument.required(query, "query");
 		ValidateArgument.required(rowHandler, "rowHandler");
-		indexDao.queryAsStream(callback, query, rowHandler);
+		if (rowHandler instanceof ColumnarRowBatchHandler) {
+			// avoid allocating a Row for each result.
+			indexDao.queryAsColumnarBatches(callback, query, COLUMNAR_BATCH_SIZE, (ColumnarRowBatchHandler) rowHandler);
+		} else {
+			indexDao.queryAsStream(callback, query, rowHandler);
+		}
 		RowSet results = new RowSet();
 		results.setHeaders(query.getSelectColumns());
 		results.setTableId(query.getTableId());
@@ -668,9 +790,21 @@ public class TableQueryManagerImpl implements TableQueryManager {
 	 */
 	QuerySpecification addRowLevelFilter(UserInfo user, QuerySpecification query)
 			throws NotFoundException, TableUnavailableException, TableFailedException {
-		String tableId = query.getTableName();
+		IdAndVersion idAndVersion = IdAndVersion.parse(query.getTableName());
+		Set<Long> accessibleBenefactors = getAccessibleBenefactors(user, idAndVersion);
+		return buildBenefactorFilter(query, accessibleBenefactors);
+	}
+
+	/**
+	 * Get the sub-set of the benefactors of the given view that are visible to
+	 * the user.
+	 * 
+	 * @param user
+	 * @param idAndVersion
+	 * @return
+	 */
+	Set<Long> getAccessibleBenefactors(UserInfo user, IdAndVersion idAndVersion) {
 		// Get a connection to the table.
-		IdAndVersion idAndVersion = IdAndVersion.parse(tableId);
 		TableIndexDAO indexDao = tableConnectionFactory.getConnection(idAndVersion);
 		// lookup the distinct benefactor IDs applied to the table.
 		Set<Long> tableBenefactors = null;
@@ -680,8 +814,7 @@ public class TableQueryManagerImpl implements TableQueryManager {
 			tableBenefactors = Collections.emptySet();
 		}
 		// Get the sub-set of benefactors visible to the user.
-		Set<Long> accessibleBenefactors = tableManagerSupport.getAccessibleBenefactors(user, tableBenefactors);
-		return buildBenefactorFilter(query, accessibleBenefactors);
+		return tableManagerSupport.getAccessibleBenefactors(user, tableBenefactors);
 	}
 
 	/**
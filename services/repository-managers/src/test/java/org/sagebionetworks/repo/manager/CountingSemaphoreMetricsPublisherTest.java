@@ -0,0 +1,84 @@
+package org.sagebionetworks.repo.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.repo.throttle.CountingSemaphoreThrottle;
+import org.sagebionetworks.repo.throttle.CountingSemaphoreThrottle.KeyMetrics;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+
+@ExtendWith(MockitoExtension.class)
+public class CountingSemaphoreMetricsPublisherTest {
+
+	@Mock
+	CountingSemaphoreThrottle mockThrottle;
+	@Mock
+	KeyMetrics mockMetrics;
+	@Mock
+	Consumer mockConsumer;
+	@Mock
+	StackConfiguration mockStackConfig;
+	@Captor
+	ArgumentCaptor<ProfileData> profileDataCaptor;
+
+	@InjectMocks
+	CountingSemaphoreMetricsPublisher publisher;
+
+	String key;
+
+	@BeforeEach
+	public void before() {
+		key = "tableIndexWorker";
+		when(mockStackConfig.getStackInstance()).thenReturn("123");
+		when(mockThrottle.getAllKeyMetrics()).thenReturn(Collections.singletonMap(key, mockMetrics));
+	}
+
+	@Test
+	public void testTimerFired() {
+		when(mockMetrics.getAcquireAttempts()).thenReturn(10L, 15L);
+		when(mockMetrics.getFailedAcquireAttempts()).thenReturn(4L, 4L);
+		when(mockMetrics.getAcquired()).thenReturn(6L, 9L);
+		when(mockMetrics.getReleased()).thenReturn(5L, 9L);
+		when(mockMetrics.getRenewals()).thenReturn(20L, 30L);
+		when(mockMetrics.getWaitTimeMs()).thenReturn(1000L, 1500L);
+		// call under test
+		publisher.timerFired();
+		publisher.timerFired();
+		verify(mockConsumer, times(12)).addProfileData(profileDataCaptor.capture());
+		List<ProfileData> published = profileDataCaptor.getAllValues();
+		assertMetric(published.get(0), CountingSemaphoreMetricsPublisher.METRIC_ACQUIRE_ATTEMPTS, 10.0, StandardUnit.Count);
+		assertMetric(published.get(5), CountingSemaphoreMetricsPublisher.METRIC_WAIT_TIME, 1000.0, StandardUnit.Milliseconds);
+		// only the change since the last push is published.
+		assertMetric(published.get(6), CountingSemaphoreMetricsPublisher.METRIC_ACQUIRE_ATTEMPTS, 5.0, StandardUnit.Count);
+		assertMetric(published.get(7), CountingSemaphoreMetricsPublisher.METRIC_FAILED_ACQUIRE_ATTEMPTS, 0.0, StandardUnit.Count);
+		assertMetric(published.get(8), CountingSemaphoreMetricsPublisher.METRIC_ACQUIRED, 3.0, StandardUnit.Count);
+		assertMetric(published.get(9), CountingSemaphoreMetricsPublisher.METRIC_RELEASED, 4.0, StandardUnit.Count);
+		assertMetric(published.get(10), CountingSemaphoreMetricsPublisher.METRIC_RENEWALS, 10.0, StandardUnit.Count);
+		assertMetric(published.get(11), CountingSemaphoreMetricsPublisher.METRIC_WAIT_TIME, 500.0, StandardUnit.Milliseconds);
+	}
+
+	private void assertMetric(ProfileData data, String name, double value, StandardUnit unit) {
+		assertEquals("CountingSemaphore-123", data.getNamespace());
+		assertEquals(name, data.getName());
+		assertEquals(unit.name(), data.getUnit());
+		assertEquals(value, data.getValue().doubleValue(), 0.0001);
+		assertEquals(key, data.getDimension().get(CountingSemaphoreMetricsPublisher.DIMENSION_KEY));
+	}
+}
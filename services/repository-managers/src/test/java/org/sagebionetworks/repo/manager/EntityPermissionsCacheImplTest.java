@@ -0,0 +1,109 @@
+package org.sagebionetworks.repo.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.repo.model.ACCESS_TYPE;
+import org.sagebionetworks.repo.model.AccessControlListDAO;
+import org.sagebionetworks.repo.model.ObjectType;
+
+import com.google.common.collect.Sets;
+
+@ExtendWith(MockitoExtension.class)
+public class EntityPermissionsCacheImplTest {
+
+	@Mock
+	AccessControlListDAO mockAclDAO;
+
+	EntityPermissionsCacheImpl cache;
+
+	String benefactorId;
+	Set<Long> groups;
+
+	@BeforeEach
+	public void before() {
+		cache = new EntityPermissionsCacheImpl(mockAclDAO, 100L, 60000L);
+		benefactorId = "syn456";
+		groups = Sets.newHashSet(1L, 2L);
+	}
+
+	@Test
+	public void testCanAccessCached() {
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(true);
+		// call under test
+		assertTrue(cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ));
+		// an equal set of groups should hit the cache.
+		assertTrue(cache.canAccess(Sets.newHashSet(2L, 1L), benefactorId, "etag", ACCESS_TYPE.READ));
+		verify(mockAclDAO, times(1)).canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ);
+		// a hit does not go to the database.
+		verifyNoMoreInteractions(mockAclDAO);
+	}
+
+	@Test
+	public void testCanAccessEtagChanged() {
+		// the ACL is updated by another JVM between the calls.
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(true, false);
+		// call under test
+		assertTrue(cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ));
+		assertEquals(false, cache.canAccess(groups, benefactorId, "newEtag", ACCESS_TYPE.READ));
+		verify(mockAclDAO, times(2)).canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ);
+	}
+
+	@Test
+	public void testCanAccessAclDeleted() {
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(true, false);
+		// call under test
+		assertTrue(cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ));
+		assertEquals(false, cache.canAccess(groups, benefactorId, null, ACCESS_TYPE.READ));
+		verify(mockAclDAO, times(2)).canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ);
+	}
+
+	@Test
+	public void testCanAccessDifferentAccessType() {
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(true);
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.UPDATE)).thenReturn(false);
+		// call under test
+		assertTrue(cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ));
+		assertEquals(false, cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.UPDATE));
+	}
+
+	@Test
+	public void testCanAccessGroupsChangedAfterCall() {
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(true);
+		assertTrue(cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ));
+		// changing the caller's set must not change the cached key.
+		groups.add(3L);
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(false);
+		assertEquals(false, cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ));
+	}
+
+	@Test
+	public void testInvalidateAll() {
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(true);
+		cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ);
+		// call under test
+		cache.invalidateAll();
+		cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ);
+		verify(mockAclDAO, times(2)).canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ);
+	}
+
+	@Test
+	public void testDisabledCache() {
+		cache = new EntityPermissionsCacheImpl(mockAclDAO, 0L, 0L);
+		when(mockAclDAO.canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ)).thenReturn(true);
+		cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ);
+		cache.canAccess(groups, benefactorId, "etag", ACCESS_TYPE.READ);
+		verify(mockAclDAO, times(2)).canAccess(groups, benefactorId, ObjectType.ENTITY, ACCESS_TYPE.READ);
+	}
+}
@@ -22,6 +22,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
@@ -32,6 +33,7 @@ import org.sagebionetworks.repo.model.AccessControlListDAO;
 import org.sagebionetworks.repo.model.AccessRequirementDAO;
 import org.sagebionetworks.repo.model.AuthorizationConstants.BOOTSTRAP_PRINCIPAL;
 import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.IdAndEtag;
 import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.ObjectType;
@@ -40,6 +42,7 @@ import org.sagebionetworks.repo.model.RestrictableObjectType;
 import org.sagebionetworks.repo.model.UserGroupDAO;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.auth.UserEntityPermissions;
+import org.sagebionetworks.repo.model.jdo.KeyFactory;
 import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.message.TransactionalMessenger;
 import org.sagebionetworks.repo.model.util.AccessControlListUtil;
@@ -89,6 +92,8 @@ public class EntityPermissionsManagerImplUnitTest {
 	@Mock
 	private TransactionalMessenger mockTransactionalMessenger;
 	
+	private EntityPermissionsCache entityPermissionsCache;
+	
 	Set<Long> mockUsersGroups;
 	Set<Long> nonvisibleIds;
 	
@@ -110,6 +115,8 @@ public class EntityPermissionsManagerImplUnitTest {
 		certifiedUserInfo.setId(1234567L);
 		certifiedUserInfo.setGroups(Collections.singleton(BOOTSTRAP_PRINCIPAL.CERTIFIED_USERS.getPrincipalId()));
 		
+		// a cache that holds nothing so each call goes to the mocked DAOs.
+		entityPermissionsCache = new EntityPermissionsCacheImpl(mockAclDAO, 0L, 0L);
 		ReflectionStaticTestUtils.mockAutowire(this, entityPermissionsManager);
     	
     	when(mockStackConfiguration.getDisableCertifiedUser()).thenReturn(false);
@@ -144,6 +151,12 @@ public class EntityPermissionsManagerImplUnitTest {
     	when(mockNodeDao.getNodeTypeById(fileId)).thenReturn(EntityType.file);
     	
     	when(mockNodeDao.getBenefactor(anyString())).thenReturn(benefactorId);
+    	// the benefactor read with the ACL etag follows the benefactor stubbed for each entity.
+    	when(mockNodeDao.getBenefactorAndAclEtag(anyString())).thenAnswer((InvocationOnMock invocation) -> {
+    		String nodeId = invocation.getArgument(0);
+    		return new IdAndEtag(KeyFactory.stringToKey(nodeId), "aclEtag",
+    				KeyFactory.stringToKey(mockNodeDao.getBenefactor(nodeId)));
+    	});
    	
     	dockerRepo = new Node();
     	dockerRepo.setId(dockerRepoId);
@@ -0,0 +1,69 @@
+package org.sagebionetworks.repo.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.ids.IdGenerator;
+import org.sagebionetworks.ids.IdLeaseStatistics;
+import org.sagebionetworks.ids.IdType;
+
+@ExtendWith(MockitoExtension.class)
+public class IdLeaseMetricsPublisherTest {
+
+	@Mock
+	IdGenerator mockIdGenerator;
+	@Mock
+	Consumer mockConsumer;
+	@Mock
+	StackConfiguration mockStackConfig;
+	@Captor
+	ArgumentCaptor<ProfileData> profileDataCaptor;
+
+	@InjectMocks
+	IdLeaseMetricsPublisher publisher;
+
+	@Test
+	public void testTimerFired() {
+		when(mockStackConfig.getStackInstance()).thenReturn("123");
+		// only entity IDs are leased.
+		when(mockIdGenerator.getLeaseStatistics(any(IdType.class))).thenReturn(null);
+		when(mockIdGenerator.getLeaseStatistics(IdType.ENTITY_ID)).thenReturn(
+				new IdLeaseStatistics(100L, 2L, 1L, 900L), new IdLeaseStatistics(150L, 2L, 1L, 850L));
+		// call under test
+		publisher.timerFired();
+		publisher.timerFired();
+		verify(mockConsumer, times(8)).addProfileData(profileDataCaptor.capture());
+		List<ProfileData> published = profileDataCaptor.getAllValues();
+		assertMetric(published.get(0), IdLeaseMetricsPublisher.METRIC_IDS_ISSUED, 100.0);
+		assertMetric(published.get(1), IdLeaseMetricsPublisher.METRIC_BLOCKS_LEASED, 2.0);
+		assertMetric(published.get(2), IdLeaseMetricsPublisher.METRIC_BLOCKING_FETCHES, 1.0);
+		assertMetric(published.get(3), IdLeaseMetricsPublisher.METRIC_REMAINING, 900.0);
+		// counters are published as the change since the last push.
+		assertMetric(published.get(4), IdLeaseMetricsPublisher.METRIC_IDS_ISSUED, 50.0);
+		assertMetric(published.get(5), IdLeaseMetricsPublisher.METRIC_BLOCKS_LEASED, 0.0);
+		assertMetric(published.get(6), IdLeaseMetricsPublisher.METRIC_BLOCKING_FETCHES, 0.0);
+		assertMetric(published.get(7), IdLeaseMetricsPublisher.METRIC_REMAINING, 850.0);
+	}
+
+	private static void assertMetric(ProfileData data, String name, double value) {
+		assertEquals("IdLease-123", data.getNamespace());
+		assertEquals(name, data.getName());
+		assertEquals(value, data.getValue().doubleValue(), 0.0001);
+		assertEquals(IdType.ENTITY_ID.name(), data.getDimension().get(IdLeaseMetricsPublisher.DIMENSION_TYPE));
+	}
+}
@@ -0,0 +1,183 @@
+package org.sagebionetworks.repo.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.sagebionetworks.StackConfiguration;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
+import org.sagebionetworks.repo.model.UserGroupDAO;
+import org.sagebionetworks.repo.model.UserInfo;
+import org.sagebionetworks.repo.web.NotFoundException;
+
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
+import com.google.common.collect.Sets;
+
+@ExtendWith(MockitoExtension.class)
+public class UserInfoCacheImplTest {
+
+	@Mock
+	UserGroupDAO mockUserGroupDAO;
+	@Mock
+	Consumer mockConsumer;
+	@Mock
+	StackConfiguration mockStackConfig;
+	@Mock
+	Callable<UserInfo> mockLoader;
+	@Captor
+	ArgumentCaptor<ProfileData> profileDataCaptor;
+
+	UserInfoCacheImpl cache;
+
+	Long principalId;
+	UserInfo userInfo;
+
+	@BeforeEach
+	public void before() {
+		cache = new UserInfoCacheImpl(mockUserGroupDAO, 100L, 60000L);
+		cache.consumer = mockConsumer;
+		cache.stackConfig = mockStackConfig;
+		principalId = 123L;
+		userInfo = new UserInfo(true, principalId);
+		userInfo.setCreationDate(new Date(1L));
+		userInfo.setGroups(Sets.newHashSet(principalId, 456L));
+	}
+
+	@Test
+	public void testGetUserInfo() throws Exception {
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag");
+		when(mockLoader.call()).thenReturn(userInfo);
+		// call under test
+		assertEquals(userInfo, cache.getUserInfo(principalId, mockLoader));
+		UserInfo cached = cache.getUserInfo(principalId, mockLoader);
+		assertEquals(userInfo, cached);
+		assertNotSame(userInfo, cached);
+		assertTrue(cached.isAdmin());
+		assertEquals(new Date(1L), cached.getCreationDate());
+		verify(mockLoader, times(1)).call();
+		// each call validates the etag.
+		verify(mockUserGroupDAO, times(2)).getEtag(principalId);
+		assertEquals(1L, cache.getHitCount());
+		assertEquals(1L, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void testGetUserInfoReturnsCopy() throws Exception {
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag");
+		when(mockLoader.call()).thenReturn(userInfo);
+		// call under test
+		cache.getUserInfo(principalId, mockLoader).getGroups().clear();
+		cache.getUserInfo(principalId, mockLoader).getGroups().clear();
+		assertEquals(Sets.newHashSet(principalId, 456L), cache.getUserInfo(principalId, mockLoader).getGroups());
+	}
+
+	@Test
+	public void testGetUserInfoEtagChanged() throws Exception {
+		// a membership changed on another machine between the calls.
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag", "newEtag");
+		when(mockLoader.call()).thenReturn(userInfo);
+		// call under test
+		cache.getUserInfo(principalId, mockLoader);
+		cache.getUserInfo(principalId, mockLoader);
+		verify(mockLoader, times(2)).call();
+	}
+
+	@Test
+	public void testGetUserInfoNotFound() throws Exception {
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn(null);
+		when(mockLoader.call()).thenThrow(new NotFoundException());
+		assertThrows(NotFoundException.class, () -> {
+			// call under test
+			cache.getUserInfo(principalId, mockLoader);
+		});
+		assertThrows(NotFoundException.class, () -> {
+			cache.getUserInfo(principalId, mockLoader);
+		});
+		// failures are not cached.
+		verify(mockLoader, times(2)).call();
+	}
+
+	@Test
+	public void testGetUserInfoPrincipalDeleted() throws Exception {
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag", null);
+		when(mockLoader.call()).thenReturn(userInfo).thenThrow(new NotFoundException());
+		cache.getUserInfo(principalId, mockLoader);
+		assertThrows(NotFoundException.class, () -> {
+			// call under test
+			cache.getUserInfo(principalId, mockLoader);
+		});
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag");
+		when(mockLoader.call()).thenReturn(userInfo);
+		cache.getUserInfo(principalId, mockLoader);
+		// call under test
+		cache.invalidate(principalId);
+		cache.getUserInfo(principalId, mockLoader);
+		verify(mockLoader, times(2)).call();
+	}
+
+	@Test
+	public void testInvalidateAll() throws Exception {
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag");
+		when(mockLoader.call()).thenReturn(userInfo);
+		cache.getUserInfo(principalId, mockLoader);
+		// call under test
+		cache.invalidateAll();
+		cache.getUserInfo(principalId, mockLoader);
+		verify(mockLoader, times(2)).call();
+	}
+
+	@Test
+	public void testGetHitRateNoCalls() {
+		// call under test
+		assertEquals(1.0, cache.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void testTimerFired() throws Exception {
+		when(mockStackConfig.getStackInstance()).thenReturn("123");
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag");
+		when(mockLoader.call()).thenReturn(userInfo);
+		cache.getUserInfo(principalId, mockLoader);
+		cache.getUserInfo(principalId, mockLoader);
+		cache.getUserInfo(principalId, mockLoader);
+		// call under test
+		cache.timerFired();
+		// only the calls since the last push are counted.
+		cache.getUserInfo(principalId, mockLoader);
+		cache.timerFired();
+		verify(mockConsumer, times(4)).addProfileData(profileDataCaptor.capture());
+		List<ProfileData> published = profileDataCaptor.getAllValues();
+		assertMetric(published.get(0), UserInfoCacheImpl.METRIC_HITS, 2.0);
+		assertMetric(published.get(1), UserInfoCacheImpl.METRIC_MISSES, 1.0);
+		assertMetric(published.get(2), UserInfoCacheImpl.METRIC_HITS, 1.0);
+		assertMetric(published.get(3), UserInfoCacheImpl.METRIC_MISSES, 0.0);
+	}
+
+	private static void assertMetric(ProfileData data, String name, double value) {
+		assertEquals("UserInfoCache-123", data.getNamespace());
+		assertEquals(name, data.getName());
+		assertEquals(StandardUnit.Count.name(), data.getUnit());
+		assertEquals(value, data.getValue().doubleValue(), 0.0001);
+	}
+}
@@ -1,7 +1,9 @@
 package org.sagebionetworks.repo.manager;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -9,6 +11,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -99,6 +102,7 @@ public class UserManagerImplUnitTest {
 		ReflectionTestUtils.setField(userManager, "notificationEmailDao", notificationEmailDao);
 		ReflectionTestUtils.setField(userManager, "basicDAO", basicDAO);
 		ReflectionTestUtils.setField(userManager, "groupMembersDAO", mockGroupMembersDAO);
+		ReflectionTestUtils.setField(userManager, "userInfoCache", new UserInfoCacheImpl(mockUserGroupDAO, 100L, 60000L));
 		
 		admin = new UserInfo(true);
 		notAdmin = new UserInfo(false);
@@ -163,6 +167,55 @@ public class UserManagerImplUnitTest {
 		} catch (UnauthorizedException e) { }
 	}
 	
+	@Test
+	public void testGetUserInfoCached() throws Exception {
+		Long principalId = Long.parseLong(mockId);
+		UserGroup team = new UserGroup();
+		team.setId("123");
+		when(mockGroupMembersDAO.getUsersGroups(mockId)).thenReturn(Lists.newArrayList(team));
+		when(mockUserGroupDAO.getEtag(principalId)).thenReturn("etag");
+		// call under test
+		UserInfo info = userManager.getUserInfo(principalId);
+		assertTrue(info.getGroups().contains(123L));
+		// changes made by the caller must not reach the cache.
+		info.getGroups().remove(123L);
+		UserInfo cached = userManager.getUserInfo(principalId);
+		assertTrue(cached.getGroups().contains(123L));
+		// the database is only read once.
+		verify(mockUserGroupDAO, times(1)).get(principalId);
+		verify(mockGroupMembersDAO, times(1)).getUsersGroups(mockId);
+	}
+
+	@Test
+	public void testDeletePrincipalInvalidatesUserInfo() throws Exception {
+		Long principalId = Long.parseLong(mockId);
+		userManager.getUserInfo(principalId);
+		// call under test
+		userManager.deletePrincipal(admin, principalId);
+		when(mockUserGroupDAO.get(principalId)).thenThrow(new NotFoundException());
+		try {
+			userManager.getUserInfo(principalId);
+			fail();
+		} catch (NotFoundException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testGetUserInfoNotIndividual() throws Exception {
+		mockUserGroup.setIsIndividual(false);
+		try {
+			// call under test
+			userManager.getUserInfo(Long.parseLong(mockId));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		// a failure is never cached.
+		mockUserGroup.setIsIndividual(true);
+		assertFalse(userManager.getUserInfo(Long.parseLong(mockId)).isAdmin());
+	}
+
 	@Test
 	public void testBindAlias() throws Exception {
 		String aliasName = "name";
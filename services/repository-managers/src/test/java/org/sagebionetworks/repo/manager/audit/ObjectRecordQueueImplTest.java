@@ -1,124 +1,206 @@
-package org.sagebionetworks.repo.manager.audit;
-
-import static org.junit.Assert.assertEquals;
-import static org.mockito.ArgumentMatchers.anyListOf;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
-
-import java.io.IOException;
-import java.util.LinkedList;
-
-import org.junit.Before;
-import org.junit.Test;
-import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
-import org.sagebionetworks.audit.dao.ObjectRecordBatch;
-import org.sagebionetworks.audit.dao.ObjectRecordDAO;
-import org.sagebionetworks.repo.model.audit.ObjectRecord;
-import org.springframework.test.util.ReflectionTestUtils;
-
-import com.google.common.collect.Lists;
-
-public class ObjectRecordQueueImplTest {
-
-	@Mock
-	ObjectRecordDAO mockObjectRecordDAO;
-
-	ObjectRecordQueueImpl queue;
-
-	ObjectRecord one;
-	ObjectRecord two;
-	ObjectRecord three;
-	ObjectRecord four;
-
-	ObjectRecordBatch batchOne;
-	ObjectRecordBatch batchTwo;
-	ObjectRecordBatch batchThree;
-
-	@Before
-	public void before() {
-		MockitoAnnotations.initMocks(this);
-		queue = new ObjectRecordQueueImpl();
-		ReflectionTestUtils.setField(queue, "objectRecordDAO",
-				mockObjectRecordDAO);
-
-		one = new ObjectRecord();
-		one.setTimestamp(new Long(1));
-
-		two = new ObjectRecord();
-		two.setTimestamp(new Long(2));
-
-		three = new ObjectRecord();
-		three.setTimestamp(new Long(3));
-
-		four = new ObjectRecord();
-		four.setTimestamp(new Long(4));
-
-		batchOne = new ObjectRecordBatch(Lists.newArrayList(one, two),
-				"typeOne");
-		batchTwo = new ObjectRecordBatch(Lists.newArrayList(three), "typeTwo");
-		batchThree = new ObjectRecordBatch(Lists.newArrayList(four), "typeOne");
-	}
-
-	@Test
-	public void testPushAndFire() throws IOException {
-		// push all three batches to the queue
-		queue.pushObjectRecordBatch(batchOne);
-		queue.pushObjectRecordBatch(batchTwo);
-		queue.pushObjectRecordBatch(batchThree);
-
-		// simulate timer fired
-		queue.timerFired();
-		// two batches should be sent to S3
-		verify(mockObjectRecordDAO).saveBatch(
-				Lists.newArrayList(one, two, four), "typeOne");
-		verify(mockObjectRecordDAO).saveBatch(Lists.newArrayList(three),
-				"typeTwo");
-	}
-
-	@Test
-	public void testNoPushWithFire() throws IOException {
-		// timer fired with nothing pushed
-		queue.timerFired();
-		// no save batches.
-		verify(mockObjectRecordDAO, never()).saveBatch(
-				anyListOf(ObjectRecord.class), anyString());
-	}
-
-	@Test(expected = IllegalArgumentException.class)
-	public void testPushNull() {
-		queue.pushObjectRecordBatch(null);
-	}
-
-	@Test(expected = IllegalArgumentException.class)
-	public void testPushNoType() {
-		ObjectRecordBatch batch = new ObjectRecordBatch(Lists.newArrayList(one,
-				two), null);
-		queue.pushObjectRecordBatch(batch);
-	}
-	
-	@Test(expected = IllegalArgumentException.class)
-	public void testPushNullList() {
-		ObjectRecordBatch batch = new ObjectRecordBatch(null, "typeOne");
-		queue.pushObjectRecordBatch(batch);
-	}
-	
-	@Test(expected = IllegalArgumentException.class)
-	public void testPushEmptyList() {
-		ObjectRecordBatch batch = new ObjectRecordBatch(new LinkedList<ObjectRecord>(), "typeOne");
-		queue.pushObjectRecordBatch(batch);
-	}
-	
-	@Test
-	public void testPushFailed() throws IOException{
-		// setup a failure
-		when(mockObjectRecordDAO.saveBatch(anyListOf(ObjectRecord.class), anyString())).thenThrow(new IOException("Something went wrong"));
-		// add to the queue.
-		queue.pushObjectRecordBatch(batchOne);
-		assertEquals(1, queue.getQueueSize());
-		queue.timerFired();
-		assertEquals(0, queue.getQueueSize());
-	}
-}
+package org.sagebionetworks.repo.manager.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyListOf;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.sagebionetworks.audit.dao.ObjectRecordBatch;
+import org.sagebionetworks.audit.dao.ObjectRecordDAO;
+import org.sagebionetworks.repo.model.audit.ObjectRecord;
+import org.sagebionetworks.util.FileProviderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+
+public class ObjectRecordQueueImplTest {
+
+	@Mock
+	ObjectRecordDAO mockObjectRecordDAO;
+
+	ObjectRecordQueueImpl queue;
+
+	ObjectRecord one;
+	ObjectRecord two;
+	ObjectRecord three;
+	ObjectRecord four;
+
+	ObjectRecordBatch batchOne;
+	ObjectRecordBatch batchTwo;
+	ObjectRecordBatch batchThree;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		queue = new ObjectRecordQueueImpl();
+		ReflectionTestUtils.setField(queue, "objectRecordDAO",
+				mockObjectRecordDAO);
+		ReflectionTestUtils.setField(queue, "fileProvider",
+				new FileProviderImpl());
+
+		one = new ObjectRecord();
+		one.setTimestamp(new Long(1));
+
+		two = new ObjectRecord();
+		two.setTimestamp(new Long(2));
+
+		three = new ObjectRecord();
+		three.setTimestamp(new Long(3));
+
+		four = new ObjectRecord();
+		four.setTimestamp(new Long(4));
+
+		batchOne = new ObjectRecordBatch(Lists.newArrayList(one, two),
+				"typeOne");
+		batchTwo = new ObjectRecordBatch(Lists.newArrayList(three), "typeTwo");
+		batchThree = new ObjectRecordBatch(Lists.newArrayList(four), "typeOne");
+	}
+
+	@Test
+	public void testPushAndFire() throws IOException {
+		// push all three batches to the queue
+		queue.pushObjectRecordBatch(batchOne);
+		queue.pushObjectRecordBatch(batchTwo);
+		queue.pushObjectRecordBatch(batchThree);
+
+		// simulate timer fired
+		queue.timerFired();
+		// two batches should be sent to S3
+		verify(mockObjectRecordDAO).saveBatch(
+				Lists.newArrayList(one, two, four), "typeOne");
+		verify(mockObjectRecordDAO).saveBatch(Lists.newArrayList(three),
+				"typeTwo");
+	}
+
+	@Test
+	public void testNoPushWithFire() throws IOException {
+		// timer fired with nothing pushed
+		queue.timerFired();
+		// no save batches.
+		verify(mockObjectRecordDAO, never()).saveBatch(
+				anyListOf(ObjectRecord.class), anyString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPushNull() {
+		queue.pushObjectRecordBatch(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPushNoType() {
+		ObjectRecordBatch batch = new ObjectRecordBatch(Lists.newArrayList(one,
+				two), null);
+		queue.pushObjectRecordBatch(batch);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testPushNullList() {
+		ObjectRecordBatch batch = new ObjectRecordBatch(null, "typeOne");
+		queue.pushObjectRecordBatch(batch);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testPushEmptyList() {
+		ObjectRecordBatch batch = new ObjectRecordBatch(new LinkedList<ObjectRecord>(), "typeOne");
+		queue.pushObjectRecordBatch(batch);
+	}
+	
+	@Test
+	public void testPushFailed() throws IOException{
+		// setup a failure
+		when(mockObjectRecordDAO.saveBatch(anyListOf(ObjectRecord.class), anyString())).thenThrow(new IOException("Something went wrong"));
+		// add to the queue.
+		queue.pushObjectRecordBatch(batchOne);
+		assertEquals(2, queue.getQueueSize());
+		queue.timerFired();
+		assertEquals(0, queue.getQueueSize());
+		// the failed records are kept to be sent again.
+		assertEquals(2, queue.getSpilledRecordCount());
+		assertEquals(0L, queue.getDroppedRecordCount());
+	}
+	
+	@Test
+	public void testPushFailedSentAgain() throws IOException{
+		when(mockObjectRecordDAO.saveBatch(anyListOf(ObjectRecord.class), anyString()))
+				.thenThrow(new IOException("Something went wrong")).thenReturn("key");
+		queue.pushObjectRecordBatch(batchOne);
+		queue.timerFired();
+		// call under test
+		queue.timerFired();
+		verify(mockObjectRecordDAO, times(2)).saveBatch(Lists.newArrayList(one, two), "typeOne");
+		assertEquals(0, queue.getSpilledRecordCount());
+		// nothing is left to send.
+		queue.timerFired();
+		verify(mockObjectRecordDAO, times(2)).saveBatch(anyListOf(ObjectRecord.class), anyString());
+	}
+	
+	@Test
+	public void testPushBatchNotCoalesced() throws IOException {
+		// records pushed in batches are events, so repeats are all kept.
+		queue.pushObjectRecordBatch(batchOne);
+		queue.pushObjectRecordBatch(batchOne);
+		// call under test
+		queue.timerFired();
+		verify(mockObjectRecordDAO).saveBatch(Lists.newArrayList(one, two, one, two), "typeOne");
+	}
+	
+	@Test
+	public void testPushNeverFlushes() throws IOException {
+		// call under test
+		queue.pushObjectRecordBatch(batchOne);
+		queue.pushObjectRecordBatch(batchThree);
+		// only the timer sends to S3.
+		verify(mockObjectRecordDAO, never()).saveBatch(anyListOf(ObjectRecord.class), anyString());
+		assertEquals(3, queue.getQueueSize());
+	}
+	
+	@Test
+	public void testPushWhenFull() throws IOException {
+		queue.setMaxRecordCount(2);
+		queue.pushObjectRecordBatch(batchOne);
+		assertEquals(2, queue.getQueueSize());
+		// call under test
+		queue.pushObjectRecordBatch(batchTwo);
+		// the new batch is spilled without sending the queue.
+		verify(mockObjectRecordDAO, never()).saveBatch(anyListOf(ObjectRecord.class), anyString());
+		assertEquals(2, queue.getQueueSize());
+		assertEquals(1, queue.getSpilledRecordCount());
+		assertEquals(0L, queue.getDroppedRecordCount());
+		queue.timerFired();
+		verify(mockObjectRecordDAO).saveBatch(Lists.newArrayList(one, two), "typeOne");
+		// the spilled records are sent too.
+		verify(mockObjectRecordDAO).saveBatch(Lists.newArrayList(three), "typeTwo");
+		assertEquals(0, queue.getSpilledRecordCount());
+		// there is room again after the timer.
+		queue.pushObjectRecordBatch(batchTwo);
+		assertEquals(1, queue.getQueueSize());
+	}
+	
+	@Test
+	public void testPushWhenSpillFull() throws IOException {
+		queue.setMaxRecordCount(2);
+		queue.setMaxSpillRecordCount(1);
+		queue.pushObjectRecordBatch(batchOne);
+		queue.pushObjectRecordBatch(batchTwo);
+		// call under test
+		queue.pushObjectRecordBatch(batchThree);
+		// only a batch that fits neither the queue nor the spill files is dropped.
+		assertEquals(2, queue.getQueueSize());
+		assertEquals(1, queue.getSpilledRecordCount());
+		assertEquals(1L, queue.getDroppedRecordCount());
+		queue.timerFired();
+		verify(mockObjectRecordDAO).saveBatch(Lists.newArrayList(one, two), "typeOne");
+		verify(mockObjectRecordDAO).saveBatch(Lists.newArrayList(three), "typeTwo");
+		verify(mockObjectRecordDAO, never()).saveBatch(Lists.newArrayList(four), "typeOne");
+	}
+}
@@ -0,0 +1,120 @@
+package org.sagebionetworks.repo.manager.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class RecordRingBufferTest {
+
+	@Test
+	public void testOfferPoll() {
+		RecordRingBuffer<String> buffer = new RecordRingBuffer<>(4);
+		assertNull(buffer.poll());
+		// call under test
+		assertTrue(buffer.offer("one"));
+		assertTrue(buffer.offer("two"));
+		assertEquals("one", buffer.poll());
+		assertEquals("two", buffer.poll());
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void testOfferFull() {
+		RecordRingBuffer<String> buffer = new RecordRingBuffer<>(2);
+		assertTrue(buffer.offer("one"));
+		assertTrue(buffer.offer("two"));
+		// call under test
+		assertFalse(buffer.offer("three"));
+		assertEquals(1L, buffer.getDroppedCount());
+		// space is freed by a poll.
+		assertEquals("one", buffer.poll());
+		assertTrue(buffer.offer("four"));
+		assertEquals("two", buffer.poll());
+		assertEquals("four", buffer.poll());
+	}
+
+	@Test
+	public void testWrapAround() {
+		RecordRingBuffer<Integer> buffer = new RecordRingBuffer<>(4);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(buffer.offer(i));
+			assertTrue(buffer.offer(i + 1000));
+			assertEquals(new Integer(i), buffer.poll());
+			assertEquals(new Integer(i + 1000), buffer.poll());
+		}
+		assertEquals(0L, buffer.getDroppedCount());
+	}
+
+	@Test
+	public void testDrainTo() {
+		RecordRingBuffer<Integer> buffer = new RecordRingBuffer<>(8);
+		for (int i = 0; i < 5; i++) {
+			buffer.offer(i);
+		}
+		List<Integer> target = new ArrayList<>();
+		// call under test
+		assertEquals(3, buffer.drainTo(target, 3));
+		assertEquals(2, buffer.drainTo(target, 10));
+		assertEquals(5, target.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(new Integer(i), target.get(i));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityNotPowerOfTwo() {
+		new RecordRingBuffer<String>(3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOfferNull() {
+		new RecordRingBuffer<String>(2).offer(null);
+	}
+
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		final int producers = 4;
+		final int perProducer = 10000;
+		final RecordRingBuffer<Integer> buffer = new RecordRingBuffer<>(1 << 10);
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		try {
+			List<Future<?>> futures = new LinkedList<>();
+			for (int p = 0; p < producers; p++) {
+				final int offset = p * perProducer;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < perProducer; i++) {
+						// retry when full so every record is delivered.
+						while (!buffer.offer(offset + i)) {
+							Thread.yield();
+						}
+					}
+				}));
+			}
+			Set<Integer> received = new HashSet<>();
+			while (received.size() < producers * perProducer) {
+				Integer record = buffer.poll();
+				if (record != null) {
+					assertTrue(received.add(record));
+				}
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			assertNull(buffer.poll());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
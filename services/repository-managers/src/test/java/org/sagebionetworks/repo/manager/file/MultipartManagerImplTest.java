@@ -1,8 +1,15 @@
 package org.sagebionetworks.repo.manager.file;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.OutputStream;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -10,17 +17,24 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sagebionetworks.aws.SynapseS3Client;
 import org.sagebionetworks.ids.IdGenerator;
+import org.sagebionetworks.ids.IdType;
 import org.sagebionetworks.repo.manager.ProjectSettingsManager;
 import org.sagebionetworks.repo.model.dao.FileHandleDao;
 import org.sagebionetworks.repo.model.file.CreateChunkedFileTokenRequest;
+import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.project.S3StorageLocationSetting;
 import org.sagebionetworks.repo.model.project.StorageLocationSetting;
+import org.sagebionetworks.utils.MD5ChecksumHelper;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
 import com.amazonaws.services.s3.transfer.TransferManager;
 
 
@@ -74,4 +88,57 @@ public class MultipartManagerImplTest {
 
 	}
 
+	@Test
+	public void testMultipartUploadLocalStream() throws Exception {
+		Long storageLocationId=101L;
+		StorageLocationSetting sls = new S3StorageLocationSetting();
+		when(projectSettingsManager.getStorageLocationSetting(storageLocationId)).thenReturn(sls);
+		InitiateMultipartUploadResult imur = new InitiateMultipartUploadResult();
+		imur.setUploadId("uploadId");
+		ArgumentCaptor<InitiateMultipartUploadRequest> imurCapture = ArgumentCaptor.forClass(InitiateMultipartUploadRequest.class);
+		when(s3Client.initiateMultipartUpload(imurCapture.capture())).thenReturn(imur);
+		UploadPartResult partResult = new UploadPartResult();
+		partResult.setPartNumber(1);
+		partResult.setETag("partEtag");
+		ArgumentCaptor<UploadPartRequest> partCapture = ArgumentCaptor.forClass(UploadPartRequest.class);
+		when(s3Client.uploadPart(partCapture.capture())).thenReturn(partResult);
+		when(idGenerator.generateNewId(IdType.FILE_IDS)).thenReturn(123L);
+		when(fileHandleDao.createFile(any(S3FileHandle.class))).then(returnsFirstArg());
+		final byte[] content = "some content".getBytes("UTF-8");
+		LocalFileUploadRequest request = new LocalFileUploadRequest().withStorageLocationId(storageLocationId)
+				.withUserId("456").withFileName("foo.zip").withContentType("application/zip");
+		// method under test
+		S3FileHandle handle = manager.multipartUploadLocalStream(request, (OutputStream out) -> {
+			out.write(content);
+			return true;
+		});
+		assertEquals(CannedAccessControlList.BucketOwnerFullControl, imurCapture.getValue().getCannedACL());
+		// a small file is sent as a single part.
+		assertEquals(1, partCapture.getValue().getPartNumber());
+		assertEquals(content.length, partCapture.getValue().getPartSize());
+		verify(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+		assertEquals("123", handle.getId());
+		assertEquals("foo.zip", handle.getFileName());
+		assertEquals(new Long(content.length), handle.getContentSize());
+		assertEquals(MD5ChecksumHelper.getMD5ChecksumForByteArray(content), handle.getContentMd5());
+	}
+
+	@Test
+	public void testMultipartUploadLocalStreamDiscarded() throws Exception {
+		Long storageLocationId=101L;
+		StorageLocationSetting sls = new S3StorageLocationSetting();
+		when(projectSettingsManager.getStorageLocationSetting(storageLocationId)).thenReturn(sls);
+		InitiateMultipartUploadResult imur = new InitiateMultipartUploadResult();
+		imur.setUploadId("uploadId");
+		when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(imur);
+		LocalFileUploadRequest request = new LocalFileUploadRequest().withStorageLocationId(storageLocationId)
+				.withUserId("456").withFileName("foo.zip");
+		// method under test
+		S3FileHandle handle = manager.multipartUploadLocalStream(request, (OutputStream out) -> false);
+		assertNull(handle);
+		verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+		verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+		verify(fileHandleDao, never()).createFile(any(S3FileHandle.class));
+	}
+
 }
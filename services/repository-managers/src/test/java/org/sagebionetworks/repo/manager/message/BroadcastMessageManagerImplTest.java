@@ -1,7 +1,10 @@
 package org.sagebionetworks.repo.manager.message;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -42,9 +45,11 @@ import org.sagebionetworks.repo.model.principal.PrincipalAliasDAO;
 import org.sagebionetworks.repo.model.subscription.SubscriptionObjectType;
 import org.sagebionetworks.repo.model.subscription.Topic;
 import org.sagebionetworks.util.TimeoutUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.services.simpleemail.model.SendRawEmailRequest;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class BroadcastMessageManagerImplTest {
 	
@@ -86,6 +91,9 @@ public class BroadcastMessageManagerImplTest {
 	@Before
 	public void before() throws Exception{
 		MockitoAnnotations.initMocks(this);
+		// send the emails on the calling thread.
+		ReflectionTestUtils.setField(manager, "broadcastEmailExecutorService", MoreExecutors.newDirectExecutorService());
+		manager.setMaxEmailsPerSecond(1000.0);
 
 		Map<ObjectType, MessageBuilderFactory> factoryMap = new HashMap<ObjectType, MessageBuilderFactory>();
 		factoryMap.put(ObjectType.REPLY, mockFactory);
@@ -266,6 +274,21 @@ public class BroadcastMessageManagerImplTest {
 		verify(mockSesClient, times(2)).sendRawEmail(any(SendRawEmailRequest.class));
 	}
 
+	@Test
+	public void testBroadcastFailToSendOne() throws Exception{
+		IllegalStateException exception = new IllegalStateException("cannot send");
+		doThrow(exception).doNothing().when(mockSesClient).sendRawEmail(any(SendRawEmailRequest.class));
+		try {
+			// call under test
+			manager.broadcastMessage(mockUser, mockCallback, change);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(exception, e);
+		}
+		// the failure does not stop the other emails.
+		verify(mockSesClient, times(2)).sendRawEmail(any(SendRawEmailRequest.class));
+	}
+
 	@Test (expected = MarkdownClientException.class)
 	public void testBroadcastFailToBuildMessage() throws Exception{
 		when(mockBroadcastMessageBuilder.buildEmailForSubscriber(any(Subscriber.class))).thenThrow(new MarkdownClientException(500, ""));
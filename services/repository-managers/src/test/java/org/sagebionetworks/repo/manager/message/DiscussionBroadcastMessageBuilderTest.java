@@ -10,6 +10,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -19,6 +20,7 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -177,6 +179,38 @@ public class DiscussionBroadcastMessageBuilderTest {
 		assertNotNull(request);
 	}
 
+	@Test
+	public void testBuildHtmlBodyForSubscriberConvertedOnce() throws Exception{
+		when(mockMarkdownDao.convertMarkdown(anyString(), isNull())).thenReturn(
+				"<p>Hello SynapseBroadcastRecipientName,</p><a href=\"https://www.synapse.org/#!Subscription:subscriptionID=SynapseBroadcastSubscriptionId\">");
+		Subscriber other = new Subscriber();
+		other.setFirstName("O'Brien");
+		other.setLastName("<b>");
+		other.setUsername("other");
+		other.setSubscriptionId("1000");
+		// call under test
+		String html = builder.buildHtmlBodyForSubscriber(subscriber);
+		assertEquals("<p>Hello subscriberFirstName subscriberLastName (subscriberUsername),</p>"
+				+ "<a href=\"https://www.synapse.org/#!Subscription:subscriptionID=999\">", html);
+		html = builder.buildHtmlBodyForSubscriber(other);
+		assertEquals("<p>Hello O&#39;Brien &lt;b&gt; (other),</p>"
+				+ "<a href=\"https://www.synapse.org/#!Subscription:subscriptionID=1000\">", html);
+		// the markdown is converted once with the placeholders.
+		ArgumentCaptor<String> markdownCaptor = ArgumentCaptor.forClass(String.class);
+		verify(mockMarkdownDao, times(1)).convertMarkdown(markdownCaptor.capture(), isNull());
+		assertTrue(markdownCaptor.getValue().contains(DiscussionBroadcastMessageBuilder.RECIPIENT_NAME_PLACEHOLDER));
+		assertTrue(markdownCaptor.getValue().contains("subscriptionID="+DiscussionBroadcastMessageBuilder.SUBSCRIPTION_ID_PLACEHOLDER));
+	}
+
+	@Test
+	public void testBuildHtmlBodyForNonSubscriberConvertedOnce() throws Exception{
+		when(mockMarkdownDao.convertMarkdown(anyString(), isNull())).thenReturn("<p>Hello SynapseBroadcastRecipientName,</p>");
+		// call under test
+		assertEquals("<p>Hello firstName lastName (username),</p>", builder.buildHtmlBodyForNonSubscriber(user));
+		assertEquals("<p>Hello firstName lastName (username),</p>", builder.buildHtmlBodyForNonSubscriber(user));
+		verify(mockMarkdownDao, times(1)).convertMarkdown(anyString(), isNull());
+	}
+
 	@Test
 	public void testTruncateStringOver(){
 		String input = "123456789";
@@ -17,6 +17,8 @@ import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -46,6 +48,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.util.StringInputStream;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.StreamException;
 
@@ -85,6 +88,7 @@ public class BackupFileStreamImplTest {
 	public void before() {
 		backupFileStream = new BackupFileStreamImpl();
 		ReflectionTestUtils.setField(backupFileStream, "typeProvider", mockTypeProvider);
+		ReflectionTestUtils.setField(backupFileStream, "migrationExecutorService", MoreExecutors.newDirectExecutorService());
 		
 		when(mockTypeProvider.getObjectForType(MigrationType.ACL)).thenReturn(new DBOAccessControlList());
 		when(mockTypeProvider.getObjectForType(MigrationType.ACL_ACCESS)).thenReturn(new DBOResourceAccess());
@@ -389,6 +393,54 @@ public class BackupFileStreamImplTest {
 		assertEquals(rowsToWrite, allResults);
 	}
 	
+	@Test
+	public void testWriteThenReadConcurrent() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		ReflectionTestUtils.setField(backupFileStream, "migrationExecutorService", executor);
+		try {
+			// more files than can be pending at one time.
+			List<MigratableDatabaseObject<?, ?>> rows = new LinkedList<>();
+			for (int i = 0; i < BackupFileStreamImpl.MAX_PENDING_FILES * 5; i++) {
+				DBONode node = new DBONode();
+				node.setId(new Long(i));
+				rows.add(node);
+				DBORevision revision = new DBORevision();
+				revision.setOwner(node.getId());
+				revision.setRevisionNumber(1L);
+				rows.add(revision);
+			}
+			int maximumRowsPerFile = 1;
+			// call under test
+			backupFileStream.writeBackupFile(byteArrayOutputStream, rows, backupAliasType, maximumRowsPerFile);
+			// files must be written in order.
+			ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+			for (int i = 0; i < rows.size(); i++) {
+				ZipEntry entry = zipIn.getNextEntry();
+				assertEquals(BackupFileStreamImpl.createFileName(rows.get(i).getMigratableTableType(), i), entry.getName());
+			}
+			assertEquals(null, zipIn.getNextEntry());
+			ByteArrayInputStream input = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
+			// call under test
+			Iterable<MigratableDatabaseObject<?, ?>> resultIterator = backupFileStream.readBackupFile(input, backupAliasType);
+			List<MigratableDatabaseObject<?, ?>> allResults = new LinkedList<>();
+			for (MigratableDatabaseObject<?, ?> row : resultIterator) {
+				allResults.add(row);
+			}
+			assertEquals(rows, allResults);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testReadFileFromBytesEmptyFile() {
+		String fileName = BackupFileStreamImpl.createFileName(MigrationType.CREDENTIAL, 0);
+		// Call under test
+		List<MigratableDatabaseObject<?, ?>> results = backupFileStream.readFileFromBytes(new byte[0], backupAliasType, fileName);
+		// an empty file should be skipped.
+		assertTrue(results.isEmpty());
+	}
+	
 	@Test (expected=IllegalStateException.class)
 	public void testNextBeforeHasNext() throws IOException {
 		backupFileStream.writeBackupFile(byteArrayOutputStream, rowsToWrite, backupAliasType, maximumRowsPerFile);
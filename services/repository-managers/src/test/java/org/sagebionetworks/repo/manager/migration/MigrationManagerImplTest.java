@@ -629,6 +629,8 @@ public class MigrationManagerImplTest {
 		verify(mockDao).deleteByRange(MigrationType.NODE, min, max);
 		// should delete the secondary
 		verify(mockDao).deleteByRange(MigrationType.NODE_REVISION, min, max);
+		// listeners are told about the delete
+		verify(mockMigrationListener).afterDeleteByRange(MigrationType.NODE, min, max);
 	}
 	
 	
@@ -713,6 +715,7 @@ public class MigrationManagerImplTest {
 		verify(mockDao).deleteByRange(type, minimumId, maximumId);
 		// should delete the secondary
 		verify(mockDao).deleteByRange(MigrationType.NODE_REVISION, minimumId, maximumId);
+		verify(mockMigrationListener).afterDeleteByRange(type, minimumId, maximumId);
 	}
 	
 	@Test
@@ -725,6 +728,7 @@ public class MigrationManagerImplTest {
 		manager.deleteByRange(type, minimumId, maximumId);
 		// deletes should not occur
 		verify(mockDao, never()).deleteByRange(any(MigrationType.class), anyLong(), anyLong());
+		verify(mockMigrationListener, never()).afterDeleteByRange(any(MigrationType.class), anyLong(), anyLong());
 	}
 	
 	@Test
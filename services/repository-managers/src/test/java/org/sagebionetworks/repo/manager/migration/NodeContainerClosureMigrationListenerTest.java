@@ -0,0 +1,77 @@
+package org.sagebionetworks.repo.manager.migration;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.dbo.DatabaseObject;
+import org.sagebionetworks.repo.model.dbo.persistence.DBONode;
+import org.sagebionetworks.repo.model.dbo.persistence.DBORevision;
+import org.sagebionetworks.repo.model.migration.MigrationType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NodeContainerClosureMigrationListenerTest {
+
+	@Mock
+	NodeDAO mockNodeDao;
+
+	@InjectMocks
+	NodeContainerClosureMigrationListener listener;
+
+	@Test
+	public void testAfterCreateOrUpdate() {
+		List<DatabaseObject<?>> delta = Arrays.asList(createNode(1L, EntityType.project),
+				createNode(2L, EntityType.folder), createNode(3L, EntityType.file));
+		// call under test
+		listener.afterCreateOrUpdate(MigrationType.NODE, delta);
+		verify(mockNodeDao).rebuildContainerClosure(Arrays.asList(1L, 2L));
+	}
+
+	@Test
+	public void testAfterCreateOrUpdateNoContainers() {
+		List<DatabaseObject<?>> delta = Arrays.asList(createNode(3L, EntityType.file));
+		// call under test
+		listener.afterCreateOrUpdate(MigrationType.NODE, delta);
+		verify(mockNodeDao, never()).rebuildContainerClosure(anyCollection());
+	}
+
+	@Test
+	public void testAfterCreateOrUpdateOtherType() {
+		List<DatabaseObject<?>> delta = Arrays.asList(new DBORevision());
+		// call under test
+		listener.afterCreateOrUpdate(MigrationType.NODE_REVISION, delta);
+		verify(mockNodeDao, never()).rebuildContainerClosure(anyCollection());
+	}
+
+	@Test
+	public void testAfterDeleteByRange() {
+		// call under test
+		listener.afterDeleteByRange(MigrationType.NODE, 3L, 45L);
+		verify(mockNodeDao).deleteContainerClosureForRange(3L, 45L);
+	}
+
+	@Test
+	public void testAfterDeleteByRangeOtherType() {
+		// call under test
+		listener.afterDeleteByRange(MigrationType.NODE_REVISION, 3L, 45L);
+		verify(mockNodeDao, never()).deleteContainerClosureForRange(anyLong(), anyLong());
+	}
+
+	private static DBONode createNode(Long id, EntityType type) {
+		DBONode node = new DBONode();
+		node.setId(id);
+		node.setType(type.name());
+		return node;
+	}
+}
@@ -1,178 +1,174 @@
-package org.sagebionetworks.repo.manager.search;
-
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
-
-import java.util.Optional;
-
-import org.junit.Before;
-import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.junit.MockitoJUnitRunner;
-import org.sagebionetworks.repo.model.ObjectType;
-import org.sagebionetworks.repo.model.dao.WikiPageKey;
-import org.sagebionetworks.repo.model.dao.WikiPageKeyHelper;
-import org.sagebionetworks.repo.model.message.ChangeMessage;
-import org.sagebionetworks.repo.model.message.ChangeType;
-import org.sagebionetworks.repo.model.search.Document;
-import org.sagebionetworks.repo.model.search.DocumentTypeNames;
-import org.sagebionetworks.repo.model.v2.dao.V2WikiPageDao;
-import org.sagebionetworks.repo.web.NotFoundException;
-import org.sagebionetworks.search.CloudSearchDocumentLogRecord;
-import org.sagebionetworks.search.CloudSearchLogger;
-import org.sagebionetworks.search.DocumentAction;
-import org.sagebionetworks.search.SearchDao;
-
-@RunWith(MockitoJUnitRunner.class)
-public class ChangeMessageToSearchDocumentTranslatorTest{
-
-	@Mock
-	private SearchDao mockSearchDao;
-
-	@Mock
-	private SearchDocumentDriver mockSearchDocumentDriver;
-
-	@Mock
-	private V2WikiPageDao mockWikiPageDao;
-	
-	@Mock
-	private CloudSearchDocumentLogRecord mocKRecord;
-	
-	@Mock
-	private CloudSearchLogger mockRecordLogger;
-
-	@InjectMocks
-	private ChangeMessageToSearchDocumentTranslator translator;
-
-	private ChangeMessage message;
-	private Document docOne;
-	private long changeNumber;
-	private String synapseId;
-	private String etag;
-	String wikiId;
-	WikiPageKey wikiKey;
-
-	@Before
-	public void setUp(){
-		changeNumber = 111L;
-		synapseId = "112233";
-		etag = "etag1";
-
-
-		//documentChangeMessage() test setup
-		message = new ChangeMessage();
-		message.setChangeType(ChangeType.CREATE);
-		message.setObjectEtag(etag);
-		message.setObjectId(synapseId);
-		message.setObjectType(ObjectType.ENTITY);
-		message.setChangeNumber(changeNumber);
-
-
-		docOne = new Document();
-		docOne.setId(synapseId);
-		when(mockSearchDocumentDriver.formulateSearchDocument(synapseId)).thenReturn(docOne);
-		
-		when(mockSearchDocumentDriver.getEntityEtagFromRepository(synapseId)).thenReturn(Optional.of(etag));
-		when(mockSearchDao.doesDocumentExistInSearchIndex(synapseId, etag)).thenReturn(false);
-		
-		wikiId = "987";
-		wikiKey = WikiPageKeyHelper.createWikiPageKey(synapseId, ObjectType.ENTITY, wikiId);
-		when(mockWikiPageDao.lookupWikiKey(wikiId)).thenReturn(wikiKey);
-		when(mockRecordLogger.startRecordForChangeMessage(any(ChangeMessage.class))).thenReturn(mocKRecord);
-	}
-	
-	@Test
-	public void testEntityChange() {
-		// call under test
-		Document doc = translator.entityChange(synapseId, mocKRecord);
-		assertEquals(docOne, doc);
-		verify(mocKRecord).withAction(DocumentAction.CREATE_OR_UPDATE);
-		verify(mocKRecord).withExistsOnIndex(false);
-		verify(mockSearchDocumentDriver).formulateSearchDocument(synapseId);
-	}
-	
-	@Test
-	public void testEntityChangeEntityDoesNotExist() {
-		// documents that do not exist do not have an etag.
-		when(mockSearchDocumentDriver.getEntityEtagFromRepository(synapseId)).thenReturn(Optional.empty());
-		// call under test
-		Document doc = translator.entityChange(synapseId, mocKRecord);
-		Document expectedDocument = new Document();
-		expectedDocument.setId(message.getObjectId());
-		expectedDocument.setType(DocumentTypeNames.delete);
-		assertEquals(expectedDocument, doc);
-		verify(mocKRecord).withAction(DocumentAction.DELETE);
-		verify(mocKRecord, never()).withExistsOnIndex(any(Boolean.class));
-		verify(mockSearchDocumentDriver, never()).formulateSearchDocument(anyString());
-	}
-	
-	@Test
-	public void testEntityChangeIndexUpToDate() {
-		// document with this etag already exists in the index.
-		when(mockSearchDao.doesDocumentExistInSearchIndex(synapseId, etag)).thenReturn(true);
-		// call under test
-		Document doc = translator.entityChange(synapseId, mocKRecord);
-		assertNull(doc);
-		verify(mocKRecord).withAction(DocumentAction.IGNORE);
-		verify(mocKRecord).withExistsOnIndex(true);
-		verify(mockSearchDocumentDriver, never()).formulateSearchDocument(anyString());
-	}
-	
-	@Test
-	public void testWikiChange() {
-		String wikiId = "987";
-		WikiPageKey key = WikiPageKeyHelper.createWikiPageKey(synapseId, ObjectType.ENTITY, wikiId);
-		when(mockWikiPageDao.lookupWikiKey(wikiId)).thenReturn(key);
-		
-		// call under test
-		Document doc = translator.wikiChange(wikiId, mocKRecord);
-		assertEquals(docOne, doc);
-		verify(mockWikiPageDao).lookupWikiKey(wikiId);
-		verify(mocKRecord).withAction(DocumentAction.CREATE_OR_UPDATE);
-		verify(mocKRecord).withExistsOnIndex(false);
-		verify(mocKRecord).withWikiOwner(synapseId);
-		verify(mockSearchDocumentDriver).formulateSearchDocument(synapseId);
-	}
-	
-	@Test
-	public void testWikiChangeWikiNotFound() {
-		String wikiId = "987";
-		when(mockWikiPageDao.lookupWikiKey(wikiId)).thenThrow(new NotFoundException());
-		
-		// call under test
-		Document doc = translator.wikiChange(wikiId, mocKRecord);
-		assertNull(doc);
-		verify(mocKRecord).withAction(DocumentAction.IGNORE);
-		verify(mockSearchDocumentDriver, never()).formulateSearchDocument(anyString());
-	}
-	
-	@Test
-	public void testGenerateSearchDocumentIfNecessaryEntity() {
-		// call under test
-		Document doc = translator.generateSearchDocumentIfNecessary(message);
-		assertEquals(docOne, doc);
-		verify(mockRecordLogger).startRecordForChangeMessage(message);
-		verify(mockWikiPageDao, never()).lockForUpdate(anyString());
-	}
-	
-	@Test
-	public void testGenerateSearchDocumentIfNecessaryWiki() {
-		String wikiId = "987";
-		WikiPageKey key = WikiPageKeyHelper.createWikiPageKey(synapseId, ObjectType.ENTITY, wikiId);
-		when(mockWikiPageDao.lookupWikiKey(wikiId)).thenReturn(key);
-		message.setObjectId(wikiId);
-		message.setObjectType(ObjectType.WIKI);
-		// call under test
-		Document doc = translator.generateSearchDocumentIfNecessary(message);
-		assertEquals(docOne, doc);
-		verify(mockRecordLogger).startRecordForChangeMessage(message);
-		verify(mockWikiPageDao).lookupWikiKey(wikiId);
-	}
-}
+package org.sagebionetworks.repo.manager.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.repo.model.dao.WikiPageKey;
+import org.sagebionetworks.repo.model.dao.WikiPageKeyHelper;
+import org.sagebionetworks.repo.model.message.ChangeMessage;
+import org.sagebionetworks.repo.model.message.ChangeType;
+import org.sagebionetworks.repo.model.search.Document;
+import org.sagebionetworks.repo.model.v2.dao.V2WikiPageDao;
+import org.sagebionetworks.repo.web.NotFoundException;
+import org.sagebionetworks.search.CloudSearchDocumentLogRecord;
+import org.sagebionetworks.search.CloudSearchLogger;
+import org.sagebionetworks.search.DocumentAction;
+import org.sagebionetworks.search.SearchDao;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChangeMessageToSearchDocumentTranslatorTest{
+
+	@Mock
+	private SearchDao mockSearchDao;
+
+	@Mock
+	private SearchDocumentDriver mockSearchDocumentDriver;
+
+	@Mock
+	private V2WikiPageDao mockWikiPageDao;
+	
+	@Mock
+	private CloudSearchDocumentLogRecord mocKRecord;
+	
+	@Mock
+	private CloudSearchLogger mockRecordLogger;
+
+	@InjectMocks
+	private ChangeMessageToSearchDocumentTranslator translator;
+
+	private ChangeMessage message;
+	private Document docOne;
+	private long changeNumber;
+	private String synapseId;
+	private String etag;
+	String wikiId;
+	WikiPageKey wikiKey;
+
+	@Before
+	public void setUp(){
+		changeNumber = 111L;
+		synapseId = "112233";
+		etag = "etag1";
+
+
+		//documentChangeMessage() test setup
+		message = new ChangeMessage();
+		message.setChangeType(ChangeType.CREATE);
+		message.setObjectEtag(etag);
+		message.setObjectId(synapseId);
+		message.setObjectType(ObjectType.ENTITY);
+		message.setChangeNumber(changeNumber);
+
+
+		docOne = new Document();
+		docOne.setId(synapseId);
+		
+		when(mockSearchDocumentDriver.getEntityEtagFromRepository(synapseId)).thenReturn(Optional.of(etag));
+		when(mockSearchDao.doesDocumentExistInSearchIndex(synapseId, etag)).thenReturn(false);
+		
+		wikiId = "987";
+		wikiKey = WikiPageKeyHelper.createWikiPageKey(synapseId, ObjectType.ENTITY, wikiId);
+		when(mockWikiPageDao.lookupWikiKey(wikiId)).thenReturn(wikiKey);
+		when(mockRecordLogger.startRecordForChangeMessage(any(ChangeMessage.class))).thenReturn(mocKRecord);
+	}
+	
+	/**
+	 * Helper to create a change message.
+	 */
+	ChangeMessage createMessage(String objectId, ObjectType type) {
+		ChangeMessage change = new ChangeMessage();
+		change.setChangeType(ChangeType.UPDATE);
+		change.setObjectId(objectId);
+		change.setObjectType(type);
+		return change;
+	}
+	
+	@Test
+	public void testGenerateSearchDocumentsIfNecessary() {
+		String deletedId = "222";
+		String upToDateId = "333";
+		when(mockSearchDocumentDriver.getEntityEtagFromRepository(deletedId)).thenReturn(Optional.empty());
+		when(mockSearchDocumentDriver.getEntityEtagFromRepository(upToDateId)).thenReturn(Optional.of(etag));
+		when(mockSearchDao.doesDocumentExistInSearchIndex(upToDateId, etag)).thenReturn(true);
+		when(mockSearchDocumentDriver.formulateSearchDocuments(Collections.singletonList(synapseId)))
+				.thenReturn(Collections.singletonMap(synapseId, docOne));
+		List<ChangeMessage> changes = Arrays.asList(message, createMessage(deletedId, ObjectType.ENTITY),
+				createMessage(wikiId, ObjectType.WIKI), createMessage(upToDateId, ObjectType.ENTITY),
+				createMessage(synapseId, ObjectType.ENTITY));
+		// call under test
+		List<Document> documents = translator.generateSearchDocumentsIfNecessary(changes);
+		assertEquals(Arrays.asList(docOne, translator.createDeleteDocument(deletedId)), documents);
+		// each message gets a record.
+		verify(mockRecordLogger, times(5)).startRecordForChangeMessage(any(ChangeMessage.class));
+		verify(mocKRecord, times(3)).withAction(DocumentAction.CREATE_OR_UPDATE);
+		verify(mocKRecord).withAction(DocumentAction.DELETE);
+		verify(mocKRecord).withAction(DocumentAction.IGNORE);
+		// each entity is only checked once.
+		verify(mockSearchDocumentDriver).getEntityEtagFromRepository(synapseId);
+		verify(mockSearchDao).doesDocumentExistInSearchIndex(synapseId, etag);
+		verify(mockSearchDocumentDriver, never()).formulateSearchDocument(anyString());
+	}
+	
+	@Test
+	public void testGenerateSearchDocumentsIfNecessaryDeletedWhileFormulating() {
+		when(mockSearchDocumentDriver.formulateSearchDocuments(Collections.singletonList(synapseId)))
+				.thenReturn(Collections.emptyMap());
+		// call under test
+		List<Document> documents = translator.generateSearchDocumentsIfNecessary(Collections.singletonList(message));
+		assertEquals(Collections.singletonList(translator.createDeleteDocument(synapseId)), documents);
+	}
+	
+	@Test
+	public void testGenerateSearchDocumentsIfNecessaryUpToDate() {
+		when(mockSearchDao.doesDocumentExistInSearchIndex(synapseId, etag)).thenReturn(true);
+		// call under test
+		List<Document> documents = translator.generateSearchDocumentsIfNecessary(Collections.singletonList(message));
+		assertEquals(Collections.emptyList(), documents);
+		verify(mocKRecord).withAction(DocumentAction.IGNORE);
+		verify(mocKRecord).withExistsOnIndex(true);
+		verify(mockSearchDocumentDriver, never()).formulateSearchDocuments(anyList());
+	}
+	
+	@Test
+	public void testGenerateSearchDocumentsIfNecessaryWiki() {
+		when(mockSearchDocumentDriver.formulateSearchDocuments(Collections.singletonList(synapseId)))
+				.thenReturn(Collections.singletonMap(synapseId, docOne));
+		// call under test
+		List<Document> documents = translator
+				.generateSearchDocumentsIfNecessary(Collections.singletonList(createMessage(wikiId, ObjectType.WIKI)));
+		assertEquals(Collections.singletonList(docOne), documents);
+		verify(mockWikiPageDao).lookupWikiKey(wikiId);
+		verify(mocKRecord).withWikiOwner(synapseId);
+		verify(mocKRecord).withAction(DocumentAction.CREATE_OR_UPDATE);
+		verify(mocKRecord).withExistsOnIndex(false);
+	}
+	
+	@Test
+	public void testGenerateSearchDocumentsIfNecessaryWikiNotFound() {
+		when(mockWikiPageDao.lookupWikiKey(wikiId)).thenThrow(new NotFoundException());
+		// call under test
+		List<Document> documents = translator
+				.generateSearchDocumentsIfNecessary(Collections.singletonList(createMessage(wikiId, ObjectType.WIKI)));
+		assertEquals(Collections.emptyList(), documents);
+		verify(mocKRecord).withAction(DocumentAction.IGNORE);
+		verify(mockSearchDocumentDriver, never()).getEntityEtagFromRepository(anyString());
+	}
+}
@@ -7,24 +7,162 @@ import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.sagebionetworks.repo.model.AccessControlList;
+import org.sagebionetworks.repo.model.AccessControlListDAO;
+import org.sagebionetworks.repo.model.EntityHeader;
+import org.sagebionetworks.repo.model.EntityPath;
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.NamedAnnotations;
+import org.sagebionetworks.repo.model.Node;
 import org.sagebionetworks.repo.model.NodeDAO;
+import org.sagebionetworks.repo.model.ObjectType;
+import org.sagebionetworks.repo.model.ResourceAccess;
+import org.sagebionetworks.repo.model.dao.WikiPageKey;
+import org.sagebionetworks.repo.model.dao.WikiPageKeyHelper;
+import org.sagebionetworks.repo.model.search.Document;
+import org.sagebionetworks.repo.model.v2.dao.V2WikiPageDao;
+import org.sagebionetworks.repo.model.v2.wiki.V2WikiHeader;
+import org.sagebionetworks.repo.model.v2.wiki.V2WikiPage;
 import org.sagebionetworks.repo.web.NotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.util.concurrent.MoreExecutors;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SearchDocumentDriverImplUnitTest {
 	
 	@Mock
 	NodeDAO mockNodeDao;
+	@Mock
+	AccessControlListDAO mockAclDao;
+	@Mock
+	V2WikiPageDao mockWikiPageDao;
 	
 	@InjectMocks
 	SearchDocumentDriverImpl driver;
+	
+	@Before
+	public void before() {
+		ReflectionTestUtils.setField(driver, "searchDocumentExecutorService", MoreExecutors.newDirectExecutorService());
+	}
+	
+	/**
+	 * Helper to setup a node that can be read by the driver.
+	 */
+	void setupNode(String nodeId, String benefactorId) {
+		Node node = new Node();
+		node.setId(nodeId);
+		node.setNodeType(EntityType.file);
+		node.setVersionNumber(1L);
+		node.setCreatedByPrincipalId(123L);
+		node.setCreatedOn(new Date());
+		node.setModifiedByPrincipalId(123L);
+		node.setModifiedOn(new Date());
+		when(mockNodeDao.getNode(nodeId)).thenReturn(node);
+		when(mockNodeDao.getBenefactor(nodeId)).thenReturn(benefactorId);
+		when(mockNodeDao.getAnnotationsForVersion(nodeId, 1L)).thenReturn(new NamedAnnotations());
+	}
+	
+	/**
+	 * Helper to setup the wiki pages of a node.
+	 */
+	void setupWikiPages(String nodeId, V2WikiPage... pages) {
+		List<V2WikiHeader> headers = new ArrayList<>();
+		for (V2WikiPage page : pages) {
+			V2WikiHeader header = new V2WikiHeader();
+			header.setId(page.getId());
+			headers.add(header);
+			WikiPageKey key = WikiPageKeyHelper.createWikiPageKey(nodeId, ObjectType.ENTITY, page.getId());
+			when(mockWikiPageDao.get(key, null)).thenReturn(page);
+		}
+		when(mockWikiPageDao.getHeaderTree(nodeId, ObjectType.ENTITY, SearchDocumentDriverImpl.WIKI_PAGE_LIMIT, 0L))
+				.thenReturn(headers);
+	}
+	
+	V2WikiPage createPage(String id, String title, String markdownFileHandleId) {
+		V2WikiPage page = new V2WikiPage();
+		page.setId(id);
+		page.setTitle(title);
+		page.setMarkdownFileHandleId(markdownFileHandleId);
+		return page;
+	}
+	
+	@Test
+	public void testFormulateSearchDocuments() throws Exception {
+		setupNode("syn1", "syn9");
+		setupNode("syn2", "syn9");
+		setupWikiPages("syn1", createPage("11", "one", "55"), createPage("12", null, "55"));
+		// syn2 does not have a wiki.
+		when(mockWikiPageDao.getHeaderTree("syn2", ObjectType.ENTITY, SearchDocumentDriverImpl.WIKI_PAGE_LIMIT, 0L))
+				.thenThrow(new NotFoundException());
+		when(mockNodeDao.getNode("syn3")).thenThrow(new NotFoundException());
+		when(mockWikiPageDao.getMarkdown("55")).thenReturn("markdown");
+		AccessControlList acl = new AccessControlList();
+		acl.setResourceAccess(new HashSet<ResourceAccess>());
+		when(mockAclDao.get("syn9", ObjectType.ENTITY)).thenReturn(acl);
+		// call under test
+		Map<String, Document> results = driver.formulateSearchDocuments(Arrays.asList("syn1", "syn2", "syn3", "syn1"));
+		// deleted nodes are not included.
+		assertEquals(Arrays.asList("syn1", "syn2"), new ArrayList<>(results.keySet()));
+		assertEquals("\none\nmarkdown\nmarkdown", results.get("syn1").getFields().getDescription());
+		assertEquals("", results.get("syn2").getFields().getDescription());
+		// the ACL of a benefactor is only read once.
+		verify(mockAclDao, times(1)).get("syn9", ObjectType.ENTITY);
+		// markdown is cached by file handle.
+		verify(mockWikiPageDao, times(1)).getMarkdown("55");
+		verify(mockNodeDao, times(1)).getNode("syn1");
+	}
+	
+	@Test
+	public void testFormulateSearchDocumentsWikiPageDeleted() throws Exception {
+		setupNode("syn1", "syn9");
+		V2WikiHeader header = new V2WikiHeader();
+		header.setId("11");
+		when(mockWikiPageDao.getHeaderTree("syn1", ObjectType.ENTITY, SearchDocumentDriverImpl.WIKI_PAGE_LIMIT, 0L))
+				.thenReturn(Collections.singletonList(header));
+		// the page was deleted after the headers were read.
+		when(mockWikiPageDao.get(any(WikiPageKey.class), any())).thenThrow(new NotFoundException());
+		AccessControlList acl = new AccessControlList();
+		acl.setResourceAccess(new HashSet<ResourceAccess>());
+		when(mockAclDao.get("syn9", ObjectType.ENTITY)).thenReturn(acl);
+		// call under test
+		Map<String, Document> results = driver.formulateSearchDocuments(Collections.singletonList("syn1"));
+		// same as getAllWikiPageText()
+		assertEquals("", results.get("syn1").getFields().getDescription());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testFormulateSearchDocumentsFailure() {
+		when(mockNodeDao.getNode("syn1")).thenThrow(new IllegalStateException("failed"));
+		// call under test
+		driver.formulateSearchDocuments(Collections.singletonList("syn1"));
+	}
+	
+	@Test
+	public void testGetAllWikiPageTextUsesMarkdownCache() throws Exception {
+		setupWikiPages("syn1", createPage("11", "one", "55"));
+		when(mockWikiPageDao.getMarkdown("55")).thenReturn("markdown");
+		// call under test
+		assertEquals("\none\nmarkdown", driver.getAllWikiPageText("syn1"));
+		assertEquals("\none\nmarkdown", driver.getAllWikiPageText("syn1"));
+		verify(mockWikiPageDao, times(1)).getMarkdown("55");
+	}
 
 	@Test
 	public void testGetEntityEtagFromRepository() {
@@ -61,4 +199,19 @@ public class SearchDocumentDriverImplUnitTest {
 		assertNotNull(etagOptional);
 		assertFalse(etagOptional.isPresent());
 	}
+	
+	@Test
+	public void testGetEntityPaths() {
+		EntityHeader header = new EntityHeader();
+		header.setId("syn123");
+		Map<Long, List<EntityHeader>> paths = new HashMap<>();
+		paths.put(123L, Collections.singletonList(header));
+		when(mockNodeDao.getEntityPaths(anyCollection())).thenReturn(paths);
+		// call under test
+		Map<String, EntityPath> results = driver.getEntityPaths(Arrays.asList("syn123", "syn456"));
+		assertNotNull(results);
+		assertEquals(1, results.size());
+		assertEquals(Collections.singletonList(header), results.get("syn123").getPath());
+		verify(mockNodeDao).getEntityPaths(new HashSet<>(Arrays.asList(123L, 456L)));
+	}
 }
@@ -5,7 +5,6 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.*;
@@ -14,6 +13,7 @@ import static org.sagebionetworks.search.SearchConstants.FIELD_ID;
 import static org.sagebionetworks.search.SearchConstants.FIELD_PATH;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -94,7 +94,8 @@ public class SearchManagerImplTest {
 		sample.getHits().withHit(hit);
 		when(mockSearchDao.executeSearch(any(SearchRequest.class))).thenReturn(sample);
 		// make sure the path is returned from the document driver
-		when(mockSearchDocumentDriver.getEntityPath("syn123")).thenReturn(new EntityPath());
+		when(mockSearchDocumentDriver.getEntityPaths(Collections.singletonList("syn123")))
+				.thenReturn(Collections.singletonMap("syn123", new EntityPath()));
 
 		SearchQuery query = new SearchQuery();
 		query.setBooleanQuery(new LinkedList<>());
@@ -115,7 +116,7 @@ public class SearchManagerImplTest {
 		assertNotNull(results.getHits().get(0).getPath());
 		// Validate that path was not passed along to the search index as it is not there.
 		verify(mockSearchDao, times(1)).executeSearch(any(SearchRequest.class));
-		verify(mockSearchDocumentDriver,times(1)).getEntityPath("syn123");
+		verify(mockSearchDocumentDriver,times(1)).getEntityPaths(Collections.singletonList("syn123"));
 	}
 
 	@Test
@@ -141,7 +142,24 @@ public class SearchManagerImplTest {
 		// The path should not be returned unless requested.
 		assertNull(results.getHits().get(0).getPath());
 		verify(mockSearchDao, times(1)).executeSearch(any(SearchRequest.class));
-		verify(mockSearchDocumentDriver,never()).getEntityPath(anyString());
+		verify(mockSearchDocumentDriver,never()).getEntityPaths(anyList());
+	}
+
+	@Test
+	public void testAddReturnDataToHitsRemovesMissing() {
+		org.sagebionetworks.repo.model.search.Hit exists = new org.sagebionetworks.repo.model.search.Hit();
+		exists.setId("syn123");
+		org.sagebionetworks.repo.model.search.Hit missing = new org.sagebionetworks.repo.model.search.Hit();
+		missing.setId("syn456");
+		List<org.sagebionetworks.repo.model.search.Hit> hits = Lists.newArrayList(exists, missing);
+		EntityPath path = new EntityPath();
+		when(mockSearchDocumentDriver.getEntityPaths(Arrays.asList("syn123", "syn456")))
+				.thenReturn(Collections.singletonMap("syn123", path));
+		// call under test
+		searchManager.addReturnDataToHits(hits);
+		assertEquals(1, hits.size());
+		assertEquals(exists, hits.get(0));
+		assertEquals(path, exists.getPath());
 	}
 
 	@Test
@@ -160,21 +178,18 @@ public class SearchManagerImplTest {
 
 	@Test
 	public void testDocumentChangeMessages(){
-		Document doc2Null = null;
-
 		Document doc3 = new Document();
 		doc3.setId("syn3");
 
-		when(mockTranslator.generateSearchDocumentIfNecessary(any(ChangeMessage.class))).thenReturn(doc1, doc2Null, doc3);
-
 		List<ChangeMessage> messages = Arrays.asList(new ChangeMessage(), new ChangeMessage(), new ChangeMessage());
+		when(mockTranslator.generateSearchDocumentsIfNecessary(messages)).thenReturn(Arrays.asList(doc1, doc3));
 		//method under test
 		searchManager.documentChangeMessages(messages);
 
 		verify(mockSearchDao).sendDocuments(iteratorArgumentCaptor.capture());
 		verify(mockRecordLogger).pushAllRecordsAndReset();
 
-		//check that the document iterator now only contains non-null Documents
+		//check that the whole batch is sent
 		Iterator<Document> generatedIterator = iteratorArgumentCaptor.getValue();
 		List<Document> documentsInIterator = Lists.newArrayList(generatedIterator);
 		assertEquals(2, documentsInIterator.size());
@@ -1,15 +1,22 @@
 package org.sagebionetworks.repo.manager.table;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.sagebionetworks.repo.model.table.ColumnType;
 import org.sagebionetworks.repo.model.table.Row;
 import org.sagebionetworks.repo.model.table.SelectColumn;
+import org.sagebionetworks.repo.model.table.TableConstants;
+import org.sagebionetworks.table.cluster.ColumnTypeInfo;
+import org.sagebionetworks.table.cluster.ColumnarRowBatch;
 import org.sagebionetworks.util.csv.CSVWriterStream;
 
 import com.google.common.collect.Lists;
@@ -87,5 +94,41 @@ public class CSVWriterRowHandlerTest {
 		assertEquals("ROW_ID,ROW_VERSION,ROW_ETAG,foo", writtenLines.get(0));
 		assertEquals("1,2,someEtag,one", writtenLines.get(1));
 	}
+	
+	@Test
+	public void testNextBatch() throws SQLException{
+		includeRowEtag = true;
+		handler = new CSVWriterRowHandler(writer, selectColumns, includeRowIdAndVersion, includeRowEtag);
+		ColumnarRowBatch batch = new ColumnarRowBatch(new ColumnTypeInfo[] {ColumnTypeInfo.STRING}, true, true, 2);
+		ResultSet rs = Mockito.mock(ResultSet.class);
+		when(rs.getLong(TableConstants.ROW_ID)).thenReturn(1L, 3L);
+		when(rs.getLong(TableConstants.ROW_VERSION)).thenReturn(2L, 4L);
+		when(rs.getString(TableConstants.ROW_ETAG)).thenReturn("etagOne", "etagTwo");
+		when(rs.getString(1)).thenReturn("one", "two");
+		batch.readRow(rs);
+		batch.readRow(rs);
+		// call under test
+		handler.writeHeader();
+		handler.nextBatch(batch);
+		assertEquals(3, writtenLines.size());
+		assertEquals("ROW_ID,ROW_VERSION,ROW_ETAG,foo", writtenLines.get(0));
+		assertEquals("1,2,etagOne,one", writtenLines.get(1));
+		assertEquals("3,4,etagTwo,two", writtenLines.get(2));
+	}
+	
+	@Test
+	public void testNextBatchWithoutRowId() throws SQLException{
+		includeRowIdAndVersion = false;
+		includeRowEtag = false;
+		handler = new CSVWriterRowHandler(writer, selectColumns, includeRowIdAndVersion, includeRowEtag);
+		ColumnarRowBatch batch = new ColumnarRowBatch(new ColumnTypeInfo[] {ColumnTypeInfo.STRING}, false, false, 2);
+		ResultSet rs = Mockito.mock(ResultSet.class);
+		when(rs.getString(1)).thenReturn("one");
+		batch.readRow(rs);
+		// call under test
+		handler.nextBatch(batch);
+		assertEquals(1, writtenLines.size());
+		assertEquals("one", writtenLines.get(0));
+	}
 
 }
@@ -0,0 +1,124 @@
+package org.sagebionetworks.repo.manager.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.sagebionetworks.repo.model.EntityType;
+import org.sagebionetworks.repo.model.table.Query;
+import org.sagebionetworks.repo.model.table.SortDirection;
+import org.sagebionetworks.repo.model.table.SortItem;
+import org.sagebionetworks.table.cluster.SqlQuery;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SqlQueryCacheTest {
+
+	@Mock
+	Callable<SqlQuery> mockBuilder;
+	@Mock
+	SqlQuery mockQuery;
+
+	SqlQueryCache cache;
+	Query query;
+	List<String> columnIds;
+
+	@Before
+	public void before() throws Exception {
+		cache = new SqlQueryCache(10L, 10000L);
+		query = new Query();
+		query.setSql("select * from syn123");
+		columnIds = Lists.newArrayList("1", "2");
+	}
+
+	@Test
+	public void testGetTableName() {
+		// call under test
+		assertEquals("syn123", cache.getTableName("select * from syn123"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetTableNameParseError() {
+		// call under test
+		cache.getTableName("not sql");
+	}
+
+	@Test
+	public void testGetSqlQuery() throws Exception {
+		when(mockBuilder.call()).thenReturn(mockQuery);
+		SqlQueryCache.Key key = new SqlQueryCache.Key(query, columnIds, EntityType.table, 100L, null);
+		// call under test
+		assertSame(mockQuery, cache.getSqlQuery(key, mockBuilder));
+		assertSame(mockQuery, cache.getSqlQuery(key, mockBuilder));
+		// the query should only be built once.
+		verify(mockBuilder, times(1)).call();
+		assertEquals(1L, cache.size());
+	}
+
+	@Test
+	public void testGetSqlQueryClear() throws Exception {
+		when(mockBuilder.call()).thenReturn(mockQuery);
+		SqlQueryCache.Key key = new SqlQueryCache.Key(query, columnIds, EntityType.table, 100L, null);
+		cache.getSqlQuery(key, mockBuilder);
+		// call under test
+		cache.clear();
+		assertEquals(0L, cache.size());
+		cache.getSqlQuery(key, mockBuilder);
+		verify(mockBuilder, times(2)).call();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGetSqlQueryBuilderError() throws Exception {
+		when(mockBuilder.call()).thenThrow(new IllegalArgumentException("bad query"));
+		SqlQueryCache.Key key = new SqlQueryCache.Key(query, columnIds, EntityType.table, 100L, null);
+		// call under test
+		cache.getSqlQuery(key, mockBuilder);
+	}
+
+	@Test
+	public void testKeyEquals() {
+		SqlQueryCache.Key key = new SqlQueryCache.Key(query, columnIds, EntityType.entityview, 100L,
+				Sets.newHashSet(1L, 2L));
+		SqlQueryCache.Key same = new SqlQueryCache.Key(query, Lists.newArrayList("1", "2"), EntityType.entityview,
+				100L, Sets.newHashSet(2L, 1L));
+		assertEquals(key, same);
+		assertEquals(key.hashCode(), same.hashCode());
+		// column order matters for select *
+		assertNotEquals(key, new SqlQueryCache.Key(query, Lists.newArrayList("2", "1"), EntityType.entityview, 100L,
+				Sets.newHashSet(1L, 2L)));
+		assertNotEquals(key,
+				new SqlQueryCache.Key(query, columnIds, EntityType.entityview, 100L, Sets.newHashSet(1L)));
+		assertNotEquals(key, new SqlQueryCache.Key(query, columnIds, EntityType.table, 100L, Sets.newHashSet(1L, 2L)));
+		assertNotEquals(key,
+				new SqlQueryCache.Key(query, columnIds, EntityType.entityview, 200L, Sets.newHashSet(1L, 2L)));
+	}
+
+	@Test
+	public void testKeyCopiesRequest() {
+		SortItem sort = new SortItem();
+		sort.setColumn("foo");
+		sort.setDirection(SortDirection.ASC);
+		query.setSort(Lists.newArrayList(sort));
+		query.setOffset(10L);
+		SqlQueryCache.Key key = new SqlQueryCache.Key(query, columnIds, EntityType.table, 100L, null);
+		SqlQueryCache.Key same = new SqlQueryCache.Key(query, columnIds, EntityType.table, 100L, null);
+		// changes to the request after the key is created must not change the key.
+		query.getSort().clear();
+		query.setOffset(20L);
+		assertEquals(key, same);
+		assertNotEquals(key, new SqlQueryCache.Key(query, columnIds, EntityType.table, 100L, null));
+	}
+}
@@ -20,6 +20,8 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -55,6 +57,7 @@ import org.sagebionetworks.repo.model.StackStatusDao;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.dao.FileHandleDao;
+import org.sagebionetworks.repo.model.dao.table.ReaderCallback;
 import org.sagebionetworks.repo.model.dao.table.RowHandler;
 import org.sagebionetworks.repo.model.dao.table.TableRowTruthDAO;
 import org.sagebionetworks.repo.model.dbo.dao.table.CSVToRowIterator;
@@ -1501,7 +1504,13 @@ public class TableEntityManagerTest {
 	public void testGetTableChangePage() throws IOException {
 		long limit = 3L;
 		long offset = 0L;
-		when(mockTruthDao.getRowSet(any(TableRowChange.class))).thenReturn(rowDto);
+		// pass the stored change set to the reader.
+		when(mockTruthDao.readRowSet(any(TableRowChange.class), any(ReaderCallback.class))).thenAnswer((InvocationOnMock invocation) -> {
+			ReaderCallback<?> reader = invocation.getArgument(1);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			TableModelUtils.writeSparesChangeSetToGz(rowDto, out);
+			return reader.read(new ByteArrayInputStream(out.toByteArray()));
+		});
 		when(mockTruthDao.getTableChangePage(tableId, limit, offset)).thenReturn(createChange(tableId, (int) limit));
 		// call under test
 		List<TableChangeMetaData> results = manager.getTableChangePage(tableId, limit, offset);
@@ -1509,7 +1518,7 @@ public class TableEntityManagerTest {
 		assertEquals((int)limit, results.size());
 		verify(mockTruthDao).getTableChangePage(tableId, limit, offset);
 		// at this point only metadata should be loaded and not the actual changes
-		verify(mockTruthDao, never()).getRowSet(any(TableRowChange.class));
+		verify(mockTruthDao, never()).readRowSet(any(TableRowChange.class), any(ReaderCallback.class));
 		verify(mockTruthDao, never()).getSchemaChangeForVersion(anyString(), anyLong());
 		
 		// one 
@@ -1520,7 +1529,8 @@ public class TableEntityManagerTest {
 		ChangeData<SparseChangeSet> changeData = metaOne.loadChangeData(SparseChangeSet.class);
 		assertNotNull(changeData);
 		assertEquals(0L, changeData.getChangeNumber());
-		verify(mockTruthDao, times(1)).getRowSet(any(TableRowChange.class));
+		assertEquals(1, changeData.getChange().getRowCount());
+		verify(mockTruthDao, times(1)).readRowSet(any(TableRowChange.class), any(ReaderCallback.class));
 		
 		// two
 		TableChangeMetaData metaTwp = results.get(1);
@@ -20,18 +20,24 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.sql.ResultSet;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -41,6 +47,8 @@ import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.common.util.progress.ProgressingCallable;
 import org.sagebionetworks.repo.manager.table.change.TableChangeMetaData;
 import org.sagebionetworks.repo.model.NextPageToken;
+import org.sagebionetworks.repo.model.dao.table.ReaderCallback;
+import org.sagebionetworks.repo.model.dao.table.WriterCallback;
 import org.sagebionetworks.repo.model.dbo.dao.table.TableModelTestUtils;
 import org.sagebionetworks.repo.model.entity.IdAndVersion;
 import org.sagebionetworks.repo.model.jdo.KeyFactory;
@@ -49,6 +57,7 @@ import org.sagebionetworks.repo.model.table.ColumnModelPage;
 import org.sagebionetworks.repo.model.table.ColumnType;
 import org.sagebionetworks.repo.model.table.EntityField;
 import org.sagebionetworks.repo.model.table.SelectColumn;
+import org.sagebionetworks.repo.model.table.SparseChangeSetDto;
 import org.sagebionetworks.repo.model.table.TableChangeType;
 import org.sagebionetworks.repo.model.table.TableConstants;
 import org.sagebionetworks.repo.model.table.TableUnavailableException;
@@ -56,14 +65,19 @@ import org.sagebionetworks.repo.model.table.ViewScope;
 import org.sagebionetworks.repo.model.table.ViewTypeMask;
 import org.sagebionetworks.repo.web.NotFoundException;
 import org.sagebionetworks.table.cluster.ColumnChangeDetails;
+import org.sagebionetworks.table.cluster.ColumnTypeInfo;
+import org.sagebionetworks.table.cluster.ColumnarRowBatch;
+import org.sagebionetworks.table.cluster.ColumnarRowBatchHandler;
 import org.sagebionetworks.table.cluster.DatabaseColumnInfo;
 import org.sagebionetworks.table.cluster.SQLUtils;
+import org.sagebionetworks.table.cluster.SqlQuery;
 import org.sagebionetworks.table.cluster.TableIndexDAO;
 import org.sagebionetworks.table.cluster.utils.TableModelUtils;
 import org.sagebionetworks.table.model.ChangeData;
 import org.sagebionetworks.table.model.Grouping;
 import org.sagebionetworks.table.model.SchemaChange;
 import org.sagebionetworks.table.model.SparseChangeSet;
+import org.sagebionetworks.table.model.SparseChangeSetBinaryCodec;
 import org.sagebionetworks.table.model.SparseRow;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.sagebionetworks.workers.util.semaphore.LockUnavilableException;
@@ -1026,6 +1040,184 @@ public class TableIndexManagerImplTest {
 		return mockChange;
 	}
 	
+	@Test
+	public void testRestoreIndexFromSnapshot() throws Exception {
+		long targetChangeNumber = 10L;
+		when(mockManagerSupport.getIndexSnapshotChangeNumber(tableId, targetChangeNumber)).thenReturn(Optional.of(5L));
+		when(mockManagerSupport.getColumnModel(TableModelUtils.getIds(schema))).thenReturn(schema);
+		final SparseChangeSetDto snapshot = sparseChangeSet.writeToDto();
+		snapshot.setEtag("etag-5");
+		doAnswer((InvocationOnMock invocation) -> {
+			ReaderCallback<?> reader = invocation.getArgument(2);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (GZIPOutputStream zipOut = new GZIPOutputStream(out)) {
+				SparseChangeSetBinaryCodec.write(snapshot, zipOut);
+			}
+			return reader.read(new ByteArrayInputStream(out.toByteArray()));
+		}).when(mockManagerSupport).readIndexSnapshot(eq(tableId), eq(5L), any(ReaderCallback.class));
+		// call under test
+		String etag = manager.restoreIndexFromSnapshot(tableId, targetChangeNumber);
+		assertEquals("etag-5", etag);
+		// set schema
+		verify(mockIndexDao).createTableIfDoesNotExist(tableId, false);
+		// apply rows
+		verify(mockIndexDao, times(2)).createOrUpdateOrDeleteRows(any(IdAndVersion.class), any(Grouping.class));
+		verify(mockIndexDao).setSnapshotVersionForTable(tableId, 5L);
+		verify(mockIndexDao).setMaxCurrentCompleteVersionForTable(tableId, 5L);
+	}
+	
+	@Test
+	public void testRestoreIndexFromSnapshotDeletesIndexFirst() throws Exception {
+		long targetChangeNumber = 10L;
+		when(mockManagerSupport.getIndexSnapshotChangeNumber(tableId, targetChangeNumber)).thenReturn(Optional.of(5L));
+		when(mockManagerSupport.getColumnModel(TableModelUtils.getIds(schema))).thenReturn(schema);
+		final SparseChangeSetDto snapshot = sparseChangeSet.writeToDto();
+		snapshot.setEtag("etag-5");
+		doAnswer((InvocationOnMock invocation) -> {
+			ReaderCallback<?> reader = invocation.getArgument(2);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (GZIPOutputStream zipOut = new GZIPOutputStream(out)) {
+				SparseChangeSetBinaryCodec.write(snapshot, zipOut);
+			}
+			return reader.read(new ByteArrayInputStream(out.toByteArray()));
+		}).when(mockManagerSupport).readIndexSnapshot(eq(tableId), eq(5L), any(ReaderCallback.class));
+		// call under test
+		manager.restoreIndexFromSnapshot(tableId, targetChangeNumber);
+		// rows left by a failed restore must be removed before the snapshot is applied.
+		InOrder inOrder = Mockito.inOrder(mockIndexDao, mockManagerSupport);
+		inOrder.verify(mockIndexDao).deleteTable(tableId);
+		inOrder.verify(mockIndexDao).deleteSecondaryTables(tableId);
+		inOrder.verify(mockManagerSupport).readIndexSnapshot(eq(tableId), eq(5L), any(ReaderCallback.class));
+		inOrder.verify(mockIndexDao).createTableIfDoesNotExist(tableId, false);
+	}
+
+	@Test
+	public void testRestoreIndexFromSnapshotNoSnapshot() throws Exception {
+		long targetChangeNumber = 10L;
+		when(mockManagerSupport.getIndexSnapshotChangeNumber(tableId, targetChangeNumber)).thenReturn(Optional.empty());
+		// call under test
+		String etag = manager.restoreIndexFromSnapshot(tableId, targetChangeNumber);
+		assertEquals(null, etag);
+		verify(mockManagerSupport, never()).readIndexSnapshot(any(IdAndVersion.class), anyLong(), any(ReaderCallback.class));
+		verify(mockIndexDao, never()).deleteTable(any(IdAndVersion.class));
+	}
+
+	@Test
+	public void testRestoreIndexFromSnapshotIndexNotEmpty() throws Exception {
+		long targetChangeNumber = 10L;
+		when(mockIndexDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(3L);
+		// call under test
+		String etag = manager.restoreIndexFromSnapshot(tableId, targetChangeNumber);
+		assertEquals(null, etag);
+		// S3 is not listed when the index already exists.
+		verify(mockManagerSupport, never()).getIndexSnapshotChangeNumber(any(IdAndVersion.class), anyLong());
+		verify(mockManagerSupport, never()).readIndexSnapshot(any(IdAndVersion.class), anyLong(), any(ReaderCallback.class));
+		verify(mockIndexDao, never()).deleteTable(any(IdAndVersion.class));
+		verify(mockIndexDao, never()).setMaxCurrentCompleteVersionForTable(any(IdAndVersion.class), anyLong());
+	}
+
+	@Test
+	public void testSaveIndexSnapshotIfNeeded() throws Exception {
+		long changeNumber = TableIndexManagerImpl.SNAPSHOT_CHANGE_INTERVAL;
+		when(mockIndexDao.getSnapshotVersionForTable(tableId)).thenReturn(-1L);
+		when(mockManagerSupport.getColumnModelsForTable(tableId)).thenReturn(schema);
+		when(mockIndexDao.getCurrentSchemaMD5Hex(tableId)).thenReturn(schemaMD5Hex);
+		ResultSet mockResultSet = Mockito.mock(ResultSet.class);
+		when(mockResultSet.getLong(TableConstants.ROW_ID)).thenReturn(1L);
+		when(mockResultSet.getLong(TableConstants.ROW_VERSION)).thenReturn(2L);
+		when(mockResultSet.getString(1)).thenReturn("a string");
+		when(mockResultSet.getString(2)).thenReturn(null);
+		doAnswer((InvocationOnMock invocation) -> {
+			ColumnarRowBatchHandler handler = invocation.getArgument(3);
+			ColumnarRowBatch batch = new ColumnarRowBatch(
+					new ColumnTypeInfo[] { ColumnTypeInfo.STRING, ColumnTypeInfo.FILEHANDLEID }, true, false, 10);
+			batch.readRow(mockResultSet);
+			handler.nextBatch(batch);
+			return null;
+		}).when(mockIndexDao).queryAsColumnarBatches(any(), any(SqlQuery.class), anyInt(), any(ColumnarRowBatchHandler.class));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		doAnswer((InvocationOnMock invocation) -> {
+			WriterCallback writer = invocation.getArgument(2);
+			writer.write(out);
+			return null;
+		}).when(mockManagerSupport).saveIndexSnapshot(eq(tableId), eq(changeNumber), any(WriterCallback.class));
+		// call under test
+		manager.saveIndexSnapshotIfNeeded(tableId, changeNumber, "etag-1000");
+		List<SparseChangeSet> snapshot = new LinkedList<>();
+		SparseChangeSetBinaryCodec.readEachFromGz(new ByteArrayInputStream(out.toByteArray()),
+				(List<String> columnIds) -> schema, snapshot::add);
+		assertEquals(1, snapshot.size());
+		assertEquals("etag-1000", snapshot.get(0).getEtag());
+		SparseRow row = snapshot.get(0).rowIterator().iterator().next();
+		assertEquals(new Long(1L), row.getRowId());
+		assertEquals(new Long(2L), row.getVersionNumber());
+		assertEquals("a string", row.getCellValue("99"));
+		// nulls are included
+		assertTrue(row.hasCellValue("101"));
+		assertEquals(null, row.getCellValue("101"));
+		verify(mockIndexDao).setSnapshotVersionForTable(tableId, changeNumber);
+		// the last snapshot is read from the index, not from S3.
+		verify(mockManagerSupport, never()).getIndexSnapshotChangeNumber(any(IdAndVersion.class), anyLong());
+	}
+
+	@Test
+	public void testSaveIndexSnapshotIfNeededEmptyTable() throws Exception {
+		long changeNumber = TableIndexManagerImpl.SNAPSHOT_CHANGE_INTERVAL;
+		when(mockIndexDao.getSnapshotVersionForTable(tableId)).thenReturn(-1L);
+		when(mockManagerSupport.getColumnModelsForTable(tableId)).thenReturn(schema);
+		when(mockIndexDao.getCurrentSchemaMD5Hex(tableId)).thenReturn(schemaMD5Hex);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		doAnswer((InvocationOnMock invocation) -> {
+			WriterCallback writer = invocation.getArgument(2);
+			writer.write(out);
+			return null;
+		}).when(mockManagerSupport).saveIndexSnapshot(eq(tableId), eq(changeNumber), any(WriterCallback.class));
+		// call under test
+		manager.saveIndexSnapshotIfNeeded(tableId, changeNumber, "etag-1000");
+		List<SparseChangeSet> snapshot = new LinkedList<>();
+		SparseChangeSetBinaryCodec.readEachFromGz(new ByteArrayInputStream(out.toByteArray()),
+				(List<String> columnIds) -> schema, snapshot::add);
+		// the schema is still saved.
+		assertEquals(1, snapshot.size());
+		assertEquals(schema, snapshot.get(0).getSchema());
+		assertEquals(0, snapshot.get(0).getRowCount());
+	}
+
+	@Test
+	public void testSaveIndexSnapshotIfNeededRecentSnapshot() throws Exception {
+		long changeNumber = TableIndexManagerImpl.SNAPSHOT_CHANGE_INTERVAL + 10L;
+		when(mockIndexDao.getSnapshotVersionForTable(tableId)).thenReturn(11L);
+		// call under test
+		manager.saveIndexSnapshotIfNeeded(tableId, changeNumber, "etag");
+		verify(mockManagerSupport, never()).saveIndexSnapshot(any(IdAndVersion.class), anyLong(), any(WriterCallback.class));
+		verify(mockIndexDao, never()).setSnapshotVersionForTable(any(IdAndVersion.class), anyLong());
+	}
+
+	@Test
+	public void testSaveIndexSnapshotIfNeededSchemaMismatch() throws Exception {
+		long changeNumber = TableIndexManagerImpl.SNAPSHOT_CHANGE_INTERVAL;
+		when(mockIndexDao.getSnapshotVersionForTable(tableId)).thenReturn(-1L);
+		when(mockManagerSupport.getColumnModelsForTable(tableId)).thenReturn(schema);
+		when(mockIndexDao.getCurrentSchemaMD5Hex(tableId)).thenReturn("differentMD5");
+		// call under test
+		manager.saveIndexSnapshotIfNeeded(tableId, changeNumber, "etag");
+		verify(mockManagerSupport, never()).saveIndexSnapshot(any(IdAndVersion.class), anyLong(), any(WriterCallback.class));
+	}
+
+	@Test
+	public void testBuildIndexToChangeNumberWithExclusiveLockSnapshotFailure() throws Exception {
+		when(mockIndexDao.getMaxCurrentCompleteVersionForTable(tableId)).thenReturn(-1L);
+		List<TableChangeMetaData> list = Lists.newArrayList(setupMockRowChange(TableIndexManagerImpl.SNAPSHOT_CHANGE_INTERVAL));
+		when(mockManagerSupport.getIndexSnapshotChangeNumber(any(IdAndVersion.class), anyLong())).thenReturn(Optional.empty());
+		when(mockManagerSupport.getColumnModelsForTable(tableId)).thenThrow(new IllegalStateException("Something went wrong"));
+		// call under test
+		String lastEtag = manager.buildIndexToChangeNumberWithExclusiveLock(tableId, list.iterator(),
+				TableIndexManagerImpl.SNAPSHOT_CHANGE_INTERVAL, "resetToken");
+		// a failure to save a snapshot does not fail the build.
+		assertEquals(list.get(0).getETag(), lastEtag);
+		verify(mockIndexDao).setMaxCurrentCompleteVersionForTable(tableId, TableIndexManagerImpl.SNAPSHOT_CHANGE_INTERVAL);
+	}
+	
 	/**
 	 * Create the default EntityField schema with IDs for each column.
 	 * 
@@ -926,4 +926,35 @@ public class TableManagerSupportTest {
 		// call under test
 		manager.touchTable(userInfo, tableId);
 	}
+	
+	@Test
+	public void testGetColumnModel() {
+		ColumnModel one = new ColumnModel();
+		one.setId("1");
+		ColumnModel two = new ColumnModel();
+		two.setId("2");
+		List<String> columnIds = Lists.newArrayList("2", "1");
+		when(mockColumnModelDao.getColumnModel(columnIds)).thenReturn(Lists.newArrayList(one, two));
+		// call under test
+		List<ColumnModel> results = manager.getColumnModel(columnIds);
+		// the order of the IDs is kept.
+		assertEquals(Lists.newArrayList(two, one), results);
+	}
+	
+	@Test (expected=NotFoundException.class)
+	public void testGetColumnModelMissing() {
+		ColumnModel one = new ColumnModel();
+		one.setId("1");
+		List<String> columnIds = Lists.newArrayList("2", "1");
+		when(mockColumnModelDao.getColumnModel(columnIds)).thenReturn(Lists.newArrayList(one));
+		// call under test
+		manager.getColumnModel(columnIds);
+	}
+	
+	@Test
+	public void testGetIndexSnapshotChangeNumber() {
+		when(mockTableTruthDao.getIndexSnapshotChangeNumber(idAndVersion, 10L)).thenReturn(Optional.of(5L));
+		// call under test
+		assertEquals(Optional.of(5L), manager.getIndexSnapshotChangeNumber(idAndVersion, 10L));
+	}
 }
@@ -3,7 +3,9 @@ package org.sagebionetworks.repo.manager.table;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -13,6 +15,7 @@ import static org.mockito.ArgumentMatchers.anyMapOf;
 import static org.mockito.ArgumentMatchers.anySetOf;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -27,6 +30,8 @@ import static org.sagebionetworks.repo.model.table.QueryOptions.BUNDLE_MASK_QUER
 import static org.sagebionetworks.repo.model.table.QueryOptions.BUNDLE_MASK_QUERY_SELECT_COLUMNS;
 import static org.sagebionetworks.repo.model.table.QueryOptions.BUNDLE_MASK_SUM_FILE_SIZES;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -35,6 +40,12 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -83,6 +94,9 @@ import org.sagebionetworks.repo.model.table.TableState;
 import org.sagebionetworks.repo.model.table.TableStatus;
 import org.sagebionetworks.repo.model.table.TableUnavailableException;
 import org.sagebionetworks.repo.web.NotFoundException;
+import org.sagebionetworks.table.cluster.ColumnTypeInfo;
+import org.sagebionetworks.table.cluster.ColumnarRowBatch;
+import org.sagebionetworks.table.cluster.ColumnarRowBatchHandler;
 import org.sagebionetworks.table.cluster.ConnectionFactory;
 import org.sagebionetworks.table.cluster.SqlQuery;
 import org.sagebionetworks.table.cluster.SqlQueryBuilder;
@@ -94,9 +108,11 @@ import org.sagebionetworks.table.query.model.QuerySpecification;
 import org.sagebionetworks.util.csv.CSVWriterStream;
 import org.sagebionetworks.workers.util.semaphore.LockUnavilableException;
 import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
 @RunWith(MockitoJUnitRunner.class)
 public class TableQueryManagerImplTest {
@@ -113,6 +129,10 @@ public class TableQueryManagerImplTest {
 	ProgressCallback mockProgressCallbackVoid;
 	@Mock
 	ProgressCallback mockProgressCallback2;
+	@Mock
+	Future<FacetColumnResult> mockFacetFuture1;
+	@Mock
+	Future<FacetColumnResult> mockFacetFuture2;
 	@InjectMocks
 	TableQueryManagerImpl manager;
 	
@@ -176,6 +196,11 @@ public class TableQueryManagerImplTest {
 		
 		maxBytesPerRequest = 10000000;
 		manager.setMaxBytesPerRequest(maxBytesPerRequest);
+		manager.setFacetQueryTimeoutMS(10000L);
+		// facet queries are run on the calling thread.
+		ReflectionTestUtils.setField(manager, "tableFacetQueryExecutorService", MoreExecutors.newDirectExecutorService());
+		// queries are not cached unless a test sets up a cache.
+		ReflectionTestUtils.setField(manager, "sqlQueryCache", new SqlQueryCache(0L, 1000L));
 		
 		rows = TableModelTestUtils.createRows(models, 10);
 		
@@ -195,6 +220,17 @@ public class TableQueryManagerImplTest {
 				return true;
 			}
 		});
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				capturedQuery = (SqlQuery) invocation.getArguments()[1];
+				int batchSize = (Integer) invocation.getArguments()[2];
+				ColumnarRowBatchHandler handler = (ColumnarRowBatchHandler) invocation.getArguments()[3];
+				// Pass all rows to the handler in batches
+				streamRowsAsBatches(capturedQuery, batchSize, handler);
+				return null;
+			}
+		}).when(mockTableIndexDAO).queryAsColumnarBatches(any(ProgressCallback.class), any(SqlQuery.class), anyInt(), any(ColumnarRowBatchHandler.class));
 		
 		// Writer that captures lines
 		writtenLines = new LinkedList<String[]>();
@@ -202,7 +238,8 @@ public class TableQueryManagerImplTest {
 
 			@Override
 			public void writeNext(String[] nextLine) {
-				writtenLines.add(nextLine);
+				// the handler may reuse the array for each line.
+				writtenLines.add(nextLine.clone());
 			}
 		};
 
@@ -258,6 +295,45 @@ public class TableQueryManagerImplTest {
 		}
 	}
 	
+	/**
+	 * Read the test rows into columnar batches as the index DAO would.
+	 * 
+	 * @param query
+	 * @param batchSize
+	 * @param handler
+	 * @throws SQLException
+	 */
+	void streamRowsAsBatches(SqlQuery query, int batchSize, ColumnarRowBatchHandler handler) throws SQLException {
+		// The test rows are already in their read form.
+		ColumnTypeInfo[] types = new ColumnTypeInfo[query.getSelectColumns().size()];
+		Arrays.fill(types, ColumnTypeInfo.STRING);
+		ColumnarRowBatch batch = new ColumnarRowBatch(types, query.includesRowIdAndVersion(), query.includeEntityEtag(), batchSize);
+		for (final Row row : rows) {
+			ResultSet rs = Mockito.mock(ResultSet.class, new Answer<Object>() {
+				@Override
+				public Object answer(InvocationOnMock invocation) throws Throwable {
+					Object arg = invocation.getArguments()[0];
+					if (arg instanceof Integer) {
+						return row.getValues().get((Integer) arg - 1);
+					} else if (TableConstants.ROW_ID.equals(arg)) {
+						return row.getRowId();
+					} else if (TableConstants.ROW_VERSION.equals(arg)) {
+						return row.getVersionNumber();
+					}
+					return row.getEtag();
+				}
+			});
+			batch.readRow(rs);
+			if (batch.isFull()) {
+				handler.nextBatch(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			handler.nextBatch(batch);
+		}
+	}
+	
 	/**
 	 * Convert each row to an entity row.
 	 */
@@ -907,6 +983,53 @@ public class TableQueryManagerImplTest {
 		assertEquals("SELECT i2, i0 FROM syn123 ORDER BY \"i0\" DESC", result.getModel().toSql());
 	}
 	
+	@Test
+	public void testQueryPreflightCached() throws Exception {
+		ReflectionTestUtils.setField(manager, "sqlQueryCache", new SqlQueryCache(10L, 10000L));
+		when(mockTableManagerSupport.validateTableReadAccess(user, idAndVersion)).thenReturn(EntityType.entityview);
+		Query query = new Query();
+		query.setSql("select i0 from "+tableId);
+		Long maxBytesPerPage = null;
+		SqlQuery first = manager.queryPreflight(user, query, maxBytesPerPage);
+		// call under test
+		SqlQuery second = manager.queryPreflight(user, query, maxBytesPerPage);
+		assertSame(first, second);
+		assertEquals("SELECT _C0_, ROW_ID, ROW_VERSION FROM T123 WHERE ROW_BENEFACTOR IN ( 444 )", second.getOutputSQL());
+		// access and the benefactors must be checked for each call.
+		verify(mockTableManagerSupport, times(2)).validateTableReadAccess(user, idAndVersion);
+		verify(mockTableManagerSupport, times(2)).getAccessibleBenefactors(any(UserInfo.class), anySetOf(Long.class));
+	}
+	
+	@Test
+	public void testQueryPreflightCachedDifferentBenefactors() throws Exception {
+		ReflectionTestUtils.setField(manager, "sqlQueryCache", new SqlQueryCache(10L, 10000L));
+		when(mockTableManagerSupport.validateTableReadAccess(user, idAndVersion)).thenReturn(EntityType.entityview);
+		when(mockTableManagerSupport.getAccessibleBenefactors(any(UserInfo.class), anySetOf(Long.class))).thenReturn(
+				Sets.newHashSet(444L), Sets.newHashSet(555L));
+		Query query = new Query();
+		query.setSql("select i0 from "+tableId);
+		Long maxBytesPerPage = null;
+		SqlQuery first = manager.queryPreflight(user, query, maxBytesPerPage);
+		// call under test
+		SqlQuery second = manager.queryPreflight(user, query, maxBytesPerPage);
+		assertNotSame(first, second);
+		assertEquals("SELECT _C0_, ROW_ID, ROW_VERSION FROM T123 WHERE ROW_BENEFACTOR IN ( 555 )", second.getOutputSQL());
+	}
+	
+	@Test
+	public void testQueryPreflightCachedSchemaChange() throws Exception {
+		ReflectionTestUtils.setField(manager, "sqlQueryCache", new SqlQueryCache(10L, 10000L));
+		Query query = new Query();
+		query.setSql("select * from "+tableId);
+		Long maxBytesPerPage = null;
+		SqlQuery first = manager.queryPreflight(user, query, maxBytesPerPage);
+		when(mockColumnModelDAO.getColumnModelsForObject(tableId)).thenReturn(models.subList(0, 2));
+		// call under test
+		SqlQuery second = manager.queryPreflight(user, query, maxBytesPerPage);
+		assertNotSame(first, second);
+		assertEquals("SELECT \"i0\", \"i1\" FROM syn123", second.getModel().toSql());
+	}
+	
 	@Test
 	public void testQueryPreflightEmptySchema() throws Exception {
 		// setup an empty schema.
@@ -1579,6 +1702,87 @@ public class TableQueryManagerImplTest {
 
 	}
 	
+	@Test
+	public void testRunFacetQueriesQueryFailure(){
+		FacetModel mockFacetModel = Mockito.mock(FacetModel.class);
+		FacetTransformer mockTransformer1 = Mockito.mock(FacetTransformerValueCounts.class);
+		SqlQuery mockSql1 = Mockito.mock(SqlQuery.class);
+		when(mockTransformer1.getFacetSqlQuery()).thenReturn(mockSql1);
+		IllegalStateException error = new IllegalStateException("bad query");
+		when(mockTableIndexDAO.query(null, mockSql1)).thenThrow(error);
+		when(mockFacetModel.getFacetInformationQueries()).thenReturn(Arrays.asList(mockTransformer1));
+		try {
+			// call under test
+			manager.runFacetQueries(mockFacetModel, mockTableIndexDAO);
+			fail();
+		} catch (IllegalStateException e) {
+			// the original runtime exception should be thrown.
+			assertEquals(error, e);
+		}
+	}
+	
+	@Test
+	public void testWaitForFacetResults() throws Exception {
+		FacetColumnResultValues result1 = new FacetColumnResultValues();
+		FacetColumnResultRange result2 = new FacetColumnResultRange();
+		when(mockFacetFuture1.get(any(Long.class), any(TimeUnit.class))).thenReturn(result1);
+		when(mockFacetFuture2.get(any(Long.class), any(TimeUnit.class))).thenReturn(result2);
+		// call under test
+		List<FacetColumnResult> results = manager.waitForFacetResults(Lists.newArrayList(mockFacetFuture1, mockFacetFuture2));
+		assertEquals(Lists.newArrayList(result1, result2), results);
+		verify(mockFacetFuture1, never()).cancel(any(Boolean.class));
+		verify(mockFacetFuture2, never()).cancel(any(Boolean.class));
+	}
+	
+	@Test
+	public void testWaitForFacetResultsTimeout() throws Exception {
+		when(mockFacetFuture1.get(any(Long.class), any(TimeUnit.class))).thenThrow(new TimeoutException());
+		try {
+			// call under test
+			manager.waitForFacetResults(Lists.newArrayList(mockFacetFuture1, mockFacetFuture2));
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		// all remaining facet queries must be cancelled
+		verify(mockFacetFuture1).cancel(true);
+		verify(mockFacetFuture2).cancel(true);
+	}
+	
+	@Test
+	public void testWaitForFacetResultsExecutionException() throws Exception {
+		IllegalArgumentException error = new IllegalArgumentException("wrong");
+		when(mockFacetFuture1.get(any(Long.class), any(TimeUnit.class))).thenThrow(new ExecutionException(error));
+		try {
+			// call under test
+			manager.waitForFacetResults(Lists.newArrayList(mockFacetFuture1, mockFacetFuture2));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(error, e);
+		}
+		verify(mockFacetFuture1).cancel(true);
+		verify(mockFacetFuture2).cancel(true);
+	}
+	
+	@Test
+	public void testQueryAsStreamAfterAuthorizationCancelFacetsOnFailure() throws Exception {
+		IllegalStateException error = new IllegalStateException("count failed");
+		when(mockTableIndexDAO.countQuery(anyString(), anyMapOf(String.class, Object.class))).thenThrow(error);
+		ExecutorService mockExecutor = Mockito.mock(ExecutorService.class);
+		when(mockExecutor.submit(any(Callable.class))).thenReturn(mockFacetFuture1);
+		ReflectionTestUtils.setField(manager, "tableFacetQueryExecutorService", mockExecutor);
+		queryOptions = new QueryOptions().withReturnFacets(true).withRunCount(true);
+		SqlQuery query = new SqlQueryBuilder("select * from " + tableId, models).build();
+		try {
+			// call under test
+			manager.queryAsStreamAfterAuthorization(mockProgressCallbackVoid, query, null, queryOptions);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(error, e);
+		}
+		verify(mockFacetFuture1, Mockito.atLeastOnce()).cancel(true);
+	}
+	
 	@Test
 	public void testRunSumFileSize() throws Exception {
 		// query against an entity view.
@@ -1,9 +1,6 @@
 package org.sagebionetworks.repo.web;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -30,11 +27,20 @@ public class AccessInterceptor implements HandlerInterceptor, AccessIdListener{
 
 	public static final String SESSION_ID = "sessionId";
 
+	private static final long MS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
 	/**
-	 * This map keeps track of the current record for each thread.
+	 * This keeps track of the current record for each thread.
 	 */
-	Map<Long, AccessRecord> threadToRecordMap = Collections
-			.synchronizedMap(new HashMap<Long, AccessRecord>());
+	ThreadLocal<AccessRecord> currentRecord = new ThreadLocal<AccessRecord>();
+
+	/**
+	 * The date string only changes once per day, so it is cached with the
+	 * UTC day it was built for.
+	 */
+	private volatile CachedDate cachedDate = new CachedDate(-1L, null);
+	// Values that are the same for every request of this JVM.
+	private volatile String instancePrefix;
 
 	@Autowired
 	AccessRecorder accessRecorder;
@@ -63,7 +69,7 @@ public class AccessInterceptor implements HandlerInterceptor, AccessIdListener{
 		data.setRequestURL(request.getRequestURI());
 		data.setMethod(request.getMethod());
 		data.setThreadId(Thread.currentThread().getId());
-		String sessionId = UUID.randomUUID().toString();
+		String sessionId = SessionIdGenerator.generateSessionId(data.getTimestamp());
 		data.setSessionId(sessionId);
 		// capture common headers that tell us more about the user.
 		data.setHost(request.getHeader("Host"));
@@ -71,18 +77,43 @@ public class AccessInterceptor implements HandlerInterceptor, AccessIdListener{
 		data.setUserAgent(request.getHeader("User-Agent"));
 		data.setXForwardedFor(IpAddressUtil.getIpAddress(request));
 		data.setVia(request.getHeader("Via"));
-		data.setDate(KeyGeneratorUtil.getDateString(data.getTimestamp()));
+		data.setDate(getDateString(data.getTimestamp()));
 		data.setStack(stackConfiguration.getStack());
-		data.setInstance(KeyGeneratorUtil.getInstancePrefix(stackConfiguration.getStackInstanceNumber()));
+		data.setInstance(getInstancePrefix());
 		data.setVmId(VirtualMachineIdProvider.getVMID());
 		data.setQueryString(request.getQueryString());
 		// push the session id to the logging thread context
 		ThreadContext.put(SESSION_ID, data.getSessionId());
 		// Bind this record to this thread.
-		threadToRecordMap.put(Thread.currentThread().getId(), data);
+		currentRecord.set(data);
 		return true;
 	}
 
+	/**
+	 * Get the date string for the given time, building it at most once per day.
+	 * 
+	 * @param timestamp
+	 * @return
+	 */
+	String getDateString(long timestamp) {
+		long day = timestamp / MS_PER_DAY;
+		CachedDate cached = cachedDate;
+		if (cached.day != day) {
+			cached = new CachedDate(day, KeyGeneratorUtil.getDateString(timestamp));
+			cachedDate = cached;
+		}
+		return cached.dateString;
+	}
+
+	private String getInstancePrefix() {
+		String prefix = instancePrefix;
+		if (prefix == null) {
+			prefix = KeyGeneratorUtil.getInstancePrefix(stackConfiguration.getStackInstanceNumber());
+			instancePrefix = prefix;
+		}
+		return prefix;
+	}
+
 	@Override
 	public void postHandle(HttpServletRequest request,
 			HttpServletResponse response, Object handler, ModelAndView arg3)
@@ -98,8 +129,8 @@ public class AccessInterceptor implements HandlerInterceptor, AccessIdListener{
 			HttpServletResponse response, Object handler, Exception exception)
 			throws Exception {
 		// Get the record for this thread
-		AccessRecord data = threadToRecordMap.remove(Thread.currentThread()
-				.getId());
+		AccessRecord data = currentRecord.get();
+		currentRecord.remove();
 		if (data == null)
 			throw new IllegalStateException(
 					"Failed to get the access record for this thread: "
@@ -127,11 +158,26 @@ public class AccessInterceptor implements HandlerInterceptor, AccessIdListener{
 	 * @return
 	 */
 	private AccessRecord getCurrentThreadAccessRecord(){
-		AccessRecord ar = threadToRecordMap.get(Thread.currentThread().getId());
+		AccessRecord ar = currentRecord.get();
 		if(ar == null) 	throw new IllegalStateException(
 				"Failed to get the access record for this thread: "
 						+ Thread.currentThread().getId());
 		return ar;
 	}
 
+	/**
+	 * A date string and the UTC day it represents.
+	 *
+	 */
+	private static class CachedDate {
+
+		final long day;
+		final String dateString;
+
+		CachedDate(long day, String dateString) {
+			this.day = day;
+			this.dateString = dateString;
+		}
+	}
+
 }
@@ -7,12 +7,15 @@ public class HttpRequestIdentifier {
 	String sessionId;
 	String ipAddress;
 	String requestPath;
+	// built once as every throttler of the request uses it.
+	String userMachineIdentifierString;
 
 	public HttpRequestIdentifier(Long userId, String sessionId, String ipAddress, String requestPath){
 		this.userId = userId;
 		this.sessionId = sessionId;
 		this.ipAddress = ipAddress;
 		this.requestPath = requestPath;
+		this.userMachineIdentifierString = userId + "|" + sessionId + "|" + ipAddress;
 	}
 
 	public Long getUserId() {
@@ -32,7 +35,7 @@ public class HttpRequestIdentifier {
 	}
 
 	public String getUserMachineIdentifierString(){
-		return userId + "|" + sessionId + "|" + ipAddress;
+		return userMachineIdentifierString;
 	}
 
 	@Override
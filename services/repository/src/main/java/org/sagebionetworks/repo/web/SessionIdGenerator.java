@@ -0,0 +1,44 @@
+package org.sagebionetworks.repo.web;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates the session ID of each web-service request.
+ * <p>
+ * IDs keep the UUID string format, with the layout of a time-ordered (version
+ * 7) UUID: the first 48 bits are the request time in milliseconds, followed by
+ * 74 random bits. Unlike UUID.randomUUID() the random bits come from
+ * ThreadLocalRandom rather than a shared SecureRandom, as session IDs only need
+ * to be unique, not unguessable.
+ *
+ */
+public class SessionIdGenerator {
+
+	private static final long VERSION_7 = 0x7000L;
+	private static final long VARIANT_MASK = 0x3FFFFFFFFFFFFFFFL;
+	private static final long VARIANT_IETF = 0x8000000000000000L;
+
+	/**
+	 * Generate a new session ID for a request started at the given time.
+	 * 
+	 * @param timestampMs
+	 * @return
+	 */
+	public static String generateSessionId(long timestampMs) {
+		return generateUUID(timestampMs).toString();
+	}
+
+	/**
+	 * Generate a time-ordered UUID for the given time.
+	 * 
+	 * @param timestampMs
+	 * @return
+	 */
+	static UUID generateUUID(long timestampMs) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long mostSigBits = (timestampMs << 16) | VERSION_7 | (random.nextLong() & 0x0FFFL);
+		long leastSigBits = (random.nextLong() & VARIANT_MASK) | VARIANT_IETF;
+		return new UUID(mostSigBits, leastSigBits);
+	}
+}
@@ -181,6 +181,8 @@ public class UrlHelpers {
 	public static final String ADMIN_ASYNCHRONOUS_JOB_ID = ADMIN + ASYNCHRONOUS_JOB_ID;
 	
 	public static final String ADMIN_ID_GEN_EXPORT = ADMIN + "/id/generator/export";
+	
+	public static final String ADMIN_CONTAINER_CLOSURE_REPAIR = ADMIN + "/containerClosure/repair";
 
 	/**
 	 * All of the base URLs for Synapse objects with ID.
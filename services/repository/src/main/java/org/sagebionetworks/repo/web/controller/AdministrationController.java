@@ -277,6 +277,22 @@ public class AdministrationController {
 		return serviceProvider.getAdministrationService().createIdGeneratorExport(userId);
 	}
 
+	/**
+	 * Backfill the container closure of an existing stack, one batch per call.
+	 * 
+	 * @param userId
+	 * @param maxContainers
+	 * @return The number of containers linked by this call. Zero once the
+	 *         backfill is done.
+	 */
+	@ResponseStatus(HttpStatus.OK)
+	@RequestMapping(value = UrlHelpers.ADMIN_CONTAINER_CLOSURE_REPAIR, method = RequestMethod.POST)
+	public @ResponseBody
+	Long repairContainerClosure(@RequestParam(value = AuthorizationConstants.USER_ID_PARAM) Long userId,
+			@RequestParam(value = "maxContainers", required = false, defaultValue = "10000") Long maxContainers) {
+		return serviceProvider.getAdministrationService().repairContainerClosure(userId, maxContainers);
+	}
+
 	@ResponseStatus(HttpStatus.OK)
 	@RequestMapping(value = "/admin/annotationCleanup/{idStart}", method = RequestMethod.POST)
 	public @ResponseBody
@@ -5,6 +5,8 @@ import static org.sagebionetworks.repo.web.filter.throttle.ThrottleUtils.generat
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.common.util.PathNormalizer;
@@ -26,8 +28,8 @@ public class UserApiFrequencyThrottler implements RequestThrottler {
 	@Autowired
 	MemoryTimeBlockCountingSemaphore userApiThrottleMemoryTimeBlockSemaphore;
 
-
-
+	// One entry per throttle rule, so the size is bounded by the rule count.
+	private final ConcurrentHashMap<String, RuleCounters> ruleCounters = new ConcurrentHashMap<>();
 
 	@Override
 	public RequestThrottlerCleanup doThrottle(HttpRequestIdentifier httpRequestIdentifier) throws RequestThrottledException {
@@ -39,8 +41,11 @@ public class UserApiFrequencyThrottler implements RequestThrottler {
 			//no throttle exists for this URI
 			return NO_OP_THROTTLER_CLEANUP;
 		}
-		boolean lockAcquired = userApiThrottleMemoryTimeBlockSemaphore.attemptToAcquireLock(userMachineIdentifierString + ":" + normalizedPath, limit.getCallPeriodSec(), limit.getMaxCallsPerUserPerPeriod());
+		RuleCounters counters = getRuleCounters(normalizedPath);
+		counters.hits.increment();
+		boolean lockAcquired = userApiThrottleMemoryTimeBlockSemaphore.attemptToAcquireLock(userMachineIdentifierString, normalizedPath, limit.getCallPeriodSec(), limit.getMaxCallsPerUserPerPeriod());
 		if(!lockAcquired){
+			counters.throttled.increment();
 			//add extra dimensions for recording the throttled API
 			Map<String, String> dimensions = new HashMap<>();
 			dimensions.put("UserId", String.valueOf(httpRequestIdentifier.getUserId()));
@@ -56,5 +61,37 @@ public class UserApiFrequencyThrottler implements RequestThrottler {
 		return NO_OP_THROTTLER_CLEANUP;
 	}
 
+	/**
+	 * Get the counters for the throttle rule of the given normalized path.
+	 * 
+	 * @param normalizedPath
+	 * @return
+	 */
+	public RuleCounters getRuleCounters(String normalizedPath) {
+		RuleCounters counters = ruleCounters.get(normalizedPath);
+		if (counters != null) {
+			return counters;
+		}
+		return ruleCounters.computeIfAbsent(normalizedPath, (String path) -> new RuleCounters());
+	}
+
+	/**
+	 * The number of calls checked against a single throttle rule, and the
+	 * number of those calls that were throttled.
+	 *
+	 */
+	public static class RuleCounters {
+
+		final LongAdder hits = new LongAdder();
+		final LongAdder throttled = new LongAdder();
+
+		public long getHits() {
+			return hits.sum();
+		}
+
+		public long getThrottled() {
+			return throttled.sum();
+		}
+	}
 
 }
@@ -137,4 +137,16 @@ public interface AdministrationService {
 	 * @return
 	 */
 	public IdGeneratorExport createIdGeneratorExport(Long userId);
+
+	/**
+	 * Backfill the container closure of an existing stack. Each call links up
+	 * to the given number of containers that are missing from the closure.
+	 * Once none are missing, rows that reference deleted nodes are removed.
+	 * Call repeatedly until zero is returned.
+	 * 
+	 * @param userId
+	 * @param maxContainers
+	 * @return The number of containers linked by this call.
+	 */
+	public Long repairContainerClosure(Long userId, Long maxContainers);
 }
@@ -17,6 +17,7 @@ import org.sagebionetworks.repo.manager.password.PasswordValidator;
 import org.sagebionetworks.repo.manager.table.TableManagerSupport;
 import org.sagebionetworks.repo.model.DatastoreException;
 import org.sagebionetworks.repo.model.EntityId;
+import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
@@ -76,6 +77,9 @@ public class AdministrationServiceImpl implements AdministrationService  {
 	@Autowired
 	IdGenerator idGenerator;
 
+	@Autowired
+	NodeDAO nodeDao;
+
 	@Autowired
 	TransactionSynchronizationProxy transactionSynchronizationManager;
 
@@ -219,4 +223,16 @@ public class AdministrationServiceImpl implements AdministrationService  {
 		return export;
 	}
 
+	@Override
+	public Long repairContainerClosure(Long userId, Long maxContainers) {
+		adminCheck(userId);
+		ValidateArgument.required(maxContainers, "maxContainers");
+		int linked = nodeDao.repairContainerClosure(maxContainers.intValue());
+		if (linked == 0) {
+			// The whole closure is only scanned once the backfill is done.
+			nodeDao.deleteOrphanedContainerClosure();
+		}
+		return (long) linked;
+	}
+
 }
@@ -6,6 +6,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.util.UUID;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -99,6 +101,7 @@ public class AccessInterceptorTest {
 		assertEquals(234L, result.getElapseMS().longValue());
 		assertTrue(result.getSuccess());
 		assertNotNull(result.getSessionId());
+		assertEquals(7, UUID.fromString(result.getSessionId()).version());
 		assertEquals("/entity/syn789", result.getRequestURL());
 		assertEquals("DELETE", result.getMethod());
 		assertEquals("localhost8080", result.getHost());
@@ -115,6 +118,26 @@ public class AccessInterceptorTest {
 		assertEquals("returnId", result.getReturnObjectId());
 	}
 	
+	@Test
+	public void testGetDateString() throws Exception{
+		long timestamp = testClock.currentTimeMillis();
+		// call under test
+		String date = interceptor.getDateString(timestamp);
+		assertEquals(KeyGeneratorUtil.getDateString(timestamp), date);
+		// the same day should reuse the same string.
+		assertTrue(date == interceptor.getDateString(timestamp + 1));
+		long nextDay = timestamp + 1000L * 60 * 60 * 24;
+		assertEquals(KeyGeneratorUtil.getDateString(nextDay), interceptor.getDateString(nextDay));
+	}
+	
+	@Test (expected=IllegalStateException.class)
+	public void testAfterCompletionWithoutPreHandle() throws Exception{
+		interceptor.preHandle(mockRequest, mockResponse, mockHandler);
+		interceptor.afterCompletion(mockRequest, mockResponse, mockHandler, null);
+		// the record must not be reused by the next request of this thread.
+		interceptor.afterCompletion(mockRequest, mockResponse, mockHandler, null);
+	}
+	
 	@Test
 	public void testHappyCaseWithException() throws Exception{
 		long start = testClock.currentTimeMillis();
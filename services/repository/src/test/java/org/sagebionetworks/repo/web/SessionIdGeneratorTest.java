@@ -0,0 +1,41 @@
+package org.sagebionetworks.repo.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class SessionIdGeneratorTest {
+
+	@Test
+	public void testGenerateUUID() {
+		long timestamp = 1546300800123L;
+		// call under test
+		UUID uuid = SessionIdGenerator.generateUUID(timestamp);
+		assertEquals(7, uuid.version());
+		assertEquals(2, uuid.variant());
+		// the time is in the first 48 bits.
+		assertEquals(timestamp, uuid.getMostSignificantBits() >>> 16);
+	}
+
+	@Test
+	public void testGenerateSessionIdUnique() {
+		long timestamp = 1546300800123L;
+		// call under test
+		String one = SessionIdGenerator.generateSessionId(timestamp);
+		String two = SessionIdGenerator.generateSessionId(timestamp);
+		assertNotEquals(one, two);
+		assertEquals(one, UUID.fromString(one).toString());
+	}
+
+	@Test
+	public void testGenerateSessionIdTimeOrdered() {
+		// call under test
+		String earlier = SessionIdGenerator.generateSessionId(1546300800123L);
+		String later = SessionIdGenerator.generateSessionId(1546300800124L);
+		assertTrue(earlier.compareTo(later) < 0);
+	}
+}
@@ -44,7 +44,6 @@ public class UserApiFrequencyThrottlerTest {
 
 	private HttpRequestIdentifier requestIdentifier = new HttpRequestIdentifier(Long.valueOf(userId), sessionId, ipAddress, path);
 	private final String userMachineIdentifierString = requestIdentifier.getUserMachineIdentifierString();
-	private final String keyForSemaphore = userMachineIdentifierString + ":" + normalizedPath;
 
 
 	@Before
@@ -70,20 +69,22 @@ public class UserApiFrequencyThrottlerTest {
 	@Test
 	public void testUserUnderThrottleLimit() throws Exception {
 		when(throttleRulesCache.getThrottleLimit(normalizedPath)).thenReturn(throttleLimit);
-		when(userFrequencyThrottleGate.attemptToAcquireLock(keyForSemaphore, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod())).thenReturn(true);
+		when(userFrequencyThrottleGate.attemptToAcquireLock(userMachineIdentifierString, normalizedPath, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod())).thenReturn(true);
 
 		//method under test
 		RequestThrottlerCleanup cleanup = throttler.doThrottle(requestIdentifier);
 
-		verify(userFrequencyThrottleGate).attemptToAcquireLock(keyForSemaphore, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod());
+		verify(userFrequencyThrottleGate).attemptToAcquireLock(userMachineIdentifierString, normalizedPath, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod());
 		assertEquals(RequestThrottlerCleanupNoOpImpl.class, cleanup.getClass());
+		assertEquals(1L, throttler.getRuleCounters(normalizedPath).getHits());
+		assertEquals(0L, throttler.getRuleCounters(normalizedPath).getThrottled());
 	}
 
 	@Test
 	public void testNoEmptyRequestFrequencySlots() throws Exception {
 
 		when(throttleRulesCache.getThrottleLimit(normalizedPath)).thenReturn(throttleLimit);
-		when(userFrequencyThrottleGate.attemptToAcquireLock(keyForSemaphore, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod())).thenReturn(false);
+		when(userFrequencyThrottleGate.attemptToAcquireLock(userMachineIdentifierString, normalizedPath, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod())).thenReturn(false);
 
 		try {
 			//method under test
@@ -92,7 +93,9 @@ public class UserApiFrequencyThrottlerTest {
 		}catch (RequestThrottledException e){ //expected
 			assertEquals(CLOUDWATCH_EVENT_NAME, e.getProfileData().getName());
 		}
+		assertEquals(1L, throttler.getRuleCounters(normalizedPath).getHits());
+		assertEquals(1L, throttler.getRuleCounters(normalizedPath).getThrottled());
 
-		verify(userFrequencyThrottleGate).attemptToAcquireLock(keyForSemaphore, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod());
+		verify(userFrequencyThrottleGate).attemptToAcquireLock(userMachineIdentifierString, normalizedPath, throttleLimit.getCallPeriodSec(), throttleLimit.getMaxCallsPerUserPerPeriod());
 	}
 }
@@ -3,6 +3,8 @@ package org.sagebionetworks.repo.web.service;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
@@ -20,6 +22,7 @@ import org.sagebionetworks.repo.manager.message.MessageSyndication;
 import org.sagebionetworks.repo.manager.password.InvalidPasswordException;
 import org.sagebionetworks.repo.manager.password.PasswordValidator;
 import org.sagebionetworks.repo.model.DatastoreException;
+import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.UnauthorizedException;
 import org.sagebionetworks.repo.model.UserInfo;
@@ -55,6 +58,8 @@ public class AdministrationServiceImplTest {
 	IdGenerator mockIdGenerator;
 	@Mock
 	PasswordValidator mockPasswordValidator;
+	@Mock
+	NodeDAO mockNodeDao;
 
 	@InjectMocks
 	AdministrationServiceImpl adminService;
@@ -149,6 +154,29 @@ public class AdministrationServiceImplTest {
 		this.adminService.createIdGeneratorExport(nonAdminUserId);
 	}
 
+	@Test
+	public void testRepairContainerClosure() {
+		when(mockNodeDao.repairContainerClosure(100)).thenReturn(100);
+		// call under test
+		assertEquals(new Long(100L), adminService.repairContainerClosure(adminUserId, 100L));
+		verify(mockNodeDao, never()).deleteOrphanedContainerClosure();
+	}
+
+	@Test
+	public void testRepairContainerClosureDone() {
+		when(mockNodeDao.repairContainerClosure(100)).thenReturn(0);
+		// call under test
+		assertEquals(new Long(0L), adminService.repairContainerClosure(adminUserId, 100L));
+		// orphans are only removed once every container is linked.
+		verify(mockNodeDao).deleteOrphanedContainerClosure();
+	}
+
+	@Test (expected=UnauthorizedException.class)
+	public void testRepairContainerClosureNonAdmin() {
+		// call under test
+		adminService.repairContainerClosure(nonAdminUserId, 100L);
+	}
+
 	@Test (expected = InvalidPasswordException.class)
 	public void testCreateOrGetTestUser_bannedPassword(){
 		String bannedPassword = "hunter2";
@@ -2,8 +2,14 @@ package org.sagebionetworks.file.worker;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
@@ -23,6 +29,7 @@ import org.sagebionetworks.repo.model.file.FileConstants;
 import org.sagebionetworks.repo.model.file.FileDownloadCode;
 import org.sagebionetworks.repo.model.file.FileDownloadStatus;
 import org.sagebionetworks.repo.model.file.FileDownloadSummary;
+import org.sagebionetworks.repo.model.file.FileHandleAssociation;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.file.ZipFileFormat;
 import org.sagebionetworks.repo.web.NotFoundException;
@@ -30,10 +37,9 @@ import org.sagebionetworks.workers.util.aws.message.MessageDrivenRunner;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.amazonaws.event.ProgressEvent;
-import com.amazonaws.event.ProgressListener;
 import com.amazonaws.services.sqs.model.Message;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -55,6 +61,11 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 
 	public static final String FILE_ALREADY_ADDED = "File already added.";
 
+	/**
+	 * The maximum number of files downloaded ahead of the zip writer.
+	 */
+	public static final int DOWNLOAD_WINDOW_SIZE = 4;
+
 	static private Logger log = LogManager
 			.getLogger(BulkFileDownloadWorker.class);
 
@@ -64,6 +75,8 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 	UserManager userManger;
 	@Autowired
 	FileHandleSupport fileHandleSupport; 
+	@Autowired
+	ExecutorService bulkFileDownloadExecutorService;
 
 	@Override
 	public void run(ProgressCallback progressCallback, Message message)
@@ -88,7 +101,8 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 	}
 
 	/**
-	 * Build the result zip for each authorized file.
+	 * Build the result zip for each authorized file. The zip is streamed to S3
+	 * as it is written, so it is never held on the local disk.
 	 * 
 	 * @param progressCallback
 	 * @param message
@@ -97,127 +111,194 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 	 */
 	public BulkFileDownloadResponse buildZip(
 			final ProgressCallback progressCallback,
-			final Message message, AsynchronousJobStatus status,
+			final Message message, final AsynchronousJobStatus status,
 			BulkFileDownloadRequest request) throws IOException {
-		// The generated zip will be written to this temp file.
-		File tempResultFile = fileHandleSupport.createTempFile("Job"
-				+ status.getJobId(), ".zip");
-		ZipOutputStream zipOut = fileHandleSupport.createZipOutputStream(tempResultFile);
-		try {
-			UserInfo user = userManger.getUserInfo(status.getStartedByUserId());
-			/*
-			 * The first step is to determine if the user is authorized to
-			 * download each requested file. The authorization check is
-			 * normalized around the associated object.
-			 */
-			List<FileHandleAssociationAuthorizationStatus> authResults = fileHandleSupport
-					.canDownLoadFile(user, request.getRequestedFiles());
-			
-			ZipEntryNameProvider zipEntryNameProvider = createZipEntryNameProvider(request.getZipFileFormat());
-			// Track the files added to the zip.
-			Set<String> fileIdsInZip = Sets.newHashSet();
-			// Build the zip
-			List<FileDownloadSummary> results = addFilesToZip(authResults, tempResultFile, zipOut, status, fileIdsInZip, zipEntryNameProvider);
-			
-			IOUtils.closeQuietly(zipOut);
-			// Is there at least one file in the zip?
-			String resultFileHandleId = null;
-			if(fileIdsInZip.size() > 0){
-				// upload the result file to S3
-				S3FileHandle resultHandle = fileHandleSupport
-						.multipartUploadLocalFile(new LocalFileUploadRequest().withFileName(request.getZipFileName())
-								.withUserId(user.getId().toString()).withFileToUpload(tempResultFile)
-								.withContentType(APPLICATION_ZIP).withListener(new ProgressListener() {
-									@Override
-									public void progressChanged(ProgressEvent progressEvent) {
-									}
-								}));
-				resultFileHandleId = resultHandle.getId();
-			}
+		final UserInfo user = userManger.getUserInfo(status.getStartedByUserId());
+		/*
+		 * The first step is to determine if the user is authorized to
+		 * download each requested file. The authorization check is
+		 * normalized around the associated object.
+		 */
+		final List<FileHandleAssociationAuthorizationStatus> authResults = fileHandleSupport
+				.canDownLoadFile(user, request.getRequestedFiles());
 
-			// All of the parts are ready.
-			BulkFileDownloadResponse response = new BulkFileDownloadResponse();
-			response.setFileSummary(results);
-			// added for PLFM-3629
-			response.setUserId(""+user.getId());
-			response.setResultZipFileHandleId(resultFileHandleId);
-			return response;
-		} finally {
-			IOUtils.closeQuietly(zipOut);
-			tempResultFile.delete();
+		final ZipEntryNameProvider zipEntryNameProvider = createZipEntryNameProvider(request.getZipFileFormat());
+		// Track the files added to the zip.
+		final Set<String> fileIdsInZip = Sets.newHashSet();
+		final List<FileDownloadSummary> results = Lists.newLinkedList();
+		String fileName = request.getZipFileName();
+		if (fileName == null) {
+			fileName = "Job" + status.getJobId() + ".zip";
+		}
+		// Build the zip. Nothing is uploaded unless at least one file is added.
+		S3FileHandle resultHandle = fileHandleSupport.multipartUploadLocalStream(
+				new LocalFileUploadRequest().withFileName(fileName).withUserId(user.getId().toString())
+						.withContentType(APPLICATION_ZIP),
+				(OutputStream out) -> {
+					ZipOutputStream zipOut = fileHandleSupport.createZipOutputStream(out);
+					try {
+						results.addAll(addFilesToZip(authResults, zipOut, status, fileIdsInZip, zipEntryNameProvider));
+					} finally {
+						IOUtils.closeQuietly(zipOut);
+					}
+					return !fileIdsInZip.isEmpty();
+				});
+		String resultFileHandleId = null;
+		if (resultHandle != null) {
+			resultFileHandleId = resultHandle.getId();
 		}
+
+		// All of the parts are ready.
+		BulkFileDownloadResponse response = new BulkFileDownloadResponse();
+		response.setFileSummary(results);
+		// added for PLFM-3629
+		response.setUserId(""+user.getId());
+		response.setResultZipFileHandleId(resultFileHandleId);
+		return response;
 	}
 
 	/**
+	 * Add each authorized file to the zip in the requested order. The files are
+	 * downloaded from S3 ahead of the zip writer, with at most
+	 * {@link #DOWNLOAD_WINDOW_SIZE} downloads in progress (or waiting on the
+	 * local disk) at a time.
 	 * 
-	 * @param progressCallback
-	 * @param message
 	 * @param authResults
-	 * @param tempResultFile
 	 * @param zipOut
+	 * @param status
+	 * @param fileIdsInZip
+	 * @param zipEntryNameProvider
 	 */
 	public List<FileDownloadSummary> addFilesToZip(
 			List<FileHandleAssociationAuthorizationStatus> authResults,
-			File tempResultFile, ZipOutputStream zipOut,
-			AsynchronousJobStatus status,
+			ZipOutputStream zipOut, AsynchronousJobStatus status,
 			Set<String> fileIdsInZip, ZipEntryNameProvider zipEntryNameProvider) {
+		// Decide which files will be downloaded before starting any downloads.
+		List<PlannedFile> plan = planFiles(authResults);
+		List<PlannedFile> toDownload = Lists.newLinkedList();
+		for (PlannedFile file : plan) {
+			if (file.s3Handle != null) {
+				toDownload.add(file);
+			}
+		}
+		Iterator<PlannedFile> downloadIterator = toDownload.iterator();
+		int downloadsStarted = 0;
+		int downloadsConsumed = 0;
 		long currentProgress = 0L;
-		final long totalProgress = (long) authResults.size();
+		final long totalProgress = (long) plan.size();
 		// This will be the final summary of results..
 		List<FileDownloadSummary> fileSummaries = Lists.newLinkedList();
-		// process each request in order.
+		try {
+			// process each request in order.
+			for (PlannedFile file : plan) {
+				// keep the window of downloads full.
+				while (downloadIterator.hasNext() && downloadsStarted - downloadsConsumed < DOWNLOAD_WINDOW_SIZE) {
+					final PlannedFile next = downloadIterator.next();
+					next.download = bulkFileDownloadExecutorService
+							.submit(() -> fileHandleSupport.downloadToTempFile(next.s3Handle));
+					downloadsStarted++;
+				}
+				FileHandleAssociation association = file.status.getAssociation();
+				String fileHandleId = association.getFileHandleId();
+				// update the job progress
+				asynchJobStatusManager.updateJobProgress(status.getJobId(),
+						currentProgress, totalProgress, PROCESSING_FILE_HANDLE_ID + fileHandleId);
+				FileDownloadSummary summary = new FileDownloadSummary();
+				summary.setFileHandleId(fileHandleId);
+				summary.setAssociateObjectId(association.getAssociateObjectId());
+				summary.setAssociateObjectType(association.getAssociateObjectType());
+				fileSummaries.add(summary);
+				try {
+					if (file.duplicateOf != null && !fileIdsInZip.contains(fileHandleId)) {
+						// The earlier entry for this file was not added to the zip, so try this one in its place.
+						file.s3Handle = file.duplicateOf.s3Handle;
+						file.failure = null;
+						file.download = bulkFileDownloadExecutorService
+								.submit(() -> fileHandleSupport.downloadToTempFile(file.s3Handle));
+					} else if (file.failure != null) {
+						throw file.failure;
+					} else {
+						downloadsConsumed++;
+					}
+					String zipEntryName = writeOneFileToZip(zipOut, file, zipEntryNameProvider);
+					fileIdsInZip.add(fileHandleId);
+					summary.setStatus(FileDownloadStatus.SUCCESS);
+					summary.setZipEntryName(zipEntryName);
+				} catch (BulkFileException e) {
+					// known error conditions.
+					summary.setStatus(FileDownloadStatus.FAILURE);
+					summary.setFailureMessage(e.getMessage());
+					summary.setFailureCode(e.getFailureCode());
+				} catch (NotFoundException e) {
+					// file did not exist
+					summary.setStatus(FileDownloadStatus.FAILURE);
+					summary.setFailureMessage(e.getMessage());
+					summary.setFailureCode(FileDownloadCode.NOT_FOUND);
+				} catch (Exception e) {
+					// all unknown errors.
+					summary.setStatus(FileDownloadStatus.FAILURE);
+					summary.setFailureMessage(e.getMessage());
+					summary.setFailureCode(FileDownloadCode.UNKNOWN_ERROR);
+					log.error("Failed on: " + association, e);
+				}
+				currentProgress++;
+			}
+		} finally {
+			// Downloads that were started but never added to the zip.
+			for (PlannedFile file : plan) {
+				discardDownload(file);
+			}
+		}
+		return fileSummaries;
+	}
+
+	/**
+	 * Determine which of the requested files can be added to the zip. The size
+	 * limit of the zip is applied to the sum of the sizes of the files ahead of
+	 * each file, so no file is downloaded unless it will be added. A repeated
+	 * file is not downloaded, but keeps a reference to the first entry for the
+	 * file so it can be tried again if the first entry is not added to the zip.
+	 * 
+	 * @param authResults
+	 * @return One entry for each requested file, in order.
+	 */
+	List<PlannedFile> planFiles(List<FileHandleAssociationAuthorizationStatus> authResults) {
+		List<PlannedFile> plan = Lists.newLinkedList();
+		Map<String, PlannedFile> plannedFiles = Maps.newHashMap();
+		long plannedSize = 0L;
 		for (FileHandleAssociationAuthorizationStatus fhas : authResults) {
+			PlannedFile file = new PlannedFile(fhas);
+			plan.add(file);
 			String fileHandleId = fhas.getAssociation().getFileHandleId();
-			// update the job progress
-			asynchJobStatusManager.updateJobProgress(status.getJobId(),
-					currentProgress, totalProgress, PROCESSING_FILE_HANDLE_ID
-							+ fhas.getAssociation().getFileHandleId());
-			FileDownloadSummary summary = new FileDownloadSummary();
-			summary.setFileHandleId(fileHandleId);
-			summary.setAssociateObjectId(fhas.getAssociation().getAssociateObjectId());
-			summary.setAssociateObjectType(fhas.getAssociation().getAssociateObjectType());
-			fileSummaries.add(summary);
 			try {
-				String zipEntryName = writeOneFileToZip(zipOut, tempResultFile.length(), fhas, fileIdsInZip, zipEntryNameProvider);
-				// download this file from S3
-				fileIdsInZip.add(fileHandleId);
-				summary.setStatus(FileDownloadStatus.SUCCESS);
-				summary.setZipEntryName(zipEntryName);
+				file.s3Handle = checkOneFile(fhas, plannedFiles.keySet(), plannedSize);
+				plannedFiles.put(fileHandleId, file);
+				plannedSize += file.s3Handle.getContentSize();
 			} catch (BulkFileException e) {
-				// known error conditions.
-				summary.setStatus(FileDownloadStatus.FAILURE);
-				summary.setFailureMessage(e.getMessage());
-				summary.setFailureCode(e.getFailureCode());
-			} catch (NotFoundException e) {
-				// file did not exist
-				summary.setStatus(FileDownloadStatus.FAILURE);
-				summary.setFailureMessage(e.getMessage());
-				summary.setFailureCode(FileDownloadCode.NOT_FOUND);
+				file.failure = e;
+				if (FileDownloadCode.DUPLICATE.equals(e.getFailureCode())) {
+					file.duplicateOf = plannedFiles.get(fileHandleId);
+				}
 			} catch (Exception e) {
-				// all unknown errors.
-				summary.setStatus(FileDownloadStatus.FAILURE);
-				summary.setFailureMessage(e.getMessage());
-				summary.setFailureCode(FileDownloadCode.UNKNOWN_ERROR);
-				log.error("Failed on: " + fhas.getAssociation(), e);
+				file.failure = e;
 			}
-			currentProgress++;
 		}
-		return fileSummaries;
+		return plan;
 	}
 
 	/**
-	 * Write a single file to the given zip stream.
+	 * Check that a single file can be added to the zip.
 	 * 
-	 * @param zipOut
-	 * @param zipFileSize
 	 * @param fhas
-	 * @param fileIdsInZip
-	 * @throws IOException
-	 * @return The zip entry name used for this file.
+	 * @param plannedFileIds
+	 *            The files that will already be added to the zip.
+	 * @param plannedSize
+	 *            The total size of the files that will already be added to the
+	 *            zip.
+	 * @return The S3FileHandle to download.
 	 */
-	public String writeOneFileToZip(ZipOutputStream zipOut, long zipFileSize,
-			FileHandleAssociationAuthorizationStatus fhas,
-			Set<String> fileIdsInZip, ZipEntryNameProvider zipEntryNameProvider) throws IOException {
+	S3FileHandle checkOneFile(FileHandleAssociationAuthorizationStatus fhas,
+			Set<String> plannedFileIds, long plannedSize) {
 		String fileHandleId = fhas.getAssociation().getFileHandleId();
 		// Is the user authorized to download this file?
 		if (!fhas.getStatus().isAuthorized()) {
@@ -225,12 +306,12 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 					FileDownloadCode.UNAUTHORIZED);
 		}
 		// Each file handle should only be added once
-		if (fileIdsInZip.contains(fileHandleId)) {
+		if (plannedFileIds.contains(fileHandleId)) {
 			throw new BulkFileException(FILE_ALREADY_ADDED,
 					FileDownloadCode.DUPLICATE);
 		}
 		// Each file must be less than the max.
-		if (zipFileSize > FileConstants.BULK_FILE_DOWNLOAD_MAX_SIZE_BYTES) {
+		if (plannedSize > FileConstants.BULK_FILE_DOWNLOAD_MAX_SIZE_BYTES) {
 			throw new BulkFileException(
 					RESULT_FILE_HAS_REACHED_THE_MAXIMUM_SIZE,
 					FileDownloadCode.EXCEEDS_SIZE_LIMIT);
@@ -242,12 +323,26 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 			throw new BulkFileException(FILE_EXCEEDS_THE_MAXIMUM_SIZE_LIMIT,
 					FileDownloadCode.EXCEEDS_SIZE_LIMIT);
 		}
-		// This file will be downloaded to this temp.
-		File downloadTemp = fileHandleSupport.downloadToTempFile(s3Handle);
+		return s3Handle;
+	}
+
+	/**
+	 * Write a single downloaded file to the given zip stream.
+	 * 
+	 * @param zipOut
+	 * @param file
+	 * @param zipEntryNameProvider
+	 * @throws Exception
+	 * @return The zip entry name used for this file.
+	 */
+	String writeOneFileToZip(ZipOutputStream zipOut, PlannedFile file,
+			ZipEntryNameProvider zipEntryNameProvider) throws Exception {
+		// Wait for the file to be downloaded.
+		File downloadTemp = waitForDownload(file);
 		try {
 			// The entry name is the path plus file name.
-			String zipEntryName = zipEntryNameProvider.createZipEntryName(s3Handle.getFileName(),
-					Long.parseLong(s3Handle.getId()));
+			String zipEntryName = zipEntryNameProvider.createZipEntryName(file.s3Handle.getFileName(),
+					Long.parseLong(file.s3Handle.getId()));
 			// write the file to the zip.
 			fileHandleSupport.addFileToZip(zipOut, downloadTemp, zipEntryName);
 			return zipEntryName;
@@ -256,6 +351,69 @@ public class BulkFileDownloadWorker implements MessageDrivenRunner {
 		}
 	}
 
+	/**
+	 * Wait for the download of the given file.
+	 * 
+	 * @param file
+	 * @return The local copy of the file.
+	 * @throws Exception
+	 *             The exception thrown by the download.
+	 */
+	static File waitForDownload(PlannedFile file) throws Exception {
+		Future<File> download = file.download;
+		file.download = null;
+		try {
+			return download.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Cancel a download that will not be added to the zip, deleting its file
+	 * if it was already started.
+	 * 
+	 * @param file
+	 */
+	static void discardDownload(PlannedFile file) {
+		Future<File> download = file.download;
+		if (download == null) {
+			return;
+		}
+		file.download = null;
+		if (download.cancel(false)) {
+			return;
+		}
+		try {
+			download.get().delete();
+		} catch (Exception e) {
+			log.warn("Failed to discard the download of FileHandleId: " + file.s3Handle.getId(), e);
+		}
+	}
+
+	/**
+	 * The state of a single requested file.
+	 *
+	 */
+	static class PlannedFile {
+
+		final FileHandleAssociationAuthorizationStatus status;
+		S3FileHandle s3Handle;
+		Exception failure;
+		Future<File> download;
+		/**
+		 * The first entry for the same file when this entry is a repeat.
+		 */
+		PlannedFile duplicateOf;
+
+		PlannedFile(FileHandleAssociationAuthorizationStatus status) {
+			this.status = status;
+		}
+	}
+
 	/**
 	 * Get the ZipEntryNameProvider to use for the given format.
 	 * 
@@ -2,11 +2,13 @@ package org.sagebionetworks.file.worker;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.zip.ZipOutputStream;
 
 import org.sagebionetworks.repo.manager.file.FileHandleAssociationAuthorizationStatus;
 import org.sagebionetworks.repo.manager.file.LocalFileUploadRequest;
+import org.sagebionetworks.repo.manager.file.UploadStreamWriter;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.file.FileHandleAssociateType;
 import org.sagebionetworks.repo.model.file.FileHandleAssociation;
@@ -46,6 +48,13 @@ public interface FileHandleSupport {
 	 * @throws IOException 
 	 */
 	public ZipOutputStream createZipOutputStream(File outFile) throws IOException;
+
+	/**
+	 * Create a ZipOutputStream that writes to the given stream.
+	 * @param out
+	 * @return
+	 */
+	public ZipOutputStream createZipOutputStream(OutputStream out);
 	
 	
 	/**
@@ -58,6 +67,16 @@ public interface FileHandleSupport {
 	 * @return
 	 */
 	S3FileHandle multipartUploadLocalFile(LocalFileUploadRequest request);
+
+	/**
+	 * Multi-part upload a file to S3 as it is written by the given writer,
+	 * without a local copy. This is used by workers.
+	 * 
+	 * @param request
+	 * @param writer
+	 * @return The new FileHandle, or null if the writer discarded the upload.
+	 */
+	S3FileHandle multipartUploadLocalStream(LocalFileUploadRequest request, UploadStreamWriter writer);
 	
 	/**
 	 * Get the S3FileHandle for the given FileHandle.id.
@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -15,6 +16,7 @@ import org.sagebionetworks.repo.manager.file.FileHandleAssociationAuthorizationS
 import org.sagebionetworks.repo.manager.file.FileHandleAuthorizationManager;
 import org.sagebionetworks.repo.manager.file.FileHandleManager;
 import org.sagebionetworks.repo.manager.file.LocalFileUploadRequest;
+import org.sagebionetworks.repo.manager.file.UploadStreamWriter;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.dao.FileHandleDao;
 import org.sagebionetworks.repo.model.file.FileHandle;
@@ -61,6 +63,11 @@ public class FileHandleSupportImpl implements FileHandleSupport {
 		return new ZipOutputStream(new FileOutputStream(outFile));
 	}
 
+	@Override
+	public ZipOutputStream createZipOutputStream(OutputStream out) {
+		return new ZipOutputStream(out);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.sagebionetworks.file.worker.BulkDownloadDao#multipartUploadLocalFile(org.sagebionetworks.repo.model.UserInfo, java.io.File, java.lang.String, com.amazonaws.event.ProgressListener)
@@ -70,6 +77,11 @@ public class FileHandleSupportImpl implements FileHandleSupport {
 		return fileHandleManager.multipartUploadLocalFile(request);
 	}
 
+	@Override
+	public S3FileHandle multipartUploadLocalStream(LocalFileUploadRequest request, UploadStreamWriter writer) {
+		return fileHandleManager.multipartUploadLocalStream(request, writer);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.sagebionetworks.file.worker.BulkDownloadDao#getS3FileHandle(java.lang.String)
@@ -1,8 +1,11 @@
 package org.sagebionetworks.object.snapshot.worker.utils;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -100,10 +103,7 @@ public class NodeObjectRecordWriter implements ObjectRecordWriter {
 	public void buildAndWriteRecords(ProgressCallback progressCallback, List<ChangeMessage> messages) throws IOException {
 		List<ObjectRecord> nonDeleteRecords = new LinkedList<ObjectRecord>();
 		List<ObjectRecord> deleteRecords = new LinkedList<ObjectRecord>();
-		for (ChangeMessage message : messages) {
-			if (message.getObjectType() != ObjectType.ENTITY) {
-				throw new IllegalArgumentException();
-			}
+		for (ChangeMessage message : getLatestMessagePerNode(messages)) {
 			if (message.getChangeType() == ChangeType.DELETE) {
 				deleteRecords.add(buildDeletedNodeRecord(message));
 			} else {
@@ -130,6 +130,44 @@ public class NodeObjectRecordWriter implements ObjectRecordWriter {
 		}
 	}
 
+	/**
+	 * A hot node can change many times within a single batch. Each snapshot
+	 * reads the current state of the node, so only the latest message of each
+	 * node is processed.
+	 * 
+	 * @param messages
+	 * @return
+	 */
+	static Collection<ChangeMessage> getLatestMessagePerNode(List<ChangeMessage> messages) {
+		Map<String, ChangeMessage> latest = new LinkedHashMap<String, ChangeMessage>(messages.size());
+		for (ChangeMessage message : messages) {
+			if (message.getObjectType() != ObjectType.ENTITY) {
+				throw new IllegalArgumentException();
+			}
+			ChangeMessage current = latest.get(message.getObjectId());
+			if (current == null || !isBefore(message, current)) {
+				latest.put(message.getObjectId(), message);
+			}
+		}
+		return latest.values();
+	}
+
+	/**
+	 * Was the given message sent before the current message? A message without
+	 * a timestamp is never considered older, so the later message in the batch
+	 * wins.
+	 * 
+	 * @param message
+	 * @param current
+	 * @return
+	 */
+	private static boolean isBefore(ChangeMessage message, ChangeMessage current) {
+		if (message.getTimestamp() == null || current.getTimestamp() == null) {
+			return false;
+		}
+		return message.getTimestamp().before(current.getTimestamp());
+	}
+
 	public static ObjectRecord buildDeletedNodeRecord(ChangeMessage message) throws IOException {
 		DeletedNode deletedNode = new DeletedNode();
 		deletedNode.setId(message.getObjectId());
@@ -16,6 +16,7 @@ import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.manager.entity.ReplicationMessageManager;
 import org.sagebionetworks.repo.model.IdAndEtag;
 import org.sagebionetworks.repo.model.IdList;
+import org.sagebionetworks.repo.model.IdRangeChecksum;
 import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
@@ -50,6 +51,14 @@ import com.amazonaws.services.sqs.model.Message;
  * to trigger the {@link EntityReplicationWorker} to create, update, or deleted
  * entity replicated data as needed.
  * </p>
+ * <p>
+ * Deltas are located hierarchically. The sum of the child CRCs of each
+ * container is compared first. For each container that is out-of-synch, the
+ * range of child IDs is repeatedly split in half, and only the halves with
+ * mismatched checksums are examined further. Children are only listed once a
+ * mismatched range is small, so a single drifted child of a large container is
+ * found with a logarithmic number of checksum queries.
+ * </p>
  */
 public class EntityReplicationReconciliationWorker implements MessageDrivenRunner {
 
@@ -68,6 +77,12 @@ public class EntityReplicationReconciliationWorker implements MessageDrivenRunne
 	 */
 	public static final long PROGRESS_THROTTLE_FREQUENCY_MS = 1000 * 30;
 
+	/**
+	 * A range of child IDs with a mismatched checksum is only listed once it
+	 * contains at most this many children on both the truth and the replica.
+	 */
+	public static final long MAX_CHILDREN_PER_RANGE = 1000L;
+
 	@Autowired
 	NodeDAO nodeDao;
 
@@ -227,37 +242,109 @@ public class EntityReplicationReconciliationWorker implements MessageDrivenRunne
 			ProgressCallback progressCallback, TableIndexDAO firstIndex,
 			Long outOfSynchParentId, boolean isParentInTrash) {
 		List<ChangeMessage> changes = new LinkedList<>();
-		Set<IdAndEtag> replicaChildren = new LinkedHashSet<>(
-				firstIndex.getEntityChildren(outOfSynchParentId));
 		if (!isParentInTrash) {
 			// The parent is not in the trash so find entities that are
 			// out-of-synch
-			List<IdAndEtag> truthChildren = nodeDao
-					.getChildren(outOfSynchParentId);
-			Set<Long> truthIds = new HashSet<Long>();
-			// find the create/updates
-			for (IdAndEtag test : truthChildren) {
-				if (!replicaChildren.contains(test)) {
-					changes.add(createChange(test, ChangeType.UPDATE));
-				}
-				truthIds.add(test.getId());
-			}
-			// find the deletes
-			for (IdAndEtag test : replicaChildren) {
-				if (!truthIds.contains(test.getId())) {
-					changes.add(createChange(test, ChangeType.DELETE));
-				}
-			}
+			findChangesForIdRange(firstIndex, outOfSynchParentId, 0L, Long.MAX_VALUE, changes);
 		} else {
 			// the parent is the the trash so setup the delete of any children
 			// that appear in the replica.
-			for (IdAndEtag toDelete : replicaChildren) {
+			for (IdAndEtag toDelete : firstIndex.getEntityChildren(outOfSynchParentId)) {
 				changes.add(createChange(toDelete, ChangeType.DELETE));
 			}
 		}
 		return changes;
 	}
 
+	/**
+	 * Find the changes for the children of a parent within the given range of
+	 * IDs. If the checksums of the range do not match, the range is either
+	 * listed or split in half and each half is checked.
+	 * 
+	 * @param firstIndex
+	 * @param parentId
+	 * @param minIdInclusive
+	 * @param maxIdInclusive
+	 * @param changes The changes found are added to this list.
+	 */
+	void findChangesForIdRange(TableIndexDAO firstIndex, Long parentId, long minIdInclusive,
+			long maxIdInclusive, List<ChangeMessage> changes) {
+		IdRangeChecksum truth = nodeDao.getChildChecksumForIdRange(parentId, minIdInclusive, maxIdInclusive);
+		IdRangeChecksum replica = firstIndex.getEntityChildChecksumForIdRange(parentId, minIdInclusive,
+				maxIdInclusive);
+		if (truth.equals(replica)) {
+			// this range is in-synch.
+			return;
+		}
+		if (Math.max(truth.getCount(), replica.getCount()) <= MAX_CHILDREN_PER_RANGE) {
+			// small enough to compare each child.
+			List<IdAndEtag> truthChildren = nodeDao.getChildrenInIdRange(parentId, minIdInclusive, maxIdInclusive);
+			List<IdAndEtag> replicaChildren = firstIndex.getEntityChildrenInIdRange(parentId, minIdInclusive,
+					maxIdInclusive);
+			changes.addAll(compareChildren(truthChildren, replicaChildren));
+			return;
+		}
+		// narrow the range to the children that exist on either side then split it.
+		long lower = Math.max(minIdInclusive, minOf(truth.getMinId(), replica.getMinId()));
+		long upper = Math.min(maxIdInclusive, maxOf(truth.getMaxId(), replica.getMaxId()));
+		long middle = lower + (upper - lower) / 2;
+		findChangesForIdRange(firstIndex, parentId, lower, middle, changes);
+		findChangesForIdRange(firstIndex, parentId, middle + 1, upper, changes);
+	}
+
+	/**
+	 * Compare the children of the truth and the replica.
+	 * 
+	 * @param truthChildren
+	 * @param replicaChildenList
+	 * @return The changes needed to bring the replica in-synch with the truth.
+	 */
+	public List<ChangeMessage> compareChildren(List<IdAndEtag> truthChildren, List<IdAndEtag> replicaChildenList) {
+		List<ChangeMessage> changes = new LinkedList<>();
+		Set<IdAndEtag> replicaChildren = new LinkedHashSet<>(replicaChildenList);
+		Set<Long> truthIds = new HashSet<Long>();
+		// find the create/updates
+		for (IdAndEtag test : truthChildren) {
+			if (!replicaChildren.contains(test)) {
+				changes.add(createChange(test, ChangeType.UPDATE));
+			}
+			truthIds.add(test.getId());
+		}
+		// find the deletes
+		for (IdAndEtag test : replicaChildren) {
+			if (!truthIds.contains(test.getId())) {
+				changes.add(createChange(test, ChangeType.DELETE));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * The smallest of the two IDs, ignoring nulls.
+	 */
+	private static long minOf(Long one, Long two) {
+		if (one == null) {
+			return two;
+		}
+		if (two == null) {
+			return one;
+		}
+		return Math.min(one, two);
+	}
+
+	/**
+	 * The largest of the two IDs, ignoring nulls.
+	 */
+	private static long maxOf(Long one, Long two) {
+		if (one == null) {
+			return two;
+		}
+		if (two == null) {
+			return one;
+		}
+		return Math.max(one, two);
+	}
+
 	/**
 	 * Create a ChangeMessage from the given info and type.
 	 * 
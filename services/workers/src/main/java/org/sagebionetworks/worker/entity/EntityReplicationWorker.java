@@ -1,11 +1,20 @@
 package org.sagebionetworks.worker.entity;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.sagebionetworks.StackConfigurationSingleton;
 import org.sagebionetworks.asynchronous.workers.changes.BatchChangeMessageDrivenRunner;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.cloudwatch.WorkerLogger;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.database.semaphore.LockReleaseFailedException;
@@ -17,6 +26,7 @@ import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.table.EntityDTO;
 import org.sagebionetworks.table.cluster.ConnectionFactory;
 import org.sagebionetworks.table.cluster.TableIndexDAO;
+import org.sagebionetworks.util.Clock;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.CannotAcquireLockException;
@@ -25,10 +35,16 @@ import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.cloudwatch.model.StandardUnit;
 
 /**
  * This worker listens to entity change events and replicates the changes to the
  * index database. The replicated data supports both entity views and entity queries.
+ * <p>
+ * The changes are applied to each index database concurrently, and each index
+ * database retries its own transient failures, so one slow index database does
+ * not delay the others. The replication lag of each index database is published
+ * as a metric.
  * 
  * @author John
  *
@@ -37,6 +53,18 @@ public class EntityReplicationWorker implements BatchChangeMessageDrivenRunner {
 
 	public static final int MAX_ANNOTATION_CHARS = 500;
 	public static final long THROTTLE_FREQUENCY_MS = 1000*30;
+	/**
+	 * The number of times a single index database will attempt to apply a batch
+	 * before giving up on a transient failure.
+	 */
+	public static final int MAX_ATTEMPTS_PER_INDEX = 3;
+	public static final long RETRY_BACKOFF_MS = 100L;
+
+	public static final String NAMESPACE_ENTITY_REPLICATION = "Entity-Replication-"+ StackConfigurationSingleton.singleton().getStackInstance();
+	public static final String DIMENSION_INDEX_INSTANCE = "Index Instance";
+	public static final String METRIC_REPLICATION_LAG = "Replication Lag";
+	public static final String METRIC_REPLICATION_DURATION = "Replication Duration";
+	public static final String METRIC_REPLICATION_ATTEMPTS = "Replication Attempts";
 	
 	static private Logger log = LogManager.getLogger(EntityReplicationWorker.class);
 
@@ -49,6 +77,15 @@ public class EntityReplicationWorker implements BatchChangeMessageDrivenRunner {
 	@Autowired
 	WorkerLogger workerLogger;
 
+	@Autowired
+	ExecutorService entityReplicationExecutorService;
+
+	@Autowired
+	Consumer consumer;
+
+	@Autowired
+	Clock clock;
+
 	@Override
 	public void run(ProgressCallback progressCallback,
 			List<ChangeMessage> messages) throws RecoverableMessageException,
@@ -99,22 +136,147 @@ public class EntityReplicationWorker implements BatchChangeMessageDrivenRunner {
 		final List<EntityDTO> entityDTOs = nodeDao.getEntityDTOs(createOrUpdateIds,
 				MAX_ANNOTATION_CHARS);
 		validateEntityDtos(entityDTOs);
+		final Long oldestChangeTime = getOldestChangeTime(messages);
 		// Get the connections
 		List<TableIndexDAO> indexDaos = connectionFactory.getAllConnections();
-		// make all changes in an index as a transaction
+		// apply the changes to each index concurrently.
+		List<Future<Void>> futures = new ArrayList<>(indexDaos.size());
+		int instance = 0;
 		for(TableIndexDAO indexDao: indexDaos){
 			final TableIndexDAO indexDaoFinal = indexDao;
-			indexDao.executeInWriteTransaction(new TransactionCallback<Void>() {
-
-				@Override
-				public Void doInTransaction(TransactionStatus status) {
-					// clear everything.
-					indexDaoFinal.deleteEntityData(progressCallback, allIds);
-					indexDaoFinal.addEntityData(progressCallback, entityDTOs);
-					return null;
+			final String instanceName = Integer.toString(instance++);
+			futures.add(entityReplicationExecutorService.submit(() -> {
+				replicateToIndex(progressCallback, indexDaoFinal, instanceName, allIds, entityDTOs, oldestChangeTime);
+				return null;
+			}));
+		}
+		waitForAll(futures);
+	}
+
+	/**
+	 * Apply a batch of changes to a single index database. Transient database
+	 * failures are retried against this index only.
+	 * 
+	 * @param progressCallback
+	 * @param indexDao
+	 * @param instanceName
+	 * @param allIds
+	 * @param entityDTOs
+	 * @param oldestChangeTime The time of the oldest change in the batch. Can be null.
+	 * @throws InterruptedException
+	 */
+	void replicateToIndex(final ProgressCallback progressCallback, final TableIndexDAO indexDao,
+			String instanceName, final List<Long> allIds, final List<EntityDTO> entityDTOs,
+			Long oldestChangeTime) throws InterruptedException {
+		long start = clock.currentTimeMillis();
+		int attempt = 1;
+		while (true) {
+			try {
+				// make all changes in an index as a transaction
+				indexDao.executeInWriteTransaction(new TransactionCallback<Void>() {
+
+					@Override
+					public Void doInTransaction(TransactionStatus status) {
+						// clear everything.
+						indexDao.deleteEntityData(progressCallback, allIds);
+						indexDao.addEntityData(progressCallback, entityDTOs);
+						return null;
+					}
+				});
+				break;
+			} catch (CannotAcquireLockException | DeadlockLoserDataAccessException e) {
+				if (attempt >= MAX_ATTEMPTS_PER_INDEX) {
+					throw e;
+				}
+				log.warn("Replication to index instance " + instanceName + " failed on attempt " + attempt
+						+ ". Will retry. Message: " + e.getMessage());
+				clock.sleep(RETRY_BACKOFF_MS * attempt);
+				attempt++;
+			}
+		}
+		long now = clock.currentTimeMillis();
+		List<ProfileData> metrics = new LinkedList<>();
+		metrics.add(createMetric(instanceName, METRIC_REPLICATION_DURATION, now - start, StandardUnit.Milliseconds, now));
+		metrics.add(createMetric(instanceName, METRIC_REPLICATION_ATTEMPTS, attempt, StandardUnit.Count, now));
+		if (oldestChangeTime != null) {
+			metrics.add(createMetric(instanceName, METRIC_REPLICATION_LAG, now - oldestChangeTime, StandardUnit.Milliseconds, now));
+		}
+		consumer.addProfileData(metrics);
+	}
+
+	/**
+	 * Wait for the replication to every index to finish. Each index is allowed
+	 * to finish even if another index fails. The first failure is then thrown
+	 * unchanged.
+	 * 
+	 * @param futures
+	 * @throws RecoverableMessageException
+	 */
+	void waitForAll(List<Future<Void>> futures) throws RecoverableMessageException {
+		Throwable firstFailure = null;
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (firstFailure == null) {
+					firstFailure = e.getCause();
 				}
-			});
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RecoverableMessageException(e);
+			}
+		}
+		if (firstFailure == null) {
+			return;
+		}
+		if (firstFailure instanceof RuntimeException) {
+			// runtime exceptions are unchanged.
+			throw (RuntimeException) firstFailure;
+		}
+		if (firstFailure instanceof InterruptedException) {
+			throw new RecoverableMessageException(firstFailure);
+		}
+		throw new RuntimeException(firstFailure);
+	}
+
+	/**
+	 * Create a single replication metric for an index instance.
+	 * 
+	 * @param instanceName
+	 * @param name
+	 * @param value
+	 * @param unit
+	 * @param now
+	 * @return
+	 */
+	static ProfileData createMetric(String instanceName, String name, double value, StandardUnit unit, long now) {
+		ProfileData data = new ProfileData();
+		data.setNamespace(NAMESPACE_ENTITY_REPLICATION);
+		data.setName(name);
+		data.setValue(value);
+		data.setUnit(unit.name());
+		data.setTimestamp(new Date(now));
+		data.setDimension(Collections.singletonMap(DIMENSION_INDEX_INSTANCE, instanceName));
+		return data;
+	}
+
+	/**
+	 * Get the time of the oldest change in the given batch.
+	 * 
+	 * @param messages
+	 * @return Null if none of the changes have a time stamp.
+	 */
+	public static Long getOldestChangeTime(List<ChangeMessage> messages) {
+		Long oldest = null;
+		for (ChangeMessage change : messages) {
+			if (change.getTimeStamp() != null) {
+				long time = change.getTimeStamp().getTime();
+				if (oldest == null || time < oldest) {
+					oldest = time;
+				}
+			}
 		}
+		return oldest;
 	}
 
 	/**
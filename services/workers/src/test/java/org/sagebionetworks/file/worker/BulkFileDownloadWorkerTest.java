@@ -1,20 +1,25 @@
 package org.sagebionetworks.file.worker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.zip.ZipOutputStream;
@@ -37,6 +42,7 @@ import org.sagebionetworks.repo.manager.UserManager;
 import org.sagebionetworks.repo.manager.asynch.AsynchJobStatusManager;
 import org.sagebionetworks.repo.manager.file.FileHandleAssociationAuthorizationStatus;
 import org.sagebionetworks.repo.manager.file.LocalFileUploadRequest;
+import org.sagebionetworks.repo.manager.file.UploadStreamWriter;
 import org.sagebionetworks.repo.model.UserInfo;
 import org.sagebionetworks.repo.model.asynch.AsynchronousJobStatus;
 import org.sagebionetworks.repo.model.file.BulkFileDownloadRequest;
@@ -50,9 +56,11 @@ import org.sagebionetworks.repo.model.file.FileHandleAssociation;
 import org.sagebionetworks.repo.model.file.S3FileHandle;
 import org.sagebionetworks.repo.model.file.ZipFileFormat;
 import org.sagebionetworks.repo.web.NotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.services.sqs.model.Message;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 @RunWith(MockitoJUnitRunner.class)
 public class BulkFileDownloadWorkerTest {
 
@@ -82,11 +90,11 @@ public class BulkFileDownloadWorkerTest {
 	S3FileHandle fileHandle1;
 	S3FileHandle fileHandle2;
 
-	List<File> mockTempFilesCreated;
 	List<ZipOutputStream> mockZipOutCreated;
 	List<File> mockDownloadedFiles;
 
 	S3FileHandle resultHandle;
+	Boolean zipUploaded;
 
 	@Before
 	public void before() throws Exception {
@@ -135,16 +143,9 @@ public class BulkFileDownloadWorkerTest {
 		when(mockBulkDownloadManager.getS3FileHandle(fha2.getFileHandleId()))
 				.thenReturn(fileHandle2);
 
-		// Create and track a mock file for each temp requested.
-		mockTempFilesCreated = Lists.newLinkedList();
-		doAnswer(new Answer<File>() {
-			@Override
-			public File answer(InvocationOnMock invocation) throws Throwable {
-				File mockFile = Mockito.mock(File.class);
-				mockTempFilesCreated.add(mockFile);
-				return mockFile;
-			}
-		}).when(mockBulkDownloadManager).createTempFile(anyString(), anyString());
+		// run the downloads on the calling thread.
+		ReflectionTestUtils.setField(worker, "bulkFileDownloadExecutorService",
+				MoreExecutors.newDirectExecutorService());
 
 		// Create and track a mock downloaded files.
 		mockDownloadedFiles = Lists.newLinkedList();
@@ -168,12 +169,22 @@ public class BulkFileDownloadWorkerTest {
 				mockZipOutCreated.add(out);
 				return out;
 			}
-		}).when(mockBulkDownloadManager).createZipOutputStream(any(File.class));
+		}).when(mockBulkDownloadManager).createZipOutputStream(any(OutputStream.class));
 
 		// setup the result handle
 		resultHandle = new S3FileHandle();
 		resultHandle.setId("1111");
-		when(mockBulkDownloadManager.multipartUploadLocalFile(any(LocalFileUploadRequest.class))).thenReturn(resultHandle);
+		// The zip is written to the upload stream.
+		zipUploaded = null;
+		doAnswer(new Answer<S3FileHandle>() {
+			@Override
+			public S3FileHandle answer(InvocationOnMock invocation) throws Throwable {
+				UploadStreamWriter writer = invocation.getArgument(1);
+				zipUploaded = writer.write(new ByteArrayOutputStream());
+				return zipUploaded ? resultHandle : null;
+			}
+		}).when(mockBulkDownloadManager).multipartUploadLocalStream(any(LocalFileUploadRequest.class),
+				any(UploadStreamWriter.class));
 		when(mockAsynchJobStatusManager.lookupJobStatus(jobStatus.getJobId())).thenReturn(jobStatus);
 	}
 
@@ -184,8 +195,6 @@ public class BulkFileDownloadWorkerTest {
 		verify(mockAsynchJobStatusManager, times(1)).updateJobProgress(
 				anyString(), anyLong(), anyLong(), anyString());
 
-		// temp file for the zip should be created
-		assertEquals(1, mockTempFilesCreated.size());
 		// ZipOutputStream should be created for the zip.
 		assertEquals(1, mockZipOutCreated.size());
 		// one file should have been downloaded
@@ -193,15 +202,17 @@ public class BulkFileDownloadWorkerTest {
 		verifyAllStreamsClosedAndFilesDeleted();
 		
 		// The zip should get uploaded
-		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalFile(localFileRequestCaptor.capture());
+		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalStream(localFileRequestCaptor.capture(),
+				any(UploadStreamWriter.class));
+		assertTrue(zipUploaded);
 		LocalFileUploadRequest request = localFileRequestCaptor.getValue();
 		assertNotNull(request);
-		// file name is null by default
-		assertEquals(null, request.getFileName());
+		// file name is based on the job by default
+		assertEquals("Job9999.zip", request.getFileName());
 		assertEquals(BulkFileDownloadWorker.APPLICATION_ZIP, request.getContentType());
 		assertEquals(user.getId().toString(), request.getUserId());
-		assertNotNull(request.getListener());
-		assertNotNull(request.getFileToUpload());
+		// nothing is written to the local disk.
+		assertNull(request.getFileToUpload());
 		
 		ArgumentCaptor<String> entryCapture = ArgumentCaptor
 				.forClass(String.class);
@@ -231,15 +242,13 @@ public class BulkFileDownloadWorkerTest {
 		// call under test
 		worker.run(mockProgress, message);
 		// The zip should get uploaded
-		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalFile(localFileRequestCaptor.capture());
+		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalStream(localFileRequestCaptor.capture(),
+				any(UploadStreamWriter.class));
 		LocalFileUploadRequest request = localFileRequestCaptor.getValue();
 		assertNotNull(request);
-		// file name is null by default
 		assertEquals(fileName, request.getFileName());
 		assertEquals(BulkFileDownloadWorker.APPLICATION_ZIP, request.getContentType());
 		assertEquals(user.getId().toString(), request.getUserId());
-		assertNotNull(request.getListener());
-		assertNotNull(request.getFileToUpload());
 	}
 	
 
@@ -263,7 +272,8 @@ public class BulkFileDownloadWorkerTest {
 		
 		verifyAllStreamsClosedAndFilesDeleted();
 		// The zip should not get uploaded
-		verify(mockBulkDownloadManager, never()).multipartUploadLocalFile(any(LocalFileUploadRequest.class));
+		assertFalse(zipUploaded);
+		verify(mockBulkDownloadManager, never()).downloadToTempFile(any(S3FileHandle.class));
 		// expect the job to be completed with the response body.
 		FileDownloadSummary summary = new FileDownloadSummary();
 		summary.setFileHandleId(fha1.getFileHandleId());
@@ -310,7 +320,7 @@ public class BulkFileDownloadWorkerTest {
 		
 		verifyAllStreamsClosedAndFilesDeleted();
 		// The zip should get uploaded
-		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalFile(any(LocalFileUploadRequest.class));
+		assertTrue(zipUploaded);
 		// expect the job to be completed with the response body.
 		// 1
 		FileDownloadSummary summary1 = new FileDownloadSummary();
@@ -433,29 +443,115 @@ public class BulkFileDownloadWorkerTest {
 	 */
 	@Test
 	public void testRunZipFull() throws Exception {
-		// temp file for the zip should be created
-		File mockZip = Mockito.mock(File.class);
-		when(mockBulkDownloadManager.createTempFile(anyString(), anyString())).thenReturn(mockZip);
-		when(mockZip.length()).thenReturn(FileConstants.BULK_FILE_DOWNLOAD_MAX_SIZE_BYTES+1);
-		fileHandle1.setContentSize(1L);
+		FileHandleAssociation fha3 = new FileHandleAssociation();
+		fha3.setFileHandleId("3");
+		fha3.setAssociateObjectId("123");
+		fha3.setAssociateObjectType(FileHandleAssociateType.TableEntity);
+		requestBody.setRequestedFiles(Arrays.asList(fha1, fha2, fha3));
+		message = MessageUtils.buildMessage(jobStatus);
+		when(mockBulkDownloadManager.canDownLoadFile(user, Arrays.asList(fha1, fha2, fha3))).thenReturn(Arrays.asList(
+				new FileHandleAssociationAuthorizationStatus(fha1, AuthorizationStatus.authorized()),
+				new FileHandleAssociationAuthorizationStatus(fha2, AuthorizationStatus.authorized()),
+				new FileHandleAssociationAuthorizationStatus(fha3, AuthorizationStatus.authorized())));
+		// the first two files fill the zip.
+		fileHandle1.setContentSize(FileConstants.BULK_FILE_DOWNLOAD_MAX_SIZE_BYTES);
+		fileHandle2.setContentSize(1L);
 		// call under test
 		worker.run(mockProgress, message);
+		verifyAllStreamsClosedAndFilesDeleted();
+		// the third file is never downloaded.
+		assertEquals(2, mockDownloadedFiles.size());
+		verify(mockBulkDownloadManager, never()).getS3FileHandle(fha3.getFileHandleId());
 		// expect the job to be completed with the response body.
-		FileDownloadSummary summary = new FileDownloadSummary();
-		summary.setFileHandleId(fha1.getFileHandleId());
-		summary.setAssociateObjectId(fha1.getAssociateObjectId());
-		summary.setAssociateObjectType(fha1.getAssociateObjectType());
-		summary.setStatus(FileDownloadStatus.FAILURE);
-		summary.setFailureCode(FileDownloadCode.EXCEEDS_SIZE_LIMIT);
-		summary.setFailureMessage(BulkFileDownloadWorker.RESULT_FILE_HAS_REACHED_THE_MAXIMUM_SIZE);
+		FileDownloadSummary summary1 = new FileDownloadSummary();
+		summary1.setFileHandleId(fha1.getFileHandleId());
+		summary1.setAssociateObjectId(fha1.getAssociateObjectId());
+		summary1.setAssociateObjectType(fha1.getAssociateObjectType());
+		summary1.setStatus(FileDownloadStatus.SUCCESS);
+		summary1.setZipEntryName("1/1/foo.txt");
+		FileDownloadSummary summary2 = new FileDownloadSummary();
+		summary2.setFileHandleId(fha2.getFileHandleId());
+		summary2.setAssociateObjectId(fha2.getAssociateObjectId());
+		summary2.setAssociateObjectType(fha2.getAssociateObjectType());
+		summary2.setStatus(FileDownloadStatus.SUCCESS);
+		summary2.setZipEntryName("2/2/bar.txt");
+		FileDownloadSummary summary3 = new FileDownloadSummary();
+		summary3.setFileHandleId(fha3.getFileHandleId());
+		summary3.setAssociateObjectId(fha3.getAssociateObjectId());
+		summary3.setAssociateObjectType(fha3.getAssociateObjectType());
+		summary3.setStatus(FileDownloadStatus.FAILURE);
+		summary3.setFailureCode(FileDownloadCode.EXCEEDS_SIZE_LIMIT);
+		summary3.setFailureMessage(BulkFileDownloadWorker.RESULT_FILE_HAS_REACHED_THE_MAXIMUM_SIZE);
 		// response
 		BulkFileDownloadResponse expectedResponse = new BulkFileDownloadResponse();
-		expectedResponse.setResultZipFileHandleId(null);
-		expectedResponse.setFileSummary(Arrays.asList(summary));
+		expectedResponse.setResultZipFileHandleId(resultHandle.getId());
+		expectedResponse.setFileSummary(Arrays.asList(summary1, summary2, summary3));
 		expectedResponse.setUserId(""+user.getId());
 		verify(mockAsynchJobStatusManager).setComplete(jobStatus.getJobId(),
 				expectedResponse);
 	}
+
+	/**
+	 * A failed download only fails the one file.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunDownloadFailure() throws Exception {
+		requestBody.setRequestedFiles(Arrays.asList(fha1, fha2));
+		message = MessageUtils.buildMessage(jobStatus);
+		when(mockBulkDownloadManager.canDownLoadFile(user, Arrays.asList(fha1, fha2))).thenReturn(Arrays.asList(
+				new FileHandleAssociationAuthorizationStatus(fha1, AuthorizationStatus.authorized()),
+				new FileHandleAssociationAuthorizationStatus(fha2, AuthorizationStatus.authorized())));
+		String error = "download failed";
+		doThrow(new IOException(error)).when(mockBulkDownloadManager).downloadToTempFile(fileHandle1);
+		// call under test
+		worker.run(mockProgress, message);
+		verifyAllStreamsClosedAndFilesDeleted();
+		FileDownloadSummary summary1 = new FileDownloadSummary();
+		summary1.setFileHandleId(fha1.getFileHandleId());
+		summary1.setAssociateObjectId(fha1.getAssociateObjectId());
+		summary1.setAssociateObjectType(fha1.getAssociateObjectType());
+		summary1.setStatus(FileDownloadStatus.FAILURE);
+		summary1.setFailureCode(FileDownloadCode.UNKNOWN_ERROR);
+		summary1.setFailureMessage(error);
+		FileDownloadSummary summary2 = new FileDownloadSummary();
+		summary2.setFileHandleId(fha2.getFileHandleId());
+		summary2.setAssociateObjectId(fha2.getAssociateObjectId());
+		summary2.setAssociateObjectType(fha2.getAssociateObjectType());
+		summary2.setStatus(FileDownloadStatus.SUCCESS);
+		summary2.setZipEntryName("2/2/bar.txt");
+		BulkFileDownloadResponse expectedResponse = new BulkFileDownloadResponse();
+		expectedResponse.setResultZipFileHandleId(resultHandle.getId());
+		expectedResponse.setFileSummary(Arrays.asList(summary1, summary2));
+		expectedResponse.setUserId(""+user.getId());
+		verify(mockAsynchJobStatusManager).setComplete(jobStatus.getJobId(),
+				expectedResponse);
+	}
+
+	/**
+	 * Files downloaded ahead of the zip writer must be deleted when the job
+	 * fails.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunFailureDeletesDownloadsAhead() throws Exception {
+		requestBody.setRequestedFiles(Arrays.asList(fha1, fha2));
+		message = MessageUtils.buildMessage(jobStatus);
+		when(mockBulkDownloadManager.canDownLoadFile(user, Arrays.asList(fha1, fha2))).thenReturn(Arrays.asList(
+				new FileHandleAssociationAuthorizationStatus(fha1, AuthorizationStatus.authorized()),
+				new FileHandleAssociationAuthorizationStatus(fha2, AuthorizationStatus.authorized())));
+		RuntimeException exception = new RuntimeException("something bad");
+		doThrow(exception).when(mockAsynchJobStatusManager).updateJobProgress(anyString(), anyLong(), anyLong(),
+				anyString());
+		// call under test
+		worker.run(mockProgress, message);
+		// both files were downloaded before the first was added.
+		assertEquals(2, mockDownloadedFiles.size());
+		verifyAllStreamsClosedAndFilesDeleted();
+		verify(mockBulkDownloadManager, never()).addFileToZip(any(ZipOutputStream.class), any(File.class),
+				anyString());
+		verify(mockAsynchJobStatusManager).setJobFailed(jobStatus.getJobId(), exception);
+	}
 	
 	/**
 	 * The case where two files are requested with the same FileHandl.id.
@@ -483,7 +579,7 @@ public class BulkFileDownloadWorkerTest {
 
 		verifyAllStreamsClosedAndFilesDeleted();
 		// The zip should get uploaded
-		verify(mockBulkDownloadManager, times(1)).multipartUploadLocalFile(any(LocalFileUploadRequest.class));
+		assertTrue(zipUploaded);
 		// expect the job to be completed with the response body.
 		// 1
 		FileDownloadSummary summary1 = new FileDownloadSummary();
@@ -509,6 +605,65 @@ public class BulkFileDownloadWorkerTest {
 				expectedResponse);
 	}
 
+	/**
+	 * When the first entry for a file fails to download, a later entry for the
+	 * same file should be tried in its place rather than reported as a
+	 * duplicate.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunDuplicateFileHandleIdFirstDownloadFailure() throws Exception {
+		FileHandleAssociation fha1Copy = new FileHandleAssociation();
+		fha1Copy.setFileHandleId(fha1.getFileHandleId());
+		fha1Copy.setAssociateObjectId("456");
+		fha1Copy.setAssociateObjectType(FileHandleAssociateType.TableEntity);
+		requestBody.setRequestedFiles(Arrays.asList(fha1, fha1Copy, fha2));
+		message = MessageUtils.buildMessage(jobStatus);
+		when(mockBulkDownloadManager.canDownLoadFile(user, Arrays.asList(fha1, fha1Copy, fha2))).thenReturn(Arrays.asList(
+				new FileHandleAssociationAuthorizationStatus(fha1, AuthorizationStatus.authorized()),
+				new FileHandleAssociationAuthorizationStatus(fha1Copy, AuthorizationStatus.authorized()),
+				new FileHandleAssociationAuthorizationStatus(fha2, AuthorizationStatus.authorized())));
+		String error = "download failed";
+		// the first download of the file fails and the second works.
+		doThrow(new IOException(error)).doAnswer(new Answer<File>() {
+			@Override
+			public File answer(InvocationOnMock invocation) throws Throwable {
+				File mockFile = Mockito.mock(File.class);
+				mockDownloadedFiles.add(mockFile);
+				return mockFile;
+			}
+		}).when(mockBulkDownloadManager).downloadToTempFile(fileHandle1);
+		// call under test
+		worker.run(mockProgress, message);
+		verifyAllStreamsClosedAndFilesDeleted();
+		verify(mockBulkDownloadManager, times(2)).downloadToTempFile(fileHandle1);
+		FileDownloadSummary summary1 = new FileDownloadSummary();
+		summary1.setFileHandleId(fha1.getFileHandleId());
+		summary1.setAssociateObjectId(fha1.getAssociateObjectId());
+		summary1.setAssociateObjectType(fha1.getAssociateObjectType());
+		summary1.setStatus(FileDownloadStatus.FAILURE);
+		summary1.setFailureCode(FileDownloadCode.UNKNOWN_ERROR);
+		summary1.setFailureMessage(error);
+		FileDownloadSummary summary2 = new FileDownloadSummary();
+		summary2.setFileHandleId(fha1Copy.getFileHandleId());
+		summary2.setAssociateObjectId(fha1Copy.getAssociateObjectId());
+		summary2.setAssociateObjectType(fha1Copy.getAssociateObjectType());
+		summary2.setStatus(FileDownloadStatus.SUCCESS);
+		summary2.setZipEntryName("1/1/foo.txt");
+		FileDownloadSummary summary3 = new FileDownloadSummary();
+		summary3.setFileHandleId(fha2.getFileHandleId());
+		summary3.setAssociateObjectId(fha2.getAssociateObjectId());
+		summary3.setAssociateObjectType(fha2.getAssociateObjectType());
+		summary3.setStatus(FileDownloadStatus.SUCCESS);
+		summary3.setZipEntryName("2/2/bar.txt");
+		BulkFileDownloadResponse expectedResponse = new BulkFileDownloadResponse();
+		expectedResponse.setResultZipFileHandleId(resultHandle.getId());
+		expectedResponse.setFileSummary(Arrays.asList(summary1, summary2, summary3));
+		expectedResponse.setUserId(""+user.getId());
+		verify(mockAsynchJobStatusManager).setComplete(jobStatus.getJobId(),
+				expectedResponse);
+	}
+
 	/**
 	 * Unknown failure occurs before or after each file is processed
 	 * should cause the job to fail.
@@ -559,10 +714,6 @@ public class BulkFileDownloadWorkerTest {
 	 * @throws IOException
 	 */
 	private void verifyAllStreamsClosedAndFilesDeleted() throws IOException {
-		// All created temp files should have been deleted.
-		for (File mockFile : mockTempFilesCreated) {
-			verify(mockFile).delete();
-		}
 		// All created output stream should have been closed.
 		for (ZipOutputStream mockOut : mockZipOutCreated) {
 			verify(mockOut, atLeast(1)).close();
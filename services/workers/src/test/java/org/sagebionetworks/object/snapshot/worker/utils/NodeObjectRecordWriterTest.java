@@ -6,6 +6,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 
@@ -160,6 +161,44 @@ public class NodeObjectRecordWriterTest {
 		assertEquals(node.getName(), record.getName());
 	}
 
+	@Test
+	public void testRepeatedChangesWrittenOnce() throws IOException {
+		Long timestamp = System.currentTimeMillis();
+		ChangeMessage first = MessageUtils.extractMessageBody(MessageUtils.buildMessage(ChangeType.UPDATE, "123", ObjectType.ENTITY, "etag", timestamp - 10));
+		ChangeMessage last = MessageUtils.extractMessageBody(MessageUtils.buildMessage(ChangeType.UPDATE, "123", ObjectType.ENTITY, "etag2", timestamp));
+		ChangeMessage middle = MessageUtils.extractMessageBody(MessageUtils.buildMessage(ChangeType.UPDATE, "123", ObjectType.ENTITY, "etag1", timestamp - 5));
+
+		node.setIsPublic(canPublicRead);
+		node.setIsControlled(stats.getHasACT());
+		node.setIsRestricted(stats.getHasToU());
+		ObjectRecord expected = ObjectRecordBuilderUtils.buildObjectRecord(node, timestamp);
+
+		writer.buildAndWriteRecords(mockCallback, Arrays.asList(first, last, middle));
+		// the node is only read and written once, with the latest timestamp.
+		verify(mockNodeDAO).getNode(eq("123"));
+		verify(mockObjectRecordDao).saveBatch(eq(Arrays.asList(expected)), eq(expected.getJsonClassName()));
+	}
+
+	@Test
+	public void testGetLatestMessagePerNodeNullTimestamp() {
+		ChangeMessage first = new ChangeMessage();
+		first.setObjectId("123");
+		first.setObjectType(ObjectType.ENTITY);
+		first.setTimestamp(new Date(1L));
+		ChangeMessage noTimestamp = new ChangeMessage();
+		noTimestamp.setObjectId("123");
+		noTimestamp.setObjectType(ObjectType.ENTITY);
+		ChangeMessage last = new ChangeMessage();
+		last.setObjectId("123");
+		last.setObjectType(ObjectType.ENTITY);
+		last.setTimestamp(new Date(2L));
+		// call under test
+		assertEquals(Arrays.asList(noTimestamp),
+				new ArrayList<ChangeMessage>(NodeObjectRecordWriter.getLatestMessagePerNode(Arrays.asList(first, noTimestamp))));
+		assertEquals(Arrays.asList(last),
+				new ArrayList<ChangeMessage>(NodeObjectRecordWriter.getLatestMessagePerNode(Arrays.asList(noTimestamp, last))));
+	}
+
 	@Test
 	public void testNodeInTrashCan() throws IOException {
 		EntityInTrashCanException exception = new EntityInTrashCanException("");
@@ -11,19 +11,24 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.sagebionetworks.cloudwatch.Consumer;
+import org.sagebionetworks.cloudwatch.ProfileData;
 import org.sagebionetworks.cloudwatch.WorkerLogger;
 import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.database.semaphore.LockReleaseFailedException;
@@ -34,6 +39,7 @@ import org.sagebionetworks.repo.model.message.ChangeType;
 import org.sagebionetworks.repo.model.table.EntityDTO;
 import org.sagebionetworks.table.cluster.ConnectionFactory;
 import org.sagebionetworks.table.cluster.TableIndexDAO;
+import org.sagebionetworks.util.Clock;
 import org.sagebionetworks.worker.entity.EntityReplicationWorker;
 import org.sagebionetworks.workers.util.aws.message.RecoverableMessageException;
 import org.springframework.dao.CannotAcquireLockException;
@@ -45,6 +51,7 @@ import org.springframework.transaction.support.TransactionCallback;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.sqs.model.AmazonSQSException;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 
 public class EntityReplicationWorkerTest {
@@ -61,6 +68,12 @@ public class EntityReplicationWorkerTest {
 	ProgressCallback mockPogressCallback;
 	@Mock
 	WorkerLogger mockWorkerLog;
+	@Mock
+	TableIndexDAO mockSecondIndexDao;
+	@Mock
+	Consumer mockConsumer;
+	@Mock
+	Clock mockClock;
 	
 	EntityReplicationWorker worker;
 	
@@ -74,6 +87,9 @@ public class EntityReplicationWorkerTest {
 		ReflectionTestUtils.setField(worker, "nodeDao", mockNodeDao);
 		ReflectionTestUtils.setField(worker, "connectionFactory", mockConnectionFactory);
 		ReflectionTestUtils.setField(worker, "workerLogger", mockWorkerLog);
+		ReflectionTestUtils.setField(worker, "entityReplicationExecutorService", MoreExecutors.newDirectExecutorService());
+		ReflectionTestUtils.setField(worker, "consumer", mockConsumer);
+		ReflectionTestUtils.setField(worker, "clock", mockClock);
 		
 		ChangeMessage update = new ChangeMessage();
 		update.setChangeType(ChangeType.UPDATE);
@@ -91,14 +107,16 @@ public class EntityReplicationWorkerTest {
 		
 		when(mockConnectionFactory.getAllConnections()).thenReturn(Lists.newArrayList(mockIndexDao));
 		
-		doAnswer(new Answer<Void>(){
+		Answer<Void> inTransaction = new Answer<Void>(){
 
 			@Override
 			public Void answer(InvocationOnMock invocation) throws Throwable {
 				TransactionCallback callback = (TransactionCallback) invocation.getArguments()[0];
 				callback.doInTransaction(transactionStatus);
 				return null;
-			}}).when(mockIndexDao).executeInWriteTransaction(any(TransactionCallback.class));
+			}};
+		doAnswer(inTransaction).when(mockIndexDao).executeInWriteTransaction(any(TransactionCallback.class));
+		doAnswer(inTransaction).when(mockSecondIndexDao).executeInWriteTransaction(any(TransactionCallback.class));
 	}
 	
 	@Test
@@ -126,6 +144,97 @@ public class EntityReplicationWorkerTest {
 		verifyZeroInteractions(mockWorkerLog);
 	}
 	
+	@Test
+	public void testRunMultipleIndices() throws RecoverableMessageException, Exception{
+		List<EntityDTO> entityData = createEntityDtos(2);
+		when(mockNodeDao.getEntityDTOs(anyListOf(String.class), anyInt())).thenReturn(entityData);
+		when(mockConnectionFactory.getAllConnections()).thenReturn(Lists.newArrayList(mockIndexDao, mockSecondIndexDao));
+		
+		// call under test
+		worker.run(mockPogressCallback, changes);
+		verify(mockIndexDao).addEntityData(any(ProgressCallback.class) ,eq(entityData));
+		verify(mockSecondIndexDao).addEntityData(any(ProgressCallback.class) ,eq(entityData));
+		verifyZeroInteractions(mockWorkerLog);
+	}
+	
+	@Test
+	public void testRunOneIndexFails() throws RecoverableMessageException, Exception{
+		List<EntityDTO> entityData = createEntityDtos(2);
+		when(mockNodeDao.getEntityDTOs(anyListOf(String.class), anyInt())).thenReturn(entityData);
+		when(mockConnectionFactory.getAllConnections()).thenReturn(Lists.newArrayList(mockIndexDao, mockSecondIndexDao));
+		RuntimeException exception = new RuntimeException("something went wrong");
+		doThrow(exception).when(mockIndexDao).addEntityData(any(ProgressCallback.class), anyListOf(EntityDTO.class));
+		
+		// call under test
+		worker.run(mockPogressCallback, changes);
+		// the failure of the first index must not stop the second.
+		verify(mockSecondIndexDao).addEntityData(any(ProgressCallback.class) ,eq(entityData));
+		boolean willRetry = false;
+		verify(mockWorkerLog).logWorkerFailure(EntityReplicationWorker.class.getName(), exception, willRetry);
+	}
+	
+	@Test
+	public void testRunRetryIndex() throws RecoverableMessageException, Exception{
+		List<EntityDTO> entityData = createEntityDtos(2);
+		when(mockNodeDao.getEntityDTOs(anyListOf(String.class), anyInt())).thenReturn(entityData);
+		when(mockConnectionFactory.getAllConnections()).thenReturn(Lists.newArrayList(mockIndexDao, mockSecondIndexDao));
+		// the first attempt against the first index fails.
+		doThrow(new DeadlockLoserDataAccessException("message", new RuntimeException())).doNothing()
+				.when(mockIndexDao).addEntityData(any(ProgressCallback.class), anyListOf(EntityDTO.class));
+		
+		// call under test
+		worker.run(mockPogressCallback, changes);
+		verify(mockIndexDao, times(2)).addEntityData(any(ProgressCallback.class) ,eq(entityData));
+		// only the failed index is retried.
+		verify(mockSecondIndexDao, times(1)).addEntityData(any(ProgressCallback.class) ,eq(entityData));
+		verify(mockClock).sleep(EntityReplicationWorker.RETRY_BACKOFF_MS);
+		verifyZeroInteractions(mockWorkerLog);
+	}
+	
+	@Test
+	public void testDeadlockRetriesExhausted() throws RecoverableMessageException, Exception{
+		DeadlockLoserDataAccessException exception = new DeadlockLoserDataAccessException("message", new RuntimeException());
+		doThrow(exception).when(mockIndexDao).addEntityData(any(ProgressCallback.class), anyListOf(EntityDTO.class));
+		// call under test
+		try {
+			worker.run(mockPogressCallback, changes);
+			fail("Should have thrown RecoverableMessageException");
+		} catch (RecoverableMessageException e) {
+			assertEquals(exception, e.getCause());
+		}
+		verify(mockIndexDao, times(EntityReplicationWorker.MAX_ATTEMPTS_PER_INDEX)).addEntityData(any(ProgressCallback.class), anyListOf(EntityDTO.class));
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testReplicationMetrics() throws RecoverableMessageException, Exception{
+		changes.get(0).setTimeStamp(new Date(1000L));
+		changes.get(1).setTimeStamp(new Date(500L));
+		when(mockClock.currentTimeMillis()).thenReturn(2000L, 2500L);
+		
+		// call under test
+		worker.run(mockPogressCallback, changes);
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(mockConsumer).addProfileData(captor.capture());
+		List<ProfileData> metrics = captor.getValue();
+		assertEquals(3, metrics.size());
+		assertEquals(EntityReplicationWorker.METRIC_REPLICATION_DURATION, metrics.get(0).getName());
+		assertEquals(new Double(500), metrics.get(0).getValue());
+		assertEquals(EntityReplicationWorker.METRIC_REPLICATION_ATTEMPTS, metrics.get(1).getName());
+		assertEquals(new Double(1), metrics.get(1).getValue());
+		assertEquals(EntityReplicationWorker.METRIC_REPLICATION_LAG, metrics.get(2).getName());
+		assertEquals(new Double(2000), metrics.get(2).getValue());
+		assertEquals("0", metrics.get(2).getDimension().get(EntityReplicationWorker.DIMENSION_INDEX_INSTANCE));
+	}
+	
+	@Test
+	public void testGetOldestChangeTime(){
+		assertEquals(null, EntityReplicationWorker.getOldestChangeTime(changes));
+		changes.get(1).setTimeStamp(new Date(2L));
+		changes.get(2).setTimeStamp(new Date(1L));
+		assertEquals(new Long(1L), EntityReplicationWorker.getOldestChangeTime(changes));
+	}
+	
 	@Test
 	public void testLogError() throws RecoverableMessageException, Exception{
 		RuntimeException exception = new RuntimeException("something went wrong");
@@ -6,6 +6,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyListOf;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -28,6 +29,7 @@ import org.sagebionetworks.common.util.progress.ProgressCallback;
 import org.sagebionetworks.repo.manager.entity.ReplicationMessageManager;
 import org.sagebionetworks.repo.model.IdAndEtag;
 import org.sagebionetworks.repo.model.IdList;
+import org.sagebionetworks.repo.model.IdRangeChecksum;
 import org.sagebionetworks.repo.model.NodeDAO;
 import org.sagebionetworks.repo.model.ObjectType;
 import org.sagebionetworks.repo.model.message.ChangeMessage;
@@ -83,6 +85,8 @@ public class EntityReplicationReconciliationWorkerTest {
 	IdAndEtag replicaOne;
 	IdAndEtag replicaTwo;
 	IdAndEtag replicaFour;
+	IdRangeChecksum truthChecksum;
+	IdRangeChecksum replicaChecksum;
 	
 	Message message;
 	long nowMS;
@@ -135,7 +139,7 @@ public class EntityReplicationReconciliationWorkerTest {
 		truthOne = new IdAndEtag(111L, "et1", 444L);
 		truthTwo = new IdAndEtag(222L, "et2", 444L);
 		truthThree = new IdAndEtag(333L, "et3", 444L);
-		when(mockNodeDao.getChildren(firstParentId)).thenReturn(Lists.newArrayList(truthOne,truthTwo,truthThree));
+		when(mockNodeDao.getChildrenInIdRange(firstParentId, 0L, Long.MAX_VALUE)).thenReturn(Lists.newArrayList(truthOne,truthTwo,truthThree));
 		// one matches the truth
 		replicaOne = new IdAndEtag(111L, "et1", 444L);
 		// two does not match
@@ -143,7 +147,12 @@ public class EntityReplicationReconciliationWorkerTest {
 		// three does not exist in  replica
 		// four does not exist in truth.
 		replicaFour = new IdAndEtag(444L,"et4", 444L);
-		when(mockIndexDao.getEntityChildren(firstParentId)).thenReturn(Lists.newArrayList(replicaOne,replicaTwo,replicaFour));
+		when(mockIndexDao.getEntityChildrenInIdRange(firstParentId, 0L, Long.MAX_VALUE)).thenReturn(Lists.newArrayList(replicaOne,replicaTwo,replicaFour));
+		// the checksums of the children do not match.
+		truthChecksum = new IdRangeChecksum(3L, 123L, 111L, 333L);
+		replicaChecksum = new IdRangeChecksum(3L, 456L, 111L, 444L);
+		when(mockNodeDao.getChildChecksumForIdRange(anyLong(), anyLong(), anyLong())).thenReturn(truthChecksum);
+		when(mockIndexDao.getEntityChildChecksumForIdRange(anyLong(), anyLong(), anyLong())).thenReturn(replicaChecksum);
 		
 		IdList list = new IdList();
 		list.setList(parentIds);
@@ -216,8 +225,52 @@ public class EntityReplicationReconciliationWorkerTest {
 		assertEquals(""+replicaFour.getId(), message.getObjectId());
 		assertEquals(ChangeType.DELETE, message.getChangeType());
 		
-		verify(mockIndexDao).getEntityChildren(firstParentId);
-		verify(mockNodeDao).getChildren(firstParentId);
+		verify(mockNodeDao).getChildChecksumForIdRange(firstParentId, 0L, Long.MAX_VALUE);
+		verify(mockIndexDao).getEntityChildChecksumForIdRange(firstParentId, 0L, Long.MAX_VALUE);
+		verify(mockIndexDao).getEntityChildrenInIdRange(firstParentId, 0L, Long.MAX_VALUE);
+		verify(mockNodeDao).getChildrenInIdRange(firstParentId, 0L, Long.MAX_VALUE);
+	}
+	
+	@Test
+	public void testFindChangesForParentIdChecksumMatch(){
+		boolean parentInTrash = false;
+		when(mockIndexDao.getEntityChildChecksumForIdRange(anyLong(), anyLong(), anyLong())).thenReturn(truthChecksum);
+		// call under test
+		List<ChangeMessage> result = worker.findChangesForParentId(mockProgressCallback, mockIndexDao, firstParentId, parentInTrash);
+		assertEquals(0, result.size());
+		// the children do not need to be listed when the checksums match.
+		verify(mockIndexDao, never()).getEntityChildrenInIdRange(anyLong(), anyLong(), anyLong());
+		verify(mockNodeDao, never()).getChildrenInIdRange(anyLong(), anyLong(), anyLong());
+	}
+	
+	@Test
+	public void testFindChangesForParentIdSplitRange(){
+		boolean parentInTrash = false;
+		long max = EntityReplicationReconciliationWorker.MAX_CHILDREN_PER_RANGE;
+		// the full range has too many children to list.
+		when(mockNodeDao.getChildChecksumForIdRange(firstParentId, 0L, Long.MAX_VALUE))
+				.thenReturn(new IdRangeChecksum(max * 2, 1L, 100L, 300L));
+		when(mockIndexDao.getEntityChildChecksumForIdRange(firstParentId, 0L, Long.MAX_VALUE))
+				.thenReturn(new IdRangeChecksum(max * 2, 2L, 101L, 301L));
+		// the lower half matches
+		when(mockNodeDao.getChildChecksumForIdRange(firstParentId, 100L, 200L))
+				.thenReturn(new IdRangeChecksum(max, 1L, 100L, 199L));
+		when(mockIndexDao.getEntityChildChecksumForIdRange(firstParentId, 100L, 200L))
+				.thenReturn(new IdRangeChecksum(max, 1L, 100L, 199L));
+		// the upper half does not match
+		when(mockNodeDao.getChildrenInIdRange(firstParentId, 201L, 301L)).thenReturn(Lists.newArrayList(truthThree));
+		when(mockIndexDao.getEntityChildrenInIdRange(firstParentId, 201L, 301L)).thenReturn(Lists.newArrayList(replicaFour));
+		// call under test
+		List<ChangeMessage> result = worker.findChangesForParentId(mockProgressCallback, mockIndexDao, firstParentId, parentInTrash);
+		assertEquals(2, result.size());
+		assertEquals(""+truthThree.getId(), result.get(0).getObjectId());
+		assertEquals(ChangeType.UPDATE, result.get(0).getChangeType());
+		assertEquals(""+replicaFour.getId(), result.get(1).getObjectId());
+		assertEquals(ChangeType.DELETE, result.get(1).getChangeType());
+		// only the mismatched half is listed.
+		verify(mockNodeDao).getChildChecksumForIdRange(firstParentId, 201L, 301L);
+		verify(mockNodeDao).getChildrenInIdRange(eq(firstParentId), anyLong(), anyLong());
+		verify(mockIndexDao).getEntityChildrenInIdRange(eq(firstParentId), anyLong(), anyLong());
 	}
 	
 	@Test
@@ -242,7 +295,8 @@ public class EntityReplicationReconciliationWorkerTest {
 		
 		verify(mockIndexDao).getEntityChildren(parentId);
 		// since the parent is in the trash this call should not be made
-		verify(mockNodeDao, never()).getChildren(parentId);
+		verify(mockNodeDao, never()).getChildrenInIdRange(anyLong(), anyLong(), anyLong());
+		verify(mockNodeDao, never()).getChildChecksumForIdRange(anyLong(), anyLong(), anyLong());
 	}
 	
 	@Test
@@ -252,7 +306,7 @@ public class EntityReplicationReconciliationWorkerTest {
 		boolean parentInTrash = false;
 		// The benefactor does not match
 		replicaOne.setBenefactorId(truthOne.getBenefactorId()+1);
-		when(mockIndexDao.getEntityChildren(parentId)).thenReturn(Lists.newArrayList(replicaOne));
+		when(mockIndexDao.getEntityChildrenInIdRange(parentId, 0L, Long.MAX_VALUE)).thenReturn(Lists.newArrayList(replicaOne));
 		
 		// call under test
 		List<ChangeMessage> result = worker.findChangesForParentId(mockProgressCallback, mockIndexDao, parentId, parentInTrash);
@@ -276,10 +330,11 @@ public class EntityReplicationReconciliationWorkerTest {
 		verify(mockNodeDao).getSumOfChildCRCsForEachParent(parentIds);
 		verify(mockIndexDao).getSumOfChildCRCsForEachParent(parentIds);
 		
-		// four parents are out-of-synch
-		verify(mockIndexDao, times(4)).getEntityChildren(anyLong());
+		// one trashed parent is out-of-synch
+		verify(mockIndexDao, times(1)).getEntityChildren(anyLong());
 		// three non-trashed parents are out-of-synch
-		verify(mockNodeDao, times(3)).getChildren(anyLong());
+		verify(mockIndexDao, times(3)).getEntityChildrenInIdRange(anyLong(), anyLong(), anyLong());
+		verify(mockNodeDao, times(3)).getChildrenInIdRange(anyLong(), anyLong(), anyLong());
 		// four batches should be set.
 		verify(mockReplicationMessageManager, times(4)).pushChangeMessagesToReplicationQueue(anyListOf(ChangeMessage.class));
 	}